@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.acoustic.tiedstate.trainer;
+
+/**
+ * Accumulates the statistics of a {@link TrainerAcousticModel} separately from the model, so that several threads can
+ * accumulate statistics of different utterances at the same time. The statistics are added to those of the model with
+ * {@link TrainerAcousticModel#merge}. An accumulator must only be used by one thread at a time.
+ */
+public class Accumulator {
+
+    private final HMMPoolManager hmmPoolManager;
+
+
+    Accumulator(HMMPoolManager hmmPoolManager) {
+        this.hmmPoolManager = new HMMPoolManager(hmmPoolManager);
+    }
+
+
+    HMMPoolManager getPoolManager() {
+        return hmmPoolManager;
+    }
+
+
+    /**
+     * Accumulate the current TrainerScore.
+     *
+     * @param index            the current index into the TrainerScore vector
+     * @param trainerScore     the TrainerScore in the current frame
+     * @param nextTrainerScore the TrainerScore in the next frame
+     */
+    public void accumulate(int index, TrainerScore[] trainerScore, TrainerScore[] nextTrainerScore) {
+        hmmPoolManager.accumulate(index, trainerScore, nextTrainerScore);
+    }
+
+
+    /**
+     * Accumulate the current TrainerScore.
+     *
+     * @param index        the current index into the TrainerScore vector
+     * @param trainerScore the TrainerScore
+     */
+    public void accumulate(int index, TrainerScore[] trainerScore) {
+        hmmPoolManager.accumulate(index, trainerScore);
+    }
+
+
+    /** Update the log likelihood. This should be called at the end of each utterance. */
+    public void updateLogLikelihood() {
+        hmmPoolManager.updateLogLikelihood();
+    }
+}
@@ -123,6 +123,34 @@ class Buffer {
     }
 
 
+    /**
+     * Adds the data accumulated to another buffer of the same size and scale to this buffer.
+     *
+     * @param buffer  the buffer whose data are added
+     * @param logMath the logMath to use
+     */
+    void merge(Buffer buffer, LogMath logMath) {
+        assert numerator.length == buffer.numerator.length;
+        assert isLog == buffer.isLog;
+        if (!buffer.wasUsed) {
+            return;
+        }
+        for (int i = 0; i < numerator.length; i++) {
+            if (isLog) {
+                numerator[i] = logMath.addAsLinear((float) numerator[i], (float) buffer.numerator[i]);
+            } else {
+                numerator[i] += buffer.numerator[i];
+            }
+        }
+        if (isLog) {
+            denominator = logMath.addAsLinear((float) denominator, (float) buffer.denominator);
+        } else {
+            denominator += buffer.denominator;
+        }
+        wasUsed = true;
+    }
+
+
     /**
      * Normalize the buffer. This method divides the numerator by the denominator, storing the result in the numerator,
      * and setting denominator to 1.
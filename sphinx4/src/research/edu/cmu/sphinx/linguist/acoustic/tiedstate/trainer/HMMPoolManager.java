@@ -76,11 +76,45 @@ class HMMPoolManager {
 //        varianceFloor =
 //	    props.getFloat(TiedStateAcousticModel.PROP_VARIANCE_FLOOR);
 
+        indexPool(meansPool);
+        indexPool(variancePool);
+        indexPool(mixtureWeightsPool);
+        for (int i = 0; i < matrixPool.size(); i++) {
+            indexMap.put(matrixPool.get(i), i);
+        }
+
         createBuffers();
         logLikelihood = 0.0f;
         logMath = new LogMath();
     }
 
+    /**
+     * Constructor for a pool manager that accumulates into its own buffers for the pools of another pool manager. Its
+     * statistics are added to those of the other pool manager with {@link #merge}.
+     *
+     * @param poolManager the pool manager whose pools are trained
+     */
+    protected HMMPoolManager(HMMPoolManager poolManager) {
+        hmmManager = poolManager.hmmManager;
+        indexMap = poolManager.indexMap;
+        meansPool = poolManager.meansPool;
+        variancePool = poolManager.variancePool;
+        mixtureWeightsPool = poolManager.mixtureWeightsPool;
+        matrixPool = poolManager.matrixPool;
+        senonePool = poolManager.senonePool;
+
+        createBuffers();
+        logLikelihood = 0.0f;
+        logMath = poolManager.logMath;
+    }
+
+    /** Maps the elements of a pool to their index. */
+    private void indexPool(Pool<float[]> pool) {
+        for (int i = 0; i < pool.size(); i++) {
+            indexMap.put(pool.get(i), i);
+        }
+    }
+
     /** Recreates the buffers. */
     protected void resetBuffers() {
         createBuffers();
@@ -104,7 +138,6 @@ class HMMPoolManager {
 
         for (int i = 0; i < pool.size(); i++) {
             float[] element = pool.get(i);
-            indexMap.put(element, i);
             Buffer buffer = new Buffer(element.length, isLog, i);
             bufferPool.put(i, buffer);
         }
@@ -117,7 +150,6 @@ class HMMPoolManager {
 
         for (int i = 0; i < pool.size(); i++) {
             float[][] element = pool.get(i);
-            indexMap.put(element, i);
             int poolSize = element.length;
             Buffer[] bufferArray = new Buffer[poolSize];
             for (int j = 0; j < poolSize; j++) {
@@ -383,6 +415,34 @@ class HMMPoolManager {
         // logLikelihood += currentLogLikelihood;
     }
 
+    /**
+     * Adds the statistics accumulated by another pool manager of the same pools to the buffers.
+     *
+     * @param poolManager the pool manager
+     */
+    protected void merge(HMMPoolManager poolManager) {
+        mergePool(meansBufferPool, poolManager.meansBufferPool);
+        mergePool(varianceBufferPool, poolManager.varianceBufferPool);
+        mergePool(mixtureWeightsBufferPool, poolManager.mixtureWeightsBufferPool);
+        assert matrixBufferPool.size() == poolManager.matrixBufferPool.size();
+        for (int i = 0; i < matrixBufferPool.size(); i++) {
+            Buffer[] bufferArray = matrixBufferPool.get(i);
+            Buffer[] otherArray = poolManager.matrixBufferPool.get(i);
+            for (int j = 0; j < bufferArray.length; j++) {
+                bufferArray[j].merge(otherArray[j], logMath);
+            }
+        }
+        logLikelihood += poolManager.logLikelihood;
+    }
+
+    /** Adds the statistics of a buffer pool to those of another one. */
+    private void mergePool(Pool<Buffer> pool, Pool<Buffer> otherPool) {
+        assert pool.size() == otherPool.size();
+        for (int i = 0; i < pool.size(); i++) {
+            pool.get(i).merge(otherPool.get(i), logMath);
+        }
+    }
+
     /**
      * Normalize the buffers.
      *
@@ -145,6 +145,27 @@ public class TrainerAcousticModel extends TiedStateAcousticModel {
 		hmmPoolManager.accumulate(index, trainerScore);
 	}
 
+	/**
+	 * Creates an accumulator of statistics for this model. The statistics
+	 * accumulated by it are added to those of the model by
+	 * {@link #merge(Accumulator)}.
+	 * @return the accumulator
+	 */
+	public Accumulator createAccumulator() {
+		return new Accumulator(hmmPoolManager);
+	}
+
+	/**
+	 * Adds the statistics of an accumulator into the buffers. Merging
+	 * accumulators in the same order gives the same statistics, whichever
+	 * threads accumulated them.
+	 * @param accumulator
+	 *            the accumulator created by this model
+	 */
+	public void merge(Accumulator accumulator) {
+		hmmPoolManager.merge(accumulator.getPoolManager());
+	}
+
 	/**
 	 * Update the log likelihood. This should be called at the end of each
 	 * utterance.
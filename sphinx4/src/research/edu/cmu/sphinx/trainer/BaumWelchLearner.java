@@ -14,20 +14,17 @@ package edu.cmu.sphinx.trainer;
 
 import edu.cmu.sphinx.frontend.*;
 import edu.cmu.sphinx.frontend.util.StreamCepstrumSource;
-import edu.cmu.sphinx.linguist.acoustic.HMMState;
-import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneHMM;
-import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneHMMState;
 import edu.cmu.sphinx.linguist.acoustic.tiedstate.trainer.TrainerScore;
 import edu.cmu.sphinx.util.LogMath;
 import edu.cmu.sphinx.util.props.PropertyException;
 import edu.cmu.sphinx.util.props.PropertySheet;
 import edu.cmu.sphinx.util.props.S4Component;
+import edu.cmu.sphinx.util.props.S4Double;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 
@@ -47,6 +44,21 @@ public class BaumWelchLearner implements Learner {
     public static final String DATA_SOURCE = "source";
     private StreamCepstrumSource dataSource;
 
+    /**
+     * The relative beam width of the forward probabilities of the emitting states. In each frame, the emitting states
+     * whose forward probability is lower than that of the best one times the beam width are pruned. The pruned states
+     * are skipped in the forward recursion of the next frame and in the backward recursion, so that the statistics are
+     * collected over the remaining part of the trellis only. Zero disables pruning.
+     * <p/>
+     * The beam is on the forward probabilities rather than on the posteriors, the forward times the backward
+     * probabilities. The backward probabilities are only known once the forward pass has run over the whole utterance,
+     * so a posterior beam could save work in the backward pass only. The forward beam prunes both passes, at the price
+     * of also dropping states whose low forward probability a high backward probability would have made up for.
+     */
+    @S4Double(defaultValue = 0.0)
+    public static final String PROP_RELATIVE_BEAM_WIDTH = "relativeBeamWidth";
+    private float logRelativeBeamWidth;
+
     /*
      * The logger for this class
      */
@@ -55,15 +67,41 @@ public class BaumWelchLearner implements Learner {
 
     private Data curFeature;
     private UtteranceGraph graph;
-    private TrainerScore[][] scoreArray;
+    private CompiledUtteranceGraph compiledGraph;
+    private boolean scoresPrepared;
     private int lastFeatureIndex;
     private int currentFeatureIndex;
-    private float[] betas;
-    private float[] outputProbs;
-    private float[] componentScores;
-    private float[] probCurrentFrame;
     private float totalLogScore;
 
+    // The buffers of the forward-backward algorithm, indexed by frame
+    // and by node or senone. They are reused across utterances.
+    private Data[] features = new Data[0];
+    private float[][] alphas = new float[0][];
+    private float[][] senoneScores = new float[0][];
+    private float[][][] componentScores = new float[0][][];
+    private float[] initialAlphas = new float[0];
+    private float[] outputProbs = new float[0];
+    private float[] betas = new float[0];
+    private float[] nextBetas = new float[0];
+
+
+    /**
+     * Creates a learner reading its features from a front end.
+     *
+     * @param frontEnd          the front end providing the features of the utterances
+     * @param logMath           the log math
+     * @param relativeBeamWidth the relative beam width of the forward probabilities, 0 disables pruning
+     */
+    public BaumWelchLearner(FrontEnd frontEnd, LogMath logMath, double relativeBeamWidth) {
+        this.frontEnd = frontEnd;
+        this.logMath = logMath;
+        logRelativeBeamWidth = logMath.linearToLog(relativeBeamWidth);
+    }
+
+
+    public BaumWelchLearner() {
+    }
+
 
     public void newProperties(PropertySheet ps) throws PropertyException {
         dataSource = (StreamCepstrumSource) ps.getComponent(DATA_SOURCE);
@@ -72,6 +110,7 @@ public class BaumWelchLearner implements Learner {
         frontEnd.setDataSource(dataSource);
 
         logMath = (LogMath) ps.getComponent(LOG_MATH);
+        logRelativeBeamWidth = logMath.linearToLog(ps.getDouble(PROP_RELATIVE_BEAM_WIDTH));
     }
 
 
@@ -163,6 +202,7 @@ public class BaumWelchLearner implements Learner {
      */
     public void setGraph(UtteranceGraph graph) {
         this.graph = graph;
+        compiledGraph = new CompiledUtteranceGraph(graph);
     }
 
 
@@ -170,43 +210,34 @@ public class BaumWelchLearner implements Learner {
      * Prepares the learner for returning scores, one at a time. To do so, it performs the full forward pass, but
      * returns the scores for the backward pass one feature frame at a time.
      */
-    private TrainerScore[][] prepareScore() {
-        // scoreList will contain a list of score, which in turn are a
-        // vector of TrainerScore elements.
-        List<TrainerScore[]> scoreList = new ArrayList<TrainerScore[]>();
-        int numStates = graph.size();
-        TrainerScore[] score = new TrainerScore[numStates];
-        betas = new float[numStates];
-        outputProbs = new float[numStates];
+    private void prepareScore() {
+        CompiledUtteranceGraph g = compiledGraph;
+        int numStates = g.numNodes;
+        if (betas.length < numStates) {
+            initialAlphas = new float[numStates];
+            outputProbs = new float[numStates];
+            betas = new float[numStates];
+            nextBetas = new float[numStates];
+        }
 
         // First we do the forward pass. We need this before we can
         // return any probability. When we're doing the backward pass,
         // we can finally return a score for each call of this method.
 
-        probCurrentFrame = new float[numStates];
-        // Initialization of probCurrentFrame for the alpha computation
-        Node initialNode = graph.getInitialNode();
-        int indexInitialNode = graph.indexOf(initialNode);
-        for (int i = 0; i < numStates; i++) {
-            probCurrentFrame[i] = LogMath.getLogZero();
-        }
+        // Initialization of the alphas
+        Arrays.fill(initialAlphas, 0, numStates, LogMath.getLogZero());
         // Overwrite in the right position
-        probCurrentFrame[indexInitialNode] = 0.0f;
-
-        for (initialNode.startOutgoingEdgeIterator();
-             initialNode.hasMoreOutgoingEdges();) {
-            Edge edge = initialNode.nextOutgoingEdge();
-            Node node = edge.getDestination();
-            int index = graph.indexOf(node);
-            if (!node.isType("STATE")) {
+        initialAlphas[g.initialNode] = 0.0f;
+        for (int e = g.outStart[g.initialNode]; e < g.outStart[g.initialNode + 1]; e++) {
+            int index = g.outNode[e];
+            if (!g.isState[index]) {
                 // Certainly non-emitting, if it's not in an HMM.
-                probCurrentFrame[index] = 0.0f;
+                initialAlphas[index] = 0.0f;
             } else {
                 // See if it's the last state in the HMM, i.e., if
                 // it's non-emitting.
-                HMMState state = (HMMState) node.getObject();
-                if (!state.isEmitting()) {
-                    probCurrentFrame[index] = 0.0f;
+                if (!g.states[index].isEmitting()) {
+                    initialAlphas[index] = 0.0f;
                 }
                 assert false;
             }
@@ -216,39 +247,55 @@ public class BaumWelchLearner implements Learner {
         // Feature. If not, a problem or EOF was encountered.
         lastFeatureIndex = 0;
         while (getFeature()) {
-            forwardPass(score);
-            scoreList.add(score);
+            ensureCapacity(lastFeatureIndex + 1);
+            forwardPass(lastFeatureIndex);
             lastFeatureIndex++;
         }
         logger.info("Feature frames read: " + lastFeatureIndex);
+
         // Prepare for beta computation
-        for (int i = 0; i < probCurrentFrame.length; i++) {
-            probCurrentFrame[i] = LogMath.getLogZero();
-        }
-        Node finalNode = graph.getFinalNode();
-        int indexFinalNode = graph.indexOf(finalNode);
+        Arrays.fill(nextBetas, 0, numStates, LogMath.getLogZero());
         // Overwrite in the right position
-        probCurrentFrame[indexFinalNode] = 0.0f;
-        for (finalNode.startIncomingEdgeIterator();
-             finalNode.hasMoreIncomingEdges();) {
-            Edge edge = finalNode.nextIncomingEdge();
-            Node node = edge.getSource();
-            int index = graph.indexOf(node);
-            if (!node.isType("STATE")) {
+        nextBetas[g.finalNode] = 0.0f;
+        for (int e = g.inStart[g.finalNode]; e < g.inStart[g.finalNode + 1]; e++) {
+            int index = g.inNode[e];
+            if (!g.isState[index]) {
                 // Certainly non-emitting, if it's not in an HMM.
-                probCurrentFrame[index] = 0.0f;
+                nextBetas[index] = 0.0f;
                 assert false;
             } else {
                 // See if it's the last state in the HMM, i.e., if
                 // it's non-emitting.
-                HMMState state = (HMMState) node.getObject();
-                if (!state.isEmitting()) {
-                    probCurrentFrame[index] = 0.0f;
+                if (!g.states[index].isEmitting()) {
+                    nextBetas[index] = 0.0f;
                 }
             }
         }
+    }
 
-        return scoreList.toArray(new TrainerScore[scoreList.size()][]);
+
+    /**
+     * Makes sure that the buffers hold the given number of frames of the current graph.
+     *
+     * @param numFrames the number of frames
+     */
+    private void ensureCapacity(int numFrames) {
+        if (alphas.length < numFrames) {
+            int capacity = Math.max(numFrames, 2 * alphas.length);
+            features = Arrays.copyOf(features, capacity);
+            alphas = Arrays.copyOf(alphas, capacity);
+            senoneScores = Arrays.copyOf(senoneScores, capacity);
+            componentScores = Arrays.copyOf(componentScores, capacity);
+        }
+        int frame = numFrames - 1;
+        if (alphas[frame] == null || alphas[frame].length < compiledGraph.numNodes) {
+            alphas[frame] = new float[compiledGraph.numNodes];
+        }
+        int numSenones = compiledGraph.senones.length;
+        if (senoneScores[frame] == null || senoneScores[frame].length < numSenones) {
+            senoneScores[frame] = new float[numSenones];
+            componentScores[frame] = new float[numSenones][];
+        }
     }
 
 
@@ -258,19 +305,27 @@ public class BaumWelchLearner implements Learner {
      * @return the TrainerScore, or null if EOF was found
      */
     public TrainerScore[] getScore() {
-        TrainerScore[] score;
-        if (scoreArray == null) {
+        if (!scoresPrepared) {
             // Do the forward pass, and create the necessary arrays
-            scoreArray = prepareScore();
+            prepareScore();
+            scoresPrepared = true;
             currentFeatureIndex = lastFeatureIndex;
         }
         currentFeatureIndex--;
         if (currentFeatureIndex >= 0) {
+            int frame = currentFeatureIndex;
+            CompiledUtteranceGraph g = compiledGraph;
+            backwardPass(frame);
             float logScore = LogMath.getLogZero();
-            score = scoreArray[currentFeatureIndex];
-            assert score.length == betas.length;
-            backwardPass(score);
-            for (int i = 0; i < betas.length; i++) {
+            TrainerScore[] score = new TrainerScore[g.numNodes];
+            for (int i = 0; i < g.numNodes; i++) {
+                int senoneId = g.senoneIds[i];
+                score[i] = new TrainerScore(features[frame],
+                        outputProbs[i],
+                        g.states[i],
+                        alphas[frame][i],
+                        betas[i],
+                        senoneId >= 0 ? componentScores[frame][senoneId] : null);
                 score[i].setGamma();
                 logScore = logMath.addAsLinear(logScore, score[i].getGamma());
             }
@@ -284,256 +339,175 @@ public class BaumWelchLearner implements Learner {
                             totalLogScore + " and " + logScore);
                 }
             }
+            // The betas of this frame are used by the previous one
+            float[] swap = nextBetas;
+            nextBetas = betas;
+            betas = swap;
+            features[frame] = null;
             return score;
         } else {
             // We need to clear this, so we start the next iteration
             // on a clean plate.
-            scoreArray = null;
+            scoresPrepared = false;
             return null;
         }
     }
 
 
     /**
-     * Computes the acoustic scores using the current Feature and a given node in the graph.
+     * Returns the output probability of a node in a frame.
      *
-     * @param index the graph index
-     * @return the overall acoustic score
+     * @param frame the frame
+     * @param node  the node
+     * @return the output log probability, or 0 for non-emitting nodes
      */
-    private float calculateScores(int index) {
-        float logScore;
-        // Find the HMM state for this node
-        SenoneHMMState state = (SenoneHMMState) graph.getNode(index).getObject();
-        if ((state != null) && (state.isEmitting())) {
-            // Compute the scores for each mixture component in this state
-            componentScores = state.calculateComponentScore(curFeature);
-            // Compute the overall score for this state
-            logScore = state.getScore(curFeature);
-            // For CI models, for now, we only try to use mixtures
-            // with one component
-            assert componentScores.length == 1;
-        } else {
-            componentScores = null;
-            logScore = 0.0f;
-        }
-        return logScore;
+    private float getOutputProbability(int frame, int node) {
+        int senoneId = compiledGraph.senoneIds[node];
+        return senoneId >= 0 ? senoneScores[frame][senoneId] : 0.0f;
     }
 
 
     /**
      * Does the forward pass, one frame at a time.
      *
-     * @param score the objects transferring info to the buffers
+     * @param frame the index of the current frame
      */
-    private void forwardPass(TrainerScore[] score) {
-        // Let's precompute the acoustic probabilities and create the
-        // score object, one for each state
-        for (int i = 0; i < graph.size(); i++) {
-            outputProbs[i] = calculateScores(i);
-            score[i] = new TrainerScore(curFeature,
-                    outputProbs[i],
-                    (HMMState) graph.getNode(i).getObject(),
-                    componentScores);
-            score[i].setAlpha(probCurrentFrame[i]);
+    private void forwardPass(int frame) {
+        CompiledUtteranceGraph g = compiledGraph;
+        features[frame] = curFeature;
+
+        // Let's precompute the acoustic probabilities, once for each
+        // senone. For CI models, for now, we only try to use mixtures
+        // with one component.
+        float[] scores = senoneScores[frame];
+        float[][] components = componentScores[frame];
+        for (int i = 0; i < g.senones.length; i++) {
+            components[i] = g.senones[i].calculateComponentScore(curFeature);
+            scores[i] = g.senones[i].getScore(curFeature);
+            assert components[i].length == 1;
         }
 
         // Now, the forward pass.
-        float[] probPreviousFrame = probCurrentFrame;
-        probCurrentFrame = new float[graph.size()];
+        float[] probPreviousFrame = frame == 0 ? initialAlphas : alphas[frame - 1];
+        float[] probCurrentFrame = alphas[frame];
+        boolean pruning = logRelativeBeamWidth > LogMath.getLogZero();
+        float bestScore = LogMath.getLogZero();
         // First, the emitting states. We have to do this because the
         // emitting states use probabilities from the previous
         // frame. The non-emitting states, however, since they don't
         // consume frames, use probabilities from the current frame
-        for (int indexNode = 0; indexNode < graph.size(); indexNode++) {
-            Node node = graph.getNode(indexNode);
-            // Treat dummy node (and initial and final nodes) the same
-            // as non-emitting
-            if (!node.isType("STATE")) {
-                continue;
-            }
-            SenoneHMMState state = (SenoneHMMState) node.getObject();
-            SenoneHMM hmm = (SenoneHMM) state.getHMM();
-            if (!state.isEmitting()) {
+        for (int indexNode = 0; indexNode < g.numNodes; indexNode++) {
+            if (!g.isEmitting[indexNode]) {
+                // Non-emitting states not computed yet count as 1.0,
+                // 0.0f in log scale
+                probCurrentFrame[indexNode] = 0.0f;
                 continue;
             }
             // Initialize the current frame probability with 0.0f, log scale
             probCurrentFrame[indexNode] = LogMath.getLogZero();
-            for (node.startIncomingEdgeIterator();
-                 node.hasMoreIncomingEdges();) {
-                // Finds out what the previous node and previous state are
-                Node previousNode = node.nextIncomingEdge().getSource();
-                int indexPreviousNode = graph.indexOf(previousNode);
-                HMMState previousState = (HMMState) previousNode.getObject();
-                float logTransitionProbability;
-                // previous state could be have an associated hmm state...
-                if (previousState != null) {
-                    // Make sure that the transition happened from a state
-                    // that either is in the same model, or was a
-                    // non-emitting state
-                    assert ((!previousState.isEmitting()) ||
-                            (previousState.getHMM() == hmm));
-                    if (!previousState.isEmitting()) {
-                        logTransitionProbability = 0.0f;
-                    } else {
-                        logTransitionProbability =
-                                hmm.getTransitionProbability(
-                                        previousState.getState(),
-                                        state.getState());
-                    }
-                } else {
-                    // Previous state is a dummy state or beginning of
-                    // utterance.
-                    logTransitionProbability = 0.0f;
+            for (int e = g.inStart[indexNode]; e < g.inStart[indexNode + 1]; e++) {
+                int indexPreviousNode = g.inNode[e];
+                // States pruned in the previous frame don't contribute
+                if (pruning && probPreviousFrame[indexPreviousNode] == LogMath.getLogZero()) {
+                    continue;
                 }
                 // Adds the alpha and transition from the previous
                 // state into the current alpha
                 probCurrentFrame[indexNode] =
                         logMath.addAsLinear(probCurrentFrame[indexNode],
                                 probPreviousFrame[indexPreviousNode] +
-                                        logTransitionProbability);
-                // System.out.println("State= " + indexNode + " curr "
-                // + probCurrentFrame[indexNode] + " prev " +
-                // probPreviousFrame[indexNode] + " trans " +
-                // logTransitionProbability);
+                                        g.inLogProbability[e]);
+            }
+            // A state without any remaining predecessor stays pruned
+            if (pruning && probCurrentFrame[indexNode] == LogMath.getLogZero()) {
+                continue;
             }
             // Finally, multiply by this state's output probability for the
             // current Feature (add in log scale)
-            probCurrentFrame[indexNode] += outputProbs[indexNode];
-            // System.out.println("State= " + indexNode + " alpha= " +
-            // probCurrentFrame[indexNode]);
-            score[indexNode].setAlpha(probCurrentFrame[indexNode]);
+            probCurrentFrame[indexNode] += getOutputProbability(frame, indexNode);
+            bestScore = Math.max(bestScore, probCurrentFrame[indexNode]);
         }
 
-        // Finally, the non-emitting states
-        for (int indexNode = 0; indexNode < graph.size(); indexNode++) {
-            Node node = graph.getNode(indexNode);
-            HMMState state = null;
-            SenoneHMM hmm = null;
-            if (node.isType("STATE")) {
-                state = (HMMState) node.getObject();
-                hmm = (SenoneHMM) state.getHMM();
-                if (state.isEmitting()) {
-                    continue;
+        // Prune the emitting states before the non-emitting states
+        // collect their alphas, so that no pruned path goes on
+        if (pruning) {
+            float threshold = bestScore + logRelativeBeamWidth;
+            for (int indexNode = 0; indexNode < g.numNodes; indexNode++) {
+                if (g.isEmitting[indexNode] && probCurrentFrame[indexNode] < threshold) {
+                    probCurrentFrame[indexNode] = LogMath.getLogZero();
                 }
-            } else if (graph.isInitialNode(node)) {
-                score[indexNode].setAlpha(LogMath.getLogZero());
+            }
+        }
+
+        // Finally, the non-emitting states
+        for (int indexNode = 0; indexNode < g.numNodes; indexNode++) {
+            if (g.isEmitting[indexNode]) {
+                continue;
+            }
+            if (!g.isState[indexNode] && indexNode == g.initialNode) {
                 probCurrentFrame[indexNode] = LogMath.getLogZero();
                 continue;
             }
             // Initialize the current frame probability 0.0f, log scale
             probCurrentFrame[indexNode] = LogMath.getLogZero();
-            for (node.startIncomingEdgeIterator();
-                 node.hasMoreIncomingEdges();) {
-                float logTransitionProbability;
-                // Finds out what the previous node and previous state are
-                Node previousNode = node.nextIncomingEdge().getSource();
-                int indexPreviousNode = graph.indexOf(previousNode);
-                if (previousNode.isType("STATE")) {
-                    HMMState previousState =
-                            (HMMState) previousNode.getObject();
-                    // Make sure that the transition happened from a
-                    // state that either is in the same model, or was
-                    // a non-emitting state
-                    assert ((!previousState.isEmitting()) ||
-                            (previousState.getHMM() == hmm));
-                    if (!previousState.isEmitting()) {
-                        logTransitionProbability = 0.0f;
-                    } else {
-                        // previousState == state
-                        logTransitionProbability =
-                                hmm.getTransitionProbability(
-                                        previousState.getState(),
-                                        state.getState());
-                    }
-                } else {
-                    logTransitionProbability = 0.0f;
-                }
-                // Adds the alpha and transition from the previous
-                // state into the current alpha
+            for (int e = g.inStart[indexNode]; e < g.inStart[indexNode + 1]; e++) {
                 probCurrentFrame[indexNode] =
                         logMath.addAsLinear(probCurrentFrame[indexNode],
-                                probCurrentFrame[indexPreviousNode] +
-                                        logTransitionProbability);
-                // System.out.println("State= " + indexNode + " curr "
-                // + probCurrentFrame[indexNode] + " prev " +
-                // probPreviousFrame[indexNode] + " trans " +
-                // logTransitionProbability);
+                                probCurrentFrame[g.inNode[e]] +
+                                        g.inLogProbability[e]);
             }
-            // System.out.println("State= " + indexNode + " alpha= " +
-            // probCurrentFrame[indexNode]);
-
             // Non-emitting states have the equivalent of output
             // probability of 1.0. In log scale, this is the same as
             // adding 0.0f, or doing nothing.
-            score[indexNode].setAlpha(probCurrentFrame[indexNode]);
         }
     }
 
 
     /**
-     * Does the backward pass, one frame at a time.
+     * Does the backward pass, one frame at a time. The betas of the following frame are in <code>nextBetas</code>,
+     * those of the frame are computed into <code>betas</code>.
      *
-     * @param score the feature to be used
+     * @param frame the index of the current frame
      */
-    private void backwardPass(TrainerScore[] score) {
-        // Now, the backward pass.
-        for (int i = 0; i < graph.size(); i++) {
-            outputProbs[i] = score[i].getScore();
-            score[i].setBeta(probCurrentFrame[i]);
+    private void backwardPass(int frame) {
+        CompiledUtteranceGraph g = compiledGraph;
+        for (int i = 0; i < g.numNodes; i++) {
+            outputProbs[i] = getOutputProbability(frame, i);
         }
-        float[] probNextFrame = probCurrentFrame;
-        probCurrentFrame = new float[graph.size()];
+        float[] probNextFrame = nextBetas;
+        float[] probCurrentFrame = betas;
+        float[] probAlpha = alphas[frame];
+        boolean pruning = logRelativeBeamWidth > LogMath.getLogZero();
 
         // First, the emitting states
-        for (int indexNode = 0; indexNode < graph.size(); indexNode++) {
-            Node node = graph.getNode(indexNode);
-            // Treat dummy node (and initial and final nodes) the same
-            // as non-emitting
-            if (!node.isType("STATE")) {
-                continue;
-            }
-            HMMState state = (HMMState) node.getObject();
-            SenoneHMM hmm = (SenoneHMM) state.getHMM();
-            if (!state.isEmitting()) {
+        for (int indexNode = 0; indexNode < g.numNodes; indexNode++) {
+            if (!g.isEmitting[indexNode]) {
+                // Non-emitting states not computed yet count as 1.0,
+                // 0.0f in log scale
+                probCurrentFrame[indexNode] = 0.0f;
                 continue;
             }
             // Initialize the current frame probability with log
             // probability of log(0f)
             probCurrentFrame[indexNode] = LogMath.getLogZero();
-            for (node.startOutgoingEdgeIterator();
-                 node.hasMoreOutgoingEdges();) {
-                float logTransitionProbability;
-                // Finds out what the next node and next state are
-                Node nextNode = node.nextOutgoingEdge().getDestination();
-                int indexNextNode = graph.indexOf(nextNode);
-                HMMState nextState = (HMMState) nextNode.getObject();
-                if (nextState != null) {
-                    // Make sure that the transition happened to a
-                    // non-emitting state, or to the same model
-                    assert ((!nextState.isEmitting()) ||
-                            (nextState.getHMM() == hmm));
-                    if (nextState.getHMM() != hmm) {
-                        logTransitionProbability = 0.0f;
-                    } else {
-                        logTransitionProbability =
-                                hmm.getTransitionProbability(state.getState(),
-                                        nextState.getState());
-                    }
-                } else {
-                    // Next state is a dummy state or beginning of
-                    // utterance.
-                    logTransitionProbability = 0.0f;
+            // The states pruned in the forward pass are off the
+            // trellis, their betas stay at log(0f)
+            if (pruning && probAlpha[indexNode] == LogMath.getLogZero()) {
+                continue;
+            }
+            for (int e = g.outStart[indexNode]; e < g.outStart[indexNode + 1]; e++) {
+                int indexNextNode = g.outNode[e];
+                if (pruning && probNextFrame[indexNextNode] == LogMath.getLogZero()) {
+                    continue;
                 }
                 // Adds the beta, the output prob, and the transition
                 // from the next state into the current beta
                 probCurrentFrame[indexNode] =
                         logMath.addAsLinear(probCurrentFrame[indexNode],
                                 probNextFrame[indexNextNode] +
-                                        logTransitionProbability +
+                                        g.outLogProbability[e] +
                                         outputProbs[indexNextNode]);
             }
-            // System.out.println("State= " + indexNode + " beta= " + probCurrentFrame[indexNode]);
-            score[indexNode].setBeta(probCurrentFrame[indexNode]);
         }
 
         // Now, the non-emitting states
@@ -541,56 +515,24 @@ public class BaumWelchLearner implements Learner {
         // We have to go backwards because for non-emitting states we
         // use the current frame probability, and we need to refer to
         // states that are downstream in the graph
-        for (int indexNode = graph.size() - 1; indexNode >= 0; indexNode--) {
-            Node node = graph.getNode(indexNode);
-            HMMState state = null;
-            if (node.isType("STATE")) {
-                state = (HMMState) node.getObject();
-                if (state.isEmitting()) {
-                    continue;
-                }
-            } else if (graph.isFinalNode(node)) {
-                score[indexNode].setBeta(LogMath.getLogZero());
+        for (int indexNode = g.numNodes - 1; indexNode >= 0; indexNode--) {
+            if (g.isEmitting[indexNode]) {
+                continue;
+            }
+            if (!g.isState[indexNode] && indexNode == g.finalNode) {
                 probCurrentFrame[indexNode] = LogMath.getLogZero();
                 continue;
             }
             // Initialize the current frame probability with log(0f)
             probCurrentFrame[indexNode] = LogMath.getLogZero();
-            for (node.startOutgoingEdgeIterator();
-                 node.hasMoreOutgoingEdges();) {
-                float logTransitionProbability;
-                // Finds out what the next node and next state are
-                Node nextNode = node.nextOutgoingEdge().getDestination();
-                int indexNextNode = graph.indexOf(nextNode);
-                if (nextNode.isType("STATE")) {
-                    HMMState nextState = (HMMState) nextNode.getObject();
-                    // Make sure that the transition happened to a
-                    // state that either is the same, or is emitting
-                    assert ((nextState.isEmitting()) || (nextState == state));
-                    // In any case, the transition (at this point) is
-                    // assumed to be 1.0f, or 0.0f in log scale.
-                    logTransitionProbability = 0.0f;
-                    /*
-                 if (!nextState.isEmitting()) {
-                 logTransitionProbability = 0.0f;
-                 } else {
-                 logTransitionProbability =
-                     hmm.getTransitionProbability(state.getState(),
-                                  nextState.getState());
-                 }
-                 */
-                } else {
-                    logTransitionProbability = 0.0f;
-                }
-                // Adds the beta, the transition, and the output prob
-                // from the next state into the current beta
+            for (int e = g.outStart[indexNode]; e < g.outStart[indexNode + 1]; e++) {
+                // The transition (at this point) is assumed to be
+                // 1.0f, or 0.0f in log scale.
                 probCurrentFrame[indexNode] =
                         logMath.addAsLinear(probCurrentFrame[indexNode],
-                                probCurrentFrame[indexNextNode] +
-                                        logTransitionProbability);
+                                probCurrentFrame[g.outNode[e]] +
+                                        g.outLogProbability[e]);
             }
-            // System.out.println("State= " + indexNode + " beta= " + probCurrentFrame[indexNode]);
-            score[indexNode].setBeta(probCurrentFrame[indexNode]);
         }
     }
 
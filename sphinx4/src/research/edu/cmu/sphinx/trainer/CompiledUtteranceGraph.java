@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.trainer;
+
+import edu.cmu.sphinx.linguist.acoustic.HMMState;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Senone;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneHMM;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneHMMState;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An utterance graph compiled into arrays for the forward-backward algorithm. The nodes keep their indices in the
+ * utterance graph. The incoming and the outgoing transitions of the nodes are stored in compressed sparse rows, in the
+ * order of the edges of the nodes, with their log transition probabilities. The emitting nodes refer to the distinct
+ * senones of the graph, so that each senone is scored once per frame.
+ */
+public class CompiledUtteranceGraph {
+
+    /** The number of nodes. */
+    final int numNodes;
+
+    /** The index of the initial node. */
+    final int initialNode;
+
+    /** The index of the final node. */
+    final int finalNode;
+
+    /** Whether a node is a state node. */
+    final boolean[] isState;
+
+    /** Whether a node is an emitting state node. */
+    final boolean[] isEmitting;
+
+    /** The HMM state of a node, or null. */
+    final HMMState[] states;
+
+    /** The index of the senone of an emitting node in {@link #senones}, or -1. */
+    final int[] senoneIds;
+
+    /** The distinct senones of the emitting nodes. */
+    final Senone[] senones;
+
+    /** The incoming transitions of node <code>i</code> are <code>inStart[i]</code> to <code>inStart[i + 1]</code>. */
+    final int[] inStart;
+    final int[] inNode;
+    final float[] inLogProbability;
+
+    /** The outgoing transitions of node <code>i</code> are <code>outStart[i]</code> to <code>outStart[i + 1]</code>. */
+    final int[] outStart;
+    final int[] outNode;
+    final float[] outLogProbability;
+
+
+    /**
+     * Compiles an utterance graph.
+     *
+     * @param graph the utterance graph
+     */
+    public CompiledUtteranceGraph(UtteranceGraph graph) {
+        numNodes = graph.size();
+        Map<Node, Integer> indices = new IdentityHashMap<Node, Integer>();
+        for (int i = 0; i < numNodes; i++) {
+            indices.put(graph.getNode(i), i);
+        }
+        initialNode = graph.indexOf(graph.getInitialNode());
+        finalNode = graph.indexOf(graph.getFinalNode());
+
+        isState = new boolean[numNodes];
+        isEmitting = new boolean[numNodes];
+        states = new HMMState[numNodes];
+        senoneIds = new int[numNodes];
+        Map<Senone, Integer> senoneIndices = new HashMap<Senone, Integer>();
+        List<Senone> senoneList = new ArrayList<Senone>();
+        int numInEdges = 0;
+        int numOutEdges = 0;
+        for (int i = 0; i < numNodes; i++) {
+            Node node = graph.getNode(i);
+            states[i] = (HMMState) node.getObject();
+            isState[i] = node.isType("STATE");
+            isEmitting[i] = isState[i] && states[i].isEmitting();
+            senoneIds[i] = -1;
+            if (states[i] != null && states[i].isEmitting()) {
+                Senone senone = ((SenoneHMMState) states[i]).getSenone();
+                Integer id = senoneIndices.get(senone);
+                if (id == null) {
+                    id = senoneList.size();
+                    senoneIndices.put(senone, id);
+                    senoneList.add(senone);
+                }
+                senoneIds[i] = id;
+            }
+            numInEdges += node.incomingEdgesSize();
+            numOutEdges += node.outgoingEdgesSize();
+        }
+        senones = senoneList.toArray(new Senone[senoneList.size()]);
+
+        inStart = new int[numNodes + 1];
+        inNode = new int[numInEdges];
+        inLogProbability = new float[numInEdges];
+        outStart = new int[numNodes + 1];
+        outNode = new int[numOutEdges];
+        outLogProbability = new float[numOutEdges];
+        int in = 0;
+        int out = 0;
+        for (int i = 0; i < numNodes; i++) {
+            Node node = graph.getNode(i);
+            inStart[i] = in;
+            for (node.startIncomingEdgeIterator(); node.hasMoreIncomingEdges();) {
+                int previous = indices.get(node.nextIncomingEdge().getSource());
+                inNode[in] = previous;
+                inLogProbability[in] = forwardTransition(previous, i);
+                in++;
+            }
+            outStart[i] = out;
+            for (node.startOutgoingEdgeIterator(); node.hasMoreOutgoingEdges();) {
+                int next = indices.get(node.nextOutgoingEdge().getDestination());
+                outNode[out] = next;
+                outLogProbability[out] = backwardTransition(i, next);
+                out++;
+            }
+        }
+        inStart[numNodes] = in;
+        outStart[numNodes] = out;
+    }
+
+
+    /**
+     * Returns the log probability of a transition as the forward pass uses it: the transition probability of the HMM
+     * from an emitting state to a state of the same HMM, and 1 otherwise.
+     */
+    private float forwardTransition(int previous, int node) {
+        HMMState previousState = isState[previous] ? states[previous] : null;
+        if (previousState == null || !previousState.isEmitting() || states[node] == null) {
+            return 0.0f;
+        }
+        SenoneHMM hmm = (SenoneHMM) states[node].getHMM();
+        assert previousState.getHMM() == hmm;
+        return hmm.getTransitionProbability(previousState.getState(), states[node].getState());
+    }
+
+
+    /**
+     * Returns the log probability of a transition as the backward pass uses it: the transition probability of the HMM
+     * from an emitting state to a state of the same HMM, and 1 otherwise.
+     */
+    private float backwardTransition(int node, int next) {
+        if (!isEmitting[node] || states[next] == null) {
+            return 0.0f;
+        }
+        SenoneHMM hmm = (SenoneHMM) states[node].getHMM();
+        if (states[next].getHMM() != hmm) {
+            return 0.0f;
+        }
+        return hmm.getTransitionProbability(states[node].getState(), states[next].getState());
+    }
+
+
+    /**
+     * Returns the number of nodes of the graph.
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return numNodes;
+    }
+
+
+    /**
+     * Returns the number of distinct senones of the emitting nodes.
+     *
+     * @return the number of senones
+     */
+    public int getNumSenones() {
+        return senones.length;
+    }
+}
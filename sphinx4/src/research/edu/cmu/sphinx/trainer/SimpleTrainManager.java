@@ -14,17 +14,29 @@ package edu.cmu.sphinx.trainer;
 
 import edu.cmu.sphinx.linguist.acoustic.AcousticModel;
 import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.trainer.Accumulator;
 import edu.cmu.sphinx.linguist.acoustic.tiedstate.trainer.TrainerAcousticModel;
 import edu.cmu.sphinx.linguist.acoustic.tiedstate.trainer.TrainerScore;
+import edu.cmu.sphinx.util.CustomThreadFactory;
 import edu.cmu.sphinx.util.Utilities;
 import edu.cmu.sphinx.util.props.PropertyException;
 import edu.cmu.sphinx.util.props.PropertySheet;
 import edu.cmu.sphinx.util.props.S4Component;
 import edu.cmu.sphinx.util.props.S4Boolean;
 import edu.cmu.sphinx.util.props.S4ComponentList;
+import edu.cmu.sphinx.util.props.S4Integer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
 
 /** This is a dummy implementation of a TrainManager. */
@@ -40,6 +52,23 @@ public class SimpleTrainManager implements TrainManager {
     public static final String LEARNER = "learner";
     private Learner learner;
     
+    /**
+     * The learners of the threads of the data-parallel training, one thread per learner. The learners must be
+     * configured alike, each with its own front end. If the list is empty, the utterances are processed serially by
+     * the learner.
+     */
+    @S4ComponentList(type = Learner.class)
+    public static final String LEARNERS = "learners";
+    private List<? extends Learner> learners;
+
+    /**
+     * The number of utterances accumulated together in the data-parallel training. The statistics of the blocks of
+     * utterances are added in the order of the utterances, so they do not depend on the number of threads.
+     */
+    @S4Integer(defaultValue = 8)
+    public static final String UTTERANCES_PER_BLOCK = "utterancesPerBlock";
+    private int utterancesPerBlock;
+
     @S4Component(type = Learner.class)
     public static final String INIT_LEARNER = "initLearner";
     private Learner initLearner;
@@ -63,9 +92,46 @@ public class SimpleTrainManager implements TrainManager {
     private float minimumImprovement;
 
 
+    /**
+     * Creates a train manager.
+     *
+     * @param controlFile        the control file listing the utterances
+     * @param learner            the learner of the serial training
+     * @param learners           the learners of the data-parallel training, one per thread, or an empty list
+     * @param utterancesPerBlock the number of utterances accumulated together in the data-parallel training
+     * @param initLearner        the learner initializing the models
+     * @param unitManager        the unit manager
+     * @param acousticModels     the models to train
+     * @param maxIteration       the maximum number of iterations
+     * @param minimumImprovement the minimum relative improvement of the log likelihood
+     * @param dumpMemoryInfo     if true, memory information is displayed while training
+     */
+    public SimpleTrainManager(ControlFile controlFile, Learner learner, List<? extends Learner> learners,
+                              int utterancesPerBlock, Learner initLearner, UnitManager unitManager,
+                              List<? extends TrainerAcousticModel> acousticModels, int maxIteration,
+                              float minimumImprovement, boolean dumpMemoryInfo) {
+        this.controlFile = controlFile;
+        this.learner = learner;
+        this.learners = learners;
+        this.utterancesPerBlock = utterancesPerBlock;
+        this.initLearner = initLearner;
+        this.unitManager = unitManager;
+        this.acousticModels = acousticModels;
+        this.maxIteration = maxIteration;
+        this.minimumImprovement = minimumImprovement;
+        this.dumpMemoryInfo = dumpMemoryInfo;
+    }
+
+
+    public SimpleTrainManager() {
+    }
+
+
     public void newProperties(PropertySheet ps) throws PropertyException {
         dumpMemoryInfo = ps.getBoolean(DUMP_MEMORY_INFO);
         learner = (Learner) ps.getComponent(LEARNER);
+        learners = ps.getComponentList(LEARNERS, Learner.class);
+        utterancesPerBlock = ps.getInt(UTTERANCES_PER_BLOCK);
         controlFile = (ControlFile) ps.getComponent(CONTROL_FILE);
         initLearner = (Learner) ps.getComponent(INIT_LEARNER);
         minimumImprovement = ps.getFloat(PROP_MINIMUM_IMPROVEMENT);
@@ -204,25 +270,28 @@ public class SimpleTrainManager implements TrainManager {
                  iteration++) {
                 System.out.println("Iteration: " + iteration);
                 model.resetBuffers();
-                for (controlFile.startUtteranceIterator();
-                     controlFile.hasMoreUtterances();) {
-                    Utterance utterance = controlFile.nextUtterance();
-                    uttGraph =
-                        new UtteranceHMMGraph(context, utterance, model, unitManager);
-                    learner.setUtterance(utterance);
-                    learner.setGraph(uttGraph);
-                    nextScore = null;
-                    while ((score = learner.getScore()) != null) {
-                        for (int i = 0; i < score.length; i++) {
-                            if (i > 0) {
-                                model.accumulate(i, score, nextScore);
-                            } else {
-                                model.accumulate(i, score);
+                if (!learners.isEmpty()) {
+                    accumulateInParallel(context, model);
+                } else {
+                    for (controlFile.startUtteranceIterator();
+                         controlFile.hasMoreUtterances();) {
+                        Utterance utterance = controlFile.nextUtterance();
+                        uttGraph = createGraph(context, utterance, model);
+                        learner.setUtterance(utterance);
+                        learner.setGraph(uttGraph);
+                        nextScore = null;
+                        while ((score = learner.getScore()) != null) {
+                            for (int i = 0; i < score.length; i++) {
+                                if (i > 0) {
+                                    model.accumulate(i, score, nextScore);
+                                } else {
+                                    model.accumulate(i, score);
+                                }
                             }
+                            nextScore = score;
                         }
-                        nextScore = score;
+                        model.updateLogLikelihood();
                     }
-                    model.updateLogLikelihood();
                 }
                 logLikelihood = model.normalize();
                 System.out.println("Loglikelihood: " + logLikelihood);
@@ -245,6 +314,109 @@ public class SimpleTrainManager implements TrainManager {
     }
 
 
+    /**
+     * Accumulates the statistics of all utterances on one thread per learner. The utterances are read and their
+     * graphs are built on the calling thread, in blocks of {@link #UTTERANCES_PER_BLOCK} utterances. Each block is
+     * accumulated by a learner into its own accumulator, and the accumulators are merged into the model in the order of
+     * the blocks.
+     *
+     * @param context the context of this train manager
+     * @param model   the model to train
+     * @throws IOException if an utterance can't be read
+     */
+    void accumulateInParallel(String context, TrainerAcousticModel model) throws IOException {
+        final BlockingQueue<Learner> idleLearners = new LinkedBlockingQueue<Learner>(learners);
+        ExecutorService executor = Executors.newFixedThreadPool(learners.size(),
+                new CustomThreadFactory("Trainer", true, Thread.NORM_PRIORITY));
+        LinkedList<Future<Accumulator>> blocks = new LinkedList<Future<Accumulator>>();
+        try {
+            controlFile.startUtteranceIterator();
+            while (controlFile.hasMoreUtterances()) {
+                final List<Utterance> utterances = new ArrayList<Utterance>();
+                final List<UtteranceGraph> graphs = new ArrayList<UtteranceGraph>();
+                while (utterances.size() < utterancesPerBlock && controlFile.hasMoreUtterances()) {
+                    Utterance utterance = controlFile.nextUtterance();
+                    utterances.add(utterance);
+                    graphs.add(createGraph(context, utterance, model));
+                }
+                final Accumulator accumulator = model.createAccumulator();
+                blocks.add(executor.submit(new Callable<Accumulator>() {
+                    public Accumulator call() throws IOException, InterruptedException {
+                        Learner blockLearner = idleLearners.take();
+                        try {
+                            for (int i = 0; i < utterances.size(); i++) {
+                                accumulate(blockLearner, utterances.get(i), graphs.get(i), accumulator);
+                            }
+                        } finally {
+                            idleLearners.put(blockLearner);
+                        }
+                        return accumulator;
+                    }
+                }));
+                // bound the number of pending blocks, which hold their graphs and statistics
+                while (blocks.size() > 2 * learners.size()) {
+                    model.merge(blocks.removeFirst().get());
+                }
+            }
+            while (!blocks.isEmpty()) {
+                model.merge(blocks.removeFirst().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while training", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException("Training failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    /**
+     * Creates the graph of the HMMs of an utterance, to be trained by the learners.
+     *
+     * @param context   the context of this train manager
+     * @param utterance the utterance
+     * @param model     the model to train
+     * @return the graph of the utterance
+     */
+    protected UtteranceGraph createGraph(String context, Utterance utterance, TrainerAcousticModel model) {
+        return new UtteranceHMMGraph(context, utterance, model, unitManager);
+    }
+
+
+    /**
+     * Accumulates the statistics of an utterance.
+     *
+     * @param learner     the learner computing the scores
+     * @param utterance   the utterance
+     * @param uttGraph    the graph of the utterance
+     * @param accumulator the accumulator of the statistics
+     * @throws IOException if the utterance can't be read
+     */
+    private static void accumulate(Learner learner, Utterance utterance, UtteranceGraph uttGraph,
+                                   Accumulator accumulator) throws IOException {
+        TrainerScore[] score;
+        TrainerScore[] nextScore = null;
+        learner.setUtterance(utterance);
+        learner.setGraph(uttGraph);
+        while ((score = learner.getScore()) != null) {
+            for (int i = 0; i < score.length; i++) {
+                if (i > 0) {
+                    accumulator.accumulate(i, score, nextScore);
+                } else {
+                    accumulator.accumulate(i, score);
+                }
+            }
+            nextScore = score;
+        }
+        accumulator.updateLogLikelihood();
+    }
+
+
     /**
      * Conditional dumps out memory information
      *
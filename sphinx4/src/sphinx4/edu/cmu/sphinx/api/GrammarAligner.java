@@ -28,18 +28,81 @@ import edu.cmu.sphinx.util.props.PropertyException;
 
 public class GrammarAligner implements Aligner {
 
+	/** The components of aligner.xml an aligner shares with the aligners created from it, by their names */
+	private static final String[] SHARED_COMPONENTS = {"logMath", "unitManager", "wsjLoader", "wsj", "dictionary"};
+
+	private final URL acousticModel;
+	private final URL dictionary;
+	private final int numScoringThreads;
+
+	private ConfigurationManager cm;
 	private Recognizer recognizer;
 	private AlignerGrammar grammar;
 	private AudioFileDataSource dataSource;
 
 	public GrammarAligner(URL acousticModel, URL dictionary, URL g2p) throws PropertyException, MalformedURLException {
+		this(acousticModel, dictionary, g2p, 0);
+	}
+
+	/**
+	 * Creates an aligner
+	 *
+	 * @param acousticModel the acoustic model
+	 * @param dictionary the dictionary
+	 * @param g2p the g2p model, unused for now
+	 * @param numScoringThreads the number of threads scoring the states, 1 to score them in the calling thread or 0
+	 *            for one thread per processor
+	 */
+	public GrammarAligner(URL acousticModel, URL dictionary, URL g2p, int numScoringThreads)
+			throws PropertyException, MalformedURLException {
+		this.acousticModel = acousticModel;
+		this.dictionary = dictionary;
+		this.numScoringThreads = numScoringThreads;
+		cm = createConfiguration();
+		allocate();
+	}
+
+	/**
+	 * Creates an aligner which shares the acoustic model and the dictionary of another aligner. The aligners have
+	 * their own grammar, linguist, search and front end, so that each of them can align in its own thread.
+	 *
+	 * @param aligner the aligner to share the acoustic model and the dictionary with
+	 */
+	public GrammarAligner(GrammarAligner aligner) throws PropertyException, MalformedURLException {
+		acousticModel = aligner.acousticModel;
+		dictionary = aligner.dictionary;
+		numScoringThreads = aligner.numScoringThreads;
+		cm = aligner.createSharedConfiguration();
+		allocate();
+	}
+
+	/**
+	 * Creates a configuration which shares the acoustic model and the dictionary of this aligner
+	 */
+	ConfigurationManager createSharedConfiguration() throws PropertyException, MalformedURLException {
+		ConfigurationManager shared = createConfiguration();
+		for (String name : SHARED_COMPONENTS) {
+			shared.removeConfigurable(name);
+			shared.addConfigurable(cm.lookup(name), name);
+		}
+		return shared;
+	}
+
+	private ConfigurationManager createConfiguration() throws PropertyException, MalformedURLException {
 		ConfigurationManager cm = new ConfigurationManager(ConfigurationManagerUtils.resourceToURL("resource:/edu/cmu/sphinx/config/aligner.xml"));
 
 		cm.setGlobalProperty("acousticModel", acousticModel.toString());
 		cm.setGlobalProperty("dictionary", dictionary.toString());
 		cm.setGlobalProperty("filler", acousticModel.toString() + "/noisedict");
 		cm.setGlobalProperty("g2p", "");
-		
+		if (numScoringThreads > 0) {
+			ConfigurationManagerUtils.setProperty(cm, "threadedScorer", "numThreads", String.valueOf(numScoringThreads));
+			ConfigurationManagerUtils.setProperty(cm, "threadedScorer", "isCpuRelative", "false");
+		}
+		return cm;
+	}
+
+	private void allocate() {
 		recognizer = (Recognizer)cm.lookup("recognizer");
 		grammar = (AlignerGrammar)cm.lookup("alignerGrammar");
 		dataSource = (AudioFileDataSource)cm.lookup("audioFileDataSource");
@@ -48,9 +111,20 @@ public class GrammarAligner implements Aligner {
 
 	@Override
 	public ArrayList<WordResult> align(AudioInputStream stream, String text) {
+		return alignResult(stream, text).getWords();
+	}
+
+	/**
+	 * Aligns audio to a text and returns the recognition result, whose best token path holds the word, unit and
+	 * state timings
+	 *
+	 * @param stream the audio
+	 * @param text the transcription of the audio
+	 * @return the result of the alignment
+	 */
+	public Result alignResult(AudioInputStream stream, String text) {
 		dataSource.setInputStream(stream, "input");
 		grammar.setText(text);
-		Result result = recognizer.recognize();
-		return result.getWords();
+		return recognizer.recognize();
 	}
 }
@@ -0,0 +1,510 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import edu.cmu.sphinx.decoder.scorer.AcousticScorer;
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.frontend.util.AudioFileDataSource;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.linguist.WordSearchState;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.linguist.language.ngram.DynamicTrigramModel;
+import edu.cmu.sphinx.recognizer.Recognizer;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.result.SimpleWordResult;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.CustomThreadFactory;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+import edu.cmu.sphinx.util.props.PropertyException;
+
+/**
+ * Aligns a long recording, like an audiobook or a lecture, to its transcription without building a grammar of the
+ * whole transcription.
+ * <p/>
+ * The recording is first recognized with a trigram model estimated from the transcription. The runs of three
+ * recognized words which match a sequence of words found only once in the transcription become anchors, whose times
+ * are trusted. The text between two anchors is then aligned to the audio between them, recursively, until the
+ * regions are small enough to be force aligned with a {@link GrammarAligner}. The regions are independent, so they
+ * are aligned in parallel by aligners sharing the acoustic model and the dictionary.
+ * <p/>
+ * The words which could not be aligned are left out of the result.
+ */
+public class LongAudioAligner {
+
+	/** The default number of words of the regions which are force aligned */
+	public static final int DEFAULT_WINDOW_WORDS = 30;
+
+	/** The number of consecutive words which have to match to make an anchor */
+	private static final int ANCHOR_WORDS = 3;
+
+	/** The duration of a feature frame of the aligner front end */
+	private static final int MILLISECONDS_PER_FRAME = 10;
+
+	private final Logger logger = Logger.getLogger(getClass().getName());
+
+	// the aligner the others share their models with
+	private final GrammarAligner template;
+	// the idle aligners
+	private final BlockingQueue<GrammarAligner> aligners;
+	private final int numThreads;
+	private final int windowWords;
+
+	public LongAudioAligner(URL acousticModel, URL dictionary, URL g2p, int numThreads)
+			throws PropertyException, IOException {
+		this(acousticModel, dictionary, g2p, numThreads, DEFAULT_WINDOW_WORDS);
+	}
+
+	/**
+	 * Creates a long audio aligner
+	 *
+	 * @param acousticModel the acoustic model
+	 * @param dictionary the dictionary
+	 * @param g2p the g2p model, unused for now
+	 * @param numThreads the number of regions aligned in parallel, or zero for one per available processor
+	 * @param windowWords the maximum number of words of the regions which are force aligned
+	 */
+	public LongAudioAligner(URL acousticModel, URL dictionary, URL g2p, int numThreads, int windowWords)
+			throws PropertyException, IOException {
+		if (numThreads <= 0)
+			numThreads = Runtime.getRuntime().availableProcessors();
+		this.numThreads = numThreads;
+		this.windowWords = windowWords;
+		// the regions are the only source of parallelism, each aligner scores its own states
+		template = new GrammarAligner(acousticModel, dictionary, g2p, 1);
+		aligners = new ArrayBlockingQueue<GrammarAligner>(numThreads);
+		aligners.add(template);
+		for (int i = 1; i < numThreads; i++)
+			aligners.add(new GrammarAligner(template));
+	}
+
+	/**
+	 * Aligns a recording to its transcription
+	 *
+	 * @param audio the recording, 16 kHz, 16 bit, mono
+	 * @param text the transcription
+	 * @return the aligned words, in the order of the transcription, with their times in milliseconds
+	 */
+	public ArrayList<WordResult> align(File audio, String text) throws IOException, UnsupportedAudioFileException {
+		String trimmed = text.trim().toLowerCase();
+		String[] words = trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+		WordResult[] results = new WordResult[words.length];
+
+		AudioInputStream stream = AudioSystem.getAudioInputStream(audio);
+		AudioFormat format = stream.getFormat();
+		long duration = (long) (stream.getFrameLength() * 1000 / format.getFrameRate());
+		stream.close();
+
+		// the anchor recognizers the workers are done with, a worker creates one when none is idle
+		Queue<AnchorRecognizer> recognizers = new ConcurrentLinkedQueue<AnchorRecognizer>();
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+				new CustomThreadFactory(getClass().getSimpleName(), true, Thread.NORM_PRIORITY));
+		CompletionService<List<Region>> regions = new ExecutorCompletionService<List<Region>>(executor);
+		try {
+			int pending = 0;
+			if (words.length > 0) {
+				regions.submit(new RegionAligner(audio, words, results, recognizers,
+						new Region(0, words.length, 0, duration)));
+				pending++;
+			}
+			while (pending > 0) {
+				List<Region> subregions = regions.take().get();
+				pending--;
+				for (Region region : subregions) {
+					regions.submit(new RegionAligner(audio, words, results, recognizers, region));
+					pending++;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while aligning", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Unable to align " + audio, e.getCause());
+		} finally {
+			executor.shutdownNow();
+			for (AnchorRecognizer recognizer : recognizers)
+				recognizer.deallocate();
+		}
+
+		ArrayList<WordResult> aligned = new ArrayList<WordResult>(words.length);
+		for (WordResult result : results) {
+			if (result != null)
+				aligned.add(result);
+		}
+		logger.info("Aligned " + aligned.size() + " words of " + words.length + ", "
+				+ (words.length - aligned.size()) + " unaligned");
+		return aligned;
+	}
+
+	/** A range of the transcription and the range of the recording it is spoken in, in milliseconds */
+	public static final class Region {
+		private final int start;
+		private final int end;
+		private final long startTime;
+		private final long endTime;
+
+		public Region(int start, int end, long startTime, long endTime) {
+			this.start = start;
+			this.end = end;
+			this.startTime = startTime;
+			this.endTime = endTime;
+		}
+
+		/** @return the index of the first word of the region */
+		public int getStart() {
+			return start;
+		}
+
+		/** @return the index after the last word of the region */
+		public int getEnd() {
+			return end;
+		}
+
+		/** @return the start of the audio of the region */
+		public long getStartTime() {
+			return startTime;
+		}
+
+		/** @return the end of the audio of the region */
+		public long getEndTime() {
+			return endTime;
+		}
+
+		int size() {
+			return end - start;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + start + ", " + end + ") " + startTime + "-" + endTime;
+		}
+	}
+
+	/**
+	 * A recognizer with a language model over the vocabulary of a transcription. It has its own linguist, search and
+	 * front end, but shares the acoustic model and the dictionary with the aligners. The lex tree over the vocabulary
+	 * is built once, each region only estimates the language model again from its words. The tree does not depend on
+	 * the probabilities, since the linguist does not smear the unigram probabilities through it.
+	 */
+	private final class AnchorRecognizer {
+		private final DynamicTrigramModel languageModel;
+		private final Recognizer recognizer;
+		private final AudioFileDataSource dataSource;
+		private final AcousticScorer scorer;
+
+		AnchorRecognizer(String[] words) throws PropertyException, MalformedURLException {
+			ConfigurationManager cm = template.createSharedConfiguration();
+			languageModel = (DynamicTrigramModel) cm.lookup("anchorLanguageModel");
+			languageModel.setText(Arrays.asList(words));
+			recognizer = (Recognizer) cm.lookup("anchorRecognizer");
+			dataSource = (AudioFileDataSource) cm.lookup("audioFileDataSource");
+			scorer = (AcousticScorer) cm.lookup("threadedScorer");
+			recognizer.allocate();
+		}
+
+		Result recognize(List<String> text, AudioInputStream stream) {
+			languageModel.reestimate(text);
+			dataSource.setInputStream(stream, "anchors");
+			return recognizer.recognize();
+		}
+
+		/**
+		 * Releases the language model and the scorer. The recognizer itself is not deallocated, since its linguist
+		 * would deallocate the shared dictionary.
+		 */
+		void deallocate() {
+			scorer.deallocate();
+			languageModel.deallocate();
+		}
+	}
+
+	/** Aligns a region, or finds its anchors and returns the regions between them */
+	private final class RegionAligner implements Callable<List<Region>> {
+		private final File audio;
+		private final String[] words;
+		private final WordResult[] results;
+		private final Queue<AnchorRecognizer> recognizers;
+		private final Region region;
+
+		RegionAligner(File audio, String[] words, WordResult[] results, Queue<AnchorRecognizer> recognizers,
+				Region region) {
+			this.audio = audio;
+			this.words = words;
+			this.results = results;
+			this.recognizers = recognizers;
+			this.region = region;
+		}
+
+		public List<Region> call() throws Exception {
+			if (region.size() <= windowWords) {
+				alignWindow();
+				return Collections.emptyList();
+			}
+
+			List<String> text = Arrays.asList(words).subList(region.start, region.end);
+			List<WordResult> anchors = findAnchors(text, recognize(text));
+			// without anchors the region would be split into itself
+			if (Collections.frequency(anchors, null) == anchors.size()) {
+				alignWindow();
+				return Collections.emptyList();
+			}
+			return splitRegion(region, anchors, results);
+		}
+
+		/** Force aligns the words of the region, the words the aligner skips stay unaligned */
+		private void alignWindow() throws IOException, UnsupportedAudioFileException, InterruptedException {
+			StringBuilder text = new StringBuilder();
+			for (int i = region.start; i < region.end; i++) {
+				if (text.length() > 0)
+					text.append(' ');
+				text.append(words[i]);
+			}
+
+			List<WordResult> aligned;
+			AudioInputStream stream = getAudio();
+			GrammarAligner aligner = aligners.take();
+			try {
+				aligned = aligner.align(stream, text.toString());
+			} finally {
+				aligners.add(aligner);
+				stream.close();
+			}
+
+			int next = region.start;
+			for (WordResult result : aligned) {
+				Word word = result.getPronunciation().getWord();
+				if (word.isFiller())
+					continue;
+				int i = next;
+				while (i < region.end && !words[i].equals(word.getSpelling()))
+					i++;
+				if (i == region.end)
+					continue;
+				// the last word of an alignment has no end
+				long endTime = result.getEndFrame() < 0 ? region.endTime : region.startTime + result.getEndFrame();
+				results[i] = new SimpleWordResult(word, (int) (region.startTime + result.getStartFrame()),
+						(int) endTime, result.getScore(), result.getConfidence(), result.getLogMath());
+				next = i + 1;
+			}
+		}
+
+		/**
+		 * Recognizes the audio of the region with a language model estimated from its words, with the anchor
+		 * recognizer of the worker.
+		 *
+		 * @return the words of the best hypothesis, without the fillers, with their times in milliseconds
+		 */
+		private List<WordResult> recognize(List<String> text) throws IOException, UnsupportedAudioFileException {
+			AnchorRecognizer recognizer = recognizers.poll();
+			if (recognizer == null)
+				recognizer = new AnchorRecognizer(words);
+			AudioInputStream stream = getAudio();
+			Result result;
+			try {
+				result = recognizer.recognize(text, stream);
+			} finally {
+				recognizers.add(recognizer);
+				stream.close();
+			}
+
+			List<WordResult> hypothesis = new ArrayList<WordResult>();
+			Token last = result == null ? null : result.getBestToken();
+			if (last == null)
+				return hypothesis;
+			List<Token> path = new ArrayList<Token>();
+			for (Token token = last; token != null; token = token.getPredecessor())
+				path.add(token);
+
+			// the words of the lex tree end with their word state
+			int start = 0;
+			for (int k = path.size() - 1; k >= 0; k--) {
+				SearchState state = path.get(k).getSearchState();
+				if (!(state instanceof WordSearchState))
+					continue;
+				int frame = path.get(k).getFrameNumber();
+				Word word = ((WordSearchState) state).getPronunciation().getWord();
+				if (!word.isFiller() && !word.isSentenceStartWord() && !word.isSentenceEndWord()) {
+					hypothesis.add(new SimpleWordResult(word,
+							(int) (region.startTime + start * MILLISECONDS_PER_FRAME),
+							(int) (region.startTime + frame * MILLISECONDS_PER_FRAME), 0.0, 1.0, null));
+				}
+				start = frame;
+			}
+			return hypothesis;
+		}
+
+		/** Opens the audio of the region */
+		private AudioInputStream getAudio() throws IOException, UnsupportedAudioFileException {
+			AudioInputStream stream = AudioSystem.getAudioInputStream(audio);
+			AudioFormat format = stream.getFormat();
+			long startFrame = (long) (region.startTime * format.getFrameRate() / 1000);
+			long endFrame = (long) (region.endTime * format.getFrameRate() / 1000);
+			long skip = startFrame * format.getFrameSize();
+			while (skip > 0) {
+				long skipped = stream.skip(skip);
+				if (skipped <= 0)
+					break;
+				skip -= skipped;
+			}
+			return new AudioInputStream(stream, format, endFrame - startFrame);
+		}
+	}
+
+	/**
+	 * Matches the recognized words to the words of a region. The runs of three recognized words which match a
+	 * sequence of words found only once in the region are matches, and the longest chain of matches in the order of
+	 * both the region and the hypothesis makes the anchors.
+	 *
+	 * @param text the words of the region
+	 * @param hypothesis the recognized words, in the order they were spoken
+	 * @return the anchor of each word of the region, null for the words which are not anchored
+	 */
+	public static List<WordResult> findAnchors(List<String> text, List<WordResult> hypothesis) {
+		// the word sequences found once in the region
+		Map<String, Integer> sequences = new HashMap<String, Integer>();
+		for (int i = 0; i + ANCHOR_WORDS <= text.size(); i++) {
+			String key = join(text.subList(i, i + ANCHOR_WORDS));
+			sequences.put(key, sequences.containsKey(key) ? -1 : i);
+		}
+
+		// the matches of the hypothesis, in the order of the hypothesis
+		List<int[]> matches = new ArrayList<int[]>();
+		List<String> spellings = new ArrayList<String>(hypothesis.size());
+		for (WordResult result : hypothesis)
+			spellings.add(result.getPronunciation().getWord().getSpelling());
+		for (int j = 0; j + ANCHOR_WORDS <= spellings.size(); j++) {
+			Integer i = sequences.get(join(spellings.subList(j, j + ANCHOR_WORDS)));
+			if (i != null && i >= 0)
+				matches.add(new int[] {i, j});
+		}
+
+		List<WordResult> anchors = new ArrayList<WordResult>(text.size());
+		for (int i = 0; i < text.size(); i++)
+			anchors.add(null);
+		int lastWord = -1;
+		int lastHypothesis = -1;
+		for (int[] match : longestIncreasingChain(matches)) {
+			for (int k = 0; k < ANCHOR_WORDS; k++) {
+				int i = match[0] + k;
+				int j = match[1] + k;
+				// overlapping matches share words
+				if (i > lastWord && j > lastHypothesis) {
+					anchors.set(i, hypothesis.get(j));
+					lastWord = i;
+					lastHypothesis = j;
+				}
+			}
+		}
+		return anchors;
+	}
+
+	/**
+	 * Splits a region at its anchors. The anchors become the results of their words, the words between two anchors
+	 * make a subregion with the audio between them. The subregions without words or without audio are left out, their
+	 * words stay unaligned.
+	 *
+	 * @param region the region
+	 * @param anchors the anchor of each word of the region, null for the words which are not anchored
+	 * @param results the results of the words of the transcription
+	 * @return the subregions, in the order of the transcription
+	 */
+	public static List<Region> splitRegion(Region region, List<WordResult> anchors, WordResult[] results) {
+		List<Region> subregions = new ArrayList<Region>();
+		int start = region.start;
+		long startTime = region.startTime;
+		for (int i = region.start; i < region.end; i++) {
+			WordResult anchor = anchors.get(i - region.start);
+			if (anchor == null)
+				continue;
+			results[i] = anchor;
+			addSubregion(subregions, start, i, startTime, anchor.getStartFrame());
+			start = i + 1;
+			startTime = anchor.getEndFrame();
+		}
+		addSubregion(subregions, start, region.end, startTime, region.endTime);
+		return subregions;
+	}
+
+	private static void addSubregion(List<Region> subregions, int start, int end, long startTime, long endTime) {
+		if (start < end && startTime < endTime)
+			subregions.add(new Region(start, end, startTime, endTime));
+	}
+
+	/**
+	 * Finds the longest chain of matches whose word indices increase. The matches are in the increasing order of
+	 * their hypothesis indices.
+	 *
+	 * @param matches the matches, pairs of a word index and a hypothesis index
+	 * @return the matches of the chain, in the order of the matches
+	 */
+	public static List<int[]> longestIncreasingChain(List<int[]> matches) {
+		// the last match of the best chain of each length, and the predecessors of the matches
+		int[] tails = new int[matches.size()];
+		int[] predecessors = new int[matches.size()];
+		int length = 0;
+		for (int m = 0; m < matches.size(); m++) {
+			int word = matches.get(m)[0];
+			int low = 0;
+			int high = length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (matches.get(tails[middle])[0] < word)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			predecessors[m] = low > 0 ? tails[low - 1] : -1;
+			tails[low] = m;
+			if (low == length)
+				length++;
+		}
+
+		int[][] chain = new int[length][];
+		for (int k = length - 1, m = length > 0 ? tails[length - 1] : -1; k >= 0; k--, m = predecessors[m])
+			chain[k] = matches.get(m);
+		return Arrays.asList(chain);
+	}
+
+	private static String join(List<String> words) {
+		StringBuilder sb = new StringBuilder();
+		for (String word : words) {
+			if (sb.length() > 0)
+				sb.append(' ');
+			sb.append(word);
+		}
+		return sb.toString();
+	}
+}
@@ -27,12 +27,21 @@ public abstract class AbstractDecoder implements ResultProducer, Configurable {
     /**
      * If set to <code>false</code> the used search-manager all registered result listeners will be notified only for
      * final results. Per default non-final results don't trigger notification, because in most application the
-     * utterance final result will be sufficient.
+     * utterance final result will be sufficient. To follow the hypothesis while decoding, register a {@link
+     * PartialResultTracker} as result listener rather than extracting the best result from every non-final result.
      */
     @S4Boolean(defaultValue = false)
     public static final String FIRE_NON_FINAL_RESULTS = "fireNonFinalResults";
     private boolean fireNonFinalResults;
 
+    /**
+     * The property that defines the optional endpointer which finalizes an utterance as soon as the search shows that
+     * it is over, without waiting for the end of the speech segment.
+     */
+    @S4Component(type = SearchEndpointer.class, mandatory = false)
+    public static final String PROP_ENDPOINTER = "endpointer";
+    protected SearchEndpointer endpointer;
+
     private String name;
     protected Logger logger;
 
@@ -47,9 +56,22 @@ public abstract class AbstractDecoder implements ResultProducer, Configurable {
      * @param resultListeners
      */
     public AbstractDecoder(SearchManager searchManager, boolean fireNonFinalResults, boolean autoAllocate, List<ResultListener> resultListeners) {
+        this(searchManager, fireNonFinalResults, autoAllocate, resultListeners, null);
+    }
+
+    /**
+     *
+     * @param searchManager
+     * @param fireNonFinalResults
+     * @param autoAllocate
+     * @param resultListeners
+     * @param endpointer the endpointer, or null to decode up to the end of the speech segment
+     */
+    public AbstractDecoder(SearchManager searchManager, boolean fireNonFinalResults, boolean autoAllocate, List<ResultListener> resultListeners, SearchEndpointer endpointer) {
         String name = getClass().getName();
              init( name, Logger.getLogger(name),
                    searchManager, fireNonFinalResults, autoAllocate, resultListeners);        
+        this.endpointer = endpointer;
     }
 
     /**
@@ -63,6 +85,7 @@ public abstract class AbstractDecoder implements ResultProducer, Configurable {
     @Override
     public void newProperties(PropertySheet ps) throws PropertyException {
         init( ps.getInstanceName(), ps.getLogger(), (SearchManager) ps.getComponent(PROP_SEARCH_MANAGER), ps.getBoolean(FIRE_NON_FINAL_RESULTS), ps.getBoolean(AUTO_ALLOCATE), ps.getComponentList(PROP_RESULT_LISTENERS, ResultListener.class));
+        endpointer = (SearchEndpointer) ps.getComponent(PROP_ENDPOINTER);
     }
 
     private void init(String name, Logger logger, SearchManager searchManager, boolean fireNonFinalResults, boolean autoAllocate, List<ResultListener> listeners) {
@@ -82,6 +105,19 @@ public abstract class AbstractDecoder implements ResultProducer, Configurable {
     }
 
 
+    /**
+     * Checks a non-final result with the endpointer.
+     *
+     * @param result the latest result of the current utterance
+     * @return the final result if the endpointer considers the utterance finished, otherwise the given result
+     */
+    protected Result checkEndpoint(Result result) {
+        if (endpointer == null || result.isFinal() || !endpointer.isEndpoint(result))
+            return result;
+        return endpointer.createFinalResult(result);
+    }
+
+
     /** Allocate resources necessary for decoding */
     public void allocate() {
         searchManager.allocate();
@@ -118,12 +154,13 @@ public abstract class AbstractDecoder implements ResultProducer, Configurable {
 
 
     /**
-     * Fires new results as soon as they become available.
+     * Fires new results as soon as they become available. Non-final results which carry committed words are always
+     * fired, since these words are not part of any later result.
      *
      * @param result the new result
      */
     protected void fireResultListeners(Result result) {
-        if (fireNonFinalResults || result.isFinal()) {
+        if (fireNonFinalResults || result.isFinal() || !result.getCommittedWords().isEmpty()) {
             for (ResultListener resultListener : resultListeners) {
                 resultListener.newResult(result);
             }
@@ -47,12 +47,27 @@ public class Decoder extends AbstractDecoder {
      * @param featureBlockSize
      */
     public Decoder( SearchManager searchManager, boolean fireNonFinalResults, boolean autoAllocate, List<ResultListener> resultListeners, int featureBlockSize) {
-        super( searchManager, fireNonFinalResults, autoAllocate, resultListeners);
+        this(searchManager, fireNonFinalResults, autoAllocate, resultListeners, featureBlockSize, null);
+    }
+
+    /**
+     *
+     * @param searchManager
+     * @param fireNonFinalResults
+     * @param autoAllocate
+     * @param resultListeners
+     * @param featureBlockSize
+     * @param endpointer the endpointer, or null to decode up to the end of the speech segment
+     */
+    public Decoder( SearchManager searchManager, boolean fireNonFinalResults, boolean autoAllocate, List<ResultListener> resultListeners, int featureBlockSize, SearchEndpointer endpointer) {
+        super( searchManager, fireNonFinalResults, autoAllocate, resultListeners, endpointer);
         this.featureBlockSize = featureBlockSize;
     }
     
     /**
-     * Decode frames until recognition is complete.
+     * Decode frames until recognition is complete. If an endpointer is configured, recognition is complete as soon as
+     * it detects the end of the utterance; the remaining frames of the speech segment are skipped when the next
+     * recognition starts. The endpointer is checked every <code>featureBlockSize</code> frames.
      *
      * @param referenceText the reference text (or null)
      * @return a result
@@ -60,11 +75,14 @@ public class Decoder extends AbstractDecoder {
     @Override
     public Result decode(String referenceText) {
         searchManager.startRecognition();
+        if (endpointer != null)
+            endpointer.reset();
         Result result;
         do {
             result = searchManager.recognize(featureBlockSize);
             if (result != null) {
                 result.setReferenceText(referenceText);
+                result = checkEndpoint(result);
                 fireResultListeners(result);
             }
         } while (result != null && !result.isFinal());
@@ -25,6 +25,9 @@ import java.util.List;
  * A decoder which does not use the common pull-principle of S4 but processes only one single frame on each call of
  * <code>decode()</code>. When using this decoder, make sure that the <code>AcousticScorer</code> used by the
  * <code>SearchManager</code> can access some buffered <code>Data</code>s.
+ * <p/>
+ * If an endpointer is configured, the utterance is finalized on the frame the endpointer detects its end. The frames
+ * up to the <code>SpeechEndSignal</code> are then passed on without being decoded.
  */
 public class FrameDecoder extends AbstractDecoder implements DataProcessor {
 
@@ -34,8 +37,12 @@ public class FrameDecoder extends AbstractDecoder implements DataProcessor {
     private Result result;
 
     public FrameDecoder( SearchManager searchManager, boolean fireNonFinalResults, boolean autoAllocate, List<ResultListener> listeners) {
-        super(searchManager, fireNonFinalResults, autoAllocate, listeners);
-    }    
+        this(searchManager, fireNonFinalResults, autoAllocate, listeners, null);
+    }
+
+    public FrameDecoder( SearchManager searchManager, boolean fireNonFinalResults, boolean autoAllocate, List<ResultListener> listeners, SearchEndpointer endpointer) {
+        super(searchManager, fireNonFinalResults, autoAllocate, listeners, endpointer);
+    }
     
     public FrameDecoder() {
     }
@@ -59,7 +66,14 @@ public class FrameDecoder extends AbstractDecoder implements DataProcessor {
             result = decode(null);
 
             if (result != null) {
+                Result decoded = result;
+                result = checkEndpoint(decoded);
                 fireResultListeners(result);
+                if (result != decoded) {
+                    // the endpointer has finished the utterance
+                    searchManager.stopRecognition();
+                    isRecognizing = false;
+                }
                 result = null;
             }
         }
@@ -71,11 +85,13 @@ public class FrameDecoder extends AbstractDecoder implements DataProcessor {
 
         if (d instanceof SpeechStartSignal) {
             searchManager.startRecognition();
+            if (endpointer != null)
+                endpointer.reset();
             isRecognizing = true;
             result = null;
         }
 
-        if (d instanceof SpeechEndSignal) {
+        if (d instanceof SpeechEndSignal && isRecognizing) {
             searchManager.stopRecognition();
 
             //fire results which were not yet final
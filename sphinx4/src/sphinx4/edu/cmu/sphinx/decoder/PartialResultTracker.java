@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder;
+
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.result.SimpleWordResult;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.PropertyException;
+import edu.cmu.sphinx.util.props.PropertySheet;
+
+import java.util.*;
+
+/**
+ * Tracks the best hypothesis of the current utterance incrementally. The tracker is registered as a result listener of
+ * a decoder which fires non-final results.
+ * <p/>
+ * The words before the latest common ancestor of all active tokens can no longer change: they are the stable prefix of
+ * the hypothesis. On every result the tracker only walks the token trees back to the previous common ancestor, so an
+ * update costs time proportional to the unstable part of the search, not to the length of the utterance as {@link
+ * Result#getBestResultNoFiller()} does. Newly stable words are announced to the {@link StableWordsListener}s. The words
+ * of a final result are stable as a whole.
+ * <p/>
+ * The tracker relies on complete token chains. It is not meant for search managers which commit words and cut the
+ * chains behind them; their {@link Result#getCommittedWords() committed words} already are the stable prefix.
+ */
+public class PartialResultTracker implements ResultListener {
+
+    private final List<StableWordsListener> listeners = new ArrayList<StableWordsListener>();
+
+    private final List<SimpleWordResult> stableWords = new ArrayList<SimpleWordResult>();
+    private final List<SimpleWordResult> unstableWords = new ArrayList<SimpleWordResult>();
+    private Token anchor;
+    private int anchorWordFrame;
+    private boolean finished;
+
+
+    public PartialResultTracker() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+    }
+
+
+    /**
+     * Adds a listener which is called whenever words become stable.
+     *
+     * @param listener the listener to add
+     */
+    public synchronized void addStableWordsListener(StableWordsListener listener) {
+        listeners.add(listener);
+    }
+
+
+    /**
+     * Removes a previously added listener.
+     *
+     * @param listener the listener to remove
+     */
+    public synchronized void removeStableWordsListener(StableWordsListener listener) {
+        listeners.remove(listener);
+    }
+
+
+    @Override
+    public synchronized void newResult(Result result) {
+        if (finished)
+            reset();
+
+        Token best = result.getBestToken();
+        if (best == null)
+            return;
+
+        Token stable;
+        if (result.isFinal()) {
+            stable = best;
+        } else {
+            List<Token> tokens = new ArrayList<Token>();
+            if (result.getActiveTokens() != null)
+                tokens.addAll(result.getActiveTokens().getTokens());
+            tokens.addAll(result.getResultTokens());
+            stable = Token.findCommonAncestor(tokens, anchor);
+        }
+
+        if (stable != null && stable != anchor) {
+            List<Token> wordTokens = new ArrayList<Token>();
+            if (!collectWordTokens(stable, anchor, wordTokens)) {
+                // the anchor belongs to a previous utterance
+                reset();
+            }
+            List<SimpleWordResult> newWords = createWords(wordTokens, anchorWordFrame, result.getLogMath());
+            if (!wordTokens.isEmpty())
+                anchorWordFrame = wordTokens.get(wordTokens.size() - 1).getFrameNumber();
+            anchor = stable;
+            stableWords.addAll(newWords);
+
+            if (!newWords.isEmpty()) {
+                for (StableWordsListener listener : listeners)
+                    listener.newStableWords(Collections.<WordResult>unmodifiableList(newWords));
+            }
+        }
+
+        List<Token> wordTokens = new ArrayList<Token>();
+        unstableWords.clear();
+        if (!result.isFinal() && collectWordTokens(best, anchor, wordTokens))
+            unstableWords.addAll(createWords(wordTokens, anchorWordFrame, result.getLogMath()));
+
+        finished = result.isFinal();
+    }
+
+
+    private void reset() {
+        stableWords.clear();
+        unstableWords.clear();
+        anchor = null;
+        anchorWordFrame = 0;
+        finished = false;
+    }
+
+
+    /** @return the words of the current utterance which can no longer change */
+    public synchronized List<WordResult> getStableWords() {
+        return new ArrayList<WordResult>(stableWords);
+    }
+
+
+    /** @return the words of the best hypothesis of the current utterance, starting with the stable words */
+    public synchronized List<WordResult> getPartialWords() {
+        List<WordResult> words = new ArrayList<WordResult>(stableWords.size() + unstableWords.size());
+        words.addAll(stableWords);
+        words.addAll(unstableWords);
+        return words;
+    }
+
+
+    /** @return the string of the best hypothesis of the current utterance, without filler words */
+    public synchronized String getPartialResultNoFiller() {
+        StringBuilder sb = new StringBuilder();
+        for (List<SimpleWordResult> words : Arrays.asList(stableWords, unstableWords)) {
+            for (SimpleWordResult word : words) {
+                if (!word.isFiller()) {
+                    if (sb.length() > 0)
+                        sb.append(' ');
+                    sb.append(word.getWord().getSpelling());
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Collects the word tokens on the path from the given token back to the given ancestor, excluding the ancestor.
+     *
+     * @param token      the token to start from
+     * @param ancestor   the ancestor to stop at, or null to collect the whole path
+     * @param wordTokens receives the word tokens in chronological order
+     * @return <code>false</code> if the ancestor is not on the path, in which case the whole path was collected
+     */
+    private static boolean collectWordTokens(Token token, Token ancestor, List<Token> wordTokens) {
+        for (; token != null && token != ancestor; token = token.getPredecessor()) {
+            if (token.isWord())
+                wordTokens.add(token);
+        }
+        Collections.reverse(wordTokens);
+        return token == ancestor;
+    }
+
+
+    private static List<SimpleWordResult> createWords(List<Token> wordTokens, int startFrame, LogMath logMath) {
+        List<SimpleWordResult> words = new ArrayList<SimpleWordResult>(wordTokens.size());
+        for (Token token : wordTokens) {
+            words.add(new SimpleWordResult(token.getWord(), startFrame, token.getFrameNumber(),
+                    token.getScore(), 1.0, logMath));
+            startFrame = token.getFrameNumber();
+        }
+        return words;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder;
+
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.result.ResultSnapshot;
+import edu.cmu.sphinx.result.ResultSnapshotEncoder;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.props.PropertyException;
+import edu.cmu.sphinx.util.props.PropertySheet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A result listener which writes a {@link ResultSnapshot} of every result to a stream as soon as the decoder fires it,
+ * so the result and its tokens need not be kept for a consumer. Snapshots are written either in the binary format of
+ * the {@link ResultSnapshotEncoder} or as JSON, one object per line, and the stream is flushed after each one.
+ * <p/>
+ * When the search manager commits words, the token paths of the results no longer reach back to them. The streamer
+ * keeps the words committed since the last final result and writes them before the best path of each snapshot, so
+ * every snapshot covers the whole utterance.
+ */
+public class ResultStreamer implements ResultListener {
+
+    private final OutputStream out;
+    private final boolean json;
+    private final boolean finalOnly;
+    private final ResultSnapshotEncoder encoder = new ResultSnapshotEncoder();
+    // the words committed in the current utterance
+    private final List<WordResult> committedWords = new ArrayList<WordResult>();
+
+
+    /**
+     * @param out       the stream to write to
+     * @param json      if true, snapshots are written as JSON, otherwise in the binary format
+     * @param finalOnly if true, only final results are written
+     */
+    public ResultStreamer(OutputStream out, boolean json, boolean finalOnly) {
+        this.out = out;
+        this.json = json;
+        this.finalOnly = finalOnly;
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+    }
+
+
+    @Override
+    public synchronized void newResult(Result result) {
+        committedWords.addAll(result.getCommittedWords());
+        if (result.isFinal()) {
+            ResultSnapshot snapshot = ResultSnapshot.create(result, committedWords);
+            committedWords.clear();
+            write(snapshot);
+        } else if (!finalOnly) {
+            write(ResultSnapshot.create(result, committedWords));
+        }
+    }
+
+
+    private void write(ResultSnapshot snapshot) {
+        try {
+            if (json) {
+                encoder.writeJson(snapshot, out);
+                out.write('\n');
+            } else {
+                encoder.writeBinary(snapshot, out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Writing of the result failed", e);
+        }
+    }
+}
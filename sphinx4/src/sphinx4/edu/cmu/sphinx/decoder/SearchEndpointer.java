@@ -0,0 +1,239 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder;
+
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.linguist.HMMSearchState;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.props.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Detects the end of an utterance from the state of the search rather than from the audio. The
+ * <code>SpeechMarker</code> only ends a segment after <code>endSilenceTime</code> of silence; the search usually knows
+ * much earlier that the speaker is done: the best hypothesis sits in silence, no hypothesis which is still inside a
+ * speech unit comes close to it, and its words have not changed for a while.
+ * <p/>
+ * The endpointer is given every non-final result of an utterance and looks at the active tokens of the current frame.
+ * It reports an endpoint once, for at least <code>endpointFrames</code> frames in a row,
+ * <ul>
+ * <li>the best token is in a filler HMM state,</li>
+ * <li>every token in a speech HMM state scores below the best token by at least the <code>relativeMargin</code>,
+ * and</li>
+ * <li>the last word of the best token which is not a filler is the same token.</li>
+ * </ul>
+ * Independent of the search, it also reports an endpoint once an utterance reaches <code>maxUtteranceFrames</code>, so
+ * that a caller who never pauses cannot hold a recognizer forever.
+ * <p/>
+ * The decoders use it to finalize the result early, see {@link AbstractDecoder#PROP_ENDPOINTER}. The frames the
+ * endpointer examines are the frames of the results, so the decoder has to produce results often: a {@link
+ * FrameDecoder} does so on every frame, a {@link Decoder} every <code>featureBlockSize</code> frames.
+ * <p/>
+ * The endpointer only helps if the trailing silence reaches the search without delay. The <code>SpeechMarker</code>
+ * holds non-speech back until it has decided on the end of speech; the <code>SpeechGate</code> passes it on at once and
+ * its hangover then serves as the upper bound of the end of utterance latency.
+ */
+public class SearchEndpointer extends ConfigurableAdapter {
+
+    /** The property for the number of frames the endpoint conditions must hold. */
+    @S4Integer(defaultValue = 30)
+    public final static String PROP_ENDPOINT_FRAMES = "endpointFrames";
+
+    /**
+     * The property for the margin between the best token and the best token within speech, as a linear ratio. The
+     * smaller the ratio, the more certain the endpoint.
+     */
+    @S4Double(defaultValue = 1E-10)
+    public final static String PROP_RELATIVE_MARGIN = "relativeMargin";
+
+    /** The property for the maximum number of frames of an utterance. Zero (the default) does not limit the length. */
+    @S4Integer(defaultValue = 0)
+    public final static String PROP_MAX_UTTERANCE_FRAMES = "maxUtteranceFrames";
+
+    private int endpointFrames;
+    private double relativeMargin;
+    private int maxUtteranceFrames;
+
+    private Token lastWord;
+    private int stableSince;
+    private boolean committedSpeech;
+
+    // the last word on the path of every token walked so far, null if there is none; cleared when the paths are cut
+    private final Map<Token, Token> lastWords = new WeakHashMap<Token, Token>();
+
+
+    /**
+     * @param endpointFrames the number of frames the endpoint conditions must hold
+     * @param relativeMargin the margin of the best token over the best token within speech, as a linear ratio
+     */
+    public SearchEndpointer(int endpointFrames, double relativeMargin) {
+        this(endpointFrames, relativeMargin, 0);
+    }
+
+
+    /**
+     * @param endpointFrames     the number of frames the endpoint conditions must hold
+     * @param relativeMargin     the margin of the best token over the best token within speech, as a linear ratio
+     * @param maxUtteranceFrames the maximum number of frames of an utterance, zero for no limit
+     */
+    public SearchEndpointer(int endpointFrames, double relativeMargin, int maxUtteranceFrames) {
+        initLogger();
+        this.endpointFrames = endpointFrames;
+        this.relativeMargin = relativeMargin;
+        this.maxUtteranceFrames = maxUtteranceFrames;
+    }
+
+
+    public SearchEndpointer() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        endpointFrames = ps.getInt(PROP_ENDPOINT_FRAMES);
+        relativeMargin = ps.getDouble(PROP_RELATIVE_MARGIN);
+        maxUtteranceFrames = ps.getInt(PROP_MAX_UTTERANCE_FRAMES);
+    }
+
+
+    /** Forgets the previous utterance. Called by the decoder whenever a recognition starts. */
+    public void reset() {
+        lastWord = null;
+        stableSince = 0;
+        committedSpeech = false;
+        lastWords.clear();
+    }
+
+
+    /**
+     * Examines the next result of the current utterance.
+     *
+     * @param result a non-final result
+     * @return <code>true</code> if the utterance can be considered as finished
+     */
+    public boolean isEndpoint(Result result) {
+        if (maxUtteranceFrames > 0 && result.getFrameNumber() >= maxUtteranceFrames) {
+            logger.fine("endpoint at the maximum utterance length, frame " + result.getFrameNumber());
+            return true;
+        }
+
+        if (!result.getCommittedWords().isEmpty()) {
+            // the paths were cut behind the committed words
+            lastWords.clear();
+        }
+        for (WordResult committed : result.getCommittedWords()) {
+            if (!committed.isFiller())
+                committedSpeech = true;
+        }
+
+        Token best = result.getActiveTokens() == null ? null : getBestSilenceToken(result);
+        Token word = best == null ? null : getLastWord(best);
+        if (word == null) {
+            lastWord = null;
+            return false;
+        }
+
+        if (word != lastWord) {
+            lastWord = word;
+            stableSince = result.getFrameNumber();
+        }
+
+        if (result.getFrameNumber() - stableSince < endpointFrames)
+            return false;
+
+        logger.fine("endpoint at frame " + result.getFrameNumber() + " after " + word.getWord());
+        return true;
+    }
+
+
+    /**
+     * Creates the final result for the utterance which the endpointer ended.
+     *
+     * @param result the last non-final result of the utterance
+     * @return a final result with the same tokens
+     */
+    public Result createFinalResult(Result result) {
+        Result finalResult = new Result(result.getAlternateHypothesisManager(), result.getActiveTokens(),
+                result.getResultTokens(), result.getFrameNumber(), true, result.getLogMath());
+        finalResult.setReferenceText(result.getReferenceText());
+        finalResult.setCommittedWords(result.getCommittedWords());
+        finalResult.setWordExitLog(result.getWordExitLog());
+        return finalResult;
+    }
+
+
+    /**
+     * Returns the best active token if it is in a filler state and beats all tokens within speech by the margin,
+     * otherwise null.
+     */
+    private Token getBestSilenceToken(Result result) {
+        Token best = null;
+        Token bestSpeech = null;
+        for (Token token : result.getActiveTokens()) {
+            if (isSpeech(token.getSearchState())) {
+                if (bestSpeech == null || token.getScore() > bestSpeech.getScore())
+                    bestSpeech = token;
+            } else if (best == null || token.getScore() > best.getScore()) {
+                best = token;
+            }
+        }
+
+        if (best == null || bestSpeech == null)
+            return best;
+        if (bestSpeech.getScore() > best.getScore() + result.getLogMath().linearToLog(relativeMargin))
+            return null;
+        return best;
+    }
+
+
+    private static boolean isSpeech(SearchState state) {
+        return state instanceof HMMSearchState
+                && !((HMMSearchState) state).getHMMState().getHMM().getBaseUnit().isFiller();
+    }
+
+
+    /**
+     * Returns the last word token on the path of the given token which is not a filler, or null if there is none. If
+     * the search manager has committed words and cut the path behind them, the first token of the path stands in for
+     * the last committed word.
+     * <p/>
+     * The answers are remembered for all tokens on the walked path, so a path is only walked back to the part seen in
+     * an earlier frame. Otherwise the leading silence of an utterance would be walked in full on every frame.
+     */
+    private Token getLastWord(Token token) {
+        List<Token> walked = new ArrayList<Token>();
+        Token word = null;
+        for (; token != null; token = token.getPredecessor()) {
+            if (lastWords.containsKey(token)) {
+                word = lastWords.get(token);
+                break;
+            }
+            walked.add(token);
+            if (token.isWord() && !token.getWord().isFiller()) {
+                word = token;
+                break;
+            }
+            if (token.getPredecessor() == null && committedSpeech) {
+                word = token;
+                break;
+            }
+        }
+        for (Token t : walked)
+            lastWords.put(t, word);
+        return word;
+    }
+}
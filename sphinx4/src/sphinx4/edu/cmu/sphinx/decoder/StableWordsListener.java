@@ -0,0 +1,27 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder;
+
+import edu.cmu.sphinx.result.WordResult;
+
+import java.util.EventListener;
+import java.util.List;
+
+/** The listener interface for being informed when words of the current utterance can no longer change. */
+public interface StableWordsListener extends EventListener {
+
+    /**
+     * Method called when words became stable. The words of consecutive calls within an utterance follow each other
+     * without gaps or overlap.
+     *
+     * @param words the newly stable words, in the order they were spoken
+     */
+    public void newStableWords(List<WordResult> words);
+}
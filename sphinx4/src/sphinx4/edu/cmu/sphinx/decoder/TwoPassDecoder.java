@@ -0,0 +1,172 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder;
+
+import edu.cmu.sphinx.decoder.search.SearchManager;
+import edu.cmu.sphinx.linguist.language.ngram.LanguageModel;
+import edu.cmu.sphinx.result.*;
+import edu.cmu.sphinx.util.Timer;
+import edu.cmu.sphinx.util.TimerPool;
+import edu.cmu.sphinx.util.props.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A decoder which rescores the word lattice of every final result with a second language model. The first pass is the
+ * usual search, typically with a small language model which keeps the search fast. The lattice of its final result is
+ * then expanded by the history of the second, larger model (see {@link LatticeRescorer#expand(int)}) and the best path
+ * through the rescored lattice is attached to the result as its {@link Result#getRescoredWords() rescored words}.
+ * <p/>
+ * The search manager has to build a word lattice, e.g. with the <code>buildWordLattice</code> property of the
+ * <code>WordPruningBreadthFirstSearchManager</code>, otherwise the lattice only contains the first pass best path.
+ * Only results which reached a final state of the search are rescored.
+ * <p/>
+ * The time of both passes is accumulated in the timers <code>FirstPass</code> and <code>SecondPass</code> of the
+ * {@link TimerPool} and logged for every utterance.
+ */
+public class TwoPassDecoder extends Decoder {
+
+    /** The property that defines the language model used to rescore the lattices. */
+    @S4Component(type = LanguageModel.class)
+    public final static String PROP_RESCORING_MODEL = "rescoringModel";
+
+    /** The property that defines the weight of the rescoring language model. */
+    @S4Double(defaultValue = 8.0)
+    public final static String PROP_LANGUAGE_WEIGHT = "languageWeight";
+
+    /** The property that defines the probability added for every word of the rescored lattice. */
+    @S4Double(defaultValue = 1.0)
+    public final static String PROP_WORD_INSERTION_PROBABILITY = "wordInsertionProbability";
+
+    /**
+     * The property that defines the maximum number of nodes of the expanded lattice. Larger lattices are expanded with
+     * a shorter history.
+     */
+    @S4Integer(defaultValue = 10000)
+    public final static String PROP_MAX_LATTICE_NODES = "maxLatticeNodes";
+
+    private LanguageModel rescoringModel;
+    private float languageWeight;
+    private double wordInsertionProbability;
+    private int maxLatticeNodes;
+
+    private Timer firstPassTimer;
+    private Timer secondPassTimer;
+
+
+    /**
+     * @param searchManager            the search manager of the first pass
+     * @param fireNonFinalResults      if true, non-final results are fired too
+     * @param autoAllocate             if true, the search manager is allocated right away
+     * @param resultListeners          the result listeners
+     * @param featureBlockSize         the number of features to recognize at once
+     * @param rescoringModel           the language model of the second pass
+     * @param languageWeight           the weight of the rescoring language model
+     * @param wordInsertionProbability the probability added for every word of the rescored lattice
+     * @param maxLatticeNodes          the maximum number of nodes of the expanded lattice
+     */
+    public TwoPassDecoder(SearchManager searchManager, boolean fireNonFinalResults, boolean autoAllocate,
+                          List<ResultListener> resultListeners, int featureBlockSize, LanguageModel rescoringModel,
+                          float languageWeight, double wordInsertionProbability, int maxLatticeNodes) {
+        super(searchManager, fireNonFinalResults, autoAllocate, resultListeners, featureBlockSize);
+        this.rescoringModel = rescoringModel;
+        this.languageWeight = languageWeight;
+        this.wordInsertionProbability = wordInsertionProbability;
+        this.maxLatticeNodes = maxLatticeNodes;
+        createTimers();
+    }
+
+
+    public TwoPassDecoder() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        rescoringModel = (LanguageModel) ps.getComponent(PROP_RESCORING_MODEL);
+        languageWeight = ps.getFloat(PROP_LANGUAGE_WEIGHT);
+        wordInsertionProbability = ps.getDouble(PROP_WORD_INSERTION_PROBABILITY);
+        maxLatticeNodes = ps.getInt(PROP_MAX_LATTICE_NODES);
+        createTimers();
+    }
+
+
+    private void createTimers() {
+        firstPassTimer = TimerPool.getTimer(this, "FirstPass");
+        secondPassTimer = TimerPool.getTimer(this, "SecondPass");
+    }
+
+
+    @Override
+    public void allocate() {
+        super.allocate();
+        try {
+            rescoringModel.allocate();
+        } catch (IOException e) {
+            throw new RuntimeException("Allocation of the rescoring language model failed", e);
+        }
+    }
+
+
+    @Override
+    public void deallocate() {
+        super.deallocate();
+        try {
+            rescoringModel.deallocate();
+        } catch (IOException e) {
+            throw new RuntimeException("Deallocation of the rescoring language model failed", e);
+        }
+    }
+
+
+    @Override
+    public Result decode(String referenceText) {
+        firstPassTimer.start();
+        Result result = super.decode(referenceText);
+        // no final result at the end of the stream
+        if (firstPassTimer.isStarted())
+            firstPassTimer.stop();
+        return result;
+    }
+
+
+    /** Rescores final results before they are passed to the listeners. */
+    @Override
+    protected void fireResultListeners(Result result) {
+        if (result.isFinal() && firstPassTimer.isStarted()) {
+            firstPassTimer.stop();
+            if (result.getBestFinalToken() != null) {
+                secondPassTimer.start();
+                rescore(result);
+                secondPassTimer.stop();
+                logger.info("first pass " + firstPassTimer.getCurTime() + " ms, second pass "
+                        + secondPassTimer.getCurTime() + " ms");
+            }
+        }
+        super.fireResultListeners(result);
+    }
+
+
+    private void rescore(Result result) {
+        rescoringModel.start();
+        Lattice lattice = new LatticeRescorer(new Lattice(result), rescoringModel, languageWeight,
+                wordInsertionProbability).expand(maxLatticeNodes);
+        lattice.computeNodePosteriors(1.0f);
+        rescoringModel.stop();
+
+        List<WordResult> words = new ArrayList<WordResult>();
+        for (Node node : lattice.getViterbiPath())
+            words.add(new SimpleWordResult(node, node.getPosterior(), result.getLogMath()));
+        result.setRescoredWords(words);
+    }
+}
@@ -94,6 +94,56 @@ public class AlternateHypothesisManager {
     }
 
 
+    /**
+     * Removes the alternate predecessors which do not descend from the given token, once the token chains have been
+     * cut behind it. The alternates of tokens which do not descend from it are removed altogether, so no token before
+     * the cut stays reachable through alternate predecessors.
+     *
+     * @param ancestor the first token of the chains that are kept
+     */
+    public void removeAlternatesNotDescendingFrom(Token ancestor) {
+        Map<Token, Boolean> descends = new IdentityHashMap<Token, Boolean>();
+        descends.put(ancestor, true);
+        for (Iterator<Map.Entry<Token, List<Token>>> i = viterbiLoserMap.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<Token, List<Token>> entry = i.next();
+            if (!descendsFrom(entry.getKey(), descends)) {
+                i.remove();
+                continue;
+            }
+            List<Token> kept = new ArrayList<Token>(entry.getValue().size());
+            for (Token predecessor : entry.getValue()) {
+                if (descendsFrom(predecessor, descends))
+                    kept.add(predecessor);
+            }
+            if (kept.isEmpty())
+                i.remove();
+            else
+                entry.setValue(kept);
+        }
+    }
+
+
+    /**
+     * Checks whether the Viterbi chain of a token leads to the ancestor. The answers are memoized for all tokens on the
+     * walked chain, so every token is visited once per cut.
+     */
+    private static boolean descendsFrom(Token token, Map<Token, Boolean> descends) {
+        List<Token> chain = new ArrayList<Token>();
+        Boolean result;
+        while ((result = descends.get(token)) == null) {
+            chain.add(token);
+            token = token.getPredecessor();
+            if (token == null) {
+                result = false;
+                break;
+            }
+        }
+        for (Token t : chain)
+            descends.put(t, result);
+        return result;
+    }
+
+
 	public boolean hasAlternatePredecessors(Token token) {
 		return viterbiLoserMap.containsKey(token);
 	}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder.search;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import edu.cmu.sphinx.util.props.*;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records statistics of every frame of a search in a ring buffer: the numbers of active, scored and created tokens and
+ * of word tokens, the best score and the beam threshold, and the time spent scoring, pruning and growing. The
+ * statistics of the frames in the buffer are summarized by their mean and percentiles and exported as an MBean and,
+ * optionally, as JSON over HTTP on the loopback interface:
+ * <ul>
+ * <li><code>/</code> returns the summary,</li>
+ * <li><code>/frames</code> returns the frames in the buffer, oldest first.</li>
+ * </ul>
+ * The recorder is attached to the <code>WordPruningBreadthFirstSearchManager</code> with its
+ * <code>statistics</code> property.
+ * <p/>
+ * The search thread is the only writer and never waits. Readers copy the buffer and drop the frames the writer
+ * overwrote in the meantime, so they never block the search either. The buffer has a slot more than its capacity for
+ * the frame the writer fills next, so a reader only drops frames if the writer overtook it. All slots are read and
+ * written as volatile, so the check after the copy sees every slot the writer touched during the copy.
+ */
+public class SearchStatistics extends ConfigurableAdapter implements SearchStatisticsMBean {
+
+    /** The property that defines the number of frames kept in the ring buffer. */
+    @S4Integer(defaultValue = 10000)
+    public final static String PROP_CAPACITY = "capacity";
+
+    /**
+     * The property that defines the JMX object name of the statistics. If empty, they are not registered. If another
+     * instance registered the name already, the key <code>instance</code> is added with a number unique in the VM.
+     */
+    @S4String(defaultValue = "edu.cmu.sphinx:type=SearchStatistics")
+    public final static String PROP_MBEAN_NAME = "mbeanName";
+
+    /** The property that defines the port of the HTTP endpoint. Zero disables the endpoint. */
+    @S4Integer(defaultValue = 0)
+    public final static String PROP_HTTP_PORT = "httpPort";
+
+    /** The names of the recorded metrics, in the order of the arguments of {@link #record}. */
+    public final static String[] METRICS = {"activeTokens", "scoredTokens", "tokensCreated", "wordTokens",
+            "bestScore", "beamThreshold", "scoreNanos", "pruneNanos", "growNanos"};
+
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    /** The number of longs per slot: the frame number and the metrics */
+    private static final int SLOT_SIZE = METRICS.length + 1;
+
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    private int capacity;
+    private String mbeanName;
+    private int httpPort;
+
+    private AtomicLongArray slots;
+    private volatile long written;
+
+    private ObjectName objectName;
+    private HttpServer server;
+
+
+    /**
+     * @param capacity  the number of frames kept in the ring buffer
+     * @param mbeanName the JMX object name, or null to not register the statistics
+     * @param httpPort  the port of the HTTP endpoint, or zero to disable it
+     */
+    public SearchStatistics(int capacity, String mbeanName, int httpPort) {
+        initLogger();
+        this.capacity = capacity;
+        this.mbeanName = mbeanName;
+        this.httpPort = httpPort;
+    }
+
+
+    public SearchStatistics() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        capacity = ps.getInt(PROP_CAPACITY);
+        mbeanName = ps.getString(PROP_MBEAN_NAME);
+        httpPort = ps.getInt(PROP_HTTP_PORT);
+    }
+
+
+    /**
+     * Creates the ring buffer and starts the exports. Called by the search manager when it is allocated. If the
+     * statistics cannot be registered as an MBean, a warning is logged and the search runs without them in JMX.
+     */
+    public void allocate() {
+        slots = new AtomicLongArray((capacity + 1) * SLOT_SIZE);
+        written = 0;
+
+        if (mbeanName != null && mbeanName.length() > 0)
+            registerMBean();
+        if (httpPort > 0) {
+            try {
+                server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), httpPort), 0);
+                server.createContext("/", new JsonHandler(false));
+                server.createContext("/frames", new JsonHandler(true));
+                server.start();
+                logger.info("search statistics at http://127.0.0.1:" + httpPort + '/');
+            } catch (IOException e) {
+                throw new RuntimeException("Start of the search statistics endpoint failed", e);
+            }
+        }
+    }
+
+
+    private void registerMBean() {
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(mbeanName);
+            if (mbeanServer.isRegistered(name))
+                name = new ObjectName(mbeanName + ",instance=" + instances.incrementAndGet());
+            mbeanServer.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            logger.warning("Registration of the search statistics as " + mbeanName + " failed: " + e);
+        }
+    }
+
+
+    /** @return the JMX object name the statistics are registered with, or null if they are not registered */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+
+    /** Stops the exports. */
+    public void deallocate() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.warning("Unregistration of the search statistics failed: " + e);
+            }
+            objectName = null;
+        }
+    }
+
+
+    /**
+     * Records the statistics of a frame. Must only be called by the search thread.
+     *
+     * @param frame         the frame number
+     * @param activeTokens  the number of tokens left after pruning
+     * @param scoredTokens  the number of tokens scored
+     * @param tokensCreated the number of tokens created while growing
+     * @param wordTokens    the number of word tokens created while growing
+     * @param bestScore     the best score of the frame
+     * @param beamThreshold the score threshold of the pruned list
+     * @param scoreNanos    the time spent scoring
+     * @param pruneNanos    the time spent pruning
+     * @param growNanos     the time spent growing
+     */
+    public void record(int frame, int activeTokens, int scoredTokens, int tokensCreated, int wordTokens,
+                       float bestScore, float beamThreshold, long scoreNanos, long pruneNanos, long growNanos) {
+        long sequence = written;
+        int offset = (int) (sequence % (capacity + 1)) * SLOT_SIZE;
+        slots.set(offset, frame);
+        slots.set(offset + 1, Double.doubleToRawLongBits(activeTokens));
+        slots.set(offset + 2, Double.doubleToRawLongBits(scoredTokens));
+        slots.set(offset + 3, Double.doubleToRawLongBits(tokensCreated));
+        slots.set(offset + 4, Double.doubleToRawLongBits(wordTokens));
+        slots.set(offset + 5, Double.doubleToRawLongBits(bestScore));
+        slots.set(offset + 6, Double.doubleToRawLongBits(beamThreshold));
+        slots.set(offset + 7, Double.doubleToRawLongBits(scoreNanos));
+        slots.set(offset + 8, Double.doubleToRawLongBits(pruneNanos));
+        slots.set(offset + 9, Double.doubleToRawLongBits(growNanos));
+        written = sequence + 1;
+    }
+
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    @Override
+    public long getRecordedFrames() {
+        return written;
+    }
+
+
+    @Override
+    public double getPercentile(String metric, double percentile) {
+        int index = Arrays.asList(METRICS).indexOf(metric);
+        if (index < 0)
+            throw new IllegalArgumentException("Unknown metric " + metric);
+        double[] sorted = snapshot().values[index];
+        Arrays.sort(sorted);
+        return percentile(sorted, percentile);
+    }
+
+
+    @Override
+    public String getSummary() {
+        Snapshot snapshot = snapshot();
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"recordedFrames\":").append(snapshot.recorded);
+        sb.append(",\"frames\":").append(snapshot.frames.length).append(",\"metrics\":{");
+        for (int i = 0; i < METRICS.length; i++) {
+            double[] sorted = snapshot.values[i];
+            Arrays.sort(sorted);
+            double sum = 0;
+            for (double value : sorted)
+                sum += value;
+            sb.append(i == 0 ? "\"" : ",\"").append(METRICS[i]).append("\":{\"mean\":");
+            appendNumber(sb, sum / sorted.length);
+            for (double p : PERCENTILES) {
+                sb.append(",\"p").append((int) p).append("\":");
+                appendNumber(sb, percentile(sorted, p));
+            }
+            sb.append(",\"max\":");
+            appendNumber(sb, sorted.length == 0 ? Double.NaN : sorted[sorted.length - 1]);
+            sb.append('}');
+        }
+        return sb.append("}}").toString();
+    }
+
+
+    /** @return the frames in the ring buffer as a JSON array, oldest first */
+    public String getFrames() {
+        Snapshot snapshot = snapshot();
+        StringBuilder sb = new StringBuilder("[");
+        for (int j = 0; j < snapshot.frames.length; j++) {
+            sb.append(j == 0 ? "{\"frame\":" : ",{\"frame\":").append(snapshot.frames[j]);
+            for (int i = 0; i < METRICS.length; i++) {
+                sb.append(",\"").append(METRICS[i]).append("\":");
+                appendNumber(sb, snapshot.values[i][j]);
+            }
+            sb.append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+
+    /**
+     * Copies the frames of the ring buffer which the writer did not overwrite while they were copied. The writer fills
+     * the slot of a sequence only after it published the previous sequence, so a slot of the copy was touched only if
+     * the sequence published after the copy reaches the sequence which reuses the slot.
+     */
+    private Snapshot snapshot() {
+        if (slots == null)
+            return new Snapshot(0, 0);
+
+        long end = written;
+        long start = Math.max(0, end - capacity);
+        int[] frameCopy = new int[(int) (end - start)];
+        double[][] valueCopy = new double[METRICS.length][frameCopy.length];
+        for (long sequence = start; sequence < end; sequence++) {
+            int offset = (int) (sequence % (capacity + 1)) * SLOT_SIZE;
+            int j = (int) (sequence - start);
+            frameCopy[j] = (int) slots.get(offset);
+            for (int i = 0; i < METRICS.length; i++)
+                valueCopy[i][j] = Double.longBitsToDouble(slots.get(offset + 1 + i));
+        }
+
+        // the slot of a sequence is reused by the sequence capacity + 1 later
+        long valid = Math.max(start, written - capacity);
+        Snapshot snapshot = new Snapshot(end, (int) Math.max(0, end - valid));
+        int offset = frameCopy.length - snapshot.frames.length;
+        System.arraycopy(frameCopy, offset, snapshot.frames, 0, snapshot.frames.length);
+        for (int i = 0; i < METRICS.length; i++)
+            System.arraycopy(valueCopy[i], offset, snapshot.values[i], 0, snapshot.frames.length);
+        return snapshot;
+    }
+
+
+    /** Returns the percentile of sorted values by the nearest rank. */
+    private static double percentile(double[] sorted, double percentile) {
+        if (sorted.length == 0)
+            return Double.NaN;
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+
+
+    private static void appendNumber(StringBuilder sb, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            sb.append("null");
+        else if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            sb.append((long) value);
+        else
+            sb.append(value);
+    }
+
+
+    private static class Snapshot {
+
+        final long recorded;
+        final int[] frames;
+        final double[][] values;
+
+        Snapshot(long recorded, int size) {
+            this.recorded = recorded;
+            frames = new int[size];
+            values = new double[METRICS.length][size];
+        }
+    }
+
+
+    private class JsonHandler implements HttpHandler {
+
+        private final boolean allFrames;
+
+        JsonHandler(boolean allFrames) {
+            this.allFrames = allFrames;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] body = (allFrames ? getFrames() : getSummary()).getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder.search;
+
+/** The JMX management interface of the {@link SearchStatistics}. */
+public interface SearchStatisticsMBean {
+
+    /** @return the number of frames the ring buffer holds */
+    public int getCapacity();
+
+
+    /** @return the number of frames recorded since the allocation */
+    public long getRecordedFrames();
+
+
+    /** @return the summary of the frames in the ring buffer as JSON */
+    public String getSummary();
+
+
+    /**
+     * Computes a percentile of a metric over the frames in the ring buffer.
+     *
+     * @param metric     the name of the metric, one of {@link SearchStatistics#METRICS}
+     * @param percentile the percentile, between 0 and 100
+     * @return the value of the percentile, or NaN if no frames were recorded
+     */
+    public double getPercentile(String metric, double percentile);
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder.search;
+
+import edu.cmu.sphinx.result.SimpleWordResult;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.LogMath;
+
+import java.util.*;
+
+/**
+ * Commits the words all paths of a search agree on and cuts the token chains behind them, so that the memory held by
+ * the search stays bounded in endless live sessions.
+ * <p/>
+ * On every commit the latest common ancestor of the frontier tokens is found. The words between the previous commit
+ * point and the ancestor are committed, and the chains are cut behind the ancestor, which becomes the first token of
+ * every remaining chain. The alternate predecessors which lead into the history before the ancestor are dropped as
+ * well, so that no token before the cut stays reachable and the lattices of later results have the ancestor as their
+ * only root.
+ */
+public class StableWordCommitter {
+
+    private final LogMath logMath;
+    private Token commitPoint;
+    private int lastCommittedWordFrame;
+
+
+    /**
+     * Creates a committer for a new utterance.
+     *
+     * @param logMath the log math of the token scores
+     */
+    public StableWordCommitter(LogMath logMath) {
+        this.logMath = logMath;
+    }
+
+
+    /** @return the token behind which the chains were cut last, or null if nothing was committed yet */
+    public Token getCommitPoint() {
+        return commitPoint;
+    }
+
+
+    /**
+     * Commits the words before the latest common ancestor of the given tokens and cuts the token chains behind the
+     * ancestor. The ancestor itself stays the head of the chains, its word is committed with the next commit.
+     *
+     * @param tokens     the frontier of the search, usually the active and the final tokens
+     * @param alternates the alternate predecessors kept for the lattice, or null if none are kept
+     * @return the newly committed words
+     */
+    public List<WordResult> commit(Collection<Token> tokens, AlternateHypothesisManager alternates) {
+        Token ancestor = Token.findCommonAncestor(tokens, commitPoint);
+        if (ancestor == null || ancestor == commitPoint) {
+            return Collections.emptyList();
+        }
+
+        LinkedList<Token> wordTokens = new LinkedList<Token>();
+        for (Token token = ancestor.getPredecessor(); token != null; token = token.getPredecessor()) {
+            if (token.isWord()) {
+                wordTokens.addFirst(token);
+            }
+            if (token == commitPoint) {
+                break;
+            }
+        }
+
+        List<WordResult> words = new ArrayList<WordResult>(wordTokens.size());
+        for (Token token : wordTokens) {
+            words.add(new SimpleWordResult(token.getWord(), lastCommittedWordFrame, token.getFrameNumber(),
+                    token.getScore(), 1.0, logMath));
+            lastCommittedWordFrame = token.getFrameNumber();
+        }
+
+        ancestor.removePredecessor();
+        commitPoint = ancestor;
+        if (alternates != null) {
+            alternates.removeAlternatesNotDescendingFrom(ancestor);
+        }
+        return words;
+    }
+}
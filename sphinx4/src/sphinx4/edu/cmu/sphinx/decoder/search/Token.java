@@ -39,7 +39,7 @@ public class Token implements Scoreable {
     private static final DecimalFormat scoreFmt = new DecimalFormat("0.0000000E00");
     private static final DecimalFormat numFmt = new DecimalFormat("0000");
 
-    private final Token predecessor;
+    private Token predecessor;
 
     private final float logLanguageScore;
     private float logTotalScore;
@@ -53,6 +53,10 @@ public class Token implements Scoreable {
     private final int frameNumber;
     private Data myData;
 
+    private int wordExit = -1;
+    private float exitAcousticScore;
+    private float exitLanguageScore;
+
     /**
      * A collection of arbitrary properties assigned to this token. This field becomes lazy initialized to reduce
      * memory footprint.
@@ -123,6 +127,106 @@ public class Token implements Scoreable {
     }
 
 
+    /**
+     * Cuts the token chain behind this token, so that its predecessors can be garbage collected. This token becomes
+     * the first one of its chain.
+     */
+    void removePredecessor() {
+        predecessor = null;
+    }
+
+
+    /**
+     * Returns the entry of the {@link WordExitLog} for the last word on the path of this token, including the token
+     * itself if it is a word token.
+     *
+     * @return the index of the word exit, or -1 if none was logged
+     */
+    public int getWordExit() {
+        return wordExit;
+    }
+
+
+    /**
+     * Returns the acoustic and insertion score of the path from the last word exit to this token, excluding both.
+     *
+     * @return the acoustic score since the last word exit
+     */
+    float getExitAcousticScore() {
+        return exitAcousticScore;
+    }
+
+
+    /**
+     * Returns the language score of the path from the last word exit to this token, excluding both.
+     *
+     * @return the language score since the last word exit
+     */
+    float getExitLanguageScore() {
+        return exitLanguageScore;
+    }
+
+
+    /**
+     * Sets the last word exit on the path of this token and the scores accumulated since.
+     *
+     * @param wordExit          the index of the word exit in the {@link WordExitLog}
+     * @param exitAcousticScore the acoustic and insertion score since the word exit
+     * @param exitLanguageScore the language score since the word exit
+     */
+    void setWordExit(int wordExit, float exitAcousticScore, float exitLanguageScore) {
+        this.wordExit = wordExit;
+        this.exitAcousticScore = exitAcousticScore;
+        this.exitLanguageScore = exitLanguageScore;
+    }
+
+
+    /**
+     * Finds the latest token all given tokens descend from. The predecessor chains are only walked until they join
+     * the chain of the first token, so the work is proportional to the part of the token tree after the ancestor.
+     *
+     * @param tokens the tokens, usually the active tokens of the search
+     * @param anchor a known common ancestor of the tokens at which the search stops, or null if none is known
+     * @return the common ancestor, or null if the tokens have no common ancestor
+     */
+    public static Token findCommonAncestor(Collection<Token> tokens, Token anchor) {
+        Iterator<Token> i = tokens.iterator();
+        if (!i.hasNext())
+            return null;
+
+        List<Token> path = new ArrayList<Token>();
+        for (Token token = i.next(); token != null; token = token.getPredecessor()) {
+            path.add(token);
+            if (token == anchor)
+                break;
+        }
+        Collections.reverse(path);
+
+        // maps each visited token to the position on the path at which its chain joins the path
+        Map<Token, Integer> joins = new IdentityHashMap<Token, Integer>();
+        for (int j = 0; j < path.size(); j++)
+            joins.put(path.get(j), j);
+
+        int common = path.size() - 1;
+        List<Token> branch = new ArrayList<Token>();
+        while (i.hasNext()) {
+            Token token = i.next();
+            Integer join;
+            branch.clear();
+            while ((join = joins.get(token)) == null) {
+                branch.add(token);
+                token = token.getPredecessor();
+                if (token == null)
+                    return null;
+            }
+            for (Token t : branch)
+                joins.put(t, join);
+            common = Math.min(common, join);
+        }
+        return path.get(common);
+    }
+
+
     /**
      * Returns the frame number for this token. Note that for tokens that are associated with non-emitting states, the
      * frame number represents the next frame number.  For emitting states, the frame number represents the current
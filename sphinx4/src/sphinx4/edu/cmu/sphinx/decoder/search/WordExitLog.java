@@ -0,0 +1,247 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder.search;
+
+import edu.cmu.sphinx.linguist.dictionary.Word;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the word exits of a search in primitive arrays, so that a word lattice can be built without keeping the
+ * tokens of the search alive.
+ * <p/>
+ * A word exit is logged whenever a path of the search reaches a word state, whether it becomes the best path into the
+ * state or not. It holds the word, the frame, the exit it continues and the acoustic and language score of the path
+ * since that exit. All exits of the same word state in the same frame share a node, which becomes a node of the
+ * lattice, and each exit becomes an edge into it. An exit is always logged after the exit it continues, so the lattice
+ * is built in a single pass backwards over the log (see {@link
+ * edu.cmu.sphinx.result.Lattice#Lattice(edu.cmu.sphinx.result.Result)}).
+ * <p/>
+ * When the search commits words, the log is cut behind the exit of the commit point with {@link #cut(int)}, like the
+ * token chains, so that it does not grow without bound in endless streams.
+ */
+public class WordExitLog {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final List<Word> words = new ArrayList<Word>();
+    private final Map<Word, Integer> wordIds = new HashMap<Word, Integer>();
+
+    private int[] nodeWord = new int[INITIAL_CAPACITY];
+    private int[] nodeFrame = new int[INITIAL_CAPACITY];
+    private int[] nodeLastExit = new int[INITIAL_CAPACITY];
+    private int nodeCount;
+
+    private int[] exitNode = new int[INITIAL_CAPACITY];
+    private int[] exitPredecessor = new int[INITIAL_CAPACITY];
+    private int[] exitPrevious = new int[INITIAL_CAPACITY];
+    private float[] exitAcousticScore = new float[INITIAL_CAPACITY];
+    private float[] exitLanguageScore = new float[INITIAL_CAPACITY];
+    private int exitCount;
+
+
+    /**
+     * Logs a word exit.
+     *
+     * @param node          the node of the exit, or -1 if the word state has not been reached in this frame yet
+     * @param word          the word
+     * @param frame         the frame of the exit
+     * @param predecessor   the exit the path continues, or -1 if it starts at the initial state
+     * @param acousticScore the acoustic and insertion score of the path since the predecessor
+     * @param languageScore the language score of the path since the predecessor
+     * @return the index of the new exit
+     */
+    public int addExit(int node, Word word, int frame, int predecessor, float acousticScore, float languageScore) {
+        if (node < 0)
+            node = addNode(word, frame);
+
+        if (exitCount == exitNode.length) {
+            int capacity = exitCount * 2;
+            exitNode = Arrays.copyOf(exitNode, capacity);
+            exitPredecessor = Arrays.copyOf(exitPredecessor, capacity);
+            exitPrevious = Arrays.copyOf(exitPrevious, capacity);
+            exitAcousticScore = Arrays.copyOf(exitAcousticScore, capacity);
+            exitLanguageScore = Arrays.copyOf(exitLanguageScore, capacity);
+        }
+
+        exitNode[exitCount] = node;
+        exitPredecessor[exitCount] = predecessor;
+        exitPrevious[exitCount] = nodeLastExit[node];
+        exitAcousticScore[exitCount] = acousticScore;
+        exitLanguageScore[exitCount] = languageScore;
+        nodeLastExit[node] = exitCount;
+        return exitCount++;
+    }
+
+
+    private int addNode(Word word, int frame) {
+        Integer id = wordIds.get(word);
+        if (id == null) {
+            id = words.size();
+            words.add(word);
+            wordIds.put(word, id);
+        }
+
+        if (nodeCount == nodeWord.length) {
+            int capacity = nodeCount * 2;
+            nodeWord = Arrays.copyOf(nodeWord, capacity);
+            nodeFrame = Arrays.copyOf(nodeFrame, capacity);
+            nodeLastExit = Arrays.copyOf(nodeLastExit, capacity);
+        }
+
+        nodeWord[nodeCount] = id;
+        nodeFrame[nodeCount] = frame;
+        nodeLastExit[nodeCount] = -1;
+        return nodeCount++;
+    }
+
+
+    /**
+     * Cuts the log behind an exit, which becomes the first exit of the log and the root of the lattice. Only the exits
+     * which continue it are kept, the exits before it and those which lead into the history before it are dropped.
+     * The kept exits and their nodes are renumbered in their order, so the indices held by the tokens of the search
+     * have to be mapped to the new ones.
+     *
+     * @param root the exit behind which the log is cut
+     * @return the new indices of the exits, -1 for the dropped exits
+     */
+    public int[] cut(int root) {
+        int[] exitMap = new int[exitCount];
+        int[] nodeMap = new int[nodeCount];
+        Arrays.fill(exitMap, -1);
+        Arrays.fill(nodeMap, -1);
+
+        int newExitCount = 0;
+        for (int exit = root; exit < exitCount; exit++) {
+            int predecessor = exitPredecessor[exit];
+            if (exit == root || (predecessor >= root && exitMap[predecessor] >= 0)) {
+                exitMap[exit] = newExitCount++;
+                nodeMap[exitNode[exit]] = 0;
+            }
+        }
+
+        // the nodes keep their order, which the lattice relies on
+        int newNodeCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (nodeMap[node] >= 0) {
+                nodeMap[node] = newNodeCount;
+                nodeWord[newNodeCount] = nodeWord[node];
+                nodeFrame[newNodeCount] = nodeFrame[node];
+                nodeLastExit[newNodeCount] = -1;
+                newNodeCount++;
+            }
+        }
+
+        for (int exit = root; exit < exitCount; exit++) {
+            int newExit = exitMap[exit];
+            if (newExit < 0)
+                continue;
+            int node = nodeMap[exitNode[exit]];
+            exitNode[newExit] = node;
+            exitPredecessor[newExit] = exit == root ? -1 : exitMap[exitPredecessor[exit]];
+            exitPrevious[newExit] = nodeLastExit[node];
+            exitAcousticScore[newExit] = exitAcousticScore[exit];
+            exitLanguageScore[newExit] = exitLanguageScore[exit];
+            nodeLastExit[node] = newExit;
+        }
+
+        exitCount = newExitCount;
+        nodeCount = newNodeCount;
+        return exitMap;
+    }
+
+
+    /** @return the number of logged exits */
+    public int getExitCount() {
+        return exitCount;
+    }
+
+
+    /** @return the number of nodes, nodes are numbered in the order of their first exit */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+
+    /**
+     * @param node the node
+     * @return the word of the node
+     */
+    public Word getWord(int node) {
+        return words.get(nodeWord[node]);
+    }
+
+
+    /**
+     * @param node the node
+     * @return the frame at which the word of the node ends
+     */
+    public int getFrame(int node) {
+        return nodeFrame[node];
+    }
+
+
+    /**
+     * @param node the node
+     * @return the last exit logged for the node, the others are reached by {@link #getPreviousExit(int)}
+     */
+    public int getLastExit(int node) {
+        return nodeLastExit[node];
+    }
+
+
+    /**
+     * @param exit the exit
+     * @return the exit logged for the same node before the given one, or -1 if there is none
+     */
+    public int getPreviousExit(int exit) {
+        return exitPrevious[exit];
+    }
+
+
+    /**
+     * @param exit the exit
+     * @return the node of the exit
+     */
+    public int getNode(int exit) {
+        return exitNode[exit];
+    }
+
+
+    /**
+     * @param exit the exit
+     * @return the exit the path continues, or -1 if it starts at the initial state
+     */
+    public int getPredecessor(int exit) {
+        return exitPredecessor[exit];
+    }
+
+
+    /**
+     * @param exit the exit
+     * @return the acoustic and insertion score of the path since the predecessor
+     */
+    public float getAcousticScore(int exit) {
+        return exitAcousticScore[exit];
+    }
+
+
+    /**
+     * @param exit the exit
+     * @return the language score of the path since the predecessor
+     */
+    public float getLanguageScore(int exit) {
+        return exitLanguageScore[exit];
+    }
+}
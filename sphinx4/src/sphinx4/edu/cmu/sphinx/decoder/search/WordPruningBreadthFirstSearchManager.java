@@ -19,6 +19,7 @@ import edu.cmu.sphinx.decoder.scorer.AcousticScorer;
 import edu.cmu.sphinx.frontend.Data;
 import edu.cmu.sphinx.linguist.*;
 import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.result.WordResult;
 import edu.cmu.sphinx.util.LogMath;
 import edu.cmu.sphinx.util.StatisticsVariable;
 import edu.cmu.sphinx.util.Timer;
@@ -99,6 +100,30 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
     // TODO: this should be a more meaningful default e.g. the common 1E-80
     public final static String PROP_RELATIVE_BEAM_WIDTH = "relativeBeamWidth";
 
+    /**
+     * The property that defines the number of frames after which the words all active tokens agree on are committed.
+     * Committed words are reported with {@link Result#getCommittedWords()} and the token chains are cut behind them,
+     * so that the memory needed for endless streams stays bounded. The check is done at most once per call of
+     * <code>recognize</code>, so the decoder should recognize small blocks of frames. Committed words are no longer
+     * part of the token paths and lattices of later results, and the word exit log is cut as well. Setting the property
+     * to zero (the default) disables committing.
+     */
+    @S4Integer(defaultValue = 0)
+    public final static String PROP_COMMIT_INTERVAL = "commitInterval";
+
+    /**
+     * The property that, when set to <code>true</code>, makes the search log all word exits in a {@link WordExitLog}.
+     * The lattices of final results are then built from the log, so <code>buildWordLattice</code> can be switched off
+     * and no alternate hypotheses and intermediate tokens are kept. The initial state of the search graph has to be a
+     * word state, as with the <code>LexTreeLinguist</code>.
+     */
+    @S4Boolean(defaultValue = false)
+    public final static String PROP_LOG_WORD_EXITS = "logWordExits";
+
+    /** The property that defines the recorder of the per frame statistics of the search. */
+    @S4Component(type = SearchStatistics.class, mandatory = false)
+    public final static String PROP_STATISTICS = "statistics";
+
     // -----------------------------------
     // Configured Subcomponents
     // -----------------------------------
@@ -118,6 +143,9 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
     private float relativeBeamWidth;
     private float acousticLookaheadFrames;
     private int maxLatticeEdges = 100;
+    private int commitInterval;
+    private boolean logWordExits;
+    private SearchStatistics statistics;
 
     // -----------------------------------
     // Instrumentation
@@ -130,6 +158,8 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
     private StatisticsVariable tokensCreated;
     private long tokenSum;
     private int tokenCount;
+    private int frameTokensCreated;
+    private int frameWordTokens;
 
     // -----------------------------------
     // Working data
@@ -139,10 +169,13 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
     private List<Token> resultList; // the current set of results
     protected Map<Object, Token> bestTokenMap;
     private AlternateHypothesisManager loserManager;
+    private WordExitLog wordExitLog;
     private int numStateOrder;
     // private TokenTracker tokenTracker;
     // private TokenTypeTracker tokenTypeTracker;
     private boolean streamEnd;
+    private StableWordCommitter committer;
+    private int lastCommitFrame;
 
     /**
      * 
@@ -167,6 +200,38 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
                                            boolean checkStateOrder, boolean buildWordLattice,
                                            int maxLatticeEdges, float acousticLookaheadFrames,
                                            boolean keepAllTokens) {
+        this(logMath, linguist, pruner, scorer, activeListManager, showTokenCount, relativeWordBeamWidth,
+                growSkipInterval, checkStateOrder, buildWordLattice, maxLatticeEdges, acousticLookaheadFrames,
+                keepAllTokens, 0, false, null);
+    }
+
+    /**
+     *
+     * @param logMath
+     * @param linguist
+     * @param pruner
+     * @param scorer
+     * @param activeListManager
+     * @param showTokenCount
+     * @param relativeWordBeamWidth
+     * @param growSkipInterval
+     * @param checkStateOrder
+     * @param buildWordLattice
+     * @param maxLatticeEdges
+     * @param acousticLookaheadFrames
+     * @param keepAllTokens
+     * @param commitInterval
+     * @param logWordExits
+     * @param statistics
+     */
+    public WordPruningBreadthFirstSearchManager(LogMath logMath, Linguist linguist, Pruner pruner,
+                                           AcousticScorer scorer, ActiveListManager activeListManager,
+                                           boolean showTokenCount, double relativeWordBeamWidth,
+                                           int growSkipInterval,
+                                           boolean checkStateOrder, boolean buildWordLattice,
+                                           int maxLatticeEdges, float acousticLookaheadFrames,
+                                           boolean keepAllTokens, int commitInterval, boolean logWordExits,
+                                           SearchStatistics statistics) {
 
         this.logger = Logger.getLogger(getClass().getName());
         this.logMath = logMath;
@@ -181,6 +246,9 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
         this.maxLatticeEdges = maxLatticeEdges;
         this.acousticLookaheadFrames = acousticLookaheadFrames;
         this.keepAllTokens = keepAllTokens;
+        this.commitInterval = commitInterval;
+        this.logWordExits = logWordExits;
+        this.statistics = statistics;
 
         this.relativeBeamWidth = logMath.linearToLog(relativeWordBeamWidth);
     }
@@ -211,6 +279,9 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
         checkStateOrder = ps.getBoolean(PROP_CHECK_STATE_ORDER);
         maxLatticeEdges = ps.getInt(PROP_MAX_LATTICE_EDGES);
         acousticLookaheadFrames = ps.getFloat(PROP_ACOUSTIC_LOOKAHEAD_FRAMES);
+        commitInterval = ps.getInt(PROP_COMMIT_INTERVAL);
+        logWordExits = ps.getBoolean(PROP_LOG_WORD_EXITS);
+        statistics = (SearchStatistics) ps.getComponent(PROP_STATISTICS);
 
         relativeBeamWidth = logMath.linearToLog(ps.getDouble(PROP_RELATIVE_BEAM_WIDTH));
     }
@@ -241,6 +312,9 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
         } catch (IOException e) {
             throw new RuntimeException("Allocation of search manager resources failed", e);
         }
+        if (statistics != null) {
+            statistics.allocate();
+        }
     }
 
 
@@ -258,6 +332,9 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
         } catch (IOException e) {
             throw new RuntimeException("Deallocation of search manager resources failed", e);
         }
+        if (statistics != null) {
+            statistics.deallocate();
+        }
     }
 
 
@@ -288,8 +365,13 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
         }
         
         if (!streamEnd) {
-        	result = new Result(loserManager, activeList, resultList,
+            // the active tokens of the result are the frontier of the search, not the last list grown
+        	result = new Result(loserManager, activeListManager.getEmittingList(), resultList,
         					    currentFrameNumber, done, logMath);
+            result.setWordExitLog(wordExitLog);
+            if (!done && commitInterval > 0 && currentFrameNumber - lastCommitFrame >= commitInterval) {
+                result.setCommittedWords(commitStableWords());
+            }
         }
 
         // tokenTypeTracker.show();
@@ -302,20 +384,78 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
     private boolean recognize() {
 
         activeList = activeListManager.getEmittingList();
+        long startTime = statistics != null ? System.nanoTime() : 0;
         boolean more = scoreTokens();
 
         if (more) {
+            int scoredTokens = activeList.size();
+            long scoreTime = statistics != null ? System.nanoTime() : 0;
             pruneBranches();
+            ActiveList prunedList = activeList;
+            long pruneTime = statistics != null ? System.nanoTime() : 0;
             currentFrameNumber++;
+            frameTokensCreated = 0;
+            frameWordTokens = 0;
             if (growSkipInterval == 0 || (currentFrameNumber % growSkipInterval) != 0) {            	
                 clearCollectors();
                 growEmittingBranches();
                 growNonEmittingBranches();
             }
+            if (statistics != null) {
+                long growTime = System.nanoTime();
+                statistics.record(currentFrameNumber, prunedList.size(), scoredTokens, frameTokensCreated,
+                        frameWordTokens, prunedList.getBestScore(), prunedList.getBeamThreshold(),
+                        scoreTime - startTime, pruneTime - scoreTime, growTime - pruneTime);
+            }
         }
         return !more;
     }
 
+    /**
+     * Commits the words before the latest common ancestor of all active and final tokens and cuts the token chains
+     * behind the ancestor.
+     *
+     * @return the newly committed words
+     */
+    private List<WordResult> commitStableWords() {
+        lastCommitFrame = currentFrameNumber;
+
+        List<Token> tokens = new ArrayList<Token>(activeListManager.getEmittingList().getTokens());
+        tokens.addAll(resultList);
+        Token commitPoint = committer.getCommitPoint();
+        List<WordResult> words = committer.commit(tokens, loserManager);
+        if (wordExitLog != null && committer.getCommitPoint() != commitPoint) {
+            cutWordExitLog(tokens, committer.getCommitPoint());
+        }
+        return words;
+    }
+
+
+    /**
+     * Cuts the word exit log behind the exit of the commit point and maps the exits of the tokens from the commit point
+     * to the given tokens to their new indices.
+     *
+     * @param tokens      the frontier of the search
+     * @param commitPoint the token behind which the chains were cut
+     */
+    private void cutWordExitLog(List<Token> tokens, Token commitPoint) {
+        if (commitPoint.getWordExit() < 0) {
+            return;
+        }
+        int[] exits = wordExitLog.cut(commitPoint.getWordExit());
+        Set<Token> visited = new HashSet<Token>();
+        for (Token token : tokens) {
+            for (; token != null && visited.add(token); token = token.getPredecessor()) {
+                if (token.getWordExit() >= 0) {
+                    int exit = exits[token.getWordExit()];
+                    assert exit >= 0;
+                    token.setWordExit(exit, token.getExitAcousticScore(), token.getExitLanguageScore());
+                }
+            }
+        }
+    }
+
+
     /**
      * Clears lists and maps before next expansion stage
      */
@@ -353,6 +493,8 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
         SearchGraph searchGraph = linguist.getSearchGraph();
         currentFrameNumber = 0;
         curTokensScored.value = 0;
+        committer = new StableWordCommitter(logMath);
+        lastCommitFrame = 0;
         numStateOrder = searchGraph.getNumStateOrder();
         activeListManager.setNumStateOrder(numStateOrder);
         if (buildWordLattice) {
@@ -360,9 +502,18 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
         }
 
         SearchState state = searchGraph.getInitialState();
+        Token initialToken = new Token(state, currentFrameNumber);
+        wordExitLog = null;
+        if (logWordExits) {
+            wordExitLog = new WordExitLog();
+            if (initialToken.isWord()) {
+                initialToken.setWordExit(wordExitLog.addExit(-1, initialToken.getWord(), currentFrameNumber, -1,
+                        0.0f, 0.0f), 0.0f, 0.0f);
+            }
+        }
 
         activeList = activeListManager.getEmittingList();
-        activeList.add(new Token(state, currentFrameNumber));
+        activeList.add(initialToken);
         
         clearCollectors();
         
@@ -675,6 +826,13 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
                         arc.getLanguageProbability(), 
                         currentFrameNumber);
                 tokensCreated.value++;
+                frameTokensCreated++;
+                if (newBestToken.isWord()) {
+                    frameWordTokens++;
+                }
+                if (wordExitLog != null) {
+                    logWordExit(token, arc, newBestToken, bestToken);
+                }
 
                 setBestToken(newBestToken, nextState);
                 if (firstToken) {
@@ -698,11 +856,66 @@ public class WordPruningBreadthFirstSearchManager extends TokenSearchManager {
                                 predecessor);
                     }
                 }
+                if (wordExitLog != null && nextState instanceof WordSearchState) {
+                    logWordExit(token, arc, null, bestToken);
+                }
             }
         }
     }
 
 
+    /**
+     * Returns the predecessor for the successors of the token. When the word exits are logged, a token which stands in
+     * for the path of the given token carries the word exit of the given token, so that the chains can be remapped when
+     * the log is cut.
+     *
+     * @param token the token to find the predecessor for
+     * @return the predecessor
+     */
+    @Override
+    protected Token getResultListPredecessor(Token token) {
+        Token predecessor = super.getResultListPredecessor(token);
+        if (wordExitLog != null && predecessor != null && predecessor.getWordExit() < 0) {
+            predecessor.setWordExit(token.getWordExit(), 0.0f, 0.0f);
+        }
+        return predecessor;
+    }
+
+
+    /**
+     * Carries the scores since the last word exit over to a new token and logs a word exit if the arc enters a word
+     * state.
+     *
+     * @param token     the token the arc leaves
+     * @param arc       the arc
+     * @param newToken  the token created for the arc, or null if the arc lost against the best token of its state
+     * @param bestToken the best token of the state of the arc before, or null if there is none in this frame
+     */
+    private void logWordExit(Token token, SearchStateArc arc, Token newToken, Token bestToken) {
+        int exit = token.getWordExit();
+        float acousticScore = 0.0f;
+        float languageScore = 0.0f;
+        if (!token.isWord()) {
+            acousticScore = token.getExitAcousticScore() + token.getAcousticScore() + token.getInsertionScore();
+            languageScore = token.getExitLanguageScore() + token.getLanguageScore();
+        }
+
+        SearchState state = arc.getState();
+        if (state instanceof WordSearchState) {
+            int node = bestToken == null ? -1 : wordExitLog.getNode(bestToken.getWordExit());
+            exit = wordExitLog.addExit(node, ((WordSearchState) state).getPronunciation().getWord(),
+                    currentFrameNumber, exit, acousticScore + arc.getInsertionProbability(),
+                    languageScore + arc.getLanguageProbability());
+            acousticScore = 0.0f;
+            languageScore = 0.0f;
+        }
+
+        if (newToken != null) {
+            newToken.setWordExit(exit, acousticScore, languageScore);
+        }
+    }
+
+
     /**
      * Determines whether or not we've visited the state associated with this token since the previous frame.
      *
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend.endpoint;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.linguist.acoustic.HMM;
+import edu.cmu.sphinx.linguist.acoustic.HMMPosition;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Loader;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Senone;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneHMM;
+import edu.cmu.sphinx.util.props.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Classifies raw audio blocks as speech or non-speech using a small acoustic model. Unlike the feature based models
+ * used for decoding, the model is trained on cheap time-domain features which are computed directly from the audio
+ * block, so that the classification can be done before windowing and the FFT. The feature vector of a block consists
+ * of
+ * <ul>
+ * <li>the natural logarithm of the mean energy</li>
+ * <li>the zero crossing rate</li>
+ * <li>the normalized autocorrelation coefficients of lag 1, 2, ...</li>
+ * </ul>
+ * where the number of autocorrelation coefficients is given by the dimension of the model.
+ * <p/>
+ * The model is loaded through any {@link Loader}. The senones of context independent filler units are treated as
+ * non-speech, all other context independent senones as speech. A block is classified as speech if the best speech
+ * senone outscores the best non-speech senone by more than {@link #PROP_THRESHOLD}.
+ *
+ * @see SpeechClassifier
+ * @see SpeechGate
+ */
+public class GaussianSpeechClassifier extends AbstractVoiceActivityDetector {
+
+    /** The property for the loader of the speech/non-speech model. */
+    @S4Component(type = Loader.class)
+    public final static String PROP_LOADER = "loader";
+
+    /** The property for the minimum log likelihood ratio (in log math base) of speech against non-speech. */
+    @S4Double(defaultValue = 0)
+    public final static String PROP_THRESHOLD = "threshold";
+
+    private Loader loader;
+    private double threshold;
+
+    private Senone[] speechSenones;
+    private Senone[] nonSpeechSenones;
+    private float[] features;
+    private boolean isSpeech;
+
+
+    public GaussianSpeechClassifier(Loader loader, double threshold) {
+        initLogger();
+        this.loader = loader;
+        this.threshold = threshold;
+    }
+
+
+    public GaussianSpeechClassifier() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        loader = (Loader) ps.getComponent(PROP_LOADER);
+        threshold = ps.getDouble(PROP_THRESHOLD);
+    }
+
+
+    @Override
+    public void initialize() {
+        super.initialize();
+        try {
+            loader.load();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        List<Senone> speech = new ArrayList<Senone>();
+        List<Senone> nonSpeech = new ArrayList<Senone>();
+        for (HMM hmm : loader.getHMMManager()) {
+            if (hmm.getPosition() != HMMPosition.UNDEFINED || hmm.getUnit().isContextDependent())
+                continue;
+            List<Senone> target = hmm.getUnit().isFiller() ? nonSpeech : speech;
+            for (Senone senone : ((SenoneHMM) hmm).getSenoneSequence().getSenones())
+                target.add(senone);
+        }
+
+        if (speech.isEmpty() || nonSpeech.isEmpty())
+            throw new RuntimeException("model needs filler and non-filler context independent units");
+
+        speechSenones = speech.toArray(new Senone[speech.size()]);
+        nonSpeechSenones = nonSpeech.toArray(new Senone[nonSpeech.size()]);
+
+        int dimension = loader.getMeansPool().get(0).length;
+        if (dimension < 2)
+            throw new RuntimeException("model dimension must be at least 2");
+        features = new float[dimension];
+    }
+
+
+    /**
+     * Returns the next Data object. Audio blocks are returned as {@link SpeechClassifiedData}.
+     *
+     * @return the next Data object, or null if none available
+     * @throws DataProcessingException if a data processing error occurs
+     */
+    @Override
+    public Data getData() throws DataProcessingException {
+        Data audio = getPredecessor().getData();
+        if (audio instanceof DoubleData) {
+            getTimer().start();
+            audio = classify((DoubleData) audio);
+            getTimer().stop();
+        }
+        return audio;
+    }
+
+
+    /**
+     * Classifies the given audio block.
+     *
+     * @param audio the audio block
+     * @return the labeled block
+     */
+    protected SpeechClassifiedData classify(DoubleData audio) {
+        computeFeatures(audio.getValues(), features);
+        FloatData feature = new FloatData(features, audio.getSampleRate(), audio.getFirstSampleNumber());
+
+        float speechScore = bestScore(speechSenones, feature);
+        float nonSpeechScore = bestScore(nonSpeechSenones, feature);
+        isSpeech = speechScore - nonSpeechScore > threshold;
+
+        if (logger.isLoggable(Level.FINEST))
+            logger.finest("speech: " + speechScore + ", non-speech: " + nonSpeechScore + (isSpeech ? " *" : ""));
+
+        return new SpeechClassifiedData(audio, isSpeech);
+    }
+
+
+    /**
+     * Computes the time-domain features of the given samples.
+     *
+     * @param samples  the audio samples
+     * @param features the array to store the features into, its length gives the number of features
+     */
+    public static void computeFeatures(double[] samples, float[] features) {
+        double energy = 0;
+        int crossings = 0;
+        for (int i = 0; i < samples.length; i++) {
+            energy += samples[i] * samples[i];
+            if (i > 0 && (samples[i] >= 0) != (samples[i - 1] >= 0))
+                crossings++;
+        }
+
+        int n = Math.max(samples.length, 1);
+        features[0] = (float) Math.log(energy / n + 1);
+        features[1] = (float) crossings / n;
+
+        for (int lag = 1; lag < features.length - 1; lag++) {
+            double sum = 0;
+            for (int i = lag; i < samples.length; i++)
+                sum += samples[i] * samples[i - lag];
+            features[lag + 1] = energy > 0 ? (float) (sum / energy) : 0;
+        }
+    }
+
+
+    private static float bestScore(Senone[] senones, Data feature) {
+        float best = -Float.MAX_VALUE;
+        for (Senone senone : senones)
+            best = Math.max(best, senone.getScore(feature));
+        return best;
+    }
+
+
+    @Override
+    public boolean isSpeech() {
+        return isSpeech;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend.endpoint;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.util.props.PropertyException;
+import edu.cmu.sphinx.util.props.PropertySheet;
+import edu.cmu.sphinx.util.props.S4Integer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Drops non-speech audio right after the voice activity detection, so that it is never windowed, transformed or
+ * scored. The SpeechGate is a single-pass replacement of the {@link SpeechMarker} and {@link NonSpeechDataFilter} pair
+ * meant to be placed directly after an {@link AbstractVoiceActivityDetector} such as the {@link SpeechClassifier} or
+ * the {@link GaussianSpeechClassifier}, i.e. before the windower:
+ * <pre>
+ * audioFileDataSource - dataBlocker - speechClassifier - speechGate - preemphasizer - windower - ...
+ * </pre>
+ * The gate opens once {@link #PROP_START_SPEECH} milliseconds of consecutive speech were seen. It then emits a {@link
+ * SpeechStartSignal} followed by up to {@link #PROP_SPEECH_LEADER} milliseconds of audio preceding the speech. The gate
+ * closes with a {@link SpeechEndSignal} after {@link #PROP_HANGOVER} milliseconds of non-speech, all of which is
+ * passed on. Everything else is discarded immediately.
+ * <p/>
+ * In contrast to the SpeechMarker, the end of speech is detected without reading ahead, so the memory held by the
+ * gate is bounded by the leader and the start speech time.
+ */
+public class SpeechGate extends BaseDataProcessor {
+
+    /** The property for the minimum amount of speech (in milliseconds) which opens the gate. */
+    @S4Integer(defaultValue = 200)
+    public static final String PROP_START_SPEECH = "startSpeech";
+
+    /** The property for the amount of audio (in milliseconds) before the speech start which is passed on. */
+    @S4Integer(defaultValue = 50)
+    public static final String PROP_SPEECH_LEADER = "speechLeader";
+
+    /** The property for the amount of non-speech (in milliseconds) after which the gate closes. */
+    @S4Integer(defaultValue = 300)
+    public static final String PROP_HANGOVER = "hangover";
+
+    private int startSpeechTime;
+    private int speechLeader;
+    private int hangover;
+
+    private final Deque<SpeechClassifiedData> pending = new ArrayDeque<SpeechClassifiedData>();
+    private final Deque<Data> outputQueue = new ArrayDeque<Data>();
+    private boolean inSpeech;
+    private int pendingTime;
+    private int speechTime;
+    private int silenceTime;
+
+
+    public SpeechGate(int startSpeechTime, int speechLeader, int hangover) {
+        initLogger();
+        this.startSpeechTime = startSpeechTime;
+        this.speechLeader = speechLeader;
+        this.hangover = hangover;
+    }
+
+
+    public SpeechGate() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        startSpeechTime = ps.getInt(PROP_START_SPEECH);
+        speechLeader = ps.getInt(PROP_SPEECH_LEADER);
+        hangover = ps.getInt(PROP_HANGOVER);
+    }
+
+
+    @Override
+    public void initialize() {
+        super.initialize();
+        reset();
+    }
+
+
+    private void reset() {
+        inSpeech = false;
+        pending.clear();
+        outputQueue.clear();
+        pendingTime = 0;
+        speechTime = 0;
+        silenceTime = 0;
+    }
+
+
+    /**
+     * Returns the next Data object which passes the gate.
+     *
+     * @return the next Data object, or null if none available
+     * @throws DataProcessingException if a data processing error occurs
+     */
+    @Override
+    public Data getData() throws DataProcessingException {
+        while (outputQueue.isEmpty()) {
+            Data data = getPredecessor().getData();
+            if (data == null)
+                return null;
+
+            getTimer().start();
+            if (data instanceof SpeechClassifiedData) {
+                if (inSpeech)
+                    handleSpeech((SpeechClassifiedData) data);
+                else
+                    handleNonSpeech((SpeechClassifiedData) data);
+            } else if (data instanceof DataStartSignal) {
+                reset();
+                DataStartSignal.tagAsVadStream((DataStartSignal) data);
+                outputQueue.add(data);
+            } else if (data instanceof DataEndSignal) {
+                if (inSpeech)
+                    outputQueue.add(new SpeechEndSignal(((Signal) data).getTime()));
+                reset();
+                outputQueue.add(data);
+            } else {
+                outputQueue.add(data);
+            }
+            getTimer().stop();
+        }
+        return outputQueue.poll();
+    }
+
+
+    /** Handles a block while the gate is closed. */
+    private void handleNonSpeech(SpeechClassifiedData data) {
+        int time = getAudioTime(data);
+        pending.add(data);
+        pendingTime += time;
+
+        if (data.isSpeech()) {
+            speechTime += time;
+            if (speechTime >= startSpeechTime) {
+                outputQueue.add(new SpeechStartSignal(pending.peek().getCollectTime()));
+                for (SpeechClassifiedData block : pending)
+                    outputQueue.add(block.getDoubleData());
+                pending.clear();
+                pendingTime = 0;
+                speechTime = 0;
+                silenceTime = 0;
+                inSpeech = true;
+            }
+        } else {
+            speechTime = 0;
+            // keep only the leader before the next speech candidate
+            while (!pending.isEmpty() && pendingTime - getAudioTime(pending.peek()) >= speechLeader)
+                pendingTime -= getAudioTime(pending.poll());
+        }
+    }
+
+
+    /** Handles a block while the gate is open. */
+    private void handleSpeech(SpeechClassifiedData data) {
+        outputQueue.add(data.getDoubleData());
+        if (data.isSpeech()) {
+            silenceTime = 0;
+        } else {
+            silenceTime += getAudioTime(data);
+            if (silenceTime >= hangover) {
+                outputQueue.add(new SpeechEndSignal(data.getCollectTime()));
+                inSpeech = false;
+                silenceTime = 0;
+            }
+        }
+    }
+
+
+    private static int getAudioTime(SpeechClassifiedData audio) {
+        return (int) (audio.getValues().length * 1000.0f / audio.getSampleRate());
+    }
+
+
+    /** @return <code>true</code> if the gate is currently open */
+    public boolean inSpeech() {
+        return inSpeech;
+    }
+}
@@ -21,6 +21,9 @@ import java.util.*;
  * Abstract base class for windowed feature extractors like DeltasFeatureExtractor, ConcatFeatureExtractor
  * or S3FeatureExtractor. The main purpose of this it to collect window size cepstra frames in a buffer
  * and let the extractor compute the feature frame with them.
+ * <p/>
+ * The cepstra are copied into a ring of primitive arrays, which is allocated once and reused for every frame, so the
+ * extractor does not hold on to the incoming Data objects.
  */
 public abstract class AbstractFeatureExtractor extends BaseDataProcessor {
 
@@ -30,13 +33,17 @@ public abstract class AbstractFeatureExtractor extends BaseDataProcessor {
 
     private int bufferPosition;
     private Signal pendingSignal;
-    private LinkedList<Data> outputQueue;
+    private Deque<Data> outputQueue;
 
     protected int cepstraBufferEdge;
     protected int window;
     protected int currentPosition;
     protected int cepstraBufferSize;
-    protected DoubleData[] cepstraBuffer;
+    /** The buffered cepstra, one row per frame. */
+    protected double[][] cepstraBuffer;
+    /** The first sample numbers of the buffered cepstra. */
+    protected long[] firstSampleNumbers;
+    protected int sampleRate;
 
     /**
      * 
@@ -71,9 +78,10 @@ public abstract class AbstractFeatureExtractor extends BaseDataProcessor {
     public void initialize() {
         super.initialize();
         cepstraBufferSize = 256;
-        cepstraBuffer = new DoubleData[cepstraBufferSize];
+        cepstraBuffer = new double[cepstraBufferSize][];
+        firstSampleNumbers = new long[cepstraBufferSize];
         cepstraBufferEdge = cepstraBufferSize - (window * 2 + 2);
-        outputQueue = new LinkedList<Data>();
+        outputQueue = new ArrayDeque<Data>();
         reset();
     }
 
@@ -116,7 +124,7 @@ public abstract class AbstractFeatureExtractor extends BaseDataProcessor {
                 }
             }
         }
-        return outputQueue.isEmpty() ? null : outputQueue.removeFirst();
+        return outputQueue.poll();
     }
 
 
@@ -151,9 +159,10 @@ public abstract class AbstractFeatureExtractor extends BaseDataProcessor {
             // into window+1 frames, and then read the next "window" number
             // of frames. This will allow us to compute the delta-
             // double-delta of the first frame.
-            Arrays.fill(cepstraBuffer, 0, window + 1, cepstrum);
-            bufferPosition = window + 1;
-            bufferPosition %= cepstraBufferSize;
+            bufferPosition = 0;
+            for (int i = 0; i <= window; i++) {
+                addCepstrum((DoubleData) cepstrum);
+            }
             currentPosition = window;
             currentPosition %= cepstraBufferSize;
             int numberFeatures = 1;
@@ -181,13 +190,21 @@ public abstract class AbstractFeatureExtractor extends BaseDataProcessor {
 
 
     /**
-     * Adds the given DoubleData object to the cepstraBuffer.
+     * Copies the values of the given DoubleData object into the cepstraBuffer.
      *
      * @param cepstrum the DoubleData object to add
      */
     private void addCepstrum(DoubleData cepstrum) {
-        cepstraBuffer[bufferPosition++] = cepstrum;
-        bufferPosition %= cepstraBufferSize;
+        double[] values = cepstrum.getValues();
+        double[] row = cepstraBuffer[bufferPosition];
+        if (row == null || row.length != values.length) {
+            row = new double[values.length];
+            cepstraBuffer[bufferPosition] = row;
+        }
+        System.arraycopy(values, 0, row, 0, values.length);
+        firstSampleNumbers[bufferPosition] = cepstrum.getFirstSampleNumber();
+        sampleRate = cepstrum.getSampleRate();
+        bufferPosition = (bufferPosition + 1) % cepstraBufferSize;
     }
 
 
@@ -197,16 +214,24 @@ public abstract class AbstractFeatureExtractor extends BaseDataProcessor {
      * @return the number of replicated Cepstrum
      */
     private int replicateLastCepstrum() {
-        DoubleData last;
+        int last;
         if (bufferPosition > 0) {
-            last = cepstraBuffer[bufferPosition - 1];
+            last = bufferPosition - 1;
         } else if (bufferPosition == 0) {
-            last = cepstraBuffer[cepstraBuffer.length - 1];
+            last = cepstraBufferSize - 1;
         } else {
             throw new Error("BufferPosition < 0");
         }
+        double[] values = cepstraBuffer[last];
         for (int i = 0; i < window; i++) {
-            addCepstrum(last);
+            double[] row = cepstraBuffer[bufferPosition];
+            if (row == null || row.length != values.length) {
+                row = new double[values.length];
+                cepstraBuffer[bufferPosition] = row;
+            }
+            System.arraycopy(values, 0, row, 0, values.length);
+            firstSampleNumbers[bufferPosition] = firstSampleNumbers[last];
+            bufferPosition = (bufferPosition + 1) % cepstraBufferSize;
         }
         return window;
     }
@@ -238,6 +263,30 @@ public abstract class AbstractFeatureExtractor extends BaseDataProcessor {
     }
 
 
+    /**
+     * Returns the buffered cepstrum at the given offset from the current position.
+     *
+     * @param offset the offset relative to the current cepstrum, negative for past frames
+     * @return the cepstrum values, which must not be modified
+     */
+    protected double[] getCepstrum(int offset) {
+        return cepstraBuffer[(currentPosition + offset + cepstraBufferSize) % cepstraBufferSize];
+    }
+
+
+    /**
+     * Wraps the feature computed for the current cepstrum and advances the current position.
+     *
+     * @param feature the feature values
+     * @return the feature Data
+     */
+    protected Data advance(float[] feature) {
+        Data data = new FloatData(feature, sampleRate, firstSampleNumbers[currentPosition]);
+        currentPosition = (currentPosition + 1) % cepstraBufferSize;
+        return data;
+    }
+
+
     /**
      * Computes the next feature. Advances the pointers as well.
      *
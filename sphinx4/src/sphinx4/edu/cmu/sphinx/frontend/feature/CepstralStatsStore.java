@@ -0,0 +1,163 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend.feature;
+
+import edu.cmu.sphinx.util.props.ConfigurableAdapter;
+import edu.cmu.sphinx.util.props.PropertyException;
+import edu.cmu.sphinx.util.props.PropertySheet;
+import edu.cmu.sphinx.util.props.S4String;
+
+import java.io.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Keeps the running cepstral mean and variance of channels or speakers, so that a new stream of a known channel can
+ * start normalization from the statistics of the previous one. The statistics are kept in memory and, if {@link
+ * #PROP_DIRECTORY} is set, are persisted in one small text file per key, which is read back lazily on the first
+ * access after a restart.
+ * <p/>
+ * The store may be shared by several recognizers.
+ *
+ * @see LiveCMVN
+ */
+public class CepstralStatsStore extends ConfigurableAdapter {
+
+    /** The property for the directory holding the persisted statistics. If not set, nothing is persisted. */
+    @S4String(mandatory = false)
+    public static final String PROP_DIRECTORY = "directory";
+
+    private static final String SUFFIX = ".cmvn";
+
+    private File directory;
+    private final Map<String, double[][]> stats = new ConcurrentHashMap<String, double[][]>();
+
+
+    public CepstralStatsStore(String directory) {
+        initLogger();
+        init(directory);
+    }
+
+
+    public CepstralStatsStore() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        init(ps.getString(PROP_DIRECTORY));
+    }
+
+
+    private void init(String directory) {
+        this.directory = directory == null ? null : new File(directory);
+        if (this.directory != null && !this.directory.isDirectory() && !this.directory.mkdirs())
+            throw new IllegalArgumentException("can't create directory " + directory);
+    }
+
+
+    /**
+     * Returns the statistics stored for the given key.
+     *
+     * @param key the channel or speaker id
+     * @return an array containing the mean and the variance, or <code>null</code> if nothing is known about the key
+     */
+    public double[][] get(String key) {
+        double[][] value = stats.get(key);
+        if (value == null && directory != null) {
+            value = load(key);
+            if (value != null)
+                stats.put(key, value);
+        }
+        return value;
+    }
+
+
+    /**
+     * Stores the statistics of the given key. The arrays are copied.
+     *
+     * @param key      the channel or speaker id
+     * @param mean     the cepstral mean
+     * @param variance the cepstral variance
+     */
+    public void put(String key, double[] mean, double[] variance) {
+        double[][] value = {mean.clone(), variance.clone()};
+        stats.put(key, value);
+        if (directory != null)
+            save(key, value);
+    }
+
+
+    private File getFile(String key) {
+        // keys are arbitrary ids, so avoid separators in the file name
+        return new File(directory, key.replaceAll("[^\\w.-]", "_") + SUFFIX);
+    }
+
+
+    private double[][] load(String key) {
+        File file = getFile(key);
+        if (!file.exists())
+            return null;
+
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                double[] mean = parse(reader.readLine());
+                double[] variance = parse(reader.readLine());
+                if (mean.length != variance.length)
+                    throw new IOException("dimensions don't match");
+                return new double[][]{mean, variance};
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "can't read statistics from " + file, e);
+            return null;
+        }
+    }
+
+
+    private void save(String key, double[][] value) {
+        File file = getFile(key);
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            PrintWriter writer = new PrintWriter(new FileWriter(tmp));
+            try {
+                for (double[] values : value) {
+                    for (int i = 0; i < values.length; i++)
+                        writer.print((i > 0 ? " " : "") + values[i]);
+                    writer.println();
+                }
+            } finally {
+                writer.close();
+            }
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file))
+                    throw new IOException("can't rename " + tmp);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "can't write statistics to " + file, e);
+        }
+    }
+
+
+    private static double[] parse(String line) throws IOException {
+        if (line == null)
+            throw new EOFException();
+        String[] tokens = line.trim().split("\\s+");
+        double[] values = new double[tokens.length];
+        for (int i = 0; i < tokens.length; i++)
+            values[i] = Double.parseDouble(tokens[i]);
+        return values;
+    }
+}
@@ -41,20 +41,13 @@ public class ConcatFeatureExtractor extends AbstractFeatureExtractor {
      */
     @Override
     protected Data computeNextFeature() {
-        DoubleData currentCepstrum = cepstraBuffer[currentPosition];
-        float[] feature = new float[(window * 2 + 1) * currentCepstrum.getValues().length];
+        float[] feature = new float[(window * 2 + 1) * getCepstrum(0).length];
         int j = 0;
         for (int k = -window; k <= window; k++) {
-        	int position = (currentPosition + k + cepstraBufferSize) % cepstraBufferSize;
-        	double[] buffer = cepstraBuffer[position].getValues();
-            for (double val : buffer) {
+            for (double val : getCepstrum(k)) {
                 feature[j++] = (float)val;
             }
         }
-        currentPosition = (currentPosition + 1) % cepstraBufferSize ;
-
-        return (new FloatData(feature,
-                currentCepstrum.getSampleRate(),
-                currentCepstrum.getFirstSampleNumber()));
+        return advance(feature);
     }
 }
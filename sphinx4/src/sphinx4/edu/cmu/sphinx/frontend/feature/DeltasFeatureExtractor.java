@@ -56,32 +56,20 @@ public class DeltasFeatureExtractor extends AbstractFeatureExtractor {
      */
     @Override
     protected Data computeNextFeature() {
-
-    	int jp1 = (currentPosition - 1 + cepstraBufferSize) % cepstraBufferSize;
-        int jp2 = (currentPosition - 2 + cepstraBufferSize) % cepstraBufferSize;
-        int jp3 = (currentPosition - 3 + cepstraBufferSize) % cepstraBufferSize;
-        int jf1 = (currentPosition + 1) % cepstraBufferSize;
-        int jf2 = (currentPosition + 2) % cepstraBufferSize;
-        int jf3 = (currentPosition + 3) % cepstraBufferSize;
-        
-    	DoubleData currentCepstrum = cepstraBuffer[currentPosition];
-        double[] mfc3f = cepstraBuffer[jf3].getValues();
-        double[] mfc2f = cepstraBuffer[jf2].getValues();
-        double[] mfc1f = cepstraBuffer[jf1].getValues();
-        double[] current = currentCepstrum.getValues();
-        double[] mfc1p = cepstraBuffer[jp1].getValues();
-        double[] mfc2p = cepstraBuffer[jp2].getValues();
-        double[] mfc3p = cepstraBuffer[jp3].getValues();
+        double[] mfc3f = getCepstrum(3);
+        double[] mfc2f = getCepstrum(2);
+        double[] mfc1f = getCepstrum(1);
+        double[] current = getCepstrum(0);
+        double[] mfc1p = getCepstrum(-1);
+        double[] mfc2p = getCepstrum(-2);
+        double[] mfc3p = getCepstrum(-3);
         float[] feature = new float[current.length * 3];
 
-        currentPosition = (currentPosition + 1) % cepstraBufferSize;
-
         // CEP; copy all the cepstrum data
         int j = 0;
         for (double val : current) {
             feature[j++] = (float)val;
         }
-        // System.arraycopy(current, 0, feature, 0, j);
         // DCEP: mfc[2] - mfc[-2]
         for (int k = 0; k < mfc2f.length; k++) {
             feature[j++] = (float) (mfc2f[k] - mfc2p[k]);
@@ -90,8 +78,6 @@ public class DeltasFeatureExtractor extends AbstractFeatureExtractor {
         for (int k = 0; k < mfc3f.length; k++) {
             feature[j++] = (float) ((mfc3f[k] - mfc1p[k]) - (mfc1f[k] - mfc3p[k]));
         }
-        return (new FloatData(feature,
-                currentCepstrum.getSampleRate(),
-                currentCepstrum.getFirstSampleNumber()));
+        return advance(feature);
     }
 }
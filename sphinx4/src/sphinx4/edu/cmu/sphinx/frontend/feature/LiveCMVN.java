@@ -0,0 +1,185 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend.feature;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.util.props.*;
+
+import java.util.Arrays;
+
+/**
+ * Normalizes the cepstral mean and, optionally, the variance on the fly like the {@link LiveCMN}, but starts each
+ * stream from the statistics of the previous stream of the same channel or speaker.
+ * <p/>
+ * The statistics are updated after every frame with an exponential decay:
+ * <pre>
+ * mean     = mean + (x - mean) / cmnWindow
+ * variance = variance + ((x - mean)^2 - variance) / cmnWindow
+ * </pre>
+ * so that no periodic rescaling of sums is needed. Each frame is normalized with the statistics estimated from the
+ * frames preceding it.
+ * <p/>
+ * The channel of a stream is taken from the {@link #CHANNEL_ID} property of its {@link DataStartSignal}, or, if not
+ * set there, from {@link #setChannelId(String)}. At the end of each stream the statistics are written to the {@link
+ * CepstralStatsStore}, if one is configured. Streams of unknown channels start from {@link #PROP_INITIAL_MEAN} and a
+ * unit variance.
+ *
+ * @see LiveCMN
+ * @see CepstralStatsStore
+ */
+public class LiveCMVN extends BaseDataProcessor {
+
+    /** The name of the DataStartSignal property holding the channel or speaker id of the stream. */
+    public static final String CHANNEL_ID = "channelId";
+
+    private static final double MIN_VARIANCE = 1e-10;
+
+    /** The property for the initial cepstral mean. This is a front-end dependent magic number. */
+    @S4Double(defaultValue = 12.0)
+    public static final String PROP_INITIAL_MEAN = "initialMean";
+
+    /** The property for the number of frames over which the statistics decay. */
+    @S4Integer(defaultValue = 100)
+    public static final String PROP_CMN_WINDOW = "cmnWindow";
+
+    /** The property specifying whether the variance is normalized as well. */
+    @S4Boolean(defaultValue = false)
+    public static final String PROP_NORMALIZE_VARIANCE = "normalizeVariance";
+
+    /** The property for the store of per-channel statistics. */
+    @S4Component(type = CepstralStatsStore.class, mandatory = false)
+    public static final String PROP_STORE = "store";
+
+    private double initialMean;
+    private int cmnWindow;
+    private boolean normalizeVariance;
+    private CepstralStatsStore store;
+
+    private String defaultChannelId;
+    private String channelId;
+    private double[] mean;
+    private double[] variance;
+    private long numberFrame;
+
+
+    public LiveCMVN(double initialMean, int cmnWindow, boolean normalizeVariance, CepstralStatsStore store) {
+        initLogger();
+        this.initialMean = initialMean;
+        this.cmnWindow = cmnWindow;
+        this.normalizeVariance = normalizeVariance;
+        this.store = store;
+    }
+
+
+    public LiveCMVN() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        initialMean = ps.getDouble(PROP_INITIAL_MEAN);
+        cmnWindow = ps.getInt(PROP_CMN_WINDOW);
+        normalizeVariance = ps.getBoolean(PROP_NORMALIZE_VARIANCE);
+        store = (CepstralStatsStore) ps.getComponent(PROP_STORE);
+    }
+
+
+    /**
+     * Sets the channel or speaker id used for streams whose DataStartSignal doesn't carry one.
+     *
+     * @param channelId the id, or <code>null</code> to not use stored statistics
+     */
+    public void setChannelId(String channelId) {
+        this.defaultChannelId = channelId;
+    }
+
+
+    /**
+     * Returns the next Data object, which is a normalized Data produced by this class. Signals are returned
+     * unmodified.
+     *
+     * @return the next available Data object, returns null if no Data object is available
+     * @throws DataProcessingException if there is a data processing error
+     */
+    @Override
+    public Data getData() throws DataProcessingException {
+        Data input = getPredecessor().getData();
+
+        getTimer().start();
+
+        if (input instanceof DataStartSignal) {
+            Object id = ((DataStartSignal) input).getProps().get(CHANNEL_ID);
+            channelId = id != null ? id.toString() : defaultChannelId;
+            mean = null;
+            variance = null;
+            numberFrame = 0;
+        } else if (input instanceof DoubleData) {
+            double[] cepstrum = ((DoubleData) input).getValues();
+            if (mean == null)
+                initStatistics(cepstrum.length);
+            normalize(cepstrum);
+        } else if (input instanceof DataEndSignal) {
+            if (store != null && channelId != null && numberFrame > 0)
+                store.put(channelId, mean, variance);
+        }
+
+        getTimer().stop();
+
+        return input;
+    }
+
+
+    /**
+     * Initializes the statistics from the store or the initial mean.
+     *
+     * @param cepstrumLength the length of the cepstrum
+     */
+    private void initStatistics(int cepstrumLength) {
+        double[][] stored = store != null && channelId != null ? store.get(channelId) : null;
+
+        if (stored != null && stored[0].length == cepstrumLength) {
+            mean = stored[0].clone();
+            variance = stored[1].clone();
+        } else {
+            mean = new double[cepstrumLength];
+            mean[0] = initialMean;
+            variance = new double[cepstrumLength];
+            Arrays.fill(variance, 1.0);
+        }
+    }
+
+
+    /**
+     * Normalizes the given cepstrum in place and updates the statistics with it.
+     *
+     * @param cepstrum the cepstrum to normalize
+     */
+    private void normalize(double[] cepstrum) {
+        if (cepstrum.length != mean.length) {
+            throw new Error("Data length (" + cepstrum.length +
+                    ") not equal mean array length (" +
+                    mean.length + ')');
+        }
+
+        double alpha = 1.0 / cmnWindow;
+        for (int j = 0; j < cepstrum.length; j++) {
+            double value = cepstrum[j];
+            double diff = value - mean[j];
+
+            cepstrum[j] = normalizeVariance ? diff / Math.sqrt(Math.max(variance[j], MIN_VARIANCE)) : diff;
+
+            mean[j] += alpha * diff;
+            variance[j] += alpha * (diff * diff - variance[j]);
+        }
+
+        numberFrame++;
+    }
+}
@@ -27,6 +27,17 @@ import edu.cmu.sphinx.frontend.*;
  */
 public class S3FeatureExtractor extends AbstractFeatureExtractor {
 
+    /**
+     *
+     * @param window
+     */
+    public S3FeatureExtractor( int window ) {
+        super(window);
+    }
+
+    public S3FeatureExtractor( ) {
+    }
+
     /**
      * Computes the next feature. Advances the pointers as well.
      *
@@ -34,26 +45,15 @@ public class S3FeatureExtractor extends AbstractFeatureExtractor {
      */
     @Override
     protected Data computeNextFeature() {
-
-    	int jp1 = (currentPosition - 1 + cepstraBufferSize) % cepstraBufferSize;
-        int jp2 = (currentPosition - 2 + cepstraBufferSize) % cepstraBufferSize;
-        int jp3 = (currentPosition - 3 + cepstraBufferSize) % cepstraBufferSize;
-        int jf1 = (currentPosition + 1) % cepstraBufferSize;
-        int jf2 = (currentPosition + 2) % cepstraBufferSize;
-        int jf3 = (currentPosition + 3) % cepstraBufferSize;
-
-    	DoubleData currentCepstrum = cepstraBuffer[currentPosition];
-        double[] mfc3f = cepstraBuffer[jf3].getValues();
-        double[] mfc2f = cepstraBuffer[jf2].getValues();
-        double[] mfc1f = cepstraBuffer[jf1].getValues();
-        double[] current = currentCepstrum.getValues();
-        double[] mfc1p = cepstraBuffer[jp1].getValues();
-        double[] mfc2p = cepstraBuffer[jp2].getValues();
-        double[] mfc3p = cepstraBuffer[jp3].getValues();
+        double[] mfc3f = getCepstrum(3);
+        double[] mfc2f = getCepstrum(2);
+        double[] mfc1f = getCepstrum(1);
+        double[] current = getCepstrum(0);
+        double[] mfc1p = getCepstrum(-1);
+        double[] mfc2p = getCepstrum(-2);
+        double[] mfc3p = getCepstrum(-3);
         float[] feature = new float[current.length * 3];
 
-        currentPosition = (currentPosition + 1)% cepstraBufferSize;
-
         // CEP; skip C[0]
         int j = 0;
         for (int k = 1; k < current.length; k++) {
@@ -75,8 +75,6 @@ public class S3FeatureExtractor extends AbstractFeatureExtractor {
                     ((mfc3f[k] - mfc1p[k]) - (mfc1f[k] - mfc3p[k]));
         }
 
-        return (new FloatData(feature,
-                currentCepstrum.getSampleRate(),
-                currentCepstrum.getFirstSampleNumber()));
+        return advance(feature);
     }
 }
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend.filter;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.util.props.*;
+
+import java.util.Arrays;
+
+/**
+ * Converts the sample rate of the incoming audio to the sample rate expected by the acoustic model. This allows to
+ * decode 8 kHz telephony or 44.1/48 kHz audio without running an external converter.
+ * <p/>
+ * The Resampler is a streaming polyphase filter. For an input rate <code>Fi</code> and an output rate
+ * <code>Fo</code> the signal is conceptually upsampled by <code>L = Fo / gcd(Fi, Fo)</code>, low-pass filtered and
+ * decimated by <code>M = Fi / gcd(Fi, Fo)</code>. Only the filter phases that actually produce an output sample are
+ * evaluated. The low-pass filter is a Blackman windowed sinc with {@link #PROP_TAPS_PER_PHASE} taps per phase and a
+ * cutoff of {@link #PROP_CUTOFF} times the Nyquist frequency of the lower of both rates.
+ * <p/>
+ * The filter is causal, thus the output is delayed by half of the filter length, that is
+ * <code>tapsPerPhase / 2</code> input samples. The state of the filter is kept across blocks, so the Resampler can be
+ * placed right after any audio data source, regardless of the block size it uses. Apart from the output vectors no
+ * memory is allocated while processing.
+ * <p/>
+ * The Resampler replaces each {@link DataStartSignal} by one announcing the target sample rate and sets the sample
+ * rate of all outgoing {@link DoubleData} objects accordingly. If the input already has the target rate, all data is
+ * passed through unchanged.
+ */
+public class Resampler extends BaseDataProcessor {
+
+    /** The property for the sample rate of the output. */
+    @S4Integer(defaultValue = 16000)
+    public static final String PROP_TARGET_SAMPLE_RATE = "targetSampleRate";
+
+    /** The property for the number of filter taps per polyphase branch. */
+    @S4Integer(defaultValue = 32)
+    public static final String PROP_TAPS_PER_PHASE = "tapsPerPhase";
+
+    /** The property for the cutoff of the anti-aliasing filter relative to the lower Nyquist frequency. */
+    @S4Double(defaultValue = 0.95)
+    public static final String PROP_CUTOFF = "cutoff";
+
+    private int targetSampleRate;
+    private int tapsPerPhase;
+    private double cutoff;
+
+    private int sourceSampleRate;
+    private int upFactor;
+    private int downFactor;
+    private double[][] phases;
+
+    // input samples, the first tapsPerPhase - 1 entries hold the history of the previous block
+    private double[] buffer;
+    // absolute input sample number of buffer[0]
+    private long bufferStart;
+    // output time of the next sample in units of 1 / (upFactor * sourceSampleRate)
+    private long nextOutputTime;
+    private long outputSampleNumber;
+
+
+    public Resampler(int targetSampleRate, int tapsPerPhase, double cutoff) {
+        initLogger();
+        this.targetSampleRate = targetSampleRate;
+        this.tapsPerPhase = tapsPerPhase;
+        this.cutoff = cutoff;
+    }
+
+
+    public Resampler() {
+    }
+
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.util.props.Configurable#newProperties(edu.cmu.sphinx.util.props.PropertySheet)
+    */
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        targetSampleRate = ps.getInt(PROP_TARGET_SAMPLE_RATE);
+        tapsPerPhase = ps.getInt(PROP_TAPS_PER_PHASE);
+        cutoff = ps.getDouble(PROP_CUTOFF);
+    }
+
+
+    /** @return the sample rate of the produced audio */
+    public int getTargetSampleRate() {
+        return targetSampleRate;
+    }
+
+
+    /**
+     * Returns the next Data object, which is the resampled audio or a signal.
+     *
+     * @return the next available Data object, returns null if no Data object is available
+     * @throws DataProcessingException if there is a processing error
+     */
+    @Override
+    public Data getData() throws DataProcessingException {
+        Data input = getPredecessor().getData();
+        getTimer().start();
+
+        if (input instanceof DataStartSignal) {
+            DataStartSignal startSignal = (DataStartSignal) input;
+            setSourceSampleRate(startSignal.getSampleRate());
+
+            if (sourceSampleRate != targetSampleRate) {
+                DataStartSignal newStart = new DataStartSignal(targetSampleRate, startSignal.getTime());
+                newStart.getProps().putAll(startSignal.getProps());
+                input = newStart;
+            }
+        } else if (input instanceof DoubleData) {
+            DoubleData audio = (DoubleData) input;
+            if (audio.getSampleRate() != sourceSampleRate)
+                setSourceSampleRate(audio.getSampleRate());
+
+            if (sourceSampleRate != targetSampleRate)
+                input = resample(audio);
+        }
+
+        getTimer().stop();
+        return input;
+    }
+
+
+    /**
+     * Prepares the polyphase filter bank for the given input sample rate and resets the filter state.
+     *
+     * @param sampleRate the sample rate of the incoming audio
+     */
+    private void setSourceSampleRate(int sampleRate) {
+        if (sampleRate != sourceSampleRate) {
+            sourceSampleRate = sampleRate;
+            if (sampleRate != targetSampleRate)
+                createFilter();
+        }
+
+        if (phases != null) {
+            bufferStart = -(tapsPerPhase - 1);
+            Arrays.fill(buffer, 0, tapsPerPhase - 1, 0.0);
+            nextOutputTime = 0;
+            outputSampleNumber = 0;
+        }
+    }
+
+
+    /** Creates the windowed sinc prototype filter and splits it into its polyphase branches. */
+    private void createFilter() {
+        int gcd = gcd(sourceSampleRate, targetSampleRate);
+        upFactor = targetSampleRate / gcd;
+        downFactor = sourceSampleRate / gcd;
+
+        int length = upFactor * tapsPerPhase;
+        // cutoff relative to the sample rate of the upsampled signal
+        double fc = cutoff * Math.min(sourceSampleRate, targetSampleRate) /
+                (2.0 * sourceSampleRate * upFactor);
+        double center = (length - 1) / 2.0;
+
+        phases = new double[upFactor][tapsPerPhase];
+        for (int i = 0; i < length; i++) {
+            double x = i - center;
+            double sinc = x == 0 ? 2 * fc : Math.sin(2 * Math.PI * fc * x) / (Math.PI * x);
+            double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (length - 1))
+                    + 0.08 * Math.cos(4 * Math.PI * i / (length - 1));
+            // the gain of upFactor compensates the zeros inserted by upsampling
+            phases[i % upFactor][i / upFactor] = upFactor * sinc * window;
+        }
+
+        if (buffer == null || buffer.length < tapsPerPhase)
+            buffer = new double[tapsPerPhase * 2];
+    }
+
+
+    /**
+     * Filters the given block and returns the output samples which can be computed from it.
+     *
+     * @param audio the input audio
+     * @return the resampled audio
+     */
+    private DoubleData resample(DoubleData audio) {
+        double[] in = audio.getValues();
+        int history = tapsPerPhase - 1;
+
+        if (buffer.length < history + in.length) {
+            double[] newBuffer = new double[history + in.length];
+            System.arraycopy(buffer, 0, newBuffer, 0, history);
+            buffer = newBuffer;
+        }
+        System.arraycopy(in, 0, buffer, history, in.length);
+
+        // the newest input sample which is available
+        long last = bufferStart + history + in.length - 1;
+        long end = (last + 1) * upFactor;
+        int numOutput = nextOutputTime < end ? (int) ((end - nextOutputTime + downFactor - 1) / downFactor) : 0;
+
+        double[] out = new double[numOutput];
+        for (int n = 0; n < numOutput; n++) {
+            long inputIndex = nextOutputTime / upFactor;
+            double[] filter = phases[(int) (nextOutputTime % upFactor)];
+            int pos = (int) (inputIndex - bufferStart);
+
+            double sum = 0;
+            for (int k = 0; k < tapsPerPhase; k++)
+                sum += filter[k] * buffer[pos - k];
+            out[n] = sum;
+
+            nextOutputTime += downFactor;
+        }
+
+        // keep the last samples as history for the next block
+        System.arraycopy(buffer, in.length, buffer, 0, history);
+        bufferStart += in.length;
+
+        DoubleData output = new DoubleData(out, targetSampleRate, outputSampleNumber);
+        outputSampleNumber += numOutput;
+        return output;
+    }
+
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend.util;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.util.props.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+
+/**
+ * A ChannelDataSource converts raw audio arriving on a non-blocking NIO channel into Data objects. Unlike the {@link
+ * StreamDataSource}, it does not read the channel itself. Instead a shared {@link ChannelReactor} reads the channels
+ * of all sources on a single thread and stores the bytes in a ring buffer of {@link #PROP_BUFFER_SIZE} bytes owned by
+ * each source. The recognizer pulls the data from this buffer via {@link #getData}.
+ * <p/>
+ * One would call {@link #setChannel(SelectableChannel, String) setChannel} to start a new stream. {@link
+ * #isDataAvailable()} can be used to check whether a call to {@link #getData} would block, which allows to schedule
+ * many sessions on a small pool of recognizer threads.
+ * <p/>
+ * As the StreamDataSource, this source is not aware of the incoming data format and assumes that the data matches its
+ * configuration, by default 16 kHz little-endian 16-bit signed raw data.
+ */
+public class ChannelDataSource extends BaseDataProcessor {
+
+    /** The property for the reactor which reads the channels. */
+    @S4Component(type = ChannelReactor.class)
+    public static final String PROP_REACTOR = "reactor";
+
+    /** The property for the sample rate. */
+    @S4Integer(defaultValue = 16000)
+    public static final String PROP_SAMPLE_RATE = "sampleRate";
+
+    /** The property for the number of bytes in each Data object. */
+    @S4Integer(defaultValue = 3200)
+    public static final String PROP_BYTES_PER_READ = "bytesPerRead";
+
+    /** The property for the number of bits per value. */
+    @S4Integer(defaultValue = 16)
+    public static final String PROP_BITS_PER_SAMPLE = "bitsPerSample";
+
+    /** The property specifying whether the input data is big-endian. */
+    @S4Boolean(defaultValue = false)
+    public static final String PROP_BIG_ENDIAN_DATA = "bigEndianData";
+
+    /** The property specifying whether the input data is signed. */
+    @S4Boolean(defaultValue = true)
+    public static final String PROP_SIGNED_DATA = "signedData";
+
+    /** The property for the size of the ring buffer in bytes. */
+    @S4Integer(defaultValue = 64000)
+    public static final String PROP_BUFFER_SIZE = "bufferSize";
+
+    static final int READ_OK = 0;
+    static final int BUFFER_FULL = 1;
+    static final int END_OF_STREAM = 2;
+
+    private ChannelReactor reactor;
+    private int sampleRate;
+    private int bytesPerRead;
+    private int bytesPerValue;
+    private boolean bigEndian;
+    private boolean signedData;
+
+    private byte[] ring;
+    private ByteBuffer ringBuffer;
+    private byte[] frame;
+    private int readPos;
+    private int count;
+
+    private SelectionKey key;
+    private boolean suspended;
+    private boolean streamEndReached;
+    private IOException error;
+
+    private long totalValuesRead;
+    private boolean utteranceStarted;
+    private boolean utteranceEndSent;
+
+
+    public ChannelDataSource(ChannelReactor reactor, int sampleRate, int bytesPerRead, int bitsPerSample,
+                             boolean bigEndian, boolean signedData, int bufferSize) {
+        initLogger();
+        this.reactor = reactor;
+        init(sampleRate, bytesPerRead, bitsPerSample, bigEndian, signedData, bufferSize);
+    }
+
+
+    public ChannelDataSource() {
+    }
+
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.util.props.Configurable#newProperties(edu.cmu.sphinx.util.props.PropertySheet)
+    */
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        reactor = (ChannelReactor) ps.getComponent(PROP_REACTOR);
+        init(ps.getInt(PROP_SAMPLE_RATE), ps.getInt(PROP_BYTES_PER_READ), ps.getInt(PROP_BITS_PER_SAMPLE),
+                ps.getBoolean(PROP_BIG_ENDIAN_DATA), ps.getBoolean(PROP_SIGNED_DATA), ps.getInt(PROP_BUFFER_SIZE));
+    }
+
+
+    private void init(int sampleRate, int bytesPerRead, int bitsPerSample, boolean bigEndian, boolean signedData,
+                      int bufferSize) {
+        if (bitsPerSample % 8 != 0)
+            throw new IllegalArgumentException("bits per sample must be a multiple of 8");
+
+        this.sampleRate = sampleRate;
+        this.bytesPerValue = bitsPerSample / 8;
+        // only complete samples are passed on
+        this.bytesPerRead = bytesPerRead - bytesPerRead % bytesPerValue;
+        this.bigEndian = bigEndian;
+        this.signedData = signedData;
+
+        if (bufferSize < this.bytesPerRead)
+            throw new IllegalArgumentException("buffer must hold at least " + this.bytesPerRead + " bytes");
+
+        ring = new byte[bufferSize];
+        ringBuffer = ByteBuffer.wrap(ring);
+        frame = new byte[this.bytesPerRead];
+    }
+
+
+    /**
+     * Starts a new stream read from the given channel. The channel is registered with the reactor and will be closed
+     * when its end is reached.
+     *
+     * @param channel    the channel from which audio data comes, it has to implement {@link ReadableByteChannel}
+     * @param streamName the name of the stream
+     * @throws IOException if the channel cannot be registered
+     */
+    public void setChannel(SelectableChannel channel, String streamName) throws IOException {
+        synchronized (this) {
+            readPos = 0;
+            count = 0;
+            key = null;
+            suspended = false;
+            streamEndReached = false;
+            error = null;
+            totalValuesRead = 0;
+            utteranceStarted = false;
+            utteranceEndSent = false;
+        }
+        reactor.register(channel, this);
+    }
+
+
+    /**
+     * Returns whether {@link #getData} can return without waiting for the channel.
+     *
+     * @return <code>true</code> if a complete Data object or a signal can be returned immediately
+     */
+    public synchronized boolean isDataAvailable() {
+        return !utteranceStarted || streamEndReached || count >= bytesPerRead;
+    }
+
+
+    /**
+     * Returns the next Data from the channel. Waits until enough bytes for one Data object are buffered or the end of
+     * the stream is reached.
+     *
+     * @return the next Data or <code>null</code> if the stream has ended
+     * @throws DataProcessingException if reading from the channel failed or the thread was interrupted
+     */
+    @Override
+    public Data getData() throws DataProcessingException {
+        if (!utteranceStarted) {
+            utteranceStarted = true;
+            return new DataStartSignal(sampleRate);
+        }
+        if (utteranceEndSent)
+            return null;
+
+        int length;
+        synchronized (this) {
+            try {
+                while (count < bytesPerRead && !streamEndReached)
+                    wait();
+            } catch (InterruptedException e) {
+                throw new DataProcessingException("Interrupted while waiting for data", e);
+            }
+
+            if (error != null)
+                throw new DataProcessingException("Error reading data", error);
+
+            length = Math.min(count, bytesPerRead);
+            length -= length % bytesPerValue;
+            int first = Math.min(length, ring.length - readPos);
+            System.arraycopy(ring, readPos, frame, 0, first);
+            System.arraycopy(ring, 0, frame, first, length - first);
+            readPos = (readPos + length) % ring.length;
+            count -= length;
+
+            if (suspended && count <= ring.length / 2) {
+                suspended = false;
+                reactor.resume(key);
+            }
+        }
+
+        if (length == 0) {
+            utteranceEndSent = true;
+            return new DataEndSignal(getDuration());
+        }
+
+        getTimer().start();
+        double[] values = bigEndian
+                ? DataUtil.bytesToValues(frame, 0, length, bytesPerValue, signedData)
+                : DataUtil.littleEndianBytesToValues(frame, 0, length, bytesPerValue, signedData);
+        Data output = new DoubleData(values, sampleRate, totalValuesRead);
+        totalValuesRead += values.length;
+        getTimer().stop();
+        return output;
+    }
+
+
+    /**
+     * Reads as many bytes from the channel as fit into the free space of the buffer. Called by the reactor thread.
+     *
+     * @param channel the channel to read from
+     * @return {@link #READ_OK}, {@link #BUFFER_FULL} if reading has to be suspended or {@link #END_OF_STREAM}
+     * @throws IOException if reading from the channel fails
+     */
+    synchronized int fill(ReadableByteChannel channel) throws IOException {
+        while (count < ring.length) {
+            int writePos = (readPos + count) % ring.length;
+            int free = Math.min(ring.length - count, ring.length - writePos);
+            ringBuffer.limit(writePos + free).position(writePos);
+
+            int read = channel.read(ringBuffer);
+            if (read < 0) {
+                streamEndReached = true;
+                notifyAll();
+                return END_OF_STREAM;
+            }
+            if (read == 0)
+                break;
+
+            count += read;
+            notifyAll();
+        }
+
+        if (count == ring.length) {
+            suspended = true;
+            return BUFFER_FULL;
+        }
+        return READ_OK;
+    }
+
+
+    synchronized void setSelectionKey(SelectionKey key) {
+        this.key = key;
+    }
+
+
+    /**
+     * Marks the end of the current stream.
+     *
+     * @param error the error which terminated the stream or <code>null</code>
+     */
+    synchronized void endOfStream(IOException error) {
+        this.error = error;
+        streamEndReached = true;
+        notifyAll();
+    }
+
+
+    /**
+     * Returns the duration of the current data stream in milliseconds.
+     *
+     * @return the duration of the current data stream in milliseconds
+     */
+    private long getDuration() {
+        return (long) (((double) totalValuesRead / (double) sampleRate) * 1000.0);
+    }
+}
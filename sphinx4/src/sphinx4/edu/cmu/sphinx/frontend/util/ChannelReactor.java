@@ -0,0 +1,211 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend.util;
+
+import edu.cmu.sphinx.util.CustomThreadFactory;
+import edu.cmu.sphinx.util.props.ConfigurableAdapter;
+import edu.cmu.sphinx.util.props.PropertyException;
+import edu.cmu.sphinx.util.props.PropertySheet;
+import edu.cmu.sphinx.util.props.S4Integer;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+
+/**
+ * Reads audio from many non-blocking channels on a single thread. Each registered channel feeds the ring buffer of a
+ * {@link ChannelDataSource}, from which a recognizer pulls its data. Thus a server handling many concurrent streams
+ * does not need a reader thread per connection.
+ * <p/>
+ * The reactor applies back pressure: if the buffer of a source is full, the channel is not read until the recognizer
+ * has consumed some of the buffered data. Channels are closed by the reactor once they reach their end of stream.
+ * <p/>
+ * The reactor thread is started with the first registration and runs until {@link #shutdown()} is called.
+ */
+public class ChannelReactor extends ConfigurableAdapter {
+
+    /** The property for the priority of the reactor thread. */
+    @S4Integer(defaultValue = Thread.NORM_PRIORITY)
+    public static final String PROP_THREAD_PRIORITY = "threadPriority";
+
+    private int threadPriority;
+
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+
+
+    public ChannelReactor(int threadPriority) {
+        initLogger();
+        this.threadPriority = threadPriority;
+    }
+
+
+    public ChannelReactor() {
+    }
+
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        super.newProperties(ps);
+        threadPriority = ps.getInt(PROP_THREAD_PRIORITY);
+    }
+
+
+    /**
+     * Registers a channel whose data should be delivered to the given source. The channel is switched to non-blocking
+     * mode and must be readable.
+     *
+     * @param channel the channel to read from
+     * @param source  the data source which buffers the data read from the channel
+     * @throws IOException if the channel cannot be configured or the selector cannot be opened
+     */
+    public synchronized void register(final SelectableChannel channel, final ChannelDataSource source)
+            throws IOException {
+        if (!(channel instanceof ReadableByteChannel))
+            throw new IllegalArgumentException("channel is not readable: " + channel);
+
+        channel.configureBlocking(false);
+        start();
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    source.setSelectionKey(channel.register(selector, SelectionKey.OP_READ, source));
+                } catch (ClosedChannelException e) {
+                    source.endOfStream(e);
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Resumes reading a channel which was suspended because the buffer of its source was full.
+     *
+     * @param key the selection key of the channel
+     */
+    void resume(final SelectionKey key) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                if (key.isValid())
+                    key.interestOps(SelectionKey.OP_READ);
+            }
+        });
+    }
+
+
+    /** Stops the reactor thread and closes all channels which are still registered. */
+    public synchronized void shutdown() {
+        if (thread == null)
+            return;
+
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+
+    private void start() throws IOException {
+        if (thread != null)
+            return;
+
+        selector = Selector.open();
+        running = true;
+        thread = new CustomThreadFactory(getName(), true, threadPriority).newThread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        });
+        thread.start();
+    }
+
+
+    private void submit(Runnable task) {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+
+    private void loop() {
+        try {
+            while (running) {
+                selector.select();
+
+                Runnable task;
+                while ((task = pendingTasks.poll()) != null)
+                    task.run();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && key.isReadable())
+                        read(key);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "channel reactor failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((ChannelDataSource) key.attachment()).endOfStream(null);
+                close(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "failed to close selector", e);
+            }
+        }
+    }
+
+
+    private void read(SelectionKey key) {
+        ChannelDataSource source = (ChannelDataSource) key.attachment();
+        try {
+            switch (source.fill((ReadableByteChannel) key.channel())) {
+                case ChannelDataSource.BUFFER_FULL:
+                    key.interestOps(0);
+                    break;
+                case ChannelDataSource.END_OF_STREAM:
+                    close(key);
+                    break;
+            }
+        } catch (IOException e) {
+            source.endOfStream(e);
+            close(key);
+        }
+    }
+
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "failed to close channel", e);
+        }
+    }
+}
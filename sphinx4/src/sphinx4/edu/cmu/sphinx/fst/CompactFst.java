@@ -0,0 +1,642 @@
+/**
+ *
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.fst;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import edu.cmu.sphinx.fst.operations.ArcSort;
+import edu.cmu.sphinx.fst.operations.ILabelCompare;
+import edu.cmu.sphinx.fst.semiring.Semiring;
+
+/**
+ * A compact finite state transducer implementation of fixed size.
+ *
+ * States are numbered from 0 and their arcs are stored consecutively in
+ * parallel arrays of input labels, output labels, weights and next states.
+ * The arcs of state s are the indices from {@link #getArcStart(int)} up to
+ * {@link #getArcEnd(int)}. No objects are created per state or arc, so a large
+ * model takes little memory. A model loaded from a file in the binary format
+ * is not copied at all: the arrays are views of a memory mapping of the file,
+ * so that the pages are shared between the processes using the model and read
+ * on demand.
+ *
+ * The composition, determinization, epsilon removal and n-best operations
+ * read a compact fst directly; a compact fst can also be converted from and to
+ * an {@link Fst} in order to apply the other operations.
+ */
+public class CompactFst {
+
+    // magic number of the binary format ("CFST")
+    private static final int MAGIC = 0x43465354;
+
+    // version of the binary format
+    private static final int VERSION = 1;
+
+    // input symbols map
+    private final String[] isyms;
+
+    // output symbols map
+    private final String[] osyms;
+
+    // semiring
+    private final Semiring semiring;
+
+    // initial state
+    private final int start;
+
+    // final weights of the states
+    private final FloatBuffer finalWeights;
+
+    // index of the first arc of each state and, last, the number of arcs
+    private final IntBuffer arcOffsets;
+
+    // arcs, read-only while they are views of a mapped file
+    private IntBuffer ilabels;
+    private IntBuffer olabels;
+    private FloatBuffer weights;
+    private IntBuffer nextStates;
+
+    /**
+     * Constructor from the arrays
+     */
+    public CompactFst(String[] isyms, String[] osyms, Semiring semiring,
+            int start, float[] finalWeights, int[] arcOffsets, int[] ilabels,
+            int[] olabels, float[] weights, int[] nextStates) {
+        this(isyms, osyms, semiring, start, FloatBuffer.wrap(finalWeights),
+                IntBuffer.wrap(arcOffsets), IntBuffer.wrap(ilabels), IntBuffer
+                        .wrap(olabels), FloatBuffer.wrap(weights), IntBuffer
+                        .wrap(nextStates));
+    }
+
+    /**
+     * Constructor from the buffers, which are read by absolute index
+     */
+    private CompactFst(String[] isyms, String[] osyms, Semiring semiring,
+            int start, FloatBuffer finalWeights, IntBuffer arcOffsets,
+            IntBuffer ilabels, IntBuffer olabels, FloatBuffer weights,
+            IntBuffer nextStates) {
+        this.isyms = isyms;
+        this.osyms = osyms;
+        this.semiring = semiring;
+        this.start = start;
+        this.finalWeights = finalWeights;
+        this.arcOffsets = arcOffsets;
+        this.ilabels = ilabels;
+        this.olabels = olabels;
+        this.weights = weights;
+        this.nextStates = nextStates;
+    }
+
+    /**
+     * Constructor copying an fst. The ids of the states of the fst must be
+     * their indices, as after {@link Fst#remapStateIds()}.
+     *
+     * @param fst the fst to copy
+     */
+    public CompactFst(Fst fst) {
+        isyms = fst.getIsyms();
+        osyms = fst.getOsyms();
+        semiring = fst.getSemiring();
+        start = fst.getStart().getId();
+
+        int numStates = fst.getNumStates();
+        finalWeights = FloatBuffer.allocate(numStates);
+        arcOffsets = IntBuffer.allocate(numStates + 1);
+        for (int i = 0; i < numStates; i++) {
+            State s = fst.getState(i);
+            if (s.getId() != i) {
+                throw new IllegalArgumentException("State " + i
+                        + " has id " + s.getId());
+            }
+            finalWeights.put(i, s.getFinalWeight());
+            arcOffsets.put(i + 1, arcOffsets.get(i) + numArcs(s));
+        }
+
+        int numArcs = arcOffsets.get(numStates);
+        ilabels = IntBuffer.allocate(numArcs);
+        olabels = IntBuffer.allocate(numArcs);
+        weights = FloatBuffer.allocate(numArcs);
+        nextStates = IntBuffer.allocate(numArcs);
+        for (int i = 0; i < numStates; i++) {
+            State s = fst.getState(i);
+            int k = arcOffsets.get(i);
+            for (int j = 0; j < numArcs(s); j++) {
+                Arc a = s.getArc(j);
+                ilabels.put(k, a.getIlabel());
+                olabels.put(k, a.getOlabel());
+                weights.put(k, a.getWeight());
+                nextStates.put(k++, a.getNextState().getId());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of arcs of a state, skipping the arc an
+     * {@link ImmutableState} reserves for augmentation
+     */
+    private static int numArcs(State s) {
+        int numArcs = s.getNumArcs();
+        while (numArcs > 0 && s.getArc(numArcs - 1) == null) {
+            numArcs--;
+        }
+        return numArcs;
+    }
+
+    /**
+     * Creates an equivalent mutable fst
+     */
+    public Fst toFst() {
+        Fst fst = new Fst(semiring);
+        fst.setIsyms(isyms);
+        fst.setOsyms(osyms);
+        int numStates = getNumStates();
+        for (int i = 0; i < numStates; i++) {
+            fst.addState(new State(finalWeights.get(i)));
+        }
+        for (int i = 0; i < numStates; i++) {
+            State s = fst.getState(i);
+            for (int k = getArcStart(i); k < getArcEnd(i); k++) {
+                s.addArc(new Arc(ilabels.get(k), olabels.get(k), weights
+                        .get(k), fst.getState(nextStates.get(k))));
+            }
+        }
+        fst.setStart(fst.getState(start));
+        return fst;
+    }
+
+    /**
+     * Get the input symbols' array
+     */
+    public String[] getIsyms() {
+        return isyms;
+    }
+
+    /**
+     * Get the output symbols' array
+     */
+    public String[] getOsyms() {
+        return osyms;
+    }
+
+    /**
+     * Get the semiring
+     */
+    public Semiring getSemiring() {
+        return semiring;
+    }
+
+    /**
+     * Get the initial state
+     */
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * Get the number of states in the fst
+     */
+    public int getNumStates() {
+        return finalWeights.limit();
+    }
+
+    /**
+     * Get the number of arcs in the fst
+     */
+    public int getNumArcs() {
+        return ilabels.limit();
+    }
+
+    /**
+     * Get the number of arcs of a state
+     */
+    public int getNumArcs(int state) {
+        return arcOffsets.get(state + 1) - arcOffsets.get(state);
+    }
+
+    /**
+     * Get the final weight of a state
+     */
+    public float getFinalWeight(int state) {
+        return finalWeights.get(state);
+    }
+
+    /**
+     * Get the index of the first arc of a state
+     */
+    public int getArcStart(int state) {
+        return arcOffsets.get(state);
+    }
+
+    /**
+     * Get the index following the last arc of a state
+     */
+    public int getArcEnd(int state) {
+        return arcOffsets.get(state + 1);
+    }
+
+    /**
+     * Get the input label of an arc
+     */
+    public int getIlabel(int arc) {
+        return ilabels.get(arc);
+    }
+
+    /**
+     * Get the output label of an arc
+     */
+    public int getOlabel(int arc) {
+        return olabels.get(arc);
+    }
+
+    /**
+     * Get the weight of an arc
+     */
+    public float getWeight(int arc) {
+        return weights.get(arc);
+    }
+
+    /**
+     * Get the next state of an arc
+     */
+    public int getNextState(int arc) {
+        return nextStates.get(arc);
+    }
+
+    /**
+     * Finds the first arc of a state with an input label not less than the
+     * given one. The arcs must be sorted by input label.
+     *
+     * @param state the state
+     * @param ilabel the input label
+     * @return the index of the arc, or the end of the arcs of the state
+     */
+    public int findArc(int state, int ilabel) {
+        int low = arcOffsets.get(state);
+        int high = arcOffsets.get(state + 1);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ilabels.get(mid) < ilabel) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sorts the arcs of each state. The arcs of a mapped model are copied
+     * onto the heap once a state with unsorted arcs is found.
+     *
+     * @param cmp the provided Comparator
+     */
+    public void arcSort(final Comparator<Arc> cmp) {
+        Arc previous = new Arc();
+        Arc current = new Arc();
+        int numStates = getNumStates();
+        for (int i = 0; i < numStates; i++) {
+            int first = arcOffsets.get(i);
+            int numArcs = arcOffsets.get(i + 1) - first;
+            if (isSorted(first, numArcs, cmp, previous, current)) {
+                continue;
+            }
+            if (ilabels.isReadOnly()) {
+                copyArcs();
+            }
+            final Arc[] arcs = new Arc[numArcs];
+            Integer[] order = new Integer[numArcs];
+            for (int j = 0; j < numArcs; j++) {
+                arcs[j] = new Arc(ilabels.get(first + j), olabels
+                        .get(first + j), weights.get(first + j), null);
+                order[j] = j;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer j1, Integer j2) {
+                    return cmp.compare(arcs[j1], arcs[j2]);
+                }
+            });
+            int[] targets = new int[numArcs];
+            for (int j = 0; j < numArcs; j++) {
+                targets[j] = nextStates.get(first + j);
+            }
+            for (int j = 0; j < numArcs; j++) {
+                Arc a = arcs[order[j]];
+                ilabels.put(first + j, a.getIlabel());
+                olabels.put(first + j, a.getOlabel());
+                weights.put(first + j, a.getWeight());
+                nextStates.put(first + j, targets[order[j]]);
+            }
+        }
+    }
+
+    /**
+     * Replaces the read-only arcs by writable copies on the heap
+     */
+    private void copyArcs() {
+        ilabels = copy(ilabels);
+        olabels = copy(olabels);
+        nextStates = copy(nextStates);
+        FloatBuffer copy = FloatBuffer.allocate(weights.limit());
+        copy.put(weights.duplicate());
+        copy.clear();
+        weights = copy;
+    }
+
+    private static IntBuffer copy(IntBuffer values) {
+        IntBuffer copy = IntBuffer.allocate(values.limit());
+        copy.put(values.duplicate());
+        copy.clear();
+        return copy;
+    }
+
+    /**
+     * Checks if arcs are sorted, filling the provided arcs for the comparisons
+     */
+    private boolean isSorted(int first, int numArcs, Comparator<Arc> cmp,
+            Arc previous, Arc current) {
+        for (int k = first + 1; k < first + numArcs; k++) {
+            previous.setIlabel(ilabels.get(k - 1));
+            previous.setOlabel(olabels.get(k - 1));
+            previous.setWeight(weights.get(k - 1));
+            current.setIlabel(ilabels.get(k));
+            current.setOlabel(olabels.get(k));
+            current.setWeight(weights.get(k));
+            if (cmp.compare(previous, current) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Saves the fst to disk in the binary format
+     *
+     * @param filename the binary model filename
+     * @throws IOException
+     */
+    public void saveModel(String filename) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(filename)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, semiring.getClass().getName());
+            writeStringMap(out, isyms);
+            writeStringMap(out, osyms);
+            out.writeInt(start);
+            out.writeInt(getNumStates());
+            out.writeInt(getNumArcs());
+            writeFloats(out, finalWeights);
+            writeInts(out, arcOffsets);
+            writeInts(out, ilabels);
+            writeInts(out, olabels);
+            writeFloats(out, weights);
+            writeInts(out, nextStates);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer values)
+            throws IOException {
+        for (int i = 0; i < values.limit(); i++) {
+            out.writeInt(values.get(i));
+        }
+    }
+
+    private static void writeFloats(DataOutputStream out, FloatBuffer values)
+            throws IOException {
+        for (int i = 0; i < values.limit(); i++) {
+            out.writeFloat(values.get(i));
+        }
+    }
+
+    private static void writeStringMap(DataOutputStream out, String[] map)
+            throws IOException {
+        out.writeInt(map.length);
+        for (String s : map) {
+            writeString(out, s);
+        }
+    }
+
+    /**
+     * Loads an fst from disk. The file is mapped into memory if it is in the
+     * binary format of this class, and the arrays of the fst are read from the
+     * mapping as they are used. Otherwise it is deserialized as an {@link Fst}
+     * and converted.
+     *
+     * @param filename the model filename
+     * @throws IOException
+     */
+    public static CompactFst loadModel(String filename) throws IOException {
+        FileInputStream in = new FileInputStream(filename);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC) {
+                return convert(Fst.loadModel(filename), filename);
+            }
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+                    .size()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Loads an fst from a stream, either in the binary format of this class
+     * or as a serialized {@link Fst}.
+     *
+     * @param inputStream the stream, which is closed afterwards
+     * @throws IOException
+     */
+    public static CompactFst loadModel(InputStream inputStream)
+            throws IOException {
+        BufferedInputStream in = new BufferedInputStream(inputStream);
+        try {
+            in.mark(4);
+            byte[] header = new byte[4];
+            int n = 0;
+            for (int len; n < 4 && (len = in.read(header, n, 4 - n)) > 0;) {
+                n += len;
+            }
+            in.reset();
+            if (n < 4 || ByteBuffer.wrap(header).getInt() != MAGIC) {
+                return convert(ImmutableFst.loadModel(in), "stream");
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[65536];
+            for (int len; (len = in.read(buffer)) > 0;) {
+                bytes.write(buffer, 0, len);
+            }
+            return read(ByteBuffer.wrap(bytes.toByteArray()));
+        } finally {
+            in.close();
+        }
+    }
+
+    private static CompactFst convert(Fst fst, String source)
+            throws IOException {
+        if (fst == null) {
+            throw new IOException("Cannot load an fst from " + source);
+        }
+        return new CompactFst(fst);
+    }
+
+    private static CompactFst read(ByteBuffer in) throws IOException {
+        in.getInt();
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+        Semiring semiring;
+        String semiringClass = readString(in);
+        try {
+            semiring = (Semiring) Class.forName(semiringClass)
+                    .getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new IOException("Cannot create semiring " + semiringClass, e);
+        }
+        String[] isyms = readStringMap(in);
+        String[] osyms = readStringMap(in);
+        int start = in.getInt();
+        int numStates = in.getInt();
+        int numArcs = in.getInt();
+
+        FloatBuffer finalWeights = readFloats(in, numStates);
+        IntBuffer arcOffsets = readInts(in, numStates + 1);
+        IntBuffer ilabels = readInts(in, numArcs);
+        IntBuffer olabels = readInts(in, numArcs);
+        FloatBuffer weights = readFloats(in, numArcs);
+        IntBuffer nextStates = readInts(in, numArcs);
+
+        return new CompactFst(isyms, osyms, semiring, start, finalWeights,
+                arcOffsets, ilabels, olabels, weights, nextStates);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static String[] readStringMap(ByteBuffer in) throws IOException {
+        String[] map = new String[in.getInt()];
+        for (int i = 0; i < map.length; i++) {
+            map[i] = readString(in);
+        }
+        return map;
+    }
+
+    /**
+     * Returns a view of the next ints of a buffer and skips them
+     */
+    private static IntBuffer readInts(ByteBuffer in, int length)
+            throws IOException {
+        if (in.remaining() < 4 * length) {
+            throw new IOException("Unexpected end of the model");
+        }
+        ByteBuffer view = in.slice();
+        view.limit(4 * length);
+        in.position(in.position() + 4 * length);
+        return view.asIntBuffer();
+    }
+
+    /**
+     * Returns a view of the next floats of a buffer and skips them
+     */
+    private static FloatBuffer readFloats(ByteBuffer in, int length)
+            throws IOException {
+        if (in.remaining() < 4 * length) {
+            throw new IOException("Unexpected end of the model");
+        }
+        ByteBuffer view = in.slice();
+        view.limit(4 * length);
+        in.position(in.position() + 4 * length);
+        return view.asFloatBuffer();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || getClass() != obj.getClass())
+            return false;
+        CompactFst other = (CompactFst) obj;
+        return start == other.start && Arrays.equals(isyms, other.isyms)
+                && Arrays.equals(osyms, other.osyms)
+                && semiring.equals(other.semiring)
+                && finalWeights.equals(other.finalWeights)
+                && arcOffsets.equals(other.arcOffsets)
+                && ilabels.equals(other.ilabels)
+                && olabels.equals(other.olabels)
+                && weights.equals(other.weights)
+                && nextStates.equals(other.nextStates);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return 31 * ilabels.hashCode() + nextStates.hashCode();
+    }
+
+    /**
+     * Converts a serialized java fst model to the binary format of this class.
+     * The arcs are sorted by input label, so that loading models which expect
+     * that order requires no sorting.
+     *
+     * @param args[0] the serialized java fst model filename
+     * @param args[1] the output filename
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Input and output files not provided");
+            System.err.println("You need to provide both the input serialized java fst model");
+            System.err.println("and the output compact model.");
+            System.exit(1);
+        }
+        CompactFst fst = loadModel(args[0]);
+        ArcSort.apply(fst, new ILabelCompare());
+        fst.saveModel(args[1]);
+    }
+}
@@ -134,6 +134,27 @@ public class State {
         return this.arcs.get(index);
     }
 
+    /**
+     * Finds the first arc with an input label not less than the given one.
+     * The arcs must be sorted by input label.
+     * 
+     * @param ilabel the input label
+     * @return the index of the arc, or the number of arcs if there is none
+     */
+    public int findArc(int ilabel) {
+        int low = 0;
+        int high = getNumArcs();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getArc(mid).getIlabel() < ilabel) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
     /*
      * (non-Javadoc)
      * 
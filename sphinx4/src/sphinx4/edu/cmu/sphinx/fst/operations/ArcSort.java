@@ -16,6 +16,7 @@ package edu.cmu.sphinx.fst.operations;
 import java.util.Comparator;
 
 import edu.cmu.sphinx.fst.Arc;
+import edu.cmu.sphinx.fst.CompactFst;
 import edu.cmu.sphinx.fst.Fst;
 import edu.cmu.sphinx.fst.State;
 
@@ -48,4 +49,14 @@ public class ArcSort {
             s.arcSort(cmp);
         }
     }
+
+    /**
+     * Applies the ArcSort on the provided compact fst.
+     * 
+     * @param fst the fst to sort it's arcs
+     * @param cmp the provided Comparator
+     */
+    public static void apply(CompactFst fst, Comparator<Arc> cmp) {
+        fst.arcSort(cmp);
+    }
 }
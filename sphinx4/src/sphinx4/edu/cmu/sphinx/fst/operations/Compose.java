@@ -13,12 +13,14 @@
 
 package edu.cmu.sphinx.fst.operations;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 
 import java.util.Arrays;
 import java.util.HashMap;
 
 import edu.cmu.sphinx.fst.Arc;
+import edu.cmu.sphinx.fst.CompactFst;
 import edu.cmu.sphinx.fst.Fst;
 import edu.cmu.sphinx.fst.ImmutableFst;
 import edu.cmu.sphinx.fst.State;
@@ -123,6 +125,84 @@ public class Compose {
         return res;
     }
 
+    /**
+     * Computes the composition of two compact Fsts, reading their arcs in
+     * place. Assuming no epsilon transitions. The states and arcs of the
+     * result are in the same order as for {@link #compose(Fst, Fst, Semiring,
+     * boolean)}.
+     * 
+     * @param fst1 the first Fst
+     * @param fst2 the second Fst
+     * @param semiring the semiring to use in the operation
+     * @param sorted true if the arcs of the second Fst are sorted by input
+     *            label, so that the matching arcs are found by binary search
+     * @return the composed Fst
+     */
+    public static CompactFst compose(CompactFst fst1, CompactFst fst2,
+            Semiring semiring, boolean sorted) {
+        if (!Arrays.equals(fst1.getOsyms(), fst2.getIsyms())) {
+            // symboltables do not match
+            return null;
+        }
+
+        Fst res = new Fst(semiring);
+
+        // the pairs of states, keyed by the state of the first Fst times the
+        // number of states of the second plus the state of the second
+        long numStates2 = fst2.getNumStates();
+        HashMap<Long, State> stateMap = new HashMap<Long, State>();
+        ArrayDeque<Long> queue = new ArrayDeque<Long>();
+
+        long p = fst1.getStart() * numStates2 + fst2.getStart();
+        State s = new State(semiring.times(
+                fst1.getFinalWeight(fst1.getStart()),
+                fst2.getFinalWeight(fst2.getStart())));
+
+        res.addState(s);
+        res.setStart(s);
+        stateMap.put(p, s);
+        queue.add(p);
+
+        while (queue.size() > 0) {
+            p = queue.remove();
+            int s1 = (int) (p / numStates2);
+            int s2 = (int) (p % numStates2);
+            s = stateMap.get(p);
+            for (int a1 = fst1.getArcStart(s1); a1 < fst1.getArcEnd(s1); a1++) {
+                int olabel = fst1.getOlabel(a1);
+                int a2 = sorted ? fst2.findArc(s2, olabel) : fst2
+                        .getArcStart(s2);
+                for (; a2 < fst2.getArcEnd(s2); a2++) {
+                    if (fst2.getIlabel(a2) != olabel) {
+                        if (sorted)
+                            break;
+                        continue;
+                    }
+                    int nextState1 = fst1.getNextState(a1);
+                    int nextState2 = fst2.getNextState(a2);
+                    long nextPair = nextState1 * numStates2 + nextState2;
+                    State nextState = stateMap.get(nextPair);
+                    if (nextState == null) {
+                        nextState = new State(semiring.times(
+                                fst1.getFinalWeight(nextState1),
+                                fst2.getFinalWeight(nextState2)));
+                        res.addState(nextState);
+                        stateMap.put(nextPair, nextState);
+                        queue.add(nextPair);
+                    }
+                    s.addArc(new Arc(fst1.getIlabel(a1), fst2.getOlabel(a2),
+                            semiring.times(fst1.getWeight(a1), fst2
+                                    .getWeight(a2)), nextState));
+                }
+            }
+        }
+
+        res.setIsyms(fst1.getIsyms());
+        res.setOsyms(fst2.getOsyms());
+
+        return new CompactFst(res);
+    }
+
     /**
      * Computes the composition of two Fsts. The two Fsts are augmented in order
      * to avoid multiple epsilon paths in the resulting Fst
@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 import edu.cmu.sphinx.fst.Arc;
+import edu.cmu.sphinx.fst.CompactFst;
 import edu.cmu.sphinx.fst.Fst;
 import edu.cmu.sphinx.fst.State;
 import edu.cmu.sphinx.fst.semiring.Semiring;
@@ -188,4 +189,132 @@ public class Determinize {
 
         return res;
     }
+
+    /**
+     * Determinizes a compact fst, reading its arcs in place. The result is
+     * the same as that of {@link #get(Fst)} for the equivalent fst.
+     * 
+     * @param fst the fst to determinize
+     * @return the determinized fst
+     */
+    public static CompactFst get(CompactFst fst) {
+
+        if (fst.getSemiring() == null) {
+            // semiring not provided
+            return null;
+        }
+
+        // initialize the queue and new fst
+        Semiring semiring = fst.getSemiring();
+        Fst res = new Fst(semiring);
+        res.setIsyms(fst.getIsyms());
+        res.setOsyms(fst.getOsyms());
+
+        // stores the queue (item in index 0 is next), the subsets hold the
+        // states of the compact fst and their residual weights
+        ArrayList<ArrayList<Pair<Integer, Float>>> queue = new ArrayList<ArrayList<Pair<Integer, Float>>>();
+
+        HashMap<String, State> stateMapper = new HashMap<String, State>();
+
+        State s = new State(semiring.zero());
+        queue.add(new ArrayList<Pair<Integer, Float>>());
+        queue.get(0).add(
+                new Pair<Integer, Float>(fst.getStart(), semiring.one()));
+        res.addState(s);
+        stateMapper.put(getSubsetId(queue.get(0)), s);
+        res.setStart(s);
+
+        while (queue.size() > 0) {
+            ArrayList<Pair<Integer, Float>> p = queue.remove(0);
+            State pnew = stateMapper.get(getSubsetId(p));
+            ArrayList<Integer> labels = new ArrayList<Integer>();
+            for (Pair<Integer, Float> ps : p) {
+                int old = ps.getLeft();
+                for (int k = fst.getArcStart(old); k < fst.getArcEnd(old); k++) {
+                    if (!labels.contains(fst.getIlabel(k))) {
+                        labels.add(fst.getIlabel(k));
+                    }
+                }
+            }
+            for (int label : labels) {
+                Float wnew = semiring.zero();
+                // calc w'
+                for (Pair<Integer, Float> ps : p) {
+                    int old = ps.getLeft();
+                    Float u = ps.getRight();
+                    for (int k = fst.getArcStart(old); k < fst.getArcEnd(old); k++) {
+                        if (label == fst.getIlabel(k)) {
+                            wnew = semiring.plus(wnew,
+                                    semiring.times(u, fst.getWeight(k)));
+                        }
+                    }
+                }
+
+                // calc new states
+                // keep residual weights to variable forQueue
+                ArrayList<Pair<Integer, Float>> forQueue = new ArrayList<Pair<Integer, Float>>();
+                Float wnewRevert = semiring.divide(semiring.one(), wnew);
+                for (Pair<Integer, Float> ps : p) {
+                    int old = ps.getLeft();
+                    Float u = ps.getRight();
+                    for (int k = fst.getArcStart(old); k < fst.getArcEnd(old); k++) {
+                        if (label == fst.getIlabel(k)) {
+                            Pair<Integer, Float> pair = getPair(forQueue,
+                                    fst.getNextState(k), semiring.zero());
+                            pair.setRight(semiring.plus(
+                                    pair.getRight(),
+                                    semiring.times(wnewRevert,
+                                            semiring.times(u, fst.getWeight(k)))));
+                        }
+                    }
+                }
+
+                String qnewid = getSubsetId(forQueue);
+                if (stateMapper.get(qnewid) == null) {
+                    State qnew = new State(semiring.zero());
+                    res.addState(qnew);
+                    stateMapper.put(qnewid, qnew);
+                    // update new state's weight
+                    Float fw = qnew.getFinalWeight();
+                    for (Pair<Integer, Float> ps : forQueue) {
+                        fw = semiring.plus(fw, semiring.times(
+                                fst.getFinalWeight(ps.getLeft()), ps.getRight()));
+                    }
+                    qnew.setFinalWeight(fw);
+
+                    queue.add(forQueue);
+                }
+                pnew.addArc(new Arc(label, label, wnew, stateMapper.get(qnewid)));
+            }
+        }
+
+        return new CompactFst(res);
+    }
+
+    private static Pair<Integer, Float> getPair(
+            ArrayList<Pair<Integer, Float>> queue, int state, Float zero) {
+        for (Pair<Integer, Float> tmp : queue) {
+            if (state == tmp.getLeft()) {
+                return tmp;
+            }
+        }
+        Pair<Integer, Float> res = new Pair<Integer, Float>(state, zero);
+        queue.add(res);
+        return res;
+    }
+
+    /**
+     * Returns the id of a subset of states of a compact fst and their residual
+     * weights
+     */
+    private static String getSubsetId(ArrayList<Pair<Integer, Float>> pa) {
+        StringBuilder sb = new StringBuilder();
+        for (Pair<Integer, Float> p : pa) {
+            if (sb.length() > 0) {
+                sb.append(",");
+            }
+            sb.append("(" + p.getLeft() + "," + p.getRight() + ")");
+        }
+        return sb.toString();
+    }
 }
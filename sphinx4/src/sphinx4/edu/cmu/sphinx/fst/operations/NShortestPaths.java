@@ -14,9 +14,13 @@
 package edu.cmu.sphinx.fst.operations;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.PriorityQueue;
 
 import edu.cmu.sphinx.fst.Arc;
+import edu.cmu.sphinx.fst.CompactFst;
 import edu.cmu.sphinx.fst.Fst;
 import edu.cmu.sphinx.fst.State;
 import edu.cmu.sphinx.fst.utils.Pair;
@@ -100,6 +104,139 @@ public class NShortestPaths {
         return d;
     }
 
+    /**
+     * Calculates the shortest distances from each state to the final states,
+     * ignoring the labels. Unlike {@link #shortestDistance(Fst)} the fst is
+     * neither reversed nor extended, and the distances are indexed by the ids
+     * of its states. The semiring must have the path property.
+     * 
+     * @param fst the fst to calculate the shortest distances
+     * @return the array containing the shortest distances, or null if they do
+     *         not converge because of cycles with negative weights
+     */
+    public static float[] shortestDistanceToFinal(Fst fst) {
+        Semiring semiring = fst.getSemiring();
+        int numStates = fst.getNumStates();
+
+        // the incoming arcs of each state
+        int[] first = new int[numStates + 1];
+        for (int i = 0; i < numStates; i++) {
+            State s = fst.getState(i);
+            for (int j = 0; j < s.getNumArcs(); j++) {
+                first[s.getArc(j).getNextState().getId() + 1]++;
+            }
+        }
+        for (int i = 0; i < numStates; i++) {
+            first[i + 1] += first[i];
+        }
+        int[] next = Arrays.copyOf(first, numStates);
+        int[] sources = new int[first[numStates]];
+        float[] weights = new float[first[numStates]];
+        for (int i = 0; i < numStates; i++) {
+            State s = fst.getState(i);
+            for (int j = 0; j < s.getNumArcs(); j++) {
+                Arc a = s.getArc(j);
+                int k = next[a.getNextState().getId()]++;
+                sources[k] = i;
+                weights[k] = a.getWeight();
+            }
+        }
+
+        float[] finalWeights = new float[numStates];
+        for (int i = 0; i < numStates; i++) {
+            finalWeights[i] = fst.getState(i).getFinalWeight();
+        }
+        return relaxToFinal(semiring, finalWeights, first, sources, weights);
+    }
+
+    /**
+     * Calculates the shortest distances from each state of a compact fst to
+     * the final states, ignoring the labels. The semiring must have the path
+     * property.
+     * 
+     * @param fst the fst to calculate the shortest distances
+     * @return the array containing the shortest distances, or null if they do
+     *         not converge because of cycles with negative weights
+     */
+    public static float[] shortestDistanceToFinal(CompactFst fst) {
+        int numStates = fst.getNumStates();
+
+        // the incoming arcs of each state
+        int[] first = new int[numStates + 1];
+        for (int k = 0; k < fst.getNumArcs(); k++) {
+            first[fst.getNextState(k) + 1]++;
+        }
+        for (int i = 0; i < numStates; i++) {
+            first[i + 1] += first[i];
+        }
+        int[] next = Arrays.copyOf(first, numStates);
+        int[] sources = new int[fst.getNumArcs()];
+        float[] weights = new float[fst.getNumArcs()];
+        float[] finalWeights = new float[numStates];
+        for (int i = 0; i < numStates; i++) {
+            for (int k = fst.getArcStart(i); k < fst.getArcEnd(i); k++) {
+                int j = next[fst.getNextState(k)]++;
+                sources[j] = i;
+                weights[j] = fst.getWeight(k);
+            }
+            finalWeights[i] = fst.getFinalWeight(i);
+        }
+        return relaxToFinal(fst.getSemiring(), finalWeights, first, sources,
+                weights);
+    }
+
+    /**
+     * Relaxes the distances to the final states over the incoming arcs of
+     * each state until they converge
+     * 
+     * @param semiring the semiring of the weights
+     * @param finalWeights the final weights of the states
+     * @param first the index of the first incoming arc of each state, followed
+     *            by the number of arcs
+     * @param sources the source state of each incoming arc
+     * @param weights the weight of each incoming arc
+     * @return the distances, or null if they do not converge
+     */
+    private static float[] relaxToFinal(Semiring semiring,
+            float[] finalWeights, int[] first, int[] sources, float[] weights) {
+        int numStates = finalWeights.length;
+        float[] d = new float[numStates];
+        int[] updates = new int[numStates];
+        boolean[] queued = new boolean[numStates];
+        int[] queue = new int[numStates];
+        int head = 0;
+        int size = 0;
+        for (int i = 0; i < numStates; i++) {
+            d[i] = finalWeights[i];
+            if (d[i] != semiring.zero()) {
+                queue[size++] = i;
+                queued[i] = true;
+            }
+        }
+        while (size > 0) {
+            int q = queue[head];
+            head = (head + 1) % numStates;
+            size--;
+            queued[q] = false;
+            for (int k = first[q]; k < first[q + 1]; k++) {
+                int p = sources[k];
+                float dnew = semiring.times(weights[k], d[q]);
+                if (semiring.naturalLess(dnew, d[p])) {
+                    d[p] = dnew;
+                    if (++updates[p] > numStates) {
+                        return null;
+                    }
+                    if (!queued[p]) {
+                        queue[(head + size) % numStates] = p;
+                        size++;
+                        queued[p] = true;
+                    }
+                }
+            }
+        }
+        return d;
+    }
+
     /**
      * Calculates the n-best shortest path from the initial to the final state.
      * 
@@ -194,6 +331,146 @@ public class NShortestPaths {
         return res;
     }
 
+    /**
+     * Calculates the n-best shortest path from the initial to the final state
+     * of a compact fst, reading its arcs in place. The result is the same as
+     * that of {@link #get(Fst, int, boolean)} for the equivalent fst, but the
+     * input fst is not modified: the single final state the paths are
+     * extended to is not added to it.
+     * 
+     * @param fst the fst to calculate the nbest shortest paths
+     * @param n number of best paths to return
+     * @param determinize if true the input fst will be determinized prior the
+     *            operation
+     * @return an fst containing the n-best shortest paths, or null if the
+     *         distances to the final states do not converge
+     */
+    public static CompactFst get(CompactFst fst, int n, boolean determinize) {
+        if (fst == null) {
+            return null;
+        }
+
+        if (fst.getSemiring() == null) {
+            return null;
+        }
+        CompactFst fstdet = fst;
+        if (determinize) {
+            fstdet = Determinize.get(fst);
+        }
+        final Semiring semiring = fstdet.getSemiring();
+        Fst res = new Fst(semiring);
+        res.setIsyms(fstdet.getIsyms());
+        res.setOsyms(fstdet.getOsyms());
+
+        // the final states are connected to a single final state by epsilon
+        // arcs weighted with their final weights, which follow their arcs
+        int numStates = fstdet.getNumStates();
+        int finalState = numStates;
+        float[] distances = shortestDistanceToFinal(fstdet);
+        if (distances == null) {
+            return null;
+        }
+        final float[] d = Arrays.copyOf(distances, numStates + 1);
+        d[finalState] = semiring.one();
+
+        int[] r = new int[numStates + 1];
+
+        // the pairs with the lower path cost first, the older ones on ties
+        PriorityQueue<QueueEntry> queue = new PriorityQueue<QueueEntry>(64,
+                new Comparator<QueueEntry>() {
+                    public int compare(QueueEntry e1, QueueEntry e2) {
+                        float cost1 = semiring.times(e1.pair.getRight(),
+                                d[e1.pair.getLeft()]);
+                        float cost2 = semiring.times(e2.pair.getRight(),
+                                d[e2.pair.getLeft()]);
+                        if (semiring.naturalLess(cost1, cost2)) {
+                            return -1;
+                        }
+                        if (semiring.naturalLess(cost2, cost1)) {
+                            return 1;
+                        }
+                        return e1.order < e2.order ? -1 : 1;
+                    }
+                });
+        HashMap<Pair<Integer, Float>, Pair<Integer, Float>> previous = new HashMap<Pair<Integer, Float>, Pair<Integer, Float>>();
+        HashMap<Pair<Integer, Float>, State> stateMap = new HashMap<Pair<Integer, Float>, State>();
+
+        int order = 0;
+        Pair<Integer, Float> first = new Pair<Integer, Float>(
+                fstdet.getStart(), semiring.one());
+        queue.add(new QueueEntry(first, order++));
+        previous.put(first, null);
+
+        while (queue.size() > 0) {
+            Pair<Integer, Float> pair = queue.poll().pair;
+            int p = pair.getLeft();
+            Float c = pair.getRight();
+
+            State s = new State(p == finalState ? semiring.one() : semiring
+                    .zero());
+            res.addState(s);
+            stateMap.put(pair, s);
+            if (previous.get(pair) == null) {
+                // this is the start state
+                res.setStart(s);
+            } else {
+                // add the incoming arc from previous to current
+                State previousState = stateMap.get(previous.get(pair));
+                int previousOldState = previous.get(pair).getLeft();
+                for (int k = fstdet.getArcStart(previousOldState); k < fstdet
+                        .getArcEnd(previousOldState); k++) {
+                    if (fstdet.getNextState(k) == p) {
+                        previousState.addArc(new Arc(fstdet.getIlabel(k),
+                                fstdet.getOlabel(k), fstdet.getWeight(k), s));
+                    }
+                }
+                if (p == finalState) {
+                    previousState.addArc(new Arc(0, 0, fstdet
+                            .getFinalWeight(previousOldState), s));
+                }
+            }
+
+            r[p]++;
+
+            if ((r[p] == n) && (p == finalState)) {
+                break;
+            }
+
+            if (r[p] <= n && p != finalState) {
+                for (int k = fstdet.getArcStart(p); k < fstdet.getArcEnd(p); k++) {
+                    float cnew = semiring.times(c, fstdet.getWeight(k));
+                    Pair<Integer, Float> next = new Pair<Integer, Float>(
+                            fstdet.getNextState(k), cnew);
+                    previous.put(next, pair);
+                    queue.add(new QueueEntry(next, order++));
+                }
+                if (fstdet.getFinalWeight(p) != semiring.zero()) {
+                    float cnew = semiring.times(c, fstdet.getFinalWeight(p));
+                    Pair<Integer, Float> next = new Pair<Integer, Float>(
+                            finalState, cnew);
+                    previous.put(next, pair);
+                    queue.add(new QueueEntry(next, order++));
+                }
+            }
+        }
+
+        return new CompactFst(res);
+    }
+
+    /**
+     * A pair of a state and a path cost in the queue, with the order in which
+     * it was added
+     */
+    private static class QueueEntry {
+        final Pair<Integer, Float> pair;
+        final int order;
+
+        QueueEntry(Pair<Integer, Float> pair, int order) {
+            this.pair = pair;
+            this.order = order;
+        }
+    }
+
     /**
      * Removes from the queue the pair with the lower path cost
      */
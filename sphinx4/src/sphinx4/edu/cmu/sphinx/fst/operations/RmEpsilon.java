@@ -16,6 +16,7 @@ package edu.cmu.sphinx.fst.operations;
 import java.util.HashMap;
 
 import edu.cmu.sphinx.fst.Arc;
+import edu.cmu.sphinx.fst.CompactFst;
 import edu.cmu.sphinx.fst.Fst;
 import edu.cmu.sphinx.fst.State;
 import edu.cmu.sphinx.fst.semiring.Semiring;
@@ -202,4 +203,117 @@ public class RmEpsilon {
 
         return res;
     }
+
+    /**
+     * Calculate the epsilon closure of a state of a compact fst
+     */
+    private static void calcClosure(CompactFst fst, int state,
+            HashMap<Integer, Float>[] cl, Semiring semiring) {
+        for (int k = fst.getArcStart(state); k < fst.getArcEnd(state); k++) {
+            if ((fst.getIlabel(k) == 0) && (fst.getOlabel(k) == 0)) {
+                int nextState = fst.getNextState(k);
+                if (cl[nextState] == null) {
+                    calcClosure(fst, nextState, cl, semiring);
+                }
+                if (cl[nextState] != null) {
+                    for (int pathFinalState : cl[nextState].keySet()) {
+                        add(state, pathFinalState, semiring.times(
+                                cl[nextState].get(pathFinalState),
+                                fst.getWeight(k)), cl, semiring);
+                    }
+                }
+                add(state, nextState, fst.getWeight(k), cl, semiring);
+            }
+        }
+    }
+
+    /**
+     * Add a state in the epsilon closure of a state of a compact fst
+     */
+    private static void add(int fromState, int toState, float weight,
+            HashMap<Integer, Float>[] cl, Semiring semiring) {
+        if (cl[fromState] == null) {
+            cl[fromState] = new HashMap<Integer, Float>();
+        }
+        Float old = cl[fromState].get(toState);
+        cl[fromState].put(toState, old == null ? weight : semiring.plus(
+                weight, old));
+    }
+
+    /**
+     * Removes epsilon transitions from a compact fst, reading its arcs in
+     * place. The result is the same as that of {@link #get(Fst)} for the
+     * equivalent fst, except that the arcs which replace the epsilon paths may
+     * be in a different order.
+     * 
+     * @param fst the fst to remove epsilon transitions from
+     * @return the epsilon-free fst
+     */
+    public static CompactFst get(CompactFst fst) {
+        if (fst == null) {
+            return null;
+        }
+
+        if (fst.getSemiring() == null) {
+            return null;
+        }
+
+        Semiring semiring = fst.getSemiring();
+
+        Fst res = new Fst(semiring);
+
+        int numStates = fst.getNumStates();
+        @SuppressWarnings("unchecked")
+        HashMap<Integer, Float>[] cl = new HashMap[numStates];
+        for (int i = 0; i < numStates; i++) {
+            res.addState(new State(fst.getFinalWeight(i)));
+        }
+        res.setStart(res.getState(fst.getStart()));
+
+        for (int i = 0; i < numStates; i++) {
+            // Add non-epsilon arcs
+            State newState = res.getState(i);
+            for (int k = fst.getArcStart(i); k < fst.getArcEnd(i); k++) {
+                if ((fst.getIlabel(k) != 0) || (fst.getOlabel(k) != 0)) {
+                    newState.addArc(new Arc(fst.getIlabel(k), fst
+                            .getOlabel(k), fst.getWeight(k), res.getState(fst
+                            .getNextState(k))));
+                }
+            }
+
+            // Compute e-Closure
+            if (cl[i] == null) {
+                calcClosure(fst, i, cl, semiring);
+            }
+        }
+
+        // augment fst with arcs generated from epsilon moves.
+        for (int i = 0; i < numStates; i++) {
+            if (cl[i] == null) {
+                continue;
+            }
+            State s = res.getState(i);
+            for (int s1 : cl[i].keySet()) {
+                float pathWeight = cl[i].get(s1);
+                if (fst.getFinalWeight(s1) != semiring.zero()) {
+                    s.setFinalWeight(semiring.plus(s.getFinalWeight(),
+                            semiring.times(pathWeight, fst.getFinalWeight(s1))));
+                }
+                for (int k = fst.getArcStart(s1); k < fst.getArcEnd(s1); k++) {
+                    if ((fst.getIlabel(k) != 0) || (fst.getOlabel(k) != 0)) {
+                        s.addArc(new Arc(fst.getIlabel(k), fst.getOlabel(k),
+                                semiring.times(fst.getWeight(k), pathWeight),
+                                res.getState(fst.getNextState(k))));
+                    }
+                }
+            }
+        }
+
+        res.setIsyms(fst.getIsyms());
+        res.setOsyms(fst.getOsyms());
+
+        Connect.apply(res);
+
+        return new CompactFst(res);
+    }
 }
@@ -55,7 +55,7 @@ public class UnitManager implements Configurable {
      * @param context the context for this unit
      * @return the unit
      */
-    public Unit getUnit(String name, boolean filler, Context context) {
+    public synchronized Unit getUnit(String name, boolean filler, Context context) {
         Unit unit = ciMap.get(name);
         if (context == Context.EMPTY_CONTEXT) {
             if (unit == null) {
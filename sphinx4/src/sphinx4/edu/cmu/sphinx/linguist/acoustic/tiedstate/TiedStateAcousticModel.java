@@ -295,8 +295,8 @@ public class TiedStateAcousticModel implements AcousticModel {
      *
      * @param unit the unit
      */
-    public SenoneSequence getCompositeSenoneSequence(Unit unit,
-                                                     HMMPosition position) {
+    public synchronized SenoneSequence getCompositeSenoneSequence(Unit unit,
+                                                                  HMMPosition position) {
         Context context = unit.getContext();
         SenoneSequence compositeSenoneSequence = null;
         compositeSenoneSequence = compositeSenoneSequenceCache.get(unit.toString());
@@ -19,6 +19,7 @@ import edu.cmu.sphinx.util.props.S4Integer;
 import edu.cmu.sphinx.util.props.S4String;
 
 import java.io.IOException;
+import java.util.Collection;
 
 /**
  * Provides a generic interface to a dictionary. The dictionary is responsible for determining how a word is
@@ -45,6 +46,21 @@ public interface Dictionary extends Configurable {
     @S4Integer(defaultValue = 1)
     public static final String PROP_G2P_MAX_PRONUNCIATIONS = "g2pMaxPron";
 
+    /** The property for the number of threads generating pronunciations with the g2p model. Zero uses one thread per processor. */
+    @S4Integer(defaultValue = 0)
+    public static final String PROP_G2P_THREADS = "g2pThreads";
+
+    /** The property for the maximum number of words whose generated pronunciations are cached. */
+    @S4Integer(defaultValue = 10000)
+    public static final String PROP_G2P_CACHE_SIZE = "g2pCacheSize";
+
+    /**
+     * The property for the file the generated pronunciations are cached in. The file is loaded when the dictionary is
+     * allocated and saved when it is deallocated, in the dictionary format. If empty, the cache is not saved.
+     */
+    @S4String(defaultValue = "")
+    public static final String PROP_G2P_CACHE_PATH = "g2pCachePath";
+
     /** The property for the filler dictionary file path. */
     @S4String
     public static final String PROP_FILLER_DICTIONARY = "fillerPath";
@@ -151,6 +167,16 @@ public interface Dictionary extends Configurable {
     public Word[] getFillerWords();
 
 
+    /**
+     * Looks up a batch of words before they are requested one by one with {@link #getWord(String)}. A dictionary which
+     * generates the pronunciations of missing words can generate those of the batch together, which is faster than
+     * generating them word by word. Other dictionaries do nothing.
+     *
+     * @param words the spellings of the words
+     */
+    public void loadWords(Collection<String> words);
+
+
     /**
      * Allocates the dictionary
      *
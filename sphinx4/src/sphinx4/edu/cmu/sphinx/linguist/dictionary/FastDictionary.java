@@ -15,8 +15,10 @@ package edu.cmu.sphinx.linguist.dictionary;
 import edu.cmu.sphinx.linguist.acoustic.Context;
 import edu.cmu.sphinx.linguist.acoustic.Unit;
 import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.g2p.BatchDecoder;
 import edu.cmu.sphinx.linguist.g2p.Decoder;
 import edu.cmu.sphinx.linguist.g2p.Path;
+import edu.cmu.sphinx.linguist.g2p.PronunciationCache;
 import edu.cmu.sphinx.util.Timer;
 import edu.cmu.sphinx.util.TimerPool;
 import edu.cmu.sphinx.util.props.ConfigurationManagerUtils;
@@ -24,6 +26,7 @@ import edu.cmu.sphinx.util.props.PropertyException;
 import edu.cmu.sphinx.util.props.PropertySheet;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -77,6 +80,9 @@ public class FastDictionary implements Dictionary {
     protected URL fillerDictionaryFile;
     protected URL g2pModelFile;
     protected int g2pMaxPron = 0;
+    protected int g2pThreads = 0;
+    protected int g2pCacheSize = 10000;
+    protected String g2pCachePath = "";
     protected List<URL> addendaUrlList;
 
     protected UnitManager unitManager;
@@ -86,7 +92,7 @@ public class FastDictionary implements Dictionary {
     // -------------------------------
     protected Map<String, String> dictionary;
     protected Map<String, Word> wordDictionary;
-    protected Decoder g2pDecoder;
+    protected BatchDecoder g2pDecoder;
 
     protected final static String FILLER_TAG = "-F-";
     protected Set<String> fillerWords;
@@ -185,6 +191,9 @@ public class FastDictionary implements Dictionary {
         unitManager = (UnitManager) ps.getComponent(PROP_UNIT_MANAGER);
         g2pModelFile = ConfigurationManagerUtils.getResource(PROP_G2P_MODEL_PATH, ps);
         g2pMaxPron = ps.getInt(PROP_G2P_MAX_PRONUNCIATIONS);
+        g2pThreads = ps.getInt(PROP_G2P_THREADS);
+        g2pCacheSize = ps.getInt(PROP_G2P_CACHE_SIZE);
+        g2pCachePath = ps.getString(PROP_G2P_CACHE_PATH);
     }
 
 
@@ -237,9 +246,15 @@ public class FastDictionary implements Dictionary {
             loadDictionary(fillerDictionaryFile.openStream(), true);
 
             if(g2pModelFile != null && !g2pModelFile.getPath().equals("")) {
-                g2pDecoder = new Decoder(g2pModelFile);
+                PronunciationCache cache = new PronunciationCache(g2pCacheSize);
+                if (g2pCachePath != null && new File(g2pCachePath).exists()) {
+                    logger.info("Loading generated pronunciations from: " + g2pCachePath);
+                    cache.load(new File(g2pCachePath));
+                }
+                g2pDecoder = new BatchDecoder(new Decoder(g2pModelFile), g2pMaxPron, g2pThreads, cache);
             }
             loadTimer.stop();
+            allocated = true;
         }
 
     }
@@ -253,8 +268,17 @@ public class FastDictionary implements Dictionary {
 
     @Override
     public void deallocate() {
+        if (g2pDecoder != null && g2pCachePath != null && !g2pCachePath.isEmpty()) {
+            try {
+                g2pDecoder.getCache().save(new File(g2pCachePath));
+            } catch (IOException e) {
+                logger.warning("Can't save the generated pronunciations: " + e);
+            }
+        }
         if (allocated) {
             dictionary = null;
+            if (g2pDecoder != null)
+                g2pDecoder.shutdown();
             g2pDecoder = null;
             allocated = false;
         }
@@ -362,7 +386,7 @@ public class FastDictionary implements Dictionary {
      * @see edu.cmu.sphinx.linguist.dictionary.Word
      */
     @Override
-    public Word getWord(String text) {
+    public synchronized Word getWord(String text) {
         text = text.toLowerCase();
         Word wordObject = wordDictionary.get(text);
 
@@ -379,26 +403,7 @@ public class FastDictionary implements Dictionary {
                 if (createMissingWords) {
                     if (g2pModelFile != null && !g2pModelFile.getPath().equals("")) {
                         logger.warning("Generating phonetic transcription(s) for the word '" + text + "' using g2p model");
-                        ArrayList<Path> paths = g2pDecoder.phoneticize(text, g2pMaxPron);
-                        List<Pronunciation> pronunciations = new LinkedList<Pronunciation>();
-                        for(Path p : paths) {
-                            int unitCount = p.getPath().size();
-                            ArrayList<Unit> units = new ArrayList<Unit>(unitCount);
-                            for(String token : p.getPath()) {
-                                    units.add(getCIUnit(token, false));
-                                }
-                                pronunciations.add(new Pronunciation(units));
-                                if (addSilEndingPronunciation) {
-                                    units.add(UnitManager.SILENCE);
-                                    pronunciations.add(new Pronunciation(units));
-                                }
-                            }
-                        Pronunciation[] pronunciationsArray = pronunciations.toArray(new Pronunciation[pronunciations.size()]);
-                        wordObject = createWord(text, pronunciationsArray, false);
-                        for (Pronunciation pronunciation : pronunciationsArray) {
-                            pronunciation.setWord(wordObject);
-                        }
-                        wordDictionary.put(text, wordObject);
+                        wordObject = createGeneratedWord(text, g2pDecoder.phoneticize(text));
                     } else {
                         wordObject = createWord(text, null, false);
                     }
@@ -412,6 +417,63 @@ public class FastDictionary implements Dictionary {
     }
 
 
+    /**
+     * Looks up a batch of words. When pronunciations of missing words are generated with the g2p model, those of the
+     * batch are generated in parallel, which is faster than looking up the words one by one.
+     *
+     * @param words the spellings of the words
+     */
+    @Override
+    public synchronized void loadWords(Collection<String> words) {
+        if (wordReplacement != null || !allowMissingWords || !createMissingWords || g2pDecoder == null)
+            return;
+
+        List<String> missing = new ArrayList<String>();
+        for (String text : words) {
+            text = text.toLowerCase();
+            if (!wordDictionary.containsKey(text) && !dictionary.containsKey(text))
+                missing.add(text);
+        }
+        if (missing.isEmpty())
+            return;
+
+        logger.info("Generating phonetic transcriptions for " + missing.size() + " words using g2p model");
+        for (Map.Entry<String, ArrayList<Path>> entry : g2pDecoder.phoneticize(missing).entrySet())
+            createGeneratedWord(entry.getKey(), entry.getValue());
+    }
+
+
+    /**
+     * Creates a word from the pronunciations generated with the g2p model and inserts it into the dictionary.
+     *
+     * @param text  the spelling of the word
+     * @param paths the generated pronunciations
+     * @return the word
+     */
+    private Word createGeneratedWord(String text, List<Path> paths) {
+        List<Pronunciation> pronunciations = new LinkedList<Pronunciation>();
+        for (Path p : paths) {
+            int unitCount = p.getPath().size();
+            ArrayList<Unit> units = new ArrayList<Unit>(unitCount);
+            for (String token : p.getPath()) {
+                units.add(getCIUnit(token, false));
+            }
+            pronunciations.add(new Pronunciation(units));
+            if (addSilEndingPronunciation) {
+                units.add(UnitManager.SILENCE);
+                pronunciations.add(new Pronunciation(units));
+            }
+        }
+        Pronunciation[] pronunciationsArray = pronunciations.toArray(new Pronunciation[pronunciations.size()]);
+        Word wordObject = createWord(text, pronunciationsArray, false);
+        for (Pronunciation pronunciation : pronunciationsArray) {
+            pronunciation.setWord(wordObject);
+        }
+        wordDictionary.put(text, wordObject);
+        return wordObject;
+    }
+
+
     /**
      * Create a Word object with the given spelling and pronunciations, and insert it into the dictionary.
      *
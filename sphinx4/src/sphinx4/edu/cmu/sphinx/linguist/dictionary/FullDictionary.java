@@ -425,6 +425,16 @@ public class FullDictionary implements Dictionary {
     }
 
 
+    /**
+     * Does nothing, the pronunciations of missing words are generated one by one.
+     *
+     * @param words the spellings of the words
+     */
+    @Override
+    public void loadWords(Collection<String> words) {
+    }
+
+
     /**
      * Get the word dictionary file
      *
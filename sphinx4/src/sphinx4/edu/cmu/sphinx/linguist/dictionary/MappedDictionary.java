@@ -0,0 +1,889 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.dictionary;
+
+import edu.cmu.sphinx.linguist.acoustic.Context;
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.util.Timer;
+import edu.cmu.sphinx.util.TimerPool;
+import edu.cmu.sphinx.util.props.ConfigurationManagerUtils;
+import edu.cmu.sphinx.util.props.PropertyException;
+import edu.cmu.sphinx.util.props.PropertySheet;
+import edu.cmu.sphinx.util.props.S4Integer;
+import edu.cmu.sphinx.util.props.S4String;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * A dictionary that reads the Sphinx-3 format dictionaries of the {@link FastDictionary FastDictionary} from a
+ * compiled binary file instead of parsing the text. The binary file holds the spellings sorted by their UTF-8 bytes and
+ * the pronunciations as packed arrays of phone ids. It is memory-mapped, so loading the dictionary takes no time and
+ * recognizers of several processes share the pages of the same file.
+ * <p/>
+ * A word is looked up by a binary search over the mapped spellings, and its <code>Word</code> and
+ * <code>Pronunciation</code> objects are created when it is first used. They are kept in a bounded cache, the least
+ * recently used word being evicted when the cache is full. The sentence start, sentence end and silence words and the
+ * filler words are never evicted, so they are always the same objects.
+ * <p/>
+ * The binary file is compiled from the text dictionaries when the dictionary is allocated, unless it was compiled
+ * from the same dictionaries before. The file records the URL, the size and the modification time of the main,
+ * addenda and filler dictionaries, and it is compiled again when one of them differs. It is written to a temporary
+ * file which is then renamed, so other processes never map a partly written file. It can also be compiled beforehand
+ * with {@link #main(String[])}. Pronunciations of missing words are not generated with a g2p model.
+ */
+public class MappedDictionary implements Dictionary {
+
+    /**
+     * The property for the path of the compiled dictionary. If empty, the dictionary path with the suffix
+     * <code>.bin</code> is used, or a temporary file if the dictionary is not a file.
+     */
+    @S4String(defaultValue = "")
+    public static final String PROP_BINARY_PATH = "binaryPath";
+
+    /** The property for the maximum number of words kept in the cache. */
+    @S4Integer(defaultValue = 10000)
+    public static final String PROP_CACHE_SIZE = "cacheSize";
+
+    private final static int MAGIC = 0x53444943;
+    private final static int VERSION = 2;
+    private final static int HEADER_SIZE = 32;
+
+    // -------------------------------
+    // Configuration data
+    // --------------------------------
+    private Logger logger;
+    private boolean addSilEndingPronunciation;
+    private boolean allowMissingWords;
+    private boolean createMissingWords;
+    private String wordReplacement;
+    private URL wordDictionaryFile;
+    private URL fillerDictionaryFile;
+    private List<URL> addendaUrlList;
+    private String binaryPath;
+    private int cacheSize;
+
+    private UnitManager unitManager;
+
+    // -------------------------------
+    // working data
+    // -------------------------------
+    private ByteBuffer buffer;
+    private int numWords;
+    private int numPronunciations;
+    private int numFillers;
+    private int wordOffsets;
+    private int wordPronunciations;
+    private int pronunciationOffsets;
+    private int pronunciationFillers;
+    private int phones;
+    private int fillers;
+    private int spellings;
+    private String[] unitNames;
+    private Map<String, Word> pinnedWords;
+    private Map<String, Word> cachedWords;
+
+
+    public MappedDictionary(
+            URL wordDictionaryFile,
+            URL fillerDictionaryFile,
+            List<URL> addendaUrlList,
+            boolean addSilEndingPronunciation,
+            String wordReplacement,
+            boolean allowMissingWords,
+            boolean createMissingWords,
+            UnitManager unitManager,
+            String binaryPath,
+            int cacheSize
+    ) {
+        this.logger = Logger.getLogger(getClass().getName());
+
+        this.wordDictionaryFile = wordDictionaryFile;
+        this.fillerDictionaryFile = fillerDictionaryFile;
+        this.addendaUrlList = addendaUrlList;
+        this.addSilEndingPronunciation = addSilEndingPronunciation;
+        this.wordReplacement = wordReplacement;
+        this.allowMissingWords = allowMissingWords;
+        this.createMissingWords = createMissingWords;
+        this.unitManager = unitManager;
+        this.binaryPath = binaryPath;
+        this.cacheSize = cacheSize;
+    }
+
+    public MappedDictionary() {
+
+    }
+
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.util.props.Configurable#newProperties(edu.cmu.sphinx.util.props.PropertySheet)
+    */
+
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        logger = ps.getLogger();
+
+        wordDictionaryFile = ConfigurationManagerUtils.getResource(PROP_DICTIONARY, ps);
+        fillerDictionaryFile = ConfigurationManagerUtils.getResource(PROP_FILLER_DICTIONARY, ps);
+        addendaUrlList = ps.getResourceList(PROP_ADDENDA);
+        addSilEndingPronunciation = ps.getBoolean(PROP_ADD_SIL_ENDING_PRONUNCIATION);
+        wordReplacement = ps.getString(Dictionary.PROP_WORD_REPLACEMENT);
+        allowMissingWords = ps.getBoolean(Dictionary.PROP_ALLOW_MISSING_WORDS);
+        createMissingWords = ps.getBoolean(PROP_CREATE_MISSING_WORDS);
+        unitManager = (UnitManager) ps.getComponent(PROP_UNIT_MANAGER);
+        binaryPath = ps.getString(PROP_BINARY_PATH);
+        cacheSize = ps.getInt(PROP_CACHE_SIZE);
+    }
+
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.linguist.dictionary.Dictionary#allocate()
+    */
+
+    @Override
+    public void allocate() throws IOException {
+        if (buffer != null) {
+            return;
+        }
+        Timer loadTimer = TimerPool.getTimer(this, "Load Dictionary");
+        loadTimer.start();
+
+        File binaryFile = getBinaryFile();
+        if (isStale(binaryFile)) {
+            logger.info("Compiling dictionary " + wordDictionaryFile + " to " + binaryFile);
+            try {
+                compile(binaryFile);
+            } catch (IOException e) {
+                if (binaryPath != null && !binaryPath.isEmpty()) {
+                    throw e;
+                }
+                binaryFile = File.createTempFile("dictionary", ".bin");
+                binaryFile.deleteOnExit();
+                logger.warning("Can't write the compiled dictionary, compiling it to " + binaryFile + ": " + e);
+                compile(binaryFile);
+            }
+        }
+
+        logger.info("Mapping dictionary from: " + binaryFile);
+        map(binaryFile);
+
+        cachedWords = new LinkedHashMap<String, Word>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Word> eldest) {
+                return size() > cacheSize;
+            }
+        };
+        pinnedWords = new HashMap<String, Word>();
+        for (String spelling : new String[]{SENTENCE_START_SPELLING, SENTENCE_END_SPELLING, SILENCE_SPELLING}) {
+            pin(spelling);
+        }
+        for (int i = 0; i < numFillers; i++) {
+            pin(getSpelling(buffer.getInt(fillers + 4 * i)));
+        }
+
+        loadTimer.stop();
+    }
+
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.linguist.dictionary.Dictionary#deallocate()
+    */
+
+    @Override
+    public void deallocate() {
+        buffer = null;
+        unitNames = null;
+        pinnedWords = null;
+        cachedWords = null;
+    }
+
+
+    /** Returns the compiled dictionary file. */
+    private File getBinaryFile() throws IOException {
+        if (binaryPath != null && !binaryPath.isEmpty()) {
+            return new File(binaryPath);
+        }
+        File dictionaryFile = toFile(wordDictionaryFile);
+        if (dictionaryFile != null) {
+            return new File(dictionaryFile.getPath() + ".bin");
+        }
+        File binaryFile = File.createTempFile("dictionary", ".bin");
+        binaryFile.deleteOnExit();
+        binaryFile.delete();
+        return binaryFile;
+    }
+
+
+    /**
+     * Returns true if the compiled dictionary is missing, unreadable or was compiled from other text dictionaries than
+     * the current ones, or from other versions of them.
+     */
+    private boolean isStale(File binaryFile) throws IOException {
+        if (!binaryFile.exists()) {
+            return true;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(binaryFile)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return true;
+            }
+            in.skipBytes(HEADER_SIZE - 8);
+            List<Source> sources = getSources();
+            if (in.readInt() != sources.size()) {
+                return true;
+            }
+            for (Source source : sources) {
+                if (!source.equals(Source.read(in))) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            return true;
+        } finally {
+            in.close();
+        }
+    }
+
+
+    /** Returns the text dictionaries in the order they are loaded, with their current sizes and modification times. */
+    private List<Source> getSources() throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        urls.add(wordDictionaryFile);
+        if (addendaUrlList != null) {
+            urls.addAll(addendaUrlList);
+        }
+        urls.add(fillerDictionaryFile);
+        List<Source> sources = new ArrayList<Source>();
+        for (URL url : urls) {
+            sources.add(new Source(url));
+        }
+        return sources;
+    }
+
+
+    private static File toFile(URL url) {
+        if (url == null || !url.getProtocol().equals("file")) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return new File(url.getPath());
+        } catch (IllegalArgumentException e) {
+            return new File(url.getPath());
+        }
+    }
+
+
+    /**
+     * Compiles the text dictionaries into a binary file
+     *
+     * @param binaryFile the file to write
+     * @throws IOException if there is an error reading the dictionaries or writing the file
+     */
+    public void compile(File binaryFile) throws IOException {
+        // the sources are described before they are read, so a dictionary changed meanwhile is compiled again
+        List<Source> sources = getSources();
+        Map<String, String> dictionary = new HashMap<String, String>();
+        Set<String> fillerWords = new HashSet<String>();
+        loadDictionary(wordDictionaryFile.openStream(), false, dictionary, fillerWords);
+        if (addendaUrlList != null) {
+            for (URL addendumUrl : addendaUrlList) {
+                loadDictionary(addendumUrl.openStream(), false, dictionary, fillerWords);
+            }
+        }
+        loadDictionary(fillerDictionaryFile.openStream(), true, dictionary, fillerWords);
+
+        File directory = binaryFile.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile("." + binaryFile.getName() + ".", ".tmp", directory);
+        try {
+            write(tmp, sources, dictionary, fillerWords);
+            if (!tmp.renameTo(binaryFile)) {
+                binaryFile.delete();
+                if (!tmp.renameTo(binaryFile)) {
+                    throw new IOException("Can't rename " + tmp + " to " + binaryFile);
+                }
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+
+    /**
+     * Loads the entries of a Sphinx-3 format dictionary like the {@link FastDictionary FastDictionary} does: the
+     * spellings are lower-cased, later entries override earlier ones and filler entries are tagged.
+     */
+    private static void loadDictionary(InputStream inputStream, boolean isFillerDict,
+                                       Map<String, String> dictionary, Set<String> fillerWords) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(inputStream));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int spaceIndex = line.indexOf(' ');
+                int spaceIndexTab = line.indexOf('\t');
+                if (spaceIndex == -1 || (spaceIndexTab >= 0 && spaceIndexTab < spaceIndex)) {
+                    spaceIndex = spaceIndexTab;
+                }
+                if (spaceIndex == -1) {
+                    throw new Error("Error loading word: " + line);
+                }
+                String word = line.substring(0, spaceIndex).toLowerCase();
+                if (isFillerDict) {
+                    dictionary.put(word, FastDictionary.FILLER_TAG + line);
+                    fillerWords.add(word);
+                } else {
+                    dictionary.put(word, line);
+                }
+            }
+        } finally {
+            br.close();
+        }
+    }
+
+
+    /**
+     * Writes the dictionary. The pronunciations of a spelling are its entry and the entries of its following variants
+     * <code>word(2)</code>, <code>word(3)</code> and so on, as the {@link FastDictionary FastDictionary} looks them up.
+     * A variant entry shares the pronunciation of its base word.
+     */
+    private static void write(File binaryFile, List<Source> sources, Map<String, String> dictionary,
+                              Set<String> fillerWords) throws IOException {
+        byte[][] keys = new byte[dictionary.size()][];
+        int k = 0;
+        for (String word : dictionary.keySet()) {
+            keys[k++] = word.getBytes("UTF-8");
+        }
+        Arrays.sort(keys, new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] a, byte[] b) {
+                return compareBytes(a, b);
+            }
+        });
+
+        Map<String, Integer> units = new LinkedHashMap<String, Integer>();
+        Map<String, Integer> entryPronunciations = new HashMap<String, Integer>();
+        List<String> entries = new ArrayList<String>();
+        int[] firstPronunciation = new int[keys.length];
+        int[] pronunciationCount = new int[keys.length];
+        String[] spellings = new String[keys.length];
+
+        for (int i = 0; i < keys.length; i++) {
+            String word = new String(keys[i], "UTF-8");
+            spellings[i] = word;
+            List<String> run = new ArrayList<String>();
+            for (int count = 1; ; count++) {
+                String lookupWord = count > 1 ? word + '(' + count + ')' : word;
+                if (!dictionary.containsKey(lookupWord)) {
+                    break;
+                }
+                run.add(lookupWord);
+            }
+
+            Integer first = entryPronunciations.get(run.get(0));
+            boolean shared = first != null;
+            for (int j = 1; shared && j < run.size(); j++) {
+                Integer next = entryPronunciations.get(run.get(j));
+                shared = next != null && next == first + j;
+            }
+            if (!shared) {
+                first = entries.size();
+                for (String entry : run) {
+                    if (!entryPronunciations.containsKey(entry)) {
+                        entryPronunciations.put(entry, entries.size());
+                    }
+                    entries.add(entry);
+                }
+            }
+            firstPronunciation[i] = first;
+            pronunciationCount[i] = run.size();
+        }
+
+        int[] pronunciationOffsets = new int[entries.size() + 1];
+        byte[] pronunciationFillers = new byte[entries.size()];
+        List<Integer> phones = new ArrayList<Integer>();
+        for (int i = 0; i < entries.size(); i++) {
+            StringTokenizer st = new StringTokenizer(dictionary.get(entries.get(i)));
+            pronunciationOffsets[i] = phones.size();
+            pronunciationFillers[i] = (byte) (st.nextToken().startsWith(FastDictionary.FILLER_TAG) ? 1 : 0);
+            while (st.hasMoreTokens()) {
+                String unitName = st.nextToken();
+                Integer id = units.get(unitName);
+                if (id == null) {
+                    id = units.size();
+                    if (id > Short.MAX_VALUE) {
+                        throw new IOException("Too many phones in the dictionary");
+                    }
+                    units.put(unitName, id);
+                }
+                phones.add(id);
+            }
+        }
+        pronunciationOffsets[entries.size()] = phones.size();
+
+        int[] fillerIndices = new int[fillerWords.size()];
+        int f = 0;
+        for (int i = 0; i < spellings.length; i++) {
+            if (fillerWords.contains(spellings[i])) {
+                fillerIndices[f++] = i;
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(binaryFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(units.size());
+            out.writeInt(keys.length);
+            out.writeInt(entries.size());
+            out.writeInt(phones.size());
+            out.writeInt(fillerIndices.length);
+            int blobLength = 0;
+            for (byte[] key : keys) {
+                blobLength += key.length;
+            }
+            out.writeInt(blobLength);
+
+            out.writeInt(sources.size());
+            for (Source source : sources) {
+                source.write(out);
+            }
+            for (String unitName : units.keySet()) {
+                byte[] bytes = unitName.getBytes("UTF-8");
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            int offset = 0;
+            for (byte[] key : keys) {
+                out.writeInt(offset);
+                offset += key.length;
+            }
+            out.writeInt(offset);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeInt(firstPronunciation[i]);
+                out.writeInt(pronunciationCount[i]);
+            }
+            for (int pronunciationOffset : pronunciationOffsets) {
+                out.writeInt(pronunciationOffset);
+            }
+            out.write(pronunciationFillers);
+            for (int phone : phones) {
+                out.writeShort(phone);
+            }
+            for (int fillerIndex : fillerIndices) {
+                out.writeInt(fillerIndex);
+            }
+            for (byte[] key : keys) {
+                out.write(key);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+
+    /** Maps the compiled dictionary and locates its tables. */
+    private void map(File binaryFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(binaryFile, "r");
+        try {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            file.close();
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            buffer = null;
+            throw new IOException("Not a compiled dictionary: " + binaryFile);
+        }
+        int numUnits = buffer.getInt(8);
+        numWords = buffer.getInt(12);
+        numPronunciations = buffer.getInt(16);
+        int numPhones = buffer.getInt(20);
+        numFillers = buffer.getInt(24);
+
+        int position = HEADER_SIZE;
+        int numSources = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < numSources; i++) {
+            position += 4 + buffer.getInt(position) + 16;
+        }
+        unitNames = new String[numUnits];
+        for (int i = 0; i < numUnits; i++) {
+            byte[] bytes = new byte[buffer.getInt(position)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = buffer.get(position + 4 + j);
+            }
+            unitNames[i] = new String(bytes, "UTF-8");
+            position += 4 + bytes.length;
+        }
+        wordOffsets = position;
+        wordPronunciations = wordOffsets + 4 * (numWords + 1);
+        pronunciationOffsets = wordPronunciations + 8 * numWords;
+        pronunciationFillers = pronunciationOffsets + 4 * (numPronunciations + 1);
+        phones = pronunciationFillers + numPronunciations;
+        fillers = phones + 2 * numPhones;
+        spellings = fillers + 4 * numFillers;
+    }
+
+
+    /** Compares two byte strings as unsigned bytes. */
+    private static int compareBytes(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+
+    /** Compares a key with the bytes of the buffer in the given range, as unsigned bytes. */
+    private static int compareBytes(byte[] key, ByteBuffer bytes, int start, int end) {
+        int length = Math.min(key.length, end - start);
+        for (int i = 0; i < length; i++) {
+            int c = (key[i] & 0xff) - (bytes.get(start + i) & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return key.length - (end - start);
+    }
+
+
+    /** Returns the index of a spelling in the compiled dictionary, or -1 if it is missing. */
+    private int findWord(String text) {
+        byte[] key;
+        try {
+            key = text.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        int low = 0;
+        int high = numWords - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = compareBytes(key, buffer, spellings + buffer.getInt(wordOffsets + 4 * mid),
+                    spellings + buffer.getInt(wordOffsets + 4 * mid + 4));
+            if (c == 0) {
+                return mid;
+            } else if (c < 0) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return -1;
+    }
+
+
+    private String getSpelling(int index) {
+        int start = spellings + buffer.getInt(wordOffsets + 4 * index);
+        byte[] bytes = new byte[spellings + buffer.getInt(wordOffsets + 4 * index + 4) - start];
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = buffer.get(start + j);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    /** Creates the word of the given index of the compiled dictionary. */
+    private Word createWord(String text, int index) {
+        int first = buffer.getInt(wordPronunciations + 8 * index);
+        int count = buffer.getInt(wordPronunciations + 8 * index + 4);
+        List<Pronunciation> pronunciations = new ArrayList<Pronunciation>();
+        boolean isFiller = false;
+
+        for (int p = first; p < first + count; p++) {
+            isFiller = buffer.get(pronunciationFillers + p) != 0;
+            int start = buffer.getInt(pronunciationOffsets + 4 * p);
+            int end = buffer.getInt(pronunciationOffsets + 4 * p + 4);
+            ArrayList<Unit> units = new ArrayList<Unit>(end - start + 1);
+            for (int i = start; i < end; i++) {
+                String unitName = unitNames[buffer.getShort(phones + 2 * i)];
+                units.add(unitManager.getUnit(unitName, isFiller, Context.EMPTY_CONTEXT));
+            }
+            pronunciations.add(new Pronunciation(units));
+            if (!isFiller && addSilEndingPronunciation) {
+                units.add(UnitManager.SILENCE);
+                pronunciations.add(new Pronunciation(units));
+            }
+        }
+
+        Pronunciation[] pronunciationsArray = pronunciations.toArray(new Pronunciation[pronunciations.size()]);
+        Word wordObject = new Word(text, pronunciationsArray, isFiller);
+        for (Pronunciation pronunciation : pronunciationsArray) {
+            pronunciation.setWord(wordObject);
+        }
+        return wordObject;
+    }
+
+
+    private void pin(String text) {
+        int index = findWord(text);
+        if (index >= 0) {
+            pinnedWords.put(text, createWord(text, index));
+        }
+    }
+
+
+    /**
+     * Returns a Word object based on the spelling and its classification. The behavior of this method is also affected
+     * by the properties wordReplacement, allowMissingWords, and createMissingWords.
+     *
+     * @param text the spelling of the word of interest.
+     * @return a Word object
+     * @see edu.cmu.sphinx.linguist.dictionary.Word
+     */
+    @Override
+    public Word getWord(String text) {
+        text = text.toLowerCase();
+        Word wordObject = pinnedWords.get(text);
+        if (wordObject != null) {
+            return wordObject;
+        }
+        synchronized (cachedWords) {
+            wordObject = cachedWords.get(text);
+        }
+        if (wordObject != null) {
+            return wordObject;
+        }
+
+        int index = findWord(text);
+        if (index < 0) { // deal with 'not found' case
+            logger.warning("The dictionary is missing a phonetic transcription for the word '" + text + "'");
+            if (wordReplacement != null) {
+                return getWord(wordReplacement);
+            } else if (allowMissingWords && createMissingWords) {
+                wordObject = new Word(text, null, false);
+            } else {
+                return null;
+            }
+        } else {
+            wordObject = createWord(text, index);
+        }
+
+        synchronized (cachedWords) {
+            Word cached = cachedWords.get(text);
+            if (cached != null) {
+                return cached;
+            }
+            cachedWords.put(text, wordObject);
+        }
+        return wordObject;
+    }
+
+
+    /**
+     * Returns the sentence start word.
+     *
+     * @return the sentence start word
+     */
+    @Override
+    public Word getSentenceStartWord() {
+        return getWord(SENTENCE_START_SPELLING);
+    }
+
+
+    /**
+     * Returns the sentence end word.
+     *
+     * @return the sentence end word
+     */
+    @Override
+    public Word getSentenceEndWord() {
+        return getWord(SENTENCE_END_SPELLING);
+    }
+
+
+    /**
+     * Returns the silence word.
+     *
+     * @return the silence word
+     */
+    @Override
+    public Word getSilenceWord() {
+        return getWord(SILENCE_SPELLING);
+    }
+
+
+    /**
+     * Returns the set of all possible word classifications for this dictionary.
+     *
+     * @return the set of all possible word classifications
+     */
+    @Override
+    public WordClassification[] getPossibleWordClassifications() {
+        return null;
+    }
+
+
+    /**
+     * Gets the set of all filler words in the dictionary
+     *
+     * @return an array (possibly empty) of all filler words
+     */
+    @Override
+    public Word[] getFillerWords() {
+        Word[] fillerWordArray = new Word[numFillers];
+        for (int i = 0; i < numFillers; i++) {
+            fillerWordArray[i] = getWord(getSpelling(buffer.getInt(fillers + 4 * i)));
+        }
+        return fillerWordArray;
+    }
+
+
+    /**
+     * Does nothing, the dictionary does not generate the pronunciations of missing words.
+     *
+     * @param words the spellings of the words
+     */
+    @Override
+    public void loadWords(Collection<String> words) {
+    }
+
+
+    /**
+     * Get the number of spellings in the dictionary, including the variants
+     *
+     * @return the number of spellings
+     */
+    public int getNumWords() {
+        return numWords;
+    }
+
+
+    /**
+     * Compiles a dictionary.
+     * <p/>
+     * Usage: MappedDictionary dictionary filler binary [addendum ...]
+     *
+     * @param args the paths of the dictionary, the filler dictionary, the compiled dictionary and the addenda
+     * @throws IOException if there is an error reading the dictionaries or writing the file
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: MappedDictionary dictionary filler binary [addendum ...]");
+            System.exit(1);
+        }
+        List<URL> addenda = new ArrayList<URL>();
+        for (int i = 3; i < args.length; i++) {
+            addenda.add(new File(args[i]).toURI().toURL());
+        }
+        MappedDictionary dictionary = new MappedDictionary(new File(args[0]).toURI().toURL(),
+                new File(args[1]).toURI().toURL(), addenda, false, null, false, false, new UnitManager(),
+                args[2], 0);
+        dictionary.compile(new File(args[2]));
+    }
+
+
+    /** A text dictionary the binary file is compiled from, identified by its URL, size and modification time. */
+    private static class Source {
+
+        private final static int MAX_URL_LENGTH = 65536;
+
+        private final String url;
+        private final long size;
+        private final long lastModified;
+
+
+        Source(String url, long size, long lastModified) {
+            this.url = url;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+
+        Source(URL url) throws IOException {
+            this.url = url.toString();
+            File file = toFile(url);
+            if (file != null) {
+                size = file.length();
+                lastModified = file.lastModified();
+            } else {
+                URLConnection connection = url.openConnection();
+                size = connection.getContentLength();
+                lastModified = connection.getLastModified();
+                connection.getInputStream().close();
+            }
+        }
+
+
+        static Source read(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_URL_LENGTH) {
+                throw new IOException("Invalid source URL length " + length);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new Source(new String(bytes, "UTF-8"), in.readLong(), in.readLong());
+        }
+
+
+        void write(DataOutputStream out) throws IOException {
+            byte[] bytes = url.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+        }
+
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Source)) {
+                return false;
+            }
+            Source other = (Source) obj;
+            return url.equals(other.url) && size == other.size && lastModified == other.lastModified;
+        }
+
+
+        @Override
+        public int hashCode() {
+            return url.hashCode();
+        }
+    }
+}
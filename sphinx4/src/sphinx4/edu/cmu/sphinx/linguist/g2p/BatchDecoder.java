@@ -0,0 +1,137 @@
+/**
+ *
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.g2p;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.cmu.sphinx.util.CustomThreadFactory;
+
+/**
+ * Phoneticizes words with a g2p {@link Decoder} on a pool of threads and
+ * caches the pronunciations in a {@link PronunciationCache}. A batch of words
+ * is phoneticized in parallel.
+ */
+public class BatchDecoder {
+
+    // the g2p decoder, shared by the threads
+    private final Decoder decoder;
+
+    // the number of pronunciations to generate per word
+    private final int nbest;
+
+    // the generated pronunciations
+    private final PronunciationCache cache;
+
+    // the thread pool
+    private final ExecutorService executor;
+
+    /**
+     * Create a batch decoder
+     *
+     * @param decoder the g2p decoder
+     * @param nbest the number of pronunciations to generate per word
+     * @param numThreads the number of threads, or zero for one thread per
+     *            available processor
+     * @param cache the cache of the generated pronunciations
+     */
+    public BatchDecoder(Decoder decoder, int nbest, int numThreads,
+            PronunciationCache cache) {
+        this.decoder = decoder;
+        this.nbest = nbest;
+        this.cache = cache;
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+        executor = Executors.newFixedThreadPool(numThreads,
+                new CustomThreadFactory(getClass().getSimpleName(), true,
+                        Thread.NORM_PRIORITY));
+    }
+
+    /**
+     * Get the cache of the generated pronunciations
+     */
+    public PronunciationCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Phoneticize a word in the calling thread, unless it is cached
+     *
+     * @param word the word to phoneticize
+     * @return the pronunciation(s) of the word
+     */
+    public ArrayList<Path> phoneticize(String word) {
+        ArrayList<Path> paths = cache.get(word);
+        if (paths == null) {
+            paths = decoder.phoneticize(word, nbest);
+            cache.put(word, paths);
+        }
+        return paths;
+    }
+
+    /**
+     * Phoneticize words in parallel, except the cached ones
+     *
+     * @param words the words to phoneticize
+     * @return the pronunciation(s) of each word
+     */
+    public Map<String, ArrayList<Path>> phoneticize(Collection<String> words) {
+        Map<String, ArrayList<Path>> result = new LinkedHashMap<String, ArrayList<Path>>();
+        Map<String, Future<ArrayList<Path>>> futures = new LinkedHashMap<String, Future<ArrayList<Path>>>();
+        for (final String word : words) {
+            if (result.containsKey(word) || futures.containsKey(word)) {
+                continue;
+            }
+            ArrayList<Path> paths = cache.get(word);
+            if (paths != null) {
+                result.put(word, paths);
+            } else {
+                futures.put(word, executor
+                        .submit(new Callable<ArrayList<Path>>() {
+                            public ArrayList<Path> call() {
+                                return decoder.phoneticize(word, nbest);
+                            }
+                        }));
+            }
+        }
+
+        try {
+            for (Map.Entry<String, Future<ArrayList<Path>>> entry : futures
+                    .entrySet()) {
+                ArrayList<Path> paths = entry.getValue().get();
+                cache.put(entry.getKey(), paths);
+                result.put(entry.getKey(), paths);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while phoneticizing", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Phoneticizing failed", e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Stops the threads
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
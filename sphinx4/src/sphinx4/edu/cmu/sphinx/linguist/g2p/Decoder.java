@@ -13,34 +13,35 @@
 
 package edu.cmu.sphinx.linguist.g2p;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.PriorityQueue;
 import java.util.regex.Pattern;
 
 import edu.cmu.sphinx.fst.Arc;
+import edu.cmu.sphinx.fst.CompactFst;
 import edu.cmu.sphinx.fst.Fst;
-import edu.cmu.sphinx.fst.ImmutableFst;
 import edu.cmu.sphinx.fst.State;
 import edu.cmu.sphinx.fst.operations.ArcSort;
 import edu.cmu.sphinx.fst.operations.Compose;
 import edu.cmu.sphinx.fst.operations.ILabelCompare;
 import edu.cmu.sphinx.fst.operations.NShortestPaths;
-import edu.cmu.sphinx.fst.operations.OLabelCompare;
-import edu.cmu.sphinx.fst.operations.Project;
-import edu.cmu.sphinx.fst.operations.ProjectType;
-import edu.cmu.sphinx.fst.operations.RmEpsilon;
 import edu.cmu.sphinx.fst.semiring.Semiring;
 import edu.cmu.sphinx.fst.semiring.TropicalSemiring;
 import edu.cmu.sphinx.fst.utils.Utils;
 
 /**
- * The grapheme-to-phoneme (g2p) decoder
+ * The grapheme-to-phoneme (g2p) decoder. Once created, a decoder may be used
+ * from several threads.
  * 
  * @author John Salatas <jsalatas@users.sourceforge.net>
  */
@@ -68,30 +69,56 @@ public class Decoder {
     ArrayList<String>[] clusters = null;
 
     // the g2p model
-    ImmutableFst g2pmodel;
+    CompactFst g2pmodel;
 
     // fst containing the epsilon filter for the compose operation
-    Fst epsilonFilter;
+    CompactFst epsilonFilter;
+
+    // shortest distance from each model state to a final state, the
+    // heuristic of the path search
+    float[] modelDistances;
+
+    // the phones of each output symbol of the model
+    String[][] outputPhones;
 
     /**
-     * Create a decoder by loading the serialized model from a specified URL
+     * Create a decoder by loading the model from a specified URL. The model
+     * is either serialized or in the binary format of {@link CompactFst}.
      * 
-     * @param g2pmodel_url the URL of the serialized model
+     * @param g2pmodel_url the URL of the model
      * @throws IOException
      */
     public Decoder(URL g2pmodel_url) throws IOException {
-        g2pmodel = ImmutableFst.loadModel(g2pmodel_url.openStream());
+        // map local models into memory
+        File file = null;
+        if (g2pmodel_url.getProtocol().equals("file")) {
+            try {
+                file = new File(g2pmodel_url.toURI());
+            } catch (URISyntaxException e) {
+                file = null;
+            }
+        }
+        if (file != null) {
+            g2pmodel = CompactFst.loadModel(file.getPath());
+        } else {
+            g2pmodel = CompactFst.loadModel(g2pmodel_url.openStream());
+        }
         init();
     }
 
     /**
-     * Create a decoder by loading the serialized model from a specified
-     * filename
+     * Create a decoder by loading the model from a specified filename. The
+     * model is either serialized or in the binary format of
+     * {@link CompactFst}.
      * 
-     * @param g2pmodel_file the filename of the serialized model
+     * @param g2pmodel_file the filename of the model
      */
     public Decoder(String g2pmodel_file) {
-        g2pmodel = ImmutableFst.loadModel(g2pmodel_file);
+        try {
+            g2pmodel = CompactFst.loadModel(g2pmodel_file);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot load the g2p model", e);
+        }
         init();
     }
 
@@ -104,8 +131,7 @@ public class Decoder {
         skipSeqs.add(se);
         skipSeqs.add(skip);
         skipSeqs.add("-");
-        // keep an augmented copy (for compose)
-        Compose.augment(0, g2pmodel, g2pmodel.getSemiring());
+        // the model is augmented for the composition while it is searched
         ArcSort.apply(g2pmodel, new ILabelCompare());
 
         String[] isyms = g2pmodel.getIsyms();
@@ -115,9 +141,23 @@ public class Decoder {
         loadClusters(isyms);
 
         // get epsilon filter for composition
-        epsilonFilter = Compose.getFilter(g2pmodel.getIsyms(),
-                g2pmodel.getSemiring());
+        epsilonFilter = new CompactFst(Compose.getFilter(g2pmodel.getIsyms(),
+                g2pmodel.getSemiring()));
         ArcSort.apply(epsilonFilter, new ILabelCompare());
+
+        modelDistances = NShortestPaths.shortestDistanceToFinal(g2pmodel);
+
+        String[] osyms = g2pmodel.getOsyms();
+        outputPhones = new String[osyms.length][];
+        for (int i = 0; i < osyms.length; i++) {
+            ArrayList<String> phones = new ArrayList<String>();
+            for (String phone : osyms[i].split(Pattern.quote(tie))) {
+                if (!skipSeqs.contains(phone)) {
+                    phones.add(phone);
+                }
+            }
+            outputPhones[i] = phones.toArray(new String[phones.size()]);
+        }
     }
 
     /**
@@ -151,28 +191,168 @@ public class Decoder {
         Fst efst = entryToFSA(entry);
         Semiring s = efst.getSemiring();
         Compose.augment(1, efst, s);
-        ArcSort.apply(efst, new OLabelCompare());
-        Fst result = Compose.compose(efst, epsilonFilter, s, true);
-        ArcSort.apply(result, new OLabelCompare());
-        result = Compose.compose(result, g2pmodel, s, true);
-        Project.apply(result, ProjectType.OUTPUT);
-        if (nbest == 1) {
-            result = NShortestPaths.get(result, 1, false);
-        } else {
-            // Requesting 10 times more best paths than what was asking
-            // as there might be several paths resolving to same pronunciation
-            // due to epsilon transitions.
-            // I really hate cosmological constants :)
-            result = NShortestPaths.get(result, nbest * 10, false);
+
+        // The composition of the entry, the epsilon filter and the model is
+        // expanded lazily by a best first search. Partial paths are ordered
+        // by their cost plus the distance of their model state to a final
+        // state, which never overestimates the remaining cost, so complete
+        // paths are found in the order of their costs. As several paths may
+        // resolve to the same pronunciation due to epsilon transitions, a
+        // state is expanded at most 10 times the number of requested
+        // pronunciations.
+        int maxVisits = (nbest == 1) ? 1 : nbest * 10;
+        int numFilterStates = epsilonFilter.getNumStates();
+        int numModelStates = g2pmodel.getNumStates();
+        int e1 = g2pmodel.getIsyms().length;
+        int e2 = e1 + 1;
+
+        HashMap<Long, Integer> visits = new HashMap<Long, Integer>();
+        PriorityQueue<SearchPath> queue = new PriorityQueue<SearchPath>(64,
+                new SearchPathComparator(s));
+        int modelStart = g2pmodel.getStart();
+        queue.add(new SearchPath(null, 0, efst.getStart(), epsilonFilter
+                .getStart(), modelStart, s.one(), heuristic(modelStart)));
+
+        HashSet<String> found = new HashSet<String>();
+        ArrayList<Path> paths = new ArrayList<Path>();
+        while (!queue.isEmpty() && paths.size() < nbest) {
+            SearchPath p = queue.poll();
+            if (p.entryState == null) {
+                ArrayList<String> phones = p.getPhones(outputPhones);
+                if (found.add(phones.toString())) {
+                    Path path = new Path(phones, s);
+                    path.setCost(p.cost);
+                    paths.add(path);
+                }
+                continue;
+            }
+
+            Long key = ((long) p.entryState.getId() * numFilterStates + p.filterState)
+                    * numModelStates + p.modelState;
+            Integer count = visits.get(key);
+            int visited = (count == null) ? 0 : count;
+            if (visited == maxVisits) {
+                continue;
+            }
+            visits.put(key, visited + 1);
+
+            float finalWeight = s.times(p.entryState.getFinalWeight(), s
+                    .times(epsilonFilter.getFinalWeight(p.filterState),
+                            g2pmodel.getFinalWeight(p.modelState)));
+            if (finalWeight != s.zero()) {
+                float cost = s.times(p.cost, finalWeight);
+                queue.add(new SearchPath(p, 0, null, -1, -1, cost, cost));
+            }
+
+            int numArcs = p.entryState.getNumArcs();
+            for (int i = 0; i < numArcs; i++) {
+                Arc a1 = p.entryState.getArc(i);
+                int end2 = epsilonFilter.getArcEnd(p.filterState);
+                for (int a2 = epsilonFilter.findArc(p.filterState, a1
+                        .getOlabel()); a2 < end2
+                        && epsilonFilter.getIlabel(a2) == a1.getOlabel(); a2++) {
+                    int label = epsilonFilter.getOlabel(a2);
+                    if (label == e2) {
+                        // the self loop of the augmented model
+                        float cost = s.times(p.cost, s.times(a1.getWeight(),
+                                epsilonFilter.getWeight(a2)));
+                        queue.add(new SearchPath(p, 0, a1.getNextState(),
+                                epsilonFilter.getNextState(a2), p.modelState,
+                                cost, s.times(cost, heuristic(p.modelState))));
+                        continue;
+                    }
+                    if (label == e1) {
+                        // the epsilon input labels of the augmented model
+                        label = 0;
+                    }
+                    int end3 = g2pmodel.getArcEnd(p.modelState);
+                    for (int a3 = g2pmodel.findArc(p.modelState, label); a3 < end3
+                            && g2pmodel.getIlabel(a3) == label; a3++) {
+                        float cost = s.times(p.cost, s.times(a1.getWeight(), s
+                                .times(epsilonFilter.getWeight(a2), g2pmodel
+                                        .getWeight(a3))));
+                        int next = g2pmodel.getNextState(a3);
+                        queue.add(new SearchPath(p, g2pmodel.getOlabel(a3), a1
+                                .getNextState(), epsilonFilter
+                                .getNextState(a2), next, cost, s.times(cost,
+                                heuristic(next))));
+                    }
+                }
+            }
         }
-        // result = NShortestPaths.get(result, nbest, false);
-        result = RmEpsilon.get(result);
-        ArrayList<Path> paths = Decoder.findAllPaths(result, nbest, skipSeqs,
-                tie);
 
         return paths;
     }
 
+    /**
+     * Returns the distance of a model state to a final state, or the semiring
+     * one if the distances are unknown
+     */
+    private float heuristic(int modelState) {
+        if (modelDistances == null) {
+            return g2pmodel.getSemiring().one();
+        }
+        return modelDistances[modelState];
+    }
+
+    /**
+     * A partial path of the search over the composition. Complete paths, which
+     * were extended by the final weight, have no states.
+     */
+    private static class SearchPath {
+        final SearchPath previous;
+        final int olabel;
+        final State entryState;
+        final int filterState;
+        final int modelState;
+        final float cost;
+        final float estimate;
+
+        SearchPath(SearchPath previous, int olabel, State entryState,
+                int filterState, int modelState, float cost, float estimate) {
+            this.previous = previous;
+            this.olabel = olabel;
+            this.entryState = entryState;
+            this.filterState = filterState;
+            this.modelState = modelState;
+            this.cost = cost;
+            this.estimate = estimate;
+        }
+
+        ArrayList<String> getPhones(String[][] outputPhones) {
+            ArrayList<String> phones = new ArrayList<String>();
+            for (SearchPath p = this; p != null; p = p.previous) {
+                String[] symPhones = outputPhones[p.olabel];
+                for (int i = symPhones.length - 1; i >= 0; i--) {
+                    phones.add(symPhones[i]);
+                }
+            }
+            Collections.reverse(phones);
+            return phones;
+        }
+    }
+
+    /**
+     * Orders partial paths by their estimated cost
+     */
+    private static class SearchPathComparator implements Comparator<SearchPath> {
+        private final Semiring semiring;
+
+        SearchPathComparator(Semiring semiring) {
+            this.semiring = semiring;
+        }
+
+        public int compare(SearchPath p1, SearchPath p2) {
+            if (semiring.naturalLess(p1.estimate, p2.estimate)) {
+                return -1;
+            }
+            if (semiring.naturalLess(p2.estimate, p1.estimate)) {
+                return 1;
+            }
+            return 0;
+        }
+    }
+
     /**
      * Phoneticize a word
      * 
@@ -0,0 +1,184 @@
+/**
+ *
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.g2p;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.cmu.sphinx.fst.semiring.TropicalSemiring;
+
+/**
+ * A bounded cache of the pronunciations generated for words. When it is full,
+ * the least recently used word is evicted. The cache may be used from several
+ * threads.
+ *
+ * The cache is saved in the Sphinx-3 dictionary format, so the file can also
+ * be used as a dictionary addendum. The costs of the pronunciations are not
+ * saved.
+ */
+public class PronunciationCache {
+
+    // the pronunciations by word, in access order
+    private final LinkedHashMap<String, ArrayList<Path>> pronunciations;
+
+    /**
+     * Create a cache
+     *
+     * @param capacity the maximum number of words held
+     */
+    public PronunciationCache(final int capacity) {
+        pronunciations = new LinkedHashMap<String, ArrayList<Path>>(16, 0.75f,
+                true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, ArrayList<Path>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Get the pronunciations of a word
+     *
+     * @param word the word
+     * @return the pronunciations, or null if the word is not cached
+     */
+    public synchronized ArrayList<Path> get(String word) {
+        return pronunciations.get(word);
+    }
+
+    /**
+     * Caches the pronunciations of a word
+     *
+     * @param word the word
+     * @param paths the pronunciations
+     */
+    public synchronized void put(String word, ArrayList<Path> paths) {
+        pronunciations.put(word, paths);
+    }
+
+    /**
+     * Get the number of cached words
+     */
+    public synchronized int size() {
+        return pronunciations.size();
+    }
+
+    /**
+     * Saves the cached words, least recently used first. The words are
+     * written to a temporary file which then replaces the given one, so a
+     * failed save leaves the previous file intact.
+     *
+     * @param file the file to write
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        ArrayList<Map.Entry<String, ArrayList<Path>>> entries;
+        synchronized (this) {
+            entries = new ArrayList<Map.Entry<String, ArrayList<Path>>>(
+                    pronunciations.entrySet());
+        }
+        File directory = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile("." + file.getName() + ".", ".tmp",
+                directory);
+        try {
+            write(tmp, entries);
+            if (!tmp.renameTo(file)) {
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Can't rename " + tmp + " to "
+                            + file);
+                }
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private static void write(File file,
+            ArrayList<Map.Entry<String, ArrayList<Path>>> entries)
+            throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"));
+        try {
+            for (Map.Entry<String, ArrayList<Path>> entry : entries) {
+                ArrayList<Path> paths = entry.getValue();
+                for (int i = 0; i < paths.size(); i++) {
+                    out.write(entry.getKey());
+                    if (i > 0) {
+                        out.write("(" + (i + 1) + ")");
+                    }
+                    for (String phone : paths.get(i).getPath()) {
+                        out.write(' ');
+                        out.write(phone);
+                    }
+                    out.write('\n');
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Loads words saved by {@link #save(File)}. The costs of their
+     * pronunciations are the semiring one.
+     *
+     * @param file the file to read
+     * @throws IOException
+     */
+    public void load(File file) throws IOException {
+        TropicalSemiring semiring = new TropicalSemiring();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields[0].length() == 0) {
+                    continue;
+                }
+                String word = fields[0];
+                int variant = word.lastIndexOf('(');
+                if (variant > 0 && word.endsWith(")")) {
+                    word = word.substring(0, variant);
+                }
+                Path path = new Path(new ArrayList<String>(Arrays.asList(
+                        fields).subList(1, fields.length)), semiring);
+                path.setCost(semiring.one());
+                synchronized (this) {
+                    ArrayList<Path> paths = pronunciations.get(word);
+                    if (paths == null) {
+                        paths = new ArrayList<Path>();
+                        pronunciations.put(word, paths);
+                    }
+                    paths.add(path);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -11,6 +11,7 @@ import edu.cmu.sphinx.util.props.PropertySheet;
 import edu.cmu.sphinx.util.props.S4Component;
 
 import java.io.IOException;
+import java.util.Collection;
 
 /**
  * The only purpose of this class is to present all classes
@@ -112,6 +113,14 @@ public class ClassPresentingDictionary implements Dictionary {
         return wordDictionary.getFillerWords();
     }
 
+    /* (non-Javadoc)
+     * @see edu.cmu.sphinx.linguist.dictionary.Dictionary#loadWords(java.util.Collection)
+     */
+    @Override
+    public void loadWords(Collection<String> words) {
+        wordDictionary.loadWords(words);
+    }
+
     @Override
     public String toString() {
         return "Word dictionary:\n" + wordDictionary.toString()
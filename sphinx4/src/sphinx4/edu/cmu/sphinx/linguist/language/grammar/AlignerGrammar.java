@@ -80,6 +80,7 @@ public class AlignerGrammar extends Grammar {
 		final int end = tokens.size();
 
 		logger.info("Creating Grammar nodes");
+		loadWords(tokens);
 		for (final String word : tokens.subList(0, end)) {
 			final GrammarNode wordNode = createGrammarNode(word.toLowerCase());
 			wordGrammarNodes.add(wordNode);
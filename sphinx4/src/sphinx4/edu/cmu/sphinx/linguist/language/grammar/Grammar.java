@@ -358,6 +358,17 @@ public abstract class Grammar implements Configurable, GrammarInterface {
     }
 
 
+    /**
+     * Looks up the words of the grammar in the dictionary before nodes are created for them, so that the
+     * pronunciations the dictionary generates for missing words are generated together.
+     *
+     * @param words the words of the grammar
+     */
+    protected void loadWords(Collection<String> words) {
+        dictionary.loadWords(words);
+    }
+
+
     /**
      * Returns a new GrammarNode with the given set of alternatives.
      *
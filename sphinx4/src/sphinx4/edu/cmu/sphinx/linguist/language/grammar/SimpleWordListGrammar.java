@@ -108,15 +108,19 @@ public class SimpleWordListGrammar extends Grammar implements Configurable {
         GrammarNode branchNode = createGrammarNode(false);
         GrammarNode finalNode = createGrammarNode("<sil>");
         finalNode.setFinalNode(true);
-        List<GrammarNode> wordGrammarNodes = new LinkedList<GrammarNode>();
+        List<String> words = new ArrayList<String>();
         while (!tok.isEOF()) {
             String word;
             while ((word = tok.getString()) != null) {
-                word = word.toLowerCase();
-                GrammarNode wordNode = createGrammarNode(word);
-                wordGrammarNodes.add(wordNode);
+                words.add(word.toLowerCase());
             }
         }
+        loadWords(words);
+        List<GrammarNode> wordGrammarNodes = new LinkedList<GrammarNode>();
+        for (String word : words) {
+            GrammarNode wordNode = createGrammarNode(word);
+            wordGrammarNodes.add(wordNode);
+        }
         // now connect all the GrammarNodes together
         initialNode.add(branchNode, LogMath.getLogOne());
         float branchScore = logMath.linearToLog(
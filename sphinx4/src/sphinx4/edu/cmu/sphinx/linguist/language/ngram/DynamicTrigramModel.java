@@ -0,0 +1,318 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.language.ngram;
+
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.PropertyException;
+import edu.cmu.sphinx.util.props.PropertySheet;
+import edu.cmu.sphinx.util.props.S4Component;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A trigram language model estimated from a text when it is allocated. The n-gram counts are discounted by a constant
+ * and the probability mass they free is given to the lower order n-grams, as in a backoff ARPA model.
+ * <p/>
+ * Since the model gives high probabilities to the word sequences of the text, it is meant to recognize the audio of a
+ * known text, for example to find where the words of a transcription are spoken in a long recording.
+ */
+public class DynamicTrigramModel implements LanguageModel, BackoffLanguageModel {
+
+    /** The property that defines the logMath component. */
+    @S4Component(type = LogMath.class)
+    public final static String PROP_LOG_MATH = "logMath";
+
+    /** The constant subtracted from the n-gram counts */
+    private final static double DISCOUNT = 0.5;
+
+    /** The maximum order of the n-grams */
+    private final static int MAX_ORDER = 3;
+
+    private Dictionary dictionary;
+    private LogMath logMath;
+    private float unigramWeight;
+    private int desiredMaxDepth;
+    private int maxDepth;
+
+    private List<String> text = Collections.emptyList();
+    private Set<String> vocabulary;
+    private Map<WordSequence, Float> logProbs;
+    private Map<WordSequence, Float> logBackoffs;
+
+
+    public DynamicTrigramModel(Dictionary dictionary, float unigramWeight, LogMath logMath, int desiredMaxDepth) {
+        this.dictionary = dictionary;
+        this.unigramWeight = unigramWeight;
+        this.logMath = logMath;
+        this.desiredMaxDepth = desiredMaxDepth;
+    }
+
+    public DynamicTrigramModel() {
+
+    }
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.util.props.Configurable#newProperties(edu.cmu.sphinx.util.props.PropertySheet)
+    */
+    @Override
+    public void newProperties(PropertySheet ps) throws PropertyException {
+        dictionary = (Dictionary) ps.getComponent(PROP_DICTIONARY);
+        logMath = (LogMath) ps.getComponent(PROP_LOG_MATH);
+        unigramWeight = ps.getFloat(PROP_UNIGRAM_WEIGHT);
+        desiredMaxDepth = ps.getInt(PROP_MAX_DEPTH);
+    }
+
+
+    /**
+     * Sets the text to estimate the model from. The text should be set before the model is allocated, an allocated
+     * model is estimated from another text with {@link #reestimate(List)}.
+     *
+     * @param words the words of the text
+     */
+    public void setText(List<String> words) {
+        text = new ArrayList<String>(words);
+    }
+
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.linguist.language.ngram.LanguageModel#allocate()
+    */
+    @Override
+    public void allocate() throws IOException {
+        dictionary.allocate();
+        maxDepth = MAX_ORDER;
+        if (desiredMaxDepth > 0 && desiredMaxDepth < maxDepth) {
+            maxDepth = desiredMaxDepth;
+        }
+
+        List<Word> words = getWords(text);
+        vocabulary = new HashSet<String>();
+        for (Word word : words) {
+            vocabulary.add(word.getSpelling());
+        }
+        estimate(words);
+    }
+
+
+    /**
+     * Estimates the allocated model again from another text. The vocabulary stays the one of the text the model was
+     * allocated with, so that a search graph built over the vocabulary can be reused: the words of the new text which
+     * are not in the vocabulary are skipped, and the words of the vocabulary which are not in the new text get a zero
+     * probability.
+     *
+     * @param words the words of the text
+     */
+    public void reestimate(List<String> words) {
+        if (vocabulary == null) {
+            throw new IllegalStateException("The model has to be allocated before it is estimated again");
+        }
+        text = new ArrayList<String>(words.size());
+        for (String spelling : words) {
+            if (vocabulary.contains(spelling)) {
+                text.add(spelling);
+            }
+        }
+        estimate(getWords(text));
+    }
+
+
+    /** Gets the words of a text which are in the dictionary, between sentence boundaries. */
+    private List<Word> getWords(List<String> text) {
+        List<Word> words = new ArrayList<Word>(text.size() + 2);
+        words.add(dictionary.getSentenceStartWord());
+        for (String spelling : text) {
+            Word word = dictionary.getWord(spelling);
+            if (word != null) {
+                words.add(word);
+            }
+        }
+        words.add(dictionary.getSentenceEndWord());
+        return words;
+    }
+
+
+    /** Estimates the probabilities of the n-grams of the words, up to the maximum order. */
+    private void estimate(List<Word> words) {
+        logProbs = new HashMap<WordSequence, Float>();
+        logBackoffs = new HashMap<WordSequence, Float>();
+        estimateUnigrams(words);
+        for (int order = 2; order <= maxDepth; order++) {
+            estimateNGrams(words, order);
+        }
+    }
+
+
+    /** Estimates the unigram probabilities, interpolated with a uniform distribution by the unigram weight. */
+    private void estimateUnigrams(List<Word> words) {
+        Map<WordSequence, Integer> counts = new HashMap<WordSequence, Integer>();
+        // the sentence start is never predicted
+        for (Word word : words.subList(1, words.size())) {
+            increment(counts, new WordSequence(new Word[] {word}));
+        }
+        int total = words.size() - 1;
+        double uniform = 1.0 / counts.size();
+        for (Map.Entry<WordSequence, Integer> entry : counts.entrySet()) {
+            double probability = (double) entry.getValue() / total;
+            probability = unigramWeight * probability + (1 - unigramWeight) * uniform;
+            logProbs.put(entry.getKey(), logMath.linearToLog(probability));
+        }
+        // as in ARPA models, where the sentence start has a log10 probability of -99
+        logProbs.put(new WordSequence(new Word[] {words.get(0)}), logMath.log10ToLog(-99.0f));
+    }
+
+
+    /**
+     * Estimates the discounted probabilities of the n-grams of an order, and the backoff weights of their histories.
+     * The lower orders have to be estimated first.
+     */
+    private void estimateNGrams(List<Word> words, int order) {
+        Map<WordSequence, Integer> counts = new HashMap<WordSequence, Integer>();
+        for (int i = order; i <= words.size(); i++) {
+            increment(counts, new WordSequence(words.subList(i - order, i)));
+        }
+
+        Map<WordSequence, Integer> historyCounts = new HashMap<WordSequence, Integer>();
+        Map<WordSequence, Integer> historyTypes = new HashMap<WordSequence, Integer>();
+        for (Map.Entry<WordSequence, Integer> entry : counts.entrySet()) {
+            WordSequence history = entry.getKey().getOldest();
+            add(historyCounts, history, entry.getValue());
+            add(historyTypes, history, 1);
+        }
+
+        // the probability mass the lower order gives to the words seen after each history
+        Map<WordSequence, Double> lowerMasses = new HashMap<WordSequence, Double>();
+        Map<WordSequence, Float> ngramLogProbs = new HashMap<WordSequence, Float>();
+        for (Map.Entry<WordSequence, Integer> entry : counts.entrySet()) {
+            WordSequence ngram = entry.getKey();
+            WordSequence history = ngram.getOldest();
+            double probability = (entry.getValue() - DISCOUNT) / historyCounts.get(history);
+            ngramLogProbs.put(ngram, logMath.linearToLog(probability));
+
+            double lowerProbability = logMath.logToLinear(getProbability(ngram.getNewest()));
+            Double lowerMass = lowerMasses.get(history);
+            lowerMasses.put(history, (lowerMass == null ? 0.0 : lowerMass) + lowerProbability);
+        }
+        logProbs.putAll(ngramLogProbs);
+
+        for (Map.Entry<WordSequence, Integer> entry : historyCounts.entrySet()) {
+            WordSequence history = entry.getKey();
+            double freedMass = DISCOUNT * historyTypes.get(history) / entry.getValue();
+            double lowerMass = 1.0 - lowerMasses.get(history);
+            // when the history was followed by every word, the backoff is never used
+            double backoff = lowerMass > 0.0 ? freedMass / lowerMass : 1.0;
+            logBackoffs.put(history, logMath.linearToLog(backoff));
+        }
+    }
+
+
+    private static void increment(Map<WordSequence, Integer> counts, WordSequence ngram) {
+        add(counts, ngram, 1);
+    }
+
+
+    private static void add(Map<WordSequence, Integer> counts, WordSequence ngram, int count) {
+        Integer previous = counts.get(ngram);
+        counts.put(ngram, previous == null ? count : previous + count);
+    }
+
+
+    /*
+    * (non-Javadoc)
+    *
+    * @see edu.cmu.sphinx.linguist.language.ngram.LanguageModel#deallocate()
+    */
+    @Override
+    public void deallocate() {
+        vocabulary = null;
+        logProbs = null;
+        logBackoffs = null;
+    }
+
+
+    /** Called before a recognition */
+    @Override
+    public void start() {
+    }
+
+
+    /** Called after a recognition */
+    @Override
+    public void stop() {
+    }
+
+
+    /**
+     * Gets the ngram probability of the word sequence represented by the word list
+     *
+     * @param wordSequence the word sequence
+     * @return the probability of the word sequence. Probability is in logMath log base
+     */
+    @Override
+    public float getProbability(WordSequence wordSequence) {
+        Float logProbability = logProbs.get(wordSequence);
+        if (logProbability != null) {
+            return logProbability;
+        }
+        if (wordSequence.size() > 1) {
+            Float logBackoff = logBackoffs.get(wordSequence.getOldest());
+            return (logBackoff == null ? 0.0f : logBackoff) + getProbability(wordSequence.getNewest());
+        }
+        return LogMath.getLogZero();
+    }
+
+
+    @Override
+    public ProbDepth getProbDepth(WordSequence wordSequence) {
+        return new ProbDepth(getProbability(wordSequence), maxDepth);
+    }
+
+
+    /**
+     * Gets the smear term for the given wordSequence
+     *
+     * @param wordSequence the word sequence
+     * @return the smear term associated with this word sequence
+     */
+    @Override
+    public float getSmear(WordSequence wordSequence) {
+        return 0.0f;
+    }
+
+
+    /**
+     * Returns the set of words in the language model. The set is unmodifiable.
+     *
+     * @return the unmodifiable set of words
+     */
+    @Override
+    public Set<String> getVocabulary() {
+        return Collections.unmodifiableSet(vocabulary);
+    }
+
+
+    /**
+     * Returns the maximum depth of the language model
+     *
+     * @return the maximum depth of the language model
+     */
+    @Override
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+}
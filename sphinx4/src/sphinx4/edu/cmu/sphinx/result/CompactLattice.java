@@ -0,0 +1,351 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.result;
+
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.util.LogMath;
+
+import java.util.*;
+
+/**
+ * A frozen, array based copy of a {@link Lattice}. Nodes and edges are identified by ints, the nodes are numbered in
+ * topological order (the initial node is 0, the terminal node is the last one) and the leaving and entering edges of
+ * every node are kept in compressed sparse row form, so that the forward-backward and Viterbi passes run over
+ * primitive arrays only.
+ * <p/>
+ * Only the nodes reachable from the initial node are part of the compact lattice. Nodes which do not lead to the
+ * terminal node, like the ends of paths pruned by the search, are kept before the terminal node, their backward scores
+ * and posteriors are zero. The lattice is built with <code>lattice.compact()</code> once it is complete; later changes
+ * of the lattice are not reflected.
+ *
+ * @see Lattice#computeNodePosteriors(float, boolean)
+ */
+public class CompactLattice {
+
+    private final LogMath logMath;
+    private final Node[] nodes;
+
+    // the edges are sorted by their source node, leavingOffsets[i] is the first edge leaving node i
+    private final int[] leavingOffsets;
+    private final int[] edgeFrom;
+    private final int[] edgeTo;
+    private final double[] acousticScores;
+    private final double[] lmScores;
+
+    // indexes into the edge arrays, sorted by the destination node
+    private final int[] enteringOffsets;
+    private final int[] enteringEdges;
+
+    private float[] forwardScores;
+    private float[] backwardScores;
+    private double[] viterbiScores;
+    private int[] bestPredecessors;
+
+
+    /**
+     * Creates a compact copy of the given lattice.
+     *
+     * @param lattice the lattice to copy, it must have an initial node and a terminal node which is reachable from the
+     *                initial node and has no leaving edges
+     * @throws IllegalArgumentException if the terminal node is not reachable or has leaving edges
+     */
+    public CompactLattice(Lattice lattice) {
+        logMath = lattice.getLogMath();
+
+        // dead ends may follow the terminal node in topological order, as it
+        // has no leaving edges it can be moved behind them
+        List<Node> sortedNodes = lattice.sortNodes();
+        Node terminalNode = lattice.getTerminalNode();
+        if (terminalNode == null || !sortedNodes.remove(terminalNode))
+            throw new IllegalArgumentException("terminal node is not reachable from the initial node");
+        if (!terminalNode.getLeavingEdges().isEmpty())
+            throw new IllegalArgumentException("terminal node has leaving edges");
+        sortedNodes.add(terminalNode);
+        nodes = sortedNodes.toArray(new Node[sortedNodes.size()]);
+
+        Map<Node, Integer> ids = new HashMap<Node, Integer>(nodes.length * 2);
+        int numEdges = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            ids.put(nodes[i], i);
+            numEdges += nodes[i].getLeavingEdges().size();
+        }
+
+        leavingOffsets = new int[nodes.length + 1];
+        edgeFrom = new int[numEdges];
+        edgeTo = new int[numEdges];
+        acousticScores = new double[numEdges];
+        lmScores = new double[numEdges];
+
+        int[] enteringCounts = new int[nodes.length];
+        int e = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            leavingOffsets[i] = e;
+            for (Edge edge : nodes[i].getLeavingEdges()) {
+                int to = ids.get(edge.getToNode());
+                edgeFrom[e] = i;
+                edgeTo[e] = to;
+                acousticScores[e] = edge.getAcousticScore();
+                lmScores[e] = edge.getLMScore();
+                enteringCounts[to]++;
+                e++;
+            }
+        }
+        leavingOffsets[nodes.length] = e;
+
+        enteringOffsets = new int[nodes.length + 1];
+        for (int i = 0; i < nodes.length; i++)
+            enteringOffsets[i + 1] = enteringOffsets[i] + enteringCounts[i];
+        enteringEdges = new int[numEdges];
+        int[] position = Arrays.copyOf(enteringOffsets, nodes.length);
+        for (e = 0; e < numEdges; e++)
+            enteringEdges[position[edgeTo[e]]++] = e;
+    }
+
+
+    /** @return the log math of the scores */
+    public LogMath getLogMath() {
+        return logMath;
+    }
+
+
+    /** @return the number of nodes */
+    public int getNodeCount() {
+        return nodes.length;
+    }
+
+
+    /** @return the number of edges */
+    public int getEdgeCount() {
+        return edgeFrom.length;
+    }
+
+
+    /**
+     * Returns the node of the original lattice with the given id.
+     *
+     * @param node the node id
+     * @return the node
+     */
+    public Node getNode(int node) {
+        return nodes[node];
+    }
+
+
+    /**
+     * @param node the node id
+     * @return the word of the node
+     */
+    public Word getWord(int node) {
+        return nodes[node].getWord();
+    }
+
+
+    /**
+     * @param node the node id
+     * @return the ids of the edges leaving the node are in the range [getFirstLeavingEdge(node),
+     *         getFirstLeavingEdge(node + 1))
+     */
+    public int getFirstLeavingEdge(int node) {
+        return leavingOffsets[node];
+    }
+
+
+    /**
+     * @param node the node id
+     * @return the number of edges entering the node
+     */
+    public int getEnteringEdgeCount(int node) {
+        return enteringOffsets[node + 1] - enteringOffsets[node];
+    }
+
+
+    /**
+     * @param node  the node id
+     * @param index the index of the entering edge, smaller than the entering edge count
+     * @return the id of the edge
+     */
+    public int getEnteringEdge(int node, int index) {
+        return enteringEdges[enteringOffsets[node] + index];
+    }
+
+
+    /**
+     * @param edge the edge id
+     * @return the id of the source node
+     */
+    public int getFromNode(int edge) {
+        return edgeFrom[edge];
+    }
+
+
+    /**
+     * @param edge the edge id
+     * @return the id of the destination node
+     */
+    public int getToNode(int edge) {
+        return edgeTo[edge];
+    }
+
+
+    /**
+     * @param edge the edge id
+     * @return the acoustic score of the edge
+     */
+    public double getAcousticScore(int edge) {
+        return acousticScores[edge];
+    }
+
+
+    /**
+     * @param edge the edge id
+     * @return the language model score of the edge
+     */
+    public double getLMScore(int edge) {
+        return lmScores[edge];
+    }
+
+
+    /**
+     * Computes the forward, backward and Viterbi scores of all nodes. The results are identical to the ones of {@link
+     * Lattice#computeNodePosteriors(float, boolean)}.
+     *
+     * @param languageModelWeightAdjustment the weight multiplier that will be applied to language score already scaled
+     *                                      by language weight
+     * @param useAcousticScoresOnly         use only the acoustic scores to compute the posteriors, ignore the language
+     *                                      weight and scores
+     */
+    public void computeNodePosteriors(float languageModelWeightAdjustment, boolean useAcousticScoresOnly) {
+        int numNodes = nodes.length;
+        int numEdges = edgeFrom.length;
+
+        double[] edgeScores = new double[numEdges];
+        for (int e = 0; e < numEdges; e++) {
+            edgeScores[e] = useAcousticScoresOnly ? acousticScores[e]
+                    : acousticScores[e] + lmScores[e] * languageModelWeightAdjustment;
+        }
+
+        float logZero = LogMath.getLogZero();
+        forwardScores = new float[numNodes];
+        backwardScores = new float[numNodes];
+        viterbiScores = new double[numNodes];
+        bestPredecessors = new int[numNodes];
+        Arrays.fill(forwardScores, logZero);
+        Arrays.fill(backwardScores, logZero);
+        Arrays.fill(bestPredecessors, -1);
+
+        //forward
+        forwardScores[0] = LogMath.getLogOne();
+        viterbiScores[0] = LogMath.getLogOne();
+        for (int from = 0; from < numNodes; from++) {
+            double forward = forwardScores[from];
+            double viterbi = viterbiScores[from];
+            for (int e = leavingOffsets[from]; e < leavingOffsets[from + 1]; e++) {
+                int to = edgeTo[e];
+                forwardScores[to] = logMath.addAsLinear((float) (forward + edgeScores[e]), forwardScores[to]);
+                double vs = viterbi + edgeScores[e];
+                if (bestPredecessors[to] < 0 || vs > viterbiScores[to]) {
+                    bestPredecessors[to] = from;
+                    viterbiScores[to] = vs;
+                }
+            }
+        }
+
+        //backward
+        backwardScores[numNodes - 1] = LogMath.getLogOne();
+        for (int from = numNodes - 2; from >= 0; from--) {
+            float backward = backwardScores[from];
+            for (int e = leavingOffsets[from]; e < leavingOffsets[from + 1]; e++)
+                backward = logMath.addAsLinear((float) (backwardScores[edgeTo[e]] + edgeScores[e]), backward);
+            backwardScores[from] = backward;
+        }
+    }
+
+
+    private void checkComputed() {
+        if (forwardScores == null)
+            throw new IllegalStateException("computeNodePosteriors has not been called");
+    }
+
+
+    /**
+     * @param node the node id
+     * @return the forward score of the node
+     */
+    public double getForwardScore(int node) {
+        checkComputed();
+        return forwardScores[node];
+    }
+
+
+    /**
+     * @param node the node id
+     * @return the backward score of the node
+     */
+    public double getBackwardScore(int node) {
+        checkComputed();
+        return backwardScores[node];
+    }
+
+
+    /**
+     * @param node the node id
+     * @return the log posterior probability of the node
+     */
+    public double getPosterior(int node) {
+        checkComputed();
+        return ((double) forwardScores[node] + backwardScores[node]) - forwardScores[nodes.length - 1];
+    }
+
+
+    /**
+     * @param node the node id
+     * @return the score of the best path from the initial node to the given one
+     */
+    public double getViterbiScore(int node) {
+        checkComputed();
+        return viterbiScores[node];
+    }
+
+
+    /**
+     * Retrieves the ids of the nodes on the MAP path. Only works once computeNodePosteriors has been called.
+     *
+     * @return the node ids from the initial to the terminal node
+     */
+    public int[] getViterbiPath() {
+        checkComputed();
+        int length = 1;
+        for (int n = nodes.length - 1; n != 0; n = bestPredecessors[n])
+            length++;
+
+        int[] path = new int[length];
+        for (int n = nodes.length - 1; n != 0; n = bestPredecessors[n])
+            path[--length] = n;
+        return path;
+    }
+
+
+    /**
+     * Copies the forward, backward, Viterbi and posterior scores as well as the best predecessors to the nodes of the
+     * original lattice.
+     */
+    public void copyScoresToNodes() {
+        checkComputed();
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = nodes[i];
+            node.setForwardScore(forwardScores[i]);
+            node.setBackwardScore(backwardScores[i]);
+            node.setPosterior(getPosterior(i));
+            node.setViterbiScore(viterbiScores[i]);
+            if (bestPredecessors[i] >= 0)
+                node.setBestPredecessor(nodes[bestPredecessors[i]]);
+        }
+    }
+}
@@ -13,6 +13,7 @@ package edu.cmu.sphinx.result;
 
 import edu.cmu.sphinx.decoder.search.AlternateHypothesisManager;
 import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.decoder.search.WordExitLog;
 import edu.cmu.sphinx.linguist.WordSearchState;
 import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
 import edu.cmu.sphinx.linguist.dictionary.Word;
@@ -81,6 +82,9 @@ import java.util.*;
  *      "all"          "dog"
  * </pre>
  * <p/>
+ * If the search manager logged the word exits of the search (see {@link WordExitLog}), the lattice of a final result is
+ * built from the log instead, and neither the alternate hypotheses nor the intermediate tokens are needed. </p>
+ * <p/>
  * Initially, a lattice can have redundant nodes, i.e., nodes referring to the same word and that originate from the
  * same parent node. These nodes can be collapsed using the {@link LatticeOptimizer}. </p>
  */
@@ -120,6 +124,11 @@ public class Lattice {
      */
     public Lattice(Result result) {
         this(result.getLogMath());
+        if (result.getWordExitLog() != null && result.getBestFinalToken() != null) {
+            addWordExits(result.getWordExitLog(), result.getResultTokens());
+            return;
+        }
+
         visitedWordTokens = new HashSet<Token>();
         loserManager = result.getAlternateHypothesisManager();
         if (loserManager != null) {
@@ -145,6 +154,63 @@ public class Lattice {
     }
 
 
+    /**
+     * Builds the lattice from the word exits which lead to the given final tokens. The nodes of the log are visited
+     * from the last to the first, so every node is complete before its predecessors are reached, and each node reached
+     * from a final token adds an edge for each of its exits.
+     *
+     * @param log    the word exits of the search
+     * @param tokens the final tokens
+     */
+    private void addWordExits(WordExitLog log, List<Token> tokens) {
+        boolean[] reached = new boolean[log.getNodeCount()];
+        Node[] latticeNodes = new Node[log.getNodeCount()];
+        for (Token token : tokens) {
+            while (token != null && !token.isWord()) {
+                token = token.getPredecessor();
+            }
+            assert token != null && token.getWord().isSentenceEndWord();
+            reached[log.getNode(token.getWordExit())] = true;
+        }
+
+        for (int node = reached.length - 1; node >= 0; node--) {
+            if (!reached[node]) {
+                continue;
+            }
+            Node toNode = getNode(log, node, latticeNodes);
+            for (int exit = log.getLastExit(node); exit >= 0; exit = log.getPreviousExit(exit)) {
+                int predecessor = log.getPredecessor(exit);
+                if (predecessor < 0) {
+                    /* we've reached the sentence start, or the commit point if the search committed words */
+                    initialNode = toNode;
+                    continue;
+                }
+                int fromNode = log.getNode(predecessor);
+                reached[fromNode] = true;
+                addEdge(getNode(log, fromNode, latticeNodes), toNode,
+                        log.getAcousticScore(exit), log.getLanguageScore(exit));
+            }
+        }
+    }
+
+
+    /** Returns the lattice node for a node of the word exit log. All sentence ends share the terminal node. */
+    private Node getNode(WordExitLog log, int node, Node[] latticeNodes) {
+        if (latticeNodes[node] == null) {
+            Word word = log.getWord(node);
+            if (word.isSentenceEndWord() && terminalNode != null) {
+                latticeNodes[node] = terminalNode;
+            } else {
+                latticeNodes[node] = addNode(word, -1, log.getFrame(node));
+                if (word.isSentenceEndWord()) {
+                    terminalNode = latticeNodes[node];
+                }
+            }
+        }
+        return latticeNodes[node];
+    }
+
+
     /**
      * Returns the node corresponding to the given word token.
      *
@@ -234,8 +300,10 @@ public class Lattice {
                 /* Collapse the token sequence ending in this token. */
                 collapseWordToken(token);
             } else {
-                /* we've reached the sentence start token */
-                assert token.getWord().isSentenceStartWord();
+                /*
+                 * we've reached the sentence start token, or the commit point
+                 * if the search committed words
+                 */
                 initialNode = fromNode;
             }
             return;
@@ -906,64 +974,33 @@ public class Lattice {
      * on any path through the lattice. Uses a forward-backward algorithm specific to the nature of non-looping
      * left-to-right lattice structures.
      * <p/>
-     * Node posteriors can be retrieved by calling getPosterior() on Node objects.
+     * Node posteriors can be retrieved by calling getPosterior() on Node objects. The scores are computed on a {@link
+     * CompactLattice} and copied back to the nodes. Nodes which are not reachable from the initial node keep their
+     * scores.
      *
      * @param languageModelWeightAdjustment   the weight multiplier that will be applied to language score already scaled by language weight
      * @param useAcousticScoresOnly use only the acoustic scores to compute the posteriors, ignore the language weight
      *                              and scores
+     * @throws IllegalArgumentException if the terminal node is not reachable from the initial node or has leaving edges
      */
     public void computeNodePosteriors(float languageModelWeightAdjustment,
                                       boolean useAcousticScoresOnly) {
         if (initialNode == null)
                 return;
-        //forward
-        initialNode.setForwardScore(LogMath.getLogOne());
-        initialNode.setViterbiScore(LogMath.getLogOne());
-        List<Node> sortedNodes = sortNodes();
-        assert sortedNodes.get(0) == initialNode;
-        for (Node currentNode : sortedNodes) {
-            for (Edge edge : currentNode.getLeavingEdges()) {
-                double forwardProb = edge.getFromNode().getForwardScore();
-                double edgeScore = computeEdgeScore
-                        (edge, languageModelWeightAdjustment, useAcousticScoresOnly);
-                forwardProb += edgeScore;
-                edge.getToNode().setForwardScore
-                        (logMath.addAsLinear
-                                ((float) forwardProb,
-                                        (float) edge.getToNode().getForwardScore()));
-                double vs = edge.getFromNode().getViterbiScore() +
-                        edgeScore;
-                if (edge.getToNode().getBestPredecessor() == null ||
-                        vs > edge.getToNode().getViterbiScore()) {
-                    edge.getToNode().setBestPredecessor(currentNode);
-                    edge.getToNode().setViterbiScore(vs);
-                }
-            }
-        }
+        CompactLattice compactLattice = compact();
+        compactLattice.computeNodePosteriors(languageModelWeightAdjustment, useAcousticScoresOnly);
+        compactLattice.copyScoresToNodes();
+    }
 
-        //backward
-        terminalNode.setBackwardScore(LogMath.getLogOne());
-        assert sortedNodes.get(sortedNodes.size() - 1) == terminalNode;
-        ListIterator<Node> n = sortedNodes.listIterator(sortedNodes.size() - 1);
-        while (n.hasPrevious()) {
-            Node currentNode = n.previous();
-            Collection<Edge> currentEdges = currentNode.getLeavingEdges();
-            for (Edge edge : currentEdges) {
-                double backwardProb = edge.getToNode().getBackwardScore();
-                backwardProb += computeEdgeScore
-                        (edge, languageModelWeightAdjustment, useAcousticScoresOnly);
-                edge.getFromNode().setBackwardScore
-                        (logMath.addAsLinear((float) backwardProb,
-                                (float) edge.getFromNode().getBackwardScore()));
-            }
-        }
 
-        //inner
-        double normalizationFactor = terminalNode.getForwardScore();
-        for (Node node : nodes.values()) {
-            node.setPosterior((node.getForwardScore() +
-                node.getBackwardScore()) - normalizationFactor);
-        }
+    /**
+     * Creates a frozen, array based copy of this lattice which is cheaper to traverse. Changes of this lattice made
+     * afterwards are not reflected in the copy.
+     *
+     * @return the compact lattice
+     */
+    public CompactLattice compact() {
+        return new CompactLattice(this);
     }
 
 
@@ -984,24 +1021,6 @@ public class Lattice {
     }
 
 
-    /**
-     * Computes the score of an edge. It multiplies on adjustment since language model
-     * score is already scaled by language model weight in linguist.
-     *
-     * @param edge                the edge which score we want to compute
-     * @param languageModelWeightAdjustment the weight multiplier that will be applied to language score already scaled by language weight
-     * @return the score of an edge
-     */
-    private double computeEdgeScore(Edge edge, float languageModelWeightAdjustment,
-                                    boolean useAcousticScoresOnly) {
-        if (useAcousticScoresOnly) {
-            return edge.getAcousticScore();
-        } else {
-            return edge.getAcousticScore() + edge.getLMScore() * languageModelWeightAdjustment;
-        }
-    }
-
-
     /**
      * Returns true if the given Lattice is equivalent to this Lattice. Two lattices are equivalent if all their nodes
      * and edges are equivalent.
@@ -11,8 +11,10 @@
  */
 package edu.cmu.sphinx.result;
 
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import edu.cmu.sphinx.linguist.WordSequence;
 import edu.cmu.sphinx.linguist.dictionary.Word;
@@ -21,6 +23,11 @@ import edu.cmu.sphinx.util.LogMath;
 
 /**
  * Class to rescore the lattice with the new Language model.
+ * <p/>
+ * {@link #rescore()} rewrites the language scores of the lattice in place, using the best of all word histories
+ * leading to an edge. {@link #expand(int)} instead builds a new lattice in which every node is split by the language
+ * model history it is reached with, so that every path carries its exact n-gram score. This is the second pass of a
+ * decoder which searches with a small language model and rescores its lattice with a large one.
  */
 
 public class LatticeRescorer {
@@ -29,6 +36,7 @@ public class LatticeRescorer {
     protected final LanguageModel model;
     private int depth;
     private float languageWeigth = 8.0f;
+    private float logWordInsertionProbability;
 
     /**
      * Create a new Lattice optimizer
@@ -42,6 +50,22 @@ public class LatticeRescorer {
     }
 
 
+    /**
+     * Create a new Lattice rescorer
+     *
+     * @param lattice                  the lattice to rescore
+     * @param model                    the language model
+     * @param languageWeight           the weight of the language model scores
+     * @param wordInsertionProbability the probability added for every word which is not a filler
+     */
+    public LatticeRescorer(Lattice lattice, LanguageModel model, float languageWeight,
+                           double wordInsertionProbability) {
+        this(lattice, model);
+        this.languageWeigth = languageWeight;
+        logWordInsertionProbability = lattice.getLogMath().linearToLog(wordInsertionProbability);
+    }
+
+
     private void rescoreEdges() {
         for (Edge edge : lattice.edges) {
 
@@ -88,4 +112,94 @@ public class LatticeRescorer {
 
         rescoreEdges();
     }
+
+
+    /**
+     * Creates a copy of the lattice which is expanded by language model history and scored with the language model.
+     * Every node of the new lattice stands for a node of this lattice reached with a certain history of the last n-1
+     * words, n being the depth of the model. Fillers do not change the history and keep their language scores. The
+     * acoustic scores and the times are copied from this lattice, which is not modified.
+     * <p/>
+     * Expansion can multiply the number of nodes. If the expanded lattice would have more than <code>maxNodes</code>
+     * nodes, the history is shortened until it fits. With a history of a single word, the expansion is never cut.
+     *
+     * @param maxNodes the maximum number of nodes of the expanded lattice
+     * @return the expanded lattice
+     */
+    public Lattice expand(int maxNodes) {
+        List<Node> sortedNodes = lattice.sortNodes();
+        for (int historySize = depth - 1; historySize > 1; historySize--) {
+            Lattice expanded = expand(sortedNodes, historySize, maxNodes);
+            if (expanded != null)
+                return expanded;
+        }
+        return expand(sortedNodes, 1, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * Expands the lattice with the given history size.
+     *
+     * @return the expanded lattice, or null if it would have more than <code>maxNodes</code> nodes
+     */
+    private Lattice expand(List<Node> sortedNodes, int historySize, int maxNodes) {
+        Lattice expanded = new Lattice(lattice.getLogMath());
+        Node initialNode = lattice.getInitialNode();
+        Node terminalNode = lattice.getTerminalNode();
+
+        Map<Node, Map<WordSequence, Node>> copies = new HashMap<Node, Map<WordSequence, Node>>();
+        Node start = copyNode(expanded, initialNode);
+        copies.put(initialNode, new HashMap<WordSequence, Node>());
+        copies.get(initialNode).put(WordSequence.EMPTY.addWord(initialNode.getWord(), historySize), start);
+        expanded.setInitialNode(start);
+        int numNodes = 1;
+
+        for (Node node : sortedNodes) {
+            // the copies of a node are complete once its predecessors are expanded
+            Map<WordSequence, Node> nodeCopies = copies.remove(node);
+            if (nodeCopies == null)
+                continue;
+
+            for (Map.Entry<WordSequence, Node> copy : nodeCopies.entrySet()) {
+                WordSequence history = copy.getKey();
+                for (Edge edge : node.getLeavingEdges()) {
+                    Node toNode = edge.getToNode();
+                    Word word = toNode.getWord();
+
+                    WordSequence nextHistory = history;
+                    double lmScore = edge.getLMScore();
+                    if (!word.isFiller() || word.isSentenceEndWord()) {
+                        WordSequence sequence = history.addWord(word, historySize + 1);
+                        lmScore = model.getProbability(sequence.trim(depth)) * languageWeigth + logWordInsertionProbability;
+                        nextHistory = sequence.trim(historySize);
+                    }
+                    // all paths end in the same terminal node
+                    if (toNode == terminalNode)
+                        nextHistory = WordSequence.EMPTY;
+
+                    Map<WordSequence, Node> toCopies = copies.get(toNode);
+                    if (toCopies == null) {
+                        toCopies = new HashMap<WordSequence, Node>();
+                        copies.put(toNode, toCopies);
+                    }
+                    Node toCopy = toCopies.get(nextHistory);
+                    if (toCopy == null) {
+                        if (++numNodes > maxNodes)
+                            return null;
+                        toCopy = copyNode(expanded, toNode);
+                        toCopies.put(nextHistory, toCopy);
+                        if (toNode == terminalNode)
+                            expanded.setTerminalNode(toCopy);
+                    }
+                    expanded.addEdge(copy.getValue(), toCopy, edge.getAcousticScore(), lmScore);
+                }
+            }
+        }
+        return expanded;
+    }
+
+
+    private static Node copyNode(Lattice expanded, Node node) {
+        return expanded.addNode(node.getWord(), node.getBeginTime(), node.getEndTime());
+    }
 }
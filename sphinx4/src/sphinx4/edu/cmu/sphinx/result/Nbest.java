@@ -11,11 +11,18 @@
  */
 package edu.cmu.sphinx.result;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.util.LogMath;
+
+import java.util.*;
 
 /**
  * NBest list with A*
+ * <p/>
+ * The search runs over the {@link CompactLattice} of the lattice. Its heuristic is the score of the best path from a
+ * node to the terminal node, computed by a backward Viterbi pass. The heuristic is exact, so the complete paths are
+ * found in the order of their scores and every expansion lies on one of them. Partial paths share their prefixes: each
+ * one only holds its last node and a link to the path it extends.
  */
 
 public class Nbest {
@@ -26,82 +33,134 @@ public class Nbest {
         this.lattice = lattice;
     }
 
-    class NBestPath implements Comparable<NBestPath> {
-        String path;
-        Node node;
-        double score;
-        double forwardScore;
+    /** A path from the initial node, represented by its last node and the path it extends. */
+    private static class PartialPath implements Comparable<PartialPath> {
+
+        final PartialPath previous;
+        final int node;
+        final int edge;
+        final double score;
+        final double estimate;
+        final long order;
 
-        public NBestPath(String path, Node node, double score,
-                double forwardScore) {
-            super();
-            this.path = path;
+        PartialPath(PartialPath previous, int node, int edge, double score, double estimate, long order) {
+            this.previous = previous;
             this.node = node;
+            this.edge = edge;
             this.score = score;
-            this.forwardScore = forwardScore;
+            this.estimate = estimate;
+            this.order = order;
         }
 
         @Override
-        public int compareTo(NBestPath o) {
-            return Double.compare(score, o.score);
-        }
-
-        public String toString() {
-            return path + " [" + score + ',' + forwardScore + ']';
+        public int compareTo(PartialPath o) {
+            int c = Double.compare(o.estimate, estimate);
+            return c != 0 ? c : (order < o.order ? -1 : (order == o.order ? 0 : 1));
         }
     }
 
+    /**
+     * Returns the word sequences of the n best paths, best first. Fillers are left out, so paths which only differ in
+     * fillers or times count as one.
+     *
+     * @param n the number of word sequences
+     * @return the word sequences, starting with &lt;s&gt; and ending with &lt;/s&gt;
+     */
     public ArrayList<String> getNbest(int n) {
-        lattice.computeNodePosteriors(1.0f);
-        HashSet<String> result = new HashSet<String>();
-
-        BoundedPriorityQueue<NBestPath> queue = new BoundedPriorityQueue<Nbest.NBestPath>(
-                n);
-
-        queue.add(new NBestPath("<s>", lattice.getInitialNode(), 0, 0));
+        ArrayList<String> result = new ArrayList<String>();
+        for (Path path : getNbestPaths(n, true)) {
+            StringBuilder sb = new StringBuilder();
+            for (WordResult word : path.getWords())
+                appendWord(sb, ((SimpleWordResult) word).getWord());
+            result.add(sb.toString());
+        }
+        return result;
+    }
 
-        while (result.size() < n && queue.size() > 0) {
-            NBestPath path = queue.poll();
-            if (path.node.equals(lattice.terminalNode)) {
-                result.add(path.path);
+    /**
+     * Returns the n best paths through the lattice, best first. The score of a path is the sum of the acoustic and
+     * language scores of its edges. Each word of a path carries the score of the edge entering its node and the
+     * posterior of the node as confidence.
+     *
+     * @param n           the number of paths
+     * @param uniqueWords if true, only the best path of every word sequence is returned, fillers not counting
+     * @return the paths, at most n
+     */
+    public List<Path> getNbestPaths(int n, boolean uniqueWords) {
+        CompactLattice compact = lattice.compact();
+        compact.computeNodePosteriors(1.0f, false);
+        double[] heuristic = computeBestScoresToTerminal(compact);
+
+        List<Path> paths = new ArrayList<Path>();
+        Set<String> sequences = new HashSet<String>();
+        int terminal = compact.getNodeCount() - 1;
+        long order = 0;
+
+        PriorityQueue<PartialPath> queue = new PriorityQueue<PartialPath>();
+        queue.add(new PartialPath(null, 0, -1, 0, heuristic[0], order++));
+        while (paths.size() < n && !queue.isEmpty()) {
+            PartialPath path = queue.poll();
+            if (path.node == terminal) {
+                if (!uniqueWords || sequences.add(getWordSequence(compact, path)))
+                    paths.add(createPath(compact, path));
                 continue;
             }
 
-            for (Edge e : path.node.getLeavingEdges()) {
-                Node newNode = e.getToNode();
-                
-                double newForwardScore = path.forwardScore
-                        + e.getAcousticScore() + e.getLMScore();
-
-                double newScore = newForwardScore + newNode.getBackwardScore();
+            for (int e = compact.getFirstLeavingEdge(path.node); e < compact.getFirstLeavingEdge(path.node + 1); e++) {
+                int to = compact.getToNode(e);
+                if (heuristic[to] == Double.NEGATIVE_INFINITY)
+                    continue;
+                double score = path.score + compact.getAcousticScore(e) + compact.getLMScore(e);
+                queue.add(new PartialPath(path, to, e, score, score + heuristic[to], order++));
+            }
+        }
+        return paths;
+    }
 
-                String newPathString = getNewPathString(path, newNode);
-                
-                NBestPath newPath = new NBestPath(newPathString, newNode, newScore, newForwardScore);
-                
-                queue.add(newPath);
+    /** Computes the score of the best path from every node to the terminal node. */
+    private static double[] computeBestScoresToTerminal(CompactLattice compact) {
+        int numNodes = compact.getNodeCount();
+        double[] scores = new double[numNodes];
+        Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+        scores[numNodes - 1] = LogMath.getLogOne();
+        for (int node = numNodes - 2; node >= 0; node--) {
+            for (int e = compact.getFirstLeavingEdge(node); e < compact.getFirstLeavingEdge(node + 1); e++) {
+                double score = scores[compact.getToNode(e)] + compact.getAcousticScore(e) + compact.getLMScore(e);
+                if (score > scores[node])
+                    scores[node] = score;
             }
-            // printQueue(queue);
         }
-        return new ArrayList<String>(result);
+        return scores;
+    }
+
+    private static WordResultPath createPath(CompactLattice compact, PartialPath path) {
+        LinkedList<WordResult> words = new LinkedList<WordResult>();
+        for (PartialPath p = path; p != null; p = p.previous) {
+            Node node = compact.getNode(p.node);
+            double score = p.edge < 0 ? LogMath.getLogOne()
+                    : compact.getAcousticScore(p.edge) + compact.getLMScore(p.edge);
+            words.addFirst(new SimpleWordResult(node.getWord(), node.getBeginTime(), node.getEndTime(), score,
+                    compact.getPosterior(p.node), compact.getLogMath()));
+        }
+        return new WordResultPath(words);
     }
 
-    private String getNewPathString(NBestPath path, Node newNode) {
-        String newPathString;
-        if (newNode.getWord().isSentenceEndWord())
-            newPathString = path.path + " </s>";
-        else if (newNode.getWord().isFiller())
-            newPathString = path.path;
-        else
-            newPathString = path.path + " " + newNode.getWord();
-        return newPathString;
+    /** Returns the words of the given path without fillers, which identify paths with the same word sequence. */
+    private static String getWordSequence(CompactLattice compact, PartialPath path) {
+        List<Word> words = new ArrayList<Word>();
+        for (PartialPath p = path; p != null; p = p.previous)
+            words.add(compact.getWord(p.node));
+        StringBuilder sb = new StringBuilder();
+        for (int i = words.size() - 1; i >= 0; i--)
+            appendWord(sb, words.get(i));
+        return sb.toString();
     }
 
-    @SuppressWarnings("unused")
-    private void printQueue(BoundedPriorityQueue<NBestPath> queue) {
-        System.out.println();
-        for (NBestPath p : queue) {
-            System.out.println(p);
+    private static void appendWord(StringBuilder sb, Word word) {
+        if (word.isSentenceStartWord() || word.isSentenceEndWord() || !word.isFiller()) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(word.getSpelling());
         }
     }
 }
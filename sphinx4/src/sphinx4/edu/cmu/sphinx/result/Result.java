@@ -15,12 +15,14 @@ package edu.cmu.sphinx.result;
 import edu.cmu.sphinx.decoder.search.ActiveList;
 import edu.cmu.sphinx.decoder.search.AlternateHypothesisManager;
 import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.decoder.search.WordExitLog;
 import edu.cmu.sphinx.frontend.Data;
 import edu.cmu.sphinx.frontend.FloatData;
 import edu.cmu.sphinx.linguist.dictionary.Word;
 import edu.cmu.sphinx.util.LogMath;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -41,6 +43,9 @@ public class Result {
     private boolean isFinal;
     private final int currentFrameNumber;
     private String reference;
+    private List<WordResult> committedWords = Collections.emptyList();
+    private List<WordResult> rescoredWords;
+    private WordExitLog wordExitLog;
     private final LogMath logMath;
 
 
@@ -549,6 +554,71 @@ public class Result {
     }
 
 
+    /**
+     * Sets the words committed by the search manager since the previous result.
+     *
+     * @param committedWords the committed words
+     */
+    public void setCommittedWords(List<WordResult> committedWords) {
+        this.committedWords = committedWords;
+    }
+
+
+    /**
+     * Returns the words which the search manager committed since the previous result. A search manager which commits
+     * words cuts the token chains behind them, so these words are no longer part of the token paths of this or any
+     * later result of the utterance.
+     *
+     * @return the committed words, the list is empty unless committing is enabled in the search manager
+     */
+    public List<WordResult> getCommittedWords() {
+        return committedWords;
+    }
+
+
+    /**
+     * Sets the words of the best path found by rescoring the lattice of this result.
+     *
+     * @param rescoredWords the words of the best rescored path
+     */
+    public void setRescoredWords(List<WordResult> rescoredWords) {
+        this.rescoredWords = rescoredWords;
+    }
+
+
+    /**
+     * Returns the words of the best path found by a second pass over the lattice of this result, including fillers and
+     * the sentence start and end words.
+     *
+     * @return the rescored words, or null if the result was not rescored
+     * @see edu.cmu.sphinx.decoder.TwoPassDecoder
+     */
+    public List<WordResult> getRescoredWords() {
+        return rescoredWords;
+    }
+
+
+    /**
+     * Sets the word exits the search logged for the utterance of this result.
+     *
+     * @param wordExitLog the word exit log
+     */
+    public void setWordExitLog(WordExitLog wordExitLog) {
+        this.wordExitLog = wordExitLog;
+    }
+
+
+    /**
+     * Returns the word exits the search logged so far for the utterance of this result. The log is live and keeps
+     * growing until the result is final. The {@link Lattice} of a final result is built from it.
+     *
+     * @return the word exit log, or null if the search manager does not log word exits
+     */
+    public WordExitLog getWordExitLog() {
+        return wordExitLog;
+    }
+
+
 	public ArrayList<WordResult> getWords() {
         
 		LinkedList<WordResult> words = new LinkedList<WordResult>();
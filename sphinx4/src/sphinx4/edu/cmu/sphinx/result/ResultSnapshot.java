@@ -0,0 +1,239 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.result;
+
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+
+import java.util.List;
+
+/**
+ * An immutable copy of the best hypothesis of a {@link Result}: its words with their frames and scores and, if known,
+ * their confidences. A snapshot holds no reference to the tokens of the search, so it can be kept or handed to another
+ * thread while the result itself is dropped. Snapshots are written by the {@link ResultSnapshotEncoder}.
+ */
+public class ResultSnapshot {
+
+    private final boolean isFinal;
+    private final int frameNumber;
+    private final Word[] words;
+    private final int[] startFrames;
+    private final int[] endFrames;
+    private final float[] scores;
+    private final float[] confidences;
+
+
+    /**
+     * Creates a snapshot. The arrays are not copied and must not be changed afterwards.
+     *
+     * @param isFinal     if true, the snapshot is taken of a final result
+     * @param frameNumber the frame number of the result
+     * @param words       the words
+     * @param startFrames the start frames of the words
+     * @param endFrames   the end frames of the words
+     * @param scores      the scores of the words
+     * @param confidences the confidences of the words, or null if there are none
+     */
+    public ResultSnapshot(boolean isFinal, int frameNumber, Word[] words, int[] startFrames, int[] endFrames,
+                          float[] scores, float[] confidences) {
+        if (startFrames.length != words.length || endFrames.length != words.length || scores.length != words.length
+                || (confidences != null && confidences.length != words.length))
+            throw new IllegalArgumentException("word arrays differ in length");
+        this.isFinal = isFinal;
+        this.frameNumber = frameNumber;
+        this.words = words;
+        this.startFrames = startFrames;
+        this.endFrames = endFrames;
+        this.scores = scores;
+        this.confidences = confidences;
+    }
+
+
+    /**
+     * Takes a snapshot of the best path of a result. The words are those of the word tokens of the path, each starting
+     * at the frame of the previous word and scored with the path score at its end. The words the search manager
+     * committed with this result come first, since the path no longer reaches back to them. Snapshots of results carry
+     * no confidences.
+     *
+     * @param result the result
+     * @return the snapshot
+     */
+    public static ResultSnapshot create(Result result) {
+        return create(result, result.getCommittedWords());
+    }
+
+
+    /**
+     * Takes a snapshot of the best path of a result, preceded by the words committed before it. The committed words of
+     * a result are only those committed since the previous result, so a consumer of all the results of an utterance
+     * passes the words committed with all of them.
+     *
+     * @param result         the result
+     * @param committedWords the words committed before the best path of the result
+     * @return the snapshot
+     */
+    public static ResultSnapshot create(Result result, List<WordResult> committedWords) {
+        Token best = result.getBestToken();
+        int numCommitted = committedWords.size();
+        int count = numCommitted;
+        for (Token token = best; token != null; token = token.getPredecessor()) {
+            if (token.isWord())
+                count++;
+        }
+
+        Word[] words = new Word[count];
+        int[] startFrames = new int[count];
+        int[] endFrames = new int[count];
+        float[] scores = new float[count];
+        for (int i = 0; i < numCommitted; i++) {
+            WordResult wordResult = committedWords.get(i);
+            words[i] = getWord(wordResult);
+            startFrames[i] = wordResult.getStartFrame();
+            endFrames[i] = wordResult.getEndFrame();
+            scores[i] = (float) wordResult.getScore();
+        }
+        for (Token token = best; token != null; token = token.getPredecessor()) {
+            if (token.isWord()) {
+                count--;
+                words[count] = token.getWord();
+                endFrames[count] = token.getFrameNumber();
+                scores[count] = token.getScore();
+                if (count + 1 < words.length)
+                    startFrames[count + 1] = endFrames[count];
+            }
+        }
+        // the path starts where the committed words end
+        if (numCommitted > 0 && numCommitted < words.length)
+            startFrames[numCommitted] = endFrames[numCommitted - 1];
+        return new ResultSnapshot(result.isFinal(), result.getFrameNumber(), words, startFrames, endFrames, scores,
+                null);
+    }
+
+
+    /**
+     * Takes a snapshot of a list of words, for example the words of a {@link Path} or the {@link
+     * Result#getRescoredWords() rescored words} of a result. The snapshot keeps the confidences of the words.
+     *
+     * @param isFinal     if true, the words belong to a final result
+     * @param frameNumber the frame number of the result
+     * @param wordResults the words
+     * @return the snapshot
+     */
+    public static ResultSnapshot create(boolean isFinal, int frameNumber, List<WordResult> wordResults) {
+        int count = wordResults.size();
+        Word[] words = new Word[count];
+        int[] startFrames = new int[count];
+        int[] endFrames = new int[count];
+        float[] scores = new float[count];
+        float[] confidences = new float[count];
+        for (int i = 0; i < count; i++) {
+            WordResult wordResult = wordResults.get(i);
+            words[i] = getWord(wordResult);
+            startFrames[i] = wordResult.getStartFrame();
+            endFrames[i] = wordResult.getEndFrame();
+            scores[i] = (float) wordResult.getScore();
+            confidences[i] = (float) wordResult.getConfidence();
+        }
+        return new ResultSnapshot(isFinal, frameNumber, words, startFrames, endFrames, scores, confidences);
+    }
+
+
+    private static Word getWord(WordResult wordResult) {
+        return wordResult instanceof SimpleWordResult ? ((SimpleWordResult) wordResult).getWord()
+                : wordResult.getPronunciation().getWord();
+    }
+
+
+    /** @return true if the snapshot is taken of a final result */
+    public boolean isFinal() {
+        return isFinal;
+    }
+
+
+    /** @return the frame number of the result */
+    public int getFrameNumber() {
+        return frameNumber;
+    }
+
+
+    /** @return the number of words */
+    public int size() {
+        return words.length;
+    }
+
+
+    /**
+     * @param i the index of the word
+     * @return the word
+     */
+    public Word getWord(int i) {
+        return words[i];
+    }
+
+
+    /**
+     * @param i the index of the word
+     * @return the start frame of the word
+     */
+    public int getStartFrame(int i) {
+        return startFrames[i];
+    }
+
+
+    /**
+     * @param i the index of the word
+     * @return the end frame of the word
+     */
+    public int getEndFrame(int i) {
+        return endFrames[i];
+    }
+
+
+    /**
+     * @param i the index of the word
+     * @return the score of the word, in the log domain
+     */
+    public float getScore(int i) {
+        return scores[i];
+    }
+
+
+    /** @return true if the snapshot has confidences */
+    public boolean hasConfidences() {
+        return confidences != null;
+    }
+
+
+    /**
+     * @param i the index of the word
+     * @return the confidence of the word
+     * @throws IllegalStateException if the snapshot has no confidences
+     */
+    public float getConfidence(int i) {
+        if (confidences == null)
+            throw new IllegalStateException("snapshot has no confidences");
+        return confidences[i];
+    }
+
+
+    /** @return the words without fillers, separated by spaces */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Word word : words) {
+            if (!word.isFiller()) {
+                if (sb.length() > 0)
+                    sb.append(' ');
+                sb.append(word.getSpelling());
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.result;
+
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Writes {@link ResultSnapshot}s in a compact binary format or as JSON. The bytes are produced directly from the
+ * snapshot, spellings are encoded to UTF-8 and numbers to digits character by character, so no intermediate strings
+ * are built. Snapshots are either encoded into a given <code>ByteBuffer</code> or written to an
+ * <code>OutputStream</code> through a buffer the encoder reuses. An encoder is not thread safe.
+ * <p/>
+ * The binary format is big endian. It starts with a flag byte (1 for a final result, 2 if confidences follow), the
+ * frame number and the number of words as ints. Every word follows with a filler flag byte, the length of its spelling
+ * in UTF-8 bytes as a short, the spelling, the start and end frame as ints, the score as a float and, if flagged, the
+ * confidence as a float. {@link #decodeBinary(ByteBuffer)} reads it back.
+ * <p/>
+ * The JSON form is an object like <code>{"final":true,"frame":120,"words":[{"word":"one","filler":false,"start":0,
+ * "end":25,"score":-1234.5,"confidence":0.98}]}</code>. Scores and confidences are written with four decimals.
+ */
+public class ResultSnapshotEncoder {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int FINAL = 1;
+    private static final int CONFIDENCES = 2;
+    private static final int DECIMALS = 4;
+    private static final long DECIMAL_SCALE = 10000;
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+
+    /**
+     * Encodes a snapshot in the binary format.
+     *
+     * @param snapshot the snapshot
+     * @param out      the buffer to encode into
+     * @throws BufferOverflowException if the snapshot does not fit into the remaining buffer
+     */
+    public void encodeBinary(ResultSnapshot snapshot, ByteBuffer out) {
+        int flags = (snapshot.isFinal() ? FINAL : 0) | (snapshot.hasConfidences() ? CONFIDENCES : 0);
+        out.put((byte) flags);
+        out.putInt(snapshot.getFrameNumber());
+        out.putInt(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            Word word = snapshot.getWord(i);
+            String spelling = word.getSpelling();
+            out.put((byte) (word.isFiller() ? 1 : 0));
+            out.putShort((short) getUtf8Length(spelling));
+            putUtf8(spelling, 0, spelling.length(), out);
+            out.putInt(snapshot.getStartFrame(i));
+            out.putInt(snapshot.getEndFrame(i));
+            out.putFloat(snapshot.getScore(i));
+            if (snapshot.hasConfidences())
+                out.putFloat(snapshot.getConfidence(i));
+        }
+    }
+
+
+    /**
+     * Writes a snapshot in the binary format.
+     *
+     * @param snapshot the snapshot
+     * @param out      the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeBinary(ResultSnapshot snapshot, OutputStream out) throws IOException {
+        while (true) {
+            buffer.clear();
+            try {
+                encodeBinary(snapshot, buffer);
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+
+    /**
+     * Reads a snapshot in the binary format. The words of the snapshot are new words without pronunciations.
+     *
+     * @param in the buffer to read from
+     * @return the snapshot
+     */
+    public static ResultSnapshot decodeBinary(ByteBuffer in) {
+        int flags = in.get();
+        int frameNumber = in.getInt();
+        int count = in.getInt();
+        Word[] words = new Word[count];
+        int[] startFrames = new int[count];
+        int[] endFrames = new int[count];
+        float[] scores = new float[count];
+        float[] confidences = (flags & CONFIDENCES) != 0 ? new float[count] : null;
+        for (int i = 0; i < count; i++) {
+            boolean isFiller = in.get() != 0;
+            byte[] spelling = new byte[in.getShort() & 0xffff];
+            in.get(spelling);
+            words[i] = new Word(new String(spelling, UTF8), new Pronunciation[0], isFiller);
+            startFrames[i] = in.getInt();
+            endFrames[i] = in.getInt();
+            scores[i] = in.getFloat();
+            if (confidences != null)
+                confidences[i] = in.getFloat();
+        }
+        return new ResultSnapshot((flags & FINAL) != 0, frameNumber, words, startFrames, endFrames, scores,
+                confidences);
+    }
+
+
+    /**
+     * Encodes a snapshot as JSON in UTF-8.
+     *
+     * @param snapshot the snapshot
+     * @param out      the buffer to encode into
+     * @throws BufferOverflowException if the snapshot does not fit into the remaining buffer
+     */
+    public void encodeJson(ResultSnapshot snapshot, ByteBuffer out) {
+        putAscii("{\"final\":", out);
+        putAscii(snapshot.isFinal() ? "true" : "false", out);
+        putAscii(",\"frame\":", out);
+        putLong(snapshot.getFrameNumber(), out);
+        putAscii(",\"words\":[", out);
+        for (int i = 0; i < snapshot.size(); i++) {
+            Word word = snapshot.getWord(i);
+            putAscii(i == 0 ? "{\"word\":\"" : ",{\"word\":\"", out);
+            putJsonString(word.getSpelling(), out);
+            putAscii("\",\"filler\":", out);
+            putAscii(word.isFiller() ? "true" : "false", out);
+            putAscii(",\"start\":", out);
+            putLong(snapshot.getStartFrame(i), out);
+            putAscii(",\"end\":", out);
+            putLong(snapshot.getEndFrame(i), out);
+            putAscii(",\"score\":", out);
+            putDecimal(snapshot.getScore(i), out);
+            if (snapshot.hasConfidences()) {
+                putAscii(",\"confidence\":", out);
+                putDecimal(snapshot.getConfidence(i), out);
+            }
+            out.put((byte) '}');
+        }
+        putAscii("]}", out);
+    }
+
+
+    /**
+     * Writes a snapshot as JSON in UTF-8.
+     *
+     * @param snapshot the snapshot
+     * @param out      the stream to write to
+     * @throws IOException if writing fails
+     */
+    public void writeJson(ResultSnapshot snapshot, OutputStream out) throws IOException {
+        while (true) {
+            buffer.clear();
+            try {
+                encodeJson(snapshot, buffer);
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+        out.write(buffer.array(), 0, buffer.position());
+    }
+
+
+    private static int getUtf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+
+    private static void putUtf8(String s, int from, int to, ByteBuffer out) {
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xc0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xf0 | (codePoint >> 18)));
+                out.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                out.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else {
+                out.put((byte) (0xe0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+
+    private static void putJsonString(String s, ByteBuffer out) {
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                putUtf8(s, start, i, out);
+                out.put((byte) '\\');
+                if (c < 0x20) {
+                    putAscii("u00", out);
+                    out.put(HEX[c >> 4]);
+                    out.put(HEX[c & 0xf]);
+                } else {
+                    out.put((byte) c);
+                }
+                start = i + 1;
+            }
+        }
+        putUtf8(s, start, s.length(), out);
+    }
+
+
+    private static void putAscii(String s, ByteBuffer out) {
+        for (int i = 0; i < s.length(); i++)
+            out.put((byte) s.charAt(i));
+    }
+
+
+    private static void putLong(long value, ByteBuffer out) {
+        if (value < 0) {
+            out.put((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                putAscii("9223372036854775808", out);
+                return;
+            }
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10)
+            divisor *= 10;
+        for (; divisor > 0; divisor /= 10)
+            out.put((byte) ('0' + (value / divisor) % 10));
+    }
+
+
+    /** Writes a number with at most four decimals. Numbers which JSON cannot represent are written as null. */
+    private static void putDecimal(double value, ByteBuffer out) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            putAscii("null", out);
+            return;
+        }
+        if (Math.abs(value) >= 1e14) {
+            // too large for the fixed point digits, rare enough to afford the string
+            putAscii(Double.toString(value), out);
+            return;
+        }
+
+        long scaled = Math.round(Math.abs(value) * DECIMAL_SCALE);
+        if (value < 0 && scaled != 0)
+            out.put((byte) '-');
+        putLong(scaled / DECIMAL_SCALE, out);
+        long fraction = scaled % DECIMAL_SCALE;
+        if (fraction != 0) {
+            out.put((byte) '.');
+            int digits = DECIMALS;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            for (long divisor = pow10(digits - 1); divisor > 0; divisor /= 10)
+                out.put((byte) ('0' + (fraction / divisor) % 10));
+        }
+    }
+
+
+    private static long pow10(int exponent) {
+        long value = 1;
+        for (int i = 0; i < exponent; i++)
+            value *= 10;
+        return value;
+    }
+}
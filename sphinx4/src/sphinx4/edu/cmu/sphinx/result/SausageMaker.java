@@ -30,6 +30,9 @@ import java.util.*;
  */
 public class SausageMaker extends AbstractSausageMaker {
 
+    /** The phonetic similarities of the word pairs compared so far, keyed by the two spellings. */
+    private final Map<String, Double> phoneticSimilarities = new HashMap<String, Double>();
+
     /** Construct an empty sausage maker */
     public SausageMaker() {
     }
@@ -54,7 +57,164 @@ public class SausageMaker extends AbstractSausageMaker {
      * @param clusters the current cluster set
      */
     protected void interWordCluster(List<Cluster> clusters) {
-        while (interWordClusterStep(clusters)) ;
+        mergeClusters(clusters, true);
+    }
+
+
+    /**
+     * Merges clusters until no pair is left to be merged. The result is the same as repeating {@link
+     * #intraWordClusterStep(List)} or {@link #interWordClusterStep(List)}, but instead of comparing all pairs of
+     * clusters in every step, only the clusters overlapping in time are compared, the candidate pairs are kept in a
+     * priority queue and only the pairs involving the merged cluster are rescored after a merge.
+     *
+     * @param clusters  the current cluster set
+     * @param interWord whether to perform the inter word instead of the intra word clustering
+     */
+    private void mergeClusters(List<Cluster> clusters, boolean interWord) {
+        final Cluster[] active = clusters.toArray(new Cluster[clusters.size()]);
+        int[] versions = new int[active.length];
+        PriorityQueue<ClusterPair> queue = new PriorityQueue<ClusterPair>();
+        ClusterIndex index = new ClusterIndex();
+
+        // sweep over the clusters in the order of their start time to find the initial overlapping pairs
+        Integer[] byStartTime = new Integer[active.length];
+        for (int i = 0; i < active.length; i++)
+            byStartTime[i] = i;
+        Arrays.sort(byStartTime, new Comparator<Integer>() {
+            public int compare(Integer i, Integer j) {
+                return active[i].startTime < active[j].startTime ? -1
+                        : active[i].startTime == active[j].startTime ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < byStartTime.length; i++) {
+            Cluster c1 = active[byStartTime[i]];
+            index.add(byStartTime[i], c1);
+            for (int j = i + 1; j < byStartTime.length && active[byStartTime[j]].startTime < c1.endTime; j++) {
+                int first = Math.min(byStartTime[i], byStartTime[j]);
+                int second = Math.max(byStartTime[i], byStartTime[j]);
+                addCandidate(queue, active, versions, first, second, interWord);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            ClusterPair pair = queue.poll();
+            if (active[pair.first] == null || active[pair.second] == null ||
+                    versions[pair.first] != pair.firstVersion || versions[pair.second] != pair.secondVersion)
+                continue;
+
+            Cluster merged = active[pair.first];
+            index.remove(pair.first, merged);
+            index.remove(pair.second, active[pair.second]);
+            merged.add(active[pair.second]);
+            active[pair.second] = null;
+            versions[pair.first]++;
+
+            for (int other : index.getOverlapping(merged)) {
+                addCandidate(queue, active, versions, Math.min(pair.first, other), Math.max(pair.first, other),
+                        interWord);
+            }
+            index.add(pair.first, merged);
+        }
+
+        clusters.clear();
+        for (Cluster cluster : active) {
+            if (cluster != null)
+                clusters.add(cluster);
+        }
+    }
+
+
+    private void addCandidate(PriorityQueue<ClusterPair> queue, Cluster[] active, int[] versions,
+                              int first, int second, boolean interWord) {
+        Cluster c1 = active[first];
+        Cluster c2 = active[second];
+        double sim;
+        if (interWord) {
+            sim = hasOverlap(c1, c2) ? interClusterDistance(c1, c2) : Double.NEGATIVE_INFINITY;
+        } else {
+            sim = intraClusterDistance(c1, c2);
+        }
+        if (sim > Double.NEGATIVE_INFINITY)
+            queue.add(new ClusterPair(sim, first, versions[first], second, versions[second]));
+    }
+
+
+    /**
+     * A candidate pair for merging. The pairs are ordered like the exhaustive search would find them: by decreasing
+     * similarity, then by the position of the clusters in the cluster list.
+     */
+    private static class ClusterPair implements Comparable<ClusterPair> {
+
+        final double similarity;
+        final int first;
+        final int firstVersion;
+        final int second;
+        final int secondVersion;
+
+
+        ClusterPair(double similarity, int first, int firstVersion, int second, int secondVersion) {
+            this.similarity = similarity;
+            this.first = first;
+            this.firstVersion = firstVersion;
+            this.second = second;
+            this.secondVersion = secondVersion;
+        }
+
+
+        public int compareTo(ClusterPair other) {
+            if (similarity != other.similarity)
+                return similarity > other.similarity ? -1 : 1;
+            if (first != other.first)
+                return first < other.first ? -1 : 1;
+            return second < other.second ? -1 : second == other.second ? 0 : 1;
+        }
+    }
+
+
+    /**
+     * Finds the clusters overlapping a time interval. The clusters are kept sorted by their start time; as no cluster is
+     * longer than the longest one added so far, only the clusters starting within that length before the interval
+     * need to be checked.
+     */
+    private class ClusterIndex {
+
+        private final TreeMap<Integer, List<Integer>> byStartTime = new TreeMap<Integer, List<Integer>>();
+        private final Map<Integer, Cluster> clusters = new HashMap<Integer, Cluster>();
+        private int maxLength;
+
+
+        void add(int position, Cluster cluster) {
+            List<Integer> positions = byStartTime.get(cluster.startTime);
+            if (positions == null) {
+                positions = new ArrayList<Integer>(2);
+                byStartTime.put(cluster.startTime, positions);
+            }
+            positions.add(position);
+            clusters.put(position, cluster);
+            maxLength = Math.max(maxLength, cluster.endTime - cluster.startTime);
+        }
+
+
+        void remove(int position, Cluster cluster) {
+            List<Integer> positions = byStartTime.get(cluster.startTime);
+            positions.remove(Integer.valueOf(position));
+            if (positions.isEmpty())
+                byStartTime.remove(cluster.startTime);
+            clusters.remove(position);
+        }
+
+
+        List<Integer> getOverlapping(Cluster cluster) {
+            List<Integer> overlapping = new ArrayList<Integer>();
+            for (List<Integer> positions :
+                    byStartTime.subMap(cluster.startTime - maxLength, false, cluster.endTime, false).values()) {
+                for (int position : positions) {
+                    if (hasOverlap(cluster, clusters.get(position)))
+                        overlapping.add(position);
+                }
+            }
+            return overlapping;
+        }
     }
 
 
@@ -149,23 +309,26 @@ public class SausageMaker extends AbstractSausageMaker {
         if (p2.isEmpty()) {
             return p1.size();
         }
-        int[][] distances = new int[p1.size() + 1][p2.size() + 1];
-        for (int i = 0; i <= p1.size(); i++) {
-            distances[i][0] = i;
-        }
+        // only the previous row of the distance matrix is needed
+        int[] previous = new int[p2.size() + 1];
+        int[] current = new int[p2.size() + 1];
         for (int j = 0; j <= p2.size(); j++) {
-            distances[0][j] = j;
+            previous[j] = j;
         }
         for (int i = 1; i <= p1.size(); i++) {
+            current[0] = i;
             for (int j = 1; j <= p2.size(); j++) {
-                int min = Math.min(distances[i - 1][j - 1]
+                int min = Math.min(previous[j - 1]
                         + (p1.get(i - 1).equals(p2.get(j - 1)) ? 0 : 1),
-                        distances[i - 1][j] + 1);
-                min = Math.min(min, distances[i][j - 1] + 1);
-                distances[i][j] = min;
+                        previous[j] + 1);
+                min = Math.min(min, current[j - 1] + 1);
+                current[j] = min;
             }
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
         }
-        return distances[p1.size()][p2.size()];
+        return previous[p2.size()];
     }
 
 
@@ -201,25 +364,22 @@ public class SausageMaker extends AbstractSausageMaker {
         }
         float totalSim = LogMath.getLogZero();
         float wordPairCount = (float) 0.0;
-        HashSet<String> wordsSeen1 = new HashSet<String>();
-
-        for (Node node1 : c1.getElements()) {
-            String word1 = node1.getWord().getSpelling();
-            if (wordsSeen1.contains(word1)) {
-                continue;
-            }
-            wordsSeen1.add(word1);
-            HashSet<String> wordsSeen2 = new HashSet<String>();
-            for (Node node2 : c2.getElements()) {
-                String word2 = node2.getWord().getSpelling();
-                if (wordsSeen2.contains(word2)) {
-                    continue;
-                }
-                wordsSeen2.add(word2);
-                float sim = (float) computePhoneticSimilarity(node1, node2);
+        Map<String, List<Node>> words1 = getWordSubClusters(c1);
+        Map<String, List<Node>> words2 = getWordSubClusters(c2);
+        double[] probabilities2 = new double[words2.size()];
+        int index = 0;
+        for (List<Node> sub2 : words2.values())
+            probabilities2[index++] = clusterProbability(sub2);
+
+        for (List<Node> sub1 : words1.values()) {
+            Node node1 = sub1.get(0);
+            double probability1 = clusterProbability(sub1);
+            index = 0;
+            for (List<Node> sub2 : words2.values()) {
+                float sim = (float) getPhoneticSimilarity(node1, sub2.get(0));
                 sim = lattice.getLogMath().linearToLog(sim);
-                sim += wordSubClusterProbability(c1, word1);
-                sim += wordSubClusterProbability(c2, word2);
+                sim += probability1;
+                sim += probabilities2[index++];
                 totalSim = lattice.getLogMath().addAsLinear(totalSim, sim);
                 wordPairCount++;
             }
@@ -228,6 +388,45 @@ public class SausageMaker extends AbstractSausageMaker {
     }
 
 
+    /**
+     * Splits a cluster into the subclusters of the nodes with the same word.
+     *
+     * @param cluster the cluster to split
+     * @return the subclusters keyed by spelling, in the order of the first occurrence of the words in the cluster
+     */
+    private Map<String, List<Node>> getWordSubClusters(Cluster cluster) {
+        Map<String, List<Node>> subClusters = new LinkedHashMap<String, List<Node>>();
+        for (Node node : cluster.getElements()) {
+            String word = node.getWord().getSpelling();
+            List<Node> sub = subClusters.get(word);
+            if (sub == null) {
+                sub = new ArrayList<Node>();
+                subClusters.put(word, sub);
+            }
+            sub.add(node);
+        }
+        return subClusters;
+    }
+
+
+    /**
+     * Returns the phonetic similarity of the words of the two nodes, computing it only once for every pair of words.
+     *
+     * @param n1 the first node
+     * @param n2 the second node
+     * @return the phonetic similarity, between 0 and 1
+     */
+    private double getPhoneticSimilarity(Node n1, Node n2) {
+        String key = n1.getWord().getSpelling() + '\n' + n2.getWord().getSpelling();
+        Double sim = phoneticSimilarities.get(key);
+        if (sim == null) {
+            sim = computePhoneticSimilarity(n1, n2);
+            phoneticSimilarities.put(key, sim);
+        }
+        return sim;
+    }
+
+
     /**
      * Check whether these to clusters stand in a relation to each other. Two clusters are related if a member of one is
      * an ancestor of a member of the other cluster.
@@ -287,7 +486,7 @@ public class SausageMaker extends AbstractSausageMaker {
      * @param clusters the current list of clusters
      */
     protected void intraWordCluster(List<Cluster> clusters) {
-        while (intraWordClusterStep(clusters)) ;
+        mergeClusters(clusters, false);
     }
 
 
@@ -331,6 +530,7 @@ public class SausageMaker extends AbstractSausageMaker {
      * @return the sausage producing by collapsing the lattice.
      */
     public Sausage makeSausage() {
+        phoneticSimilarities.clear();
         List<Cluster> clusters = new ArrayList<Cluster>(lattice.nodes.size());
         for (Node n : lattice.nodes.values()) {
             n.cacheDescendants();
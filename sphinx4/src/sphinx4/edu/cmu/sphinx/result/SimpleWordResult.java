@@ -107,6 +107,12 @@ public class SimpleWordResult implements WordResult {
     }
 
 
+    /** @return the word */
+    public Word getWord() {
+        return word;
+    }
+
+
     /** @see edu.cmu.sphinx.result.WordResult#getPronunciation() */
     @Override
     public Pronunciation getPronunciation() {
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.tools.batch;
+
+import edu.cmu.sphinx.api.GrammarAligner;
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.linguist.UnitSearchState;
+import edu.cmu.sphinx.linguist.WordSearchState;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.util.CustomThreadFactory;
+
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.*;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aligns a corpus of utterances to their transcriptions on a pool of threads. The threads share the acoustic model and
+ * the dictionary, each of them has its own {@link GrammarAligner}, with its own grammar, linguist, search and front
+ * end.
+ * <p/>
+ * The control file lists one utterance per line:
+ * <p/>
+ * &lt;audio file&gt; &lt;transcription&gt;
+ * <p/>
+ * The audio files should be 16 kHz, 16 bit, mono. The word and phone timings are written to the output file as the
+ * utterances are aligned, so the utterances may come out of order. Each word is followed by its phones:
+ * <p/>
+ * &lt;audio file&gt; word &lt;start&gt; &lt;end&gt; &lt;spelling&gt;<br/> &lt;audio file&gt; phone &lt;start&gt;
+ * &lt;end&gt; &lt;unit&gt;
+ * <p/>
+ * where the times are in seconds. The utterances which could not be aligned are logged and skipped.
+ */
+public class BatchParallelAligner {
+
+    /** The number of feature frames per second of the aligner front end */
+    private final static int FRAMES_PER_SECOND = 100;
+
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    // the aligners of the threads
+    private final BlockingQueue<GrammarAligner> aligners;
+
+    private final int numThreads;
+
+    private final AtomicInteger numAligned = new AtomicInteger();
+    private final AtomicInteger numFailed = new AtomicInteger();
+    private final AtomicLong numFrames = new AtomicLong();
+
+
+    /**
+     * Creates the aligners of the threads. They share the acoustic model and the dictionary.
+     *
+     * @param acousticModel the acoustic model
+     * @param dictionary    the dictionary
+     * @param numThreads    the number of threads, or zero for one thread per available processor
+     */
+    public BatchParallelAligner(URL acousticModel, URL dictionary, int numThreads) throws IOException {
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+        this.numThreads = numThreads;
+        aligners = new ArrayBlockingQueue<GrammarAligner>(numThreads);
+        // the threads are the only source of parallelism, each of them scores its own states
+        GrammarAligner aligner = new GrammarAligner(acousticModel, dictionary, null, 1);
+        aligners.add(aligner);
+        for (int i = 1; i < numThreads; i++) {
+            aligners.add(new GrammarAligner(aligner));
+        }
+    }
+
+
+    /**
+     * Aligns the utterances of a control file.
+     *
+     * @param controlFile the control file
+     * @param outputFile  the file to write the word and phone timings to
+     * @throws IOException if the control file cannot be read or the output file cannot be written
+     */
+    public void align(String controlFile, String outputFile) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(controlFile), "UTF-8"));
+        final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"));
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+                new CustomThreadFactory(getClass().getSimpleName(), true, Thread.NORM_PRIORITY));
+        // bounds the utterances waiting for a thread
+        final Semaphore pending = new Semaphore(2 * numThreads);
+        long startTime = System.currentTimeMillis();
+
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int separator = line.indexOf(' ');
+                if (separator == -1) {
+                    throw new IOException("Syntax error in " + controlFile + ": " + line);
+                }
+                final String audioFile = line.substring(0, separator);
+                final String text = line.substring(separator + 1).trim();
+
+                pending.acquire();
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            String alignment = alignUtterance(audioFile, text);
+                            if (alignment != null) {
+                                synchronized (out) {
+                                    out.write(alignment);
+                                }
+                            }
+                        } catch (Exception e) {
+                            numFailed.incrementAndGet();
+                            logger.log(Level.WARNING, "Unable to align " + audioFile, e);
+                        } finally {
+                            pending.release();
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while aligning", e);
+        } finally {
+            executor.shutdownNow();
+            reader.close();
+            out.close();
+        }
+
+        double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        double audioSeconds = (double) numFrames.get() / FRAMES_PER_SECOND;
+        System.out.println(String.format(Locale.US,
+                "Aligned %d utterances (%d failed), %.1f hours of audio in %.1f s: %.2f x real time, %.2f utterances/s",
+                numAligned.get(), numFailed.get(), audioSeconds / 3600, seconds,
+                seconds > 0 ? audioSeconds / seconds : 0, seconds > 0 ? numAligned.get() / seconds : 0));
+    }
+
+
+    /**
+     * Aligns an utterance with one of the idle aligners.
+     *
+     * @return the word and phone timings, or null if the utterance could not be aligned
+     */
+    private String alignUtterance(String audioFile, String text) throws Exception {
+        AudioInputStream stream = AudioSystem.getAudioInputStream(new File(audioFile));
+        GrammarAligner aligner = aligners.take();
+        Result result;
+        try {
+            result = aligner.alignResult(stream, text);
+        } finally {
+            aligners.add(aligner);
+            stream.close();
+        }
+
+        Token token = result == null ? null : result.getBestFinalToken();
+        if (token == null) {
+            numFailed.incrementAndGet();
+            logger.warning("No alignment reached the end of " + audioFile);
+            return null;
+        }
+        numAligned.incrementAndGet();
+        numFrames.addAndGet(token.getFrameNumber());
+        return formatAlignment(audioFile, token);
+    }
+
+
+    /**
+     * Formats the words and the phones of the best path of an alignment. A word or a phone starts at the frame its
+     * search state is entered and ends where the next one starts.
+     * <p/>
+     * The path is expected in the order of the {@link edu.cmu.sphinx.linguist.flat.FlatLinguist} of the aligner: the
+     * word state of a pronunciation comes before its unit states, so the units which follow a word state are the
+     * phones of that word. The lex tree linguist places the word states after their units, its paths would assign the
+     * phones to the next word.
+     *
+     * @param name      the name of the utterance
+     * @param lastToken the final token of the best path
+     * @return the word and phone timings
+     */
+    public static String formatAlignment(String name, Token lastToken) {
+        List<Token> path = new ArrayList<Token>();
+        for (Token token = lastToken; token != null; token = token.getPredecessor()) {
+            path.add(token);
+        }
+        Collections.reverse(path);
+
+        StringBuilder alignment = new StringBuilder();
+        StringBuilder phones = new StringBuilder();
+        String word = null;
+        int wordStart = 0;
+        String unit = null;
+        int unitStart = 0;
+        for (Token token : path) {
+            SearchState state = token.getSearchState();
+            int frame = token.getFrameNumber();
+            if (state instanceof UnitSearchState) {
+                if (unit != null) {
+                    formatSegment(phones, name, "phone", unitStart, frame, unit);
+                }
+                unit = ((UnitSearchState) state).getUnit().getName();
+                unitStart = frame;
+            } else if (state instanceof WordSearchState) {
+                if (unit != null) {
+                    formatSegment(phones, name, "phone", unitStart, frame, unit);
+                    unit = null;
+                }
+                if (word != null) {
+                    formatSegment(alignment, name, "word", wordStart, frame, word);
+                }
+                alignment.append(phones);
+                phones.setLength(0);
+                word = ((WordSearchState) state).getPronunciation().getWord().getSpelling();
+                wordStart = frame;
+            }
+        }
+        int lastFrame = lastToken.getFrameNumber();
+        if (unit != null) {
+            formatSegment(phones, name, "phone", unitStart, lastFrame, unit);
+        }
+        if (word != null) {
+            formatSegment(alignment, name, "word", wordStart, lastFrame, word);
+        }
+        alignment.append(phones);
+        return alignment.toString();
+    }
+
+
+    private static void formatSegment(StringBuilder sb, String name, String type, int startFrame, int endFrame,
+                                      String label) {
+        sb.append(String.format(Locale.US, "%s %s %.2f %.2f %s\n", name, type,
+                (double) startFrame / FRAMES_PER_SECOND, (double) endFrame / FRAMES_PER_SECOND, label));
+    }
+
+
+    public static void main(String[] argv) throws IOException {
+        if (argv.length < 4 || argv.length > 5) {
+            System.out.println(
+                    "Usage: BatchParallelAligner acousticModel dictionary controlFile outputFile [numThreads]");
+            System.exit(1);
+        }
+
+        URL acousticModel = new File(argv[0]).toURI().toURL();
+        URL dictionary = new File(argv[1]).toURI().toURL();
+        int numThreads = argv.length > 4 ? Integer.parseInt(argv[4]) : 0;
+
+        BatchParallelAligner aligner = new BatchParallelAligner(acousticModel, dictionary, numThreads);
+        aligner.align(argv[2], argv[3]);
+    }
+}
@@ -12,13 +12,27 @@
 
 package edu.cmu.sphinx.util;
 
+import java.lang.ref.WeakReference;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
 
 /**
  * Keeps track of execution times. This class provides methods that can be used for timing processes. The process to be
  * timed should be bracketed by calls to timer.start() and timer.stop().  Repeated operations can be timed more than
- * once. The timer will report the minimum, maximum, average and last time executed for all start/stop pairs when the
- * timer.dump is called.
+ * once. The timer will report the minimum, maximum, average, median, 99th percentile and last time executed for all
+ * start/stop pairs when the timer.dump is called.
+ * <p/>
+ * The times are measured with {@link System#nanoTime()}, so that phases shorter than a millisecond can be timed. Each
+ * thread accumulates its own times, which are merged when they are read, so several threads can time with the same
+ * timer without contention. A thread has to stop the timer it started. The times of the threads which ended are merged
+ * into a single total, so that short-lived threads, like the workers of a new pool, don't pile up accumulators.
+ * <p/>
+ * All timers can be disabled by setting the system property {@code edu.cmu.sphinx.util.Timer.disabled} to true. The
+ * calls to start and stop are then no-ops, which the JIT compiler removes.
  * <p/>
  * Timer instances can be obtained from a global cache implemented in {@code TimerPool}.
  *
@@ -26,17 +40,39 @@ import java.text.DecimalFormat;
  */
 public class Timer {
 
+    /** Whether the timers measure times, false if the system property edu.cmu.sphinx.util.Timer.disabled is true */
+    public final static boolean ENABLED = !Boolean.getBoolean(Timer.class.getName() + ".disabled");
+
     private final static DecimalFormat timeFormatter = new DecimalFormat("###0.0000");
 
+    private final static Logger logger = Logger.getLogger(Timer.class.getName());
+
+    /** The number of histogram buckets per power of two, which bounds the relative error of the percentiles */
+    private final static int SUB_BUCKET_BITS = 3;
+    private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private final static int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final static double NANOS_PER_MILLISECOND = 1000000.0;
+
     private final String name;
 
-    private double sum;
-    private long count;
-    private long startTime;
-    private long curTime;
-    private long minTime = Long.MAX_VALUE;
-    private long maxTime;
-    private boolean notReliable; // if true, timing is not reliable
+    // the accumulators of the live threads which used this timer, and the times of the threads which ended
+    private final List<Accumulator> accumulators = new ArrayList<Accumulator>();
+    private final Accumulator retired = new Accumulator(null);
+    private final ThreadLocal<Accumulator> accumulator = new ThreadLocal<Accumulator>() {
+        @Override
+        protected Accumulator initialValue() {
+            Accumulator newAccumulator = new Accumulator(Thread.currentThread());
+            synchronized (accumulators) {
+                retireEndedThreads();
+                accumulators.add(newAccumulator);
+            }
+            return newAccumulator;
+        }
+    };
+
+    private volatile long curTime;
+    private volatile boolean notReliable; // if true, timing is not reliable
 
 
     /**
@@ -47,7 +83,6 @@ public class Timer {
     Timer(String name) {
         assert name != null : "timers must have a name!";
         this.name = name;
-        reset();
     }
 
 
@@ -63,52 +98,63 @@ public class Timer {
 
     /** Resets the timer as if it has never run before. */
     public void reset() {
-        startTime = 0L;
-        count = 0L;
-        sum = 0L;
-        minTime = Long.MAX_VALUE;
-        maxTime = 0L;
+        synchronized (accumulators) {
+            retireEndedThreads();
+            retired.reset();
+            for (Accumulator threadAccumulator : accumulators) {
+                threadAccumulator.reset();
+            }
+        }
+        accumulator.get().started = false;
+        curTime = 0L;
         notReliable = false;
     }
 
 
     /**
-     * Returns true if the timer has started.
+     * Returns true if the timer has been started by the calling thread.
      *
      * @return true if the timer has started; false otherwise
      */
     public boolean isStarted() {
-        return (startTime > 0L);
+        return accumulator.get().started;
     }
 
 
     /** Starts the timer running. */
     public void start() {
-        if (startTime != 0L) {
-            notReliable = true; // start called while timer already running
-            System.out.println
-                    (getName() + " timer.start() called without a stop()");
+        if (!ENABLED) {
+            return;
         }
-        startTime = System.currentTimeMillis();
+        Accumulator threadAccumulator = accumulator.get();
+        if (threadAccumulator.started) {
+            misused("start() called without a stop()");
+        }
+        threadAccumulator.started = true;
+        threadAccumulator.startTime = System.nanoTime();
     }
 
 
     /**
      * Starts the timer at the given time.
      *
-     * @param time the starting time
+     * @param time the starting time, as returned by {@link System#currentTimeMillis()}
      */
     public void start(long time) {
-        if (startTime != 0L) {
-            notReliable = true; // start called while timer already running
-            System.out.println
-                    (getName() + " timer.start() called without a stop()");
+        if (!ENABLED) {
+            return;
         }
-        if (time > System.currentTimeMillis()) {
+        long now = System.currentTimeMillis();
+        if (time > now) {
             throw new IllegalStateException
                     ("Start time is later than current time");
         }
-        startTime = time;
+        Accumulator threadAccumulator = accumulator.get();
+        if (threadAccumulator.started) {
+            misused("start() called without a stop()");
+        }
+        threadAccumulator.started = true;
+        threadAccumulator.startTime = System.nanoTime() - (now - time) * (long) NANOS_PER_MILLISECOND;
     }
 
 
@@ -119,25 +165,23 @@ public class Timer {
      * @return the duration since start in milliseconds
      */
     public long stop(boolean verbose) {
-        if (startTime == 0L) {
-            notReliable = true;        // stop called, but start never called
-            System.out.println
-                    (getName() + " timer.stop() called without a start()");
+        if (!ENABLED) {
+            return 0L;
         }
-        curTime = System.currentTimeMillis() - startTime;
-        startTime = 0L;
-        if (curTime > maxTime) {
-            maxTime = curTime;
+        long stopTime = System.nanoTime();
+        Accumulator threadAccumulator = accumulator.get();
+        if (!threadAccumulator.started) {
+            misused("stop() called without a start()");
+            return 0L;
         }
-        if (curTime < minTime) {
-            minTime = curTime;
-        }
-        count++;
-        sum += curTime;
+        threadAccumulator.started = false;
+        long duration = stopTime - threadAccumulator.startTime;
+        threadAccumulator.add(duration);
+        curTime = duration;
         if (verbose) {
             dump();
         }
-        return curTime;
+        return (long) (duration / NANOS_PER_MILLISECOND);
     }
 
 
@@ -147,6 +191,14 @@ public class Timer {
     }
 
 
+    private void misused(String message) {
+        if (!notReliable) {
+            logger.warning(getName() + " timer." + message + ", its times are not reliable");
+        }
+        notReliable = true;
+    }
+
+
     /** Dump the timer. Shows the timer details. */
     public void dump() {
         showTimesShort();
@@ -159,7 +211,7 @@ public class Timer {
      * @return the count
      */
     public long getCount() {
-        return count;
+        return merge().count;
     }
 
 
@@ -169,7 +221,7 @@ public class Timer {
      * @return the time in milliseconds
      */
     public long getCurTime() {
-        return curTime;
+        return (long) (curTime / NANOS_PER_MILLISECOND);
     }
 
 
@@ -179,10 +231,11 @@ public class Timer {
      * @return the average time
      */
     public double getAverageTime() {
-        if (count == 0) {
+        Accumulator total = merge();
+        if (total.count == 0) {
             return 0.0;
         }
-        return sum / count;
+        return total.sum / NANOS_PER_MILLISECOND / total.count;
     }
 
 
@@ -192,7 +245,8 @@ public class Timer {
      * @return the min time
      */
     public long getMinTime() {
-        return minTime;
+        long minTime = merge().minTime;
+        return minTime == Long.MAX_VALUE ? minTime : (long) (minTime / NANOS_PER_MILLISECOND);
     }
 
 
@@ -202,57 +256,204 @@ public class Timer {
      * @return the max time in milliseconds
      */
     public long getMaxTime() {
-        return maxTime;
+        return (long) (merge().maxTime / NANOS_PER_MILLISECOND);
     }
 
 
     /**
-     * Formats times into a standard format.
+     * Gets the total time for this timer in milliseconds
      *
-     * @param time the time (in milliseconds) to be formatted
-     * @return a string representation of the time.
+     * @return the sum of the times
+     */
+    public double getTotalTime() {
+        return merge().sum / NANOS_PER_MILLISECOND;
+    }
+
+
+    /**
+     * Gets a percentile of the times of this timer. The times are counted in a histogram whose buckets are at most
+     * 1/8 of their lower bound wide, so the percentile is approximate.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the time in milliseconds below which the given percentage of the times falls
      */
-    private String fmtTime(long time) {
-        return fmtTime(time / 1000.0);
+    public double getPercentile(double percentile) {
+        return merge().getPercentile(percentile) / NANOS_PER_MILLISECOND;
+    }
+
+
+    /** Merges the times of all threads */
+    private Accumulator merge() {
+        Accumulator total = new Accumulator(null);
+        synchronized (accumulators) {
+            retireEndedThreads();
+            retired.addTo(total);
+            for (Accumulator threadAccumulator : accumulators) {
+                threadAccumulator.addTo(total);
+            }
+        }
+        return total;
+    }
+
+
+    /** Merges the times of the threads which ended into the retired times and drops their accumulators */
+    private void retireEndedThreads() {
+        for (Iterator<Accumulator> i = accumulators.iterator(); i.hasNext();) {
+            Accumulator threadAccumulator = i.next();
+            if (!threadAccumulator.isOwnerAlive()) {
+                threadAccumulator.addTo(retired);
+                i.remove();
+            }
+        }
     }
 
 
     /**
      * Formats times into a standard format.
      *
-     * @param time the time (in seconds) to be formatted
+     * @param time the time (in milliseconds) to be formatted
      * @return a string representation of the time.
      */
     private String fmtTime(double time) {
-        return Utilities.pad(timeFormatter.format(time) + 's', 10);
+        return Utilities.pad(timeFormatter.format(time / 1000.0) + 's', 10);
     }
 
 
     /** Shows brief timing statistics . */
     private void showTimesShort() {
-        double avgTime = 0.0;
-
-        if (count == 0) {
+        Accumulator total = merge();
+        if (total.count == 0) {
             return;
         }
 
-        if (count > 0) {
-            avgTime = sum / count / 1000.0;
-        }
-
         if (notReliable) {
             System.out.print(Utilities.pad(name, 20) + ' ');
             System.out.println("Not reliable.");
         } else {
             System.out.print(Utilities.pad(name, 20) + ' ');
-            System.out.print(Utilities.pad(String.valueOf(count), 8));
-            System.out.print(fmtTime(curTime));
-            System.out.print(fmtTime(minTime));
-            System.out.print(fmtTime(maxTime));
-            System.out.print(fmtTime(avgTime));
-            System.out.print(fmtTime(sum / 1000.0));
+            System.out.print(Utilities.pad(String.valueOf(total.count), 8));
+            System.out.print(fmtTime(curTime / NANOS_PER_MILLISECOND));
+            System.out.print(fmtTime(total.minTime / NANOS_PER_MILLISECOND));
+            System.out.print(fmtTime(total.maxTime / NANOS_PER_MILLISECOND));
+            System.out.print(fmtTime(total.sum / NANOS_PER_MILLISECOND / total.count));
+            System.out.print(fmtTime(total.sum / NANOS_PER_MILLISECOND));
+            System.out.print(fmtTime(total.getPercentile(50) / NANOS_PER_MILLISECOND));
+            System.out.print(fmtTime(total.getPercentile(99) / NANOS_PER_MILLISECOND));
             System.out.println();
         }
     }
-}
 
+
+    /**
+     * Gets the histogram bucket of a time
+     *
+     * @param time the time in nanoseconds
+     * @return the index of the bucket
+     */
+    static int getBucket(long time) {
+        if (time < SUB_BUCKETS) {
+            return (int) Math.max(time, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(time);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((time >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+
+    /**
+     * Gets the smallest time of a histogram bucket
+     *
+     * @param bucket the index of the bucket
+     * @return the time in nanoseconds
+     */
+    static long getBucketStart(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    }
+
+
+    /**
+     * The times of a thread. Only the thread updates them, the lock is only contended while the times are read.
+     */
+    private static final class Accumulator {
+
+        // the thread, not kept alive by its accumulator
+        private final WeakReference<Thread> owner;
+
+        // only used by the thread
+        private boolean started;
+        private long startTime;
+
+        private long count;
+        private long sum;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime;
+        private final long[] histogram = new long[NUM_BUCKETS];
+
+
+        /** @param owner the thread whose times are accumulated, or null for merged times */
+        Accumulator(Thread owner) {
+            this.owner = new WeakReference<Thread>(owner);
+        }
+
+
+        boolean isOwnerAlive() {
+            Thread thread = owner.get();
+            return thread != null && thread.isAlive();
+        }
+
+
+        synchronized void add(long time) {
+            count++;
+            sum += time;
+            if (time < minTime) {
+                minTime = time;
+            }
+            if (time > maxTime) {
+                maxTime = time;
+            }
+            histogram[getBucket(time)]++;
+        }
+
+
+        synchronized void addTo(Accumulator total) {
+            total.count += count;
+            total.sum += sum;
+            total.minTime = Math.min(total.minTime, minTime);
+            total.maxTime = Math.max(total.maxTime, maxTime);
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                total.histogram[i] += histogram[i];
+            }
+        }
+
+
+        synchronized void reset() {
+            count = 0L;
+            sum = 0L;
+            minTime = Long.MAX_VALUE;
+            maxTime = 0L;
+            Arrays.fill(histogram, 0L);
+        }
+
+
+        /** Returns the middle of the bucket the percentile falls in, bounded by the extreme times */
+        long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0L;
+            }
+            long rank = (long) Math.ceil(percentile / 100.0 * count);
+            long seen = 0;
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                seen += histogram[i];
+                if (seen >= rank && seen > 0) {
+                    long middle = (getBucketStart(i) + getBucketStart(i + 1) - 1) / 2;
+                    return Math.max(minTime, Math.min(maxTime, middle));
+                }
+            }
+            return maxTime;
+        }
+    }
+}
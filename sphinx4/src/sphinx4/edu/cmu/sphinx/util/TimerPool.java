@@ -1,18 +1,20 @@
 package edu.cmu.sphinx.util;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.WeakHashMap;
 
 /**
  * Keeps references to a list of timers which can be referenced by a key-pair consisting of an owner and a timer name.
+ * <p/>
+ * The lookup of a timer is synchronized, so the code timing a frequent operation should keep its timer instead of
+ * retrieving it for each operation.
  *
  * @author Holger Brandl
  */
 public class TimerPool {
 
-    private static final Map<Object, List<Timer>> weakRefTimerPool = new WeakHashMap<Object, List<Timer>>();
+    private static final Map<Object, Map<String, Timer>> weakRefTimerPool = new WeakHashMap<Object, Map<String, Timer>>();
 
 
     // disable the constructor
@@ -29,28 +31,27 @@ public class TimerPool {
      *                  created  @return the timer.
      */
     public static synchronized Timer getTimer(Object owner, String timerName) {
-        if (!weakRefTimerPool.containsKey(owner))
-            weakRefTimerPool.put(owner, new ArrayList<Timer>());
-
-        List<Timer> ownerTimers = weakRefTimerPool.get(owner);
-
-        for (Timer timer : ownerTimers) {
-            if (timer.getName().equals(timerName))
-                return timer;
+        Map<String, Timer> ownerTimers = weakRefTimerPool.get(owner);
+        if (ownerTimers == null) {
+            ownerTimers = new LinkedHashMap<String, Timer>();
+            weakRefTimerPool.put(owner, ownerTimers);
         }
 
-        // there is no timer named 'timerName' yet, so create it
-        Timer requestedTimer = new Timer(timerName);
-        ownerTimers.add(requestedTimer);
+        Timer requestedTimer = ownerTimers.get(timerName);
+        if (requestedTimer == null) {
+            // there is no timer named 'timerName' yet, so create it
+            requestedTimer = new Timer(timerName);
+            ownerTimers.put(timerName, requestedTimer);
+        }
 
         return requestedTimer;
     }
 
 
     /** Returns the number of currently caches {@code Timer} instances. */
-    public static int getNumCachedTimers() {
+    public static synchronized int getNumCachedTimers() {
         int counter = 0;
-        for (List<Timer> timers : weakRefTimerPool.values()) {
+        for (Map<String, Timer> timers : weakRefTimerPool.values()) {
             counter += timers.size();
         }
 
@@ -59,11 +60,11 @@ public class TimerPool {
 
 
     /** Dump all timers */
-    public static void dumpAll() {
+    public static synchronized void dumpAll() {
         showTimesShortTitle();
 
-        for (List<Timer> timers : weakRefTimerPool.values()) {
-            for (Timer timer : timers) {
+        for (Map<String, Timer> timers : weakRefTimerPool.values()) {
+            for (Timer timer : timers.values()) {
                 timer.dump();
             }
         }
@@ -84,14 +85,16 @@ public class TimerPool {
         System.out.print(Utilities.pad("MaxTime", 10));
         System.out.print(Utilities.pad("AvgTime", 10));
         System.out.print(Utilities.pad("TotTime", 10));
+        System.out.print(Utilities.pad("MedTime", 10));
+        System.out.print(Utilities.pad("99%Time", 10));
         System.out.println();
     }
 
 
     /** Resets all timers */
-    public static void resetAll() {
-        for (List<Timer> timers : weakRefTimerPool.values()) {
-            for (Timer timer : timers) {
+    public static synchronized void resetAll() {
+        for (Map<String, Timer> timers : weakRefTimerPool.values()) {
+            for (Timer timer : timers.values()) {
                 timer.reset();
             }
         }
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.api.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.api.LongAudioAligner;
+import edu.cmu.sphinx.api.LongAudioAligner.Region;
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.result.SimpleWordResult;
+import edu.cmu.sphinx.result.WordResult;
+
+/**
+ * Tests how the long audio aligner matches a hypothesis to a transcription and splits a region at the anchors, on
+ * hand-built hypotheses without audio.
+ */
+public class LongAudioAlignerTest {
+
+	@Test
+	public void testLongestIncreasingChain() {
+		List<int[]> matches = Arrays.asList(new int[] {5, 0}, new int[] {1, 1}, new int[] {2, 2}, new int[] {0, 3},
+				new int[] {3, 4}, new int[] {6, 5}, new int[] {4, 6});
+		List<int[]> chain = LongAudioAligner.longestIncreasingChain(matches);
+		assertEquals(4, chain.size());
+		assertArrayEquals(new int[] {1, 1}, chain.get(0));
+		assertArrayEquals(new int[] {2, 2}, chain.get(1));
+		assertArrayEquals(new int[] {3, 4}, chain.get(2));
+		assertArrayEquals(new int[] {4, 6}, chain.get(3));
+
+		assertTrue(LongAudioAligner.longestIncreasingChain(Collections.<int[]>emptyList()).isEmpty());
+	}
+
+	@Test
+	public void testFindAnchors() {
+		List<String> text = Arrays.asList("the cat sat on the mat and the cat ran".split(" "));
+		List<WordResult> hypothesis = hypothesis("the cat sat in the mat the cat ran");
+		List<WordResult> anchors = LongAudioAligner.findAnchors(text, hypothesis);
+
+		// "in" breaks the middle of the sentence, "the cat" alone is too short
+		assertEquals(text.size(), anchors.size());
+		assertEquals(Arrays.asList(hypothesis.get(0), hypothesis.get(1), hypothesis.get(2), null, null, null, null,
+				hypothesis.get(6), hypothesis.get(7), hypothesis.get(8)), anchors);
+	}
+
+	@Test
+	public void testRepeatedAnchors() {
+		// the word sequences repeated in the text can not be told apart
+		List<String> text = Arrays.asList("one two three four one two three five".split(" "));
+		List<WordResult> hypothesis = hypothesis("one two three four five one two three five");
+		List<WordResult> anchors = LongAudioAligner.findAnchors(text, hypothesis);
+		assertEquals(Arrays.asList(null, hypothesis.get(1), hypothesis.get(2), hypothesis.get(3), null,
+				hypothesis.get(6), hypothesis.get(7), hypothesis.get(8)), anchors);
+
+		assertEquals(Collections.nCopies(text.size(), null),
+				LongAudioAligner.findAnchors(text, hypothesis("four three two one")));
+		assertEquals(Collections.nCopies(text.size(), null),
+				LongAudioAligner.findAnchors(text, Collections.<WordResult>emptyList()));
+	}
+
+	@Test
+	public void testSplitRegion() {
+		Region region = new Region(10, 20, 1000, 5000);
+		List<WordResult> anchors = new ArrayList<WordResult>(Collections.nCopies(region.getEnd() - region.getStart(),
+				(WordResult) null));
+		anchors.set(2, result("two", 1500, 1800));
+		anchors.set(3, result("three", 1800, 2000));
+		anchors.set(7, result("seven", 3000, 3300));
+		anchors.set(9, result("nine", 4800, 5000));
+		WordResult[] results = new WordResult[25];
+
+		List<Region> subregions = LongAudioAligner.splitRegion(region, anchors, results);
+		assertEquals("[[10, 12) 1000-1500, [14, 17) 2000-3000, [18, 19) 3300-4800]", subregions.toString());
+		for (int i = 0; i < results.length; i++)
+			assertSame(i >= 10 && i < 20 ? anchors.get(i - 10) : null, results[i]);
+
+		// the words between two anchors without audio between them stay
+		// unaligned
+		anchors.set(7, result("seven", 2000, 3300));
+		subregions = LongAudioAligner.splitRegion(region, anchors, results);
+		assertEquals("[[10, 12) 1000-1500, [18, 19) 3300-4800]", subregions.toString());
+
+		subregions = LongAudioAligner.splitRegion(region, Collections.nCopies(10, (WordResult) null), results);
+		assertEquals("[[10, 20) 1000-5000]", subregions.toString());
+	}
+
+	private static List<WordResult> hypothesis(String text) {
+		List<WordResult> hypothesis = new ArrayList<WordResult>();
+		int time = 0;
+		for (String spelling : text.split(" ")) {
+			hypothesis.add(result(spelling, time, time + 300));
+			time += 300;
+		}
+		return hypothesis;
+	}
+
+	private static WordResult result(String spelling, int startTime, int endTime) {
+		TestPronunciation pronunciation = new TestPronunciation();
+		pronunciation.attach(new Word(spelling, new Pronunciation[] {pronunciation}, false));
+		return new SimpleWordResult(pronunciation.getWord(), startTime, endTime, 0.0, 1.0, null);
+	}
+
+	private static class TestPronunciation extends Pronunciation {
+
+		TestPronunciation() {
+			super(Unit.EMPTY_ARRAY, null, null, 1.0f);
+		}
+
+		void attach(Word word) {
+			setWord(word);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.decoder.search.test;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import edu.cmu.sphinx.decoder.search.SearchStatistics;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * Tests that the ring buffer keeps the latest frames, that percentiles are computed over them and that several
+ * instances can be registered under the same MBean name.
+ */
+public class SearchStatisticsTest {
+
+	@Test
+	public void testRingBuffer() {
+		SearchStatistics statistics = new SearchStatistics(100, null, 0);
+		statistics.allocate();
+		assertTrue(Double.isNaN(statistics.getPercentile("activeTokens", 50)));
+
+		for (int frame = 1; frame <= 250; frame++)
+			statistics.record(frame, frame, 2 * frame, 0, 0, -frame, -frame - 100, 1000, 10, 2000);
+		statistics.deallocate();
+
+		assertEquals(250, statistics.getRecordedFrames());
+		// the buffer holds frames 151 to 250
+		assertEquals(250, statistics.getPercentile("activeTokens", 100), 0);
+		assertEquals(200, statistics.getPercentile("activeTokens", 50), 0);
+		assertEquals(400, statistics.getPercentile("scoredTokens", 50), 0);
+		assertEquals(-250, statistics.getPercentile("bestScore", 0), 0);
+		assertEquals(151, statistics.getPercentile("activeTokens", 0), 0);
+		assertTrue(statistics.getSummary().startsWith("{\"recordedFrames\":250,\"frames\":100,"));
+		assertTrue(statistics.getSummary().contains("\"scoreNanos\":{\"mean\":1000,\"p50\":1000"));
+		assertTrue(statistics.getFrames().startsWith("[{\"frame\":151,"));
+		assertTrue(statistics.getFrames().endsWith("{\"frame\":250,\"activeTokens\":250,\"scoredTokens\":500,"
+				+ "\"tokensCreated\":0,\"wordTokens\":0,\"bestScore\":-250,\"beamThreshold\":-350,"
+				+ "\"scoreNanos\":1000,\"pruneNanos\":10,\"growNanos\":2000}]"));
+	}
+
+
+	@Test
+	public void testSharedMBeanName() throws JMException {
+		String name = "edu.cmu.sphinx:type=SearchStatisticsTest";
+		SearchStatistics first = new SearchStatistics(10, name, 0);
+		SearchStatistics second = new SearchStatistics(10, name, 0);
+		first.allocate();
+		second.allocate();
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		assertEquals(new ObjectName(name), first.getObjectName());
+		assertNotNull(second.getObjectName());
+		assertFalse(first.getObjectName().equals(second.getObjectName()));
+		assertTrue(server.isRegistered(second.getObjectName()));
+		assertEquals(2, server.queryNames(new ObjectName(name + ",*"), null).size());
+
+		first.deallocate();
+		second.deallocate();
+		assertTrue(server.queryNames(new ObjectName(name + ",*"), null).isEmpty());
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.decoder.search.test;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.decoder.search.AlternateHypothesisManager;
+import edu.cmu.sphinx.decoder.search.StableWordCommitter;
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.linguist.SearchStateArc;
+import edu.cmu.sphinx.linguist.WordSearchState;
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.LogMath;
+
+/**
+ * Tests that the committer reports the words before the common ancestor of the frontier and that after the cut no
+ * token before the ancestor is reachable, neither through the predecessors nor through the alternate predecessors.
+ */
+public class StableWordCommitterTest {
+
+	@Test
+	public void testCommit() {
+		Token root = token(null, 0, "<s>");
+		Token hello = token(token(root, 1, null), 2, "hello");
+		Token world = token(token(hello, 3, null), 4, "world");
+		Token ancestor = token(world, 5, null);
+		Token first = token(token(ancestor, 6, null), 7, null);
+		Token second = token(token(ancestor, 6, null), 7, "again");
+
+		// a path which lost against the path through the ancestor, it branched off before the ancestor
+		Token loser = token(token(hello, 3, null), 6, null);
+		Token kept = token(ancestor, 6, null);
+		AlternateHypothesisManager alternates = new AlternateHypothesisManager(10);
+		alternates.addAlternatePredecessor(first, loser);
+		alternates.addAlternatePredecessor(second, kept);
+		alternates.addAlternatePredecessor(world, token(root, 3, null));
+
+		Set<Token> history = reachable(Arrays.asList(world, loser), alternates);
+
+		StableWordCommitter committer = new StableWordCommitter(new LogMath(1.0001f, true));
+		List<WordResult> words = committer.commit(Arrays.asList(first, second), alternates);
+		assertEquals(Arrays.asList("<s>", "hello", "world"), spellings(words));
+		assertEquals(0, words.get(0).getStartFrame());
+		assertEquals(2, words.get(1).getEndFrame());
+		assertEquals(2, words.get(2).getStartFrame());
+		assertEquals(4, words.get(2).getEndFrame());
+		assertSame(ancestor, committer.getCommitPoint());
+		assertNull(ancestor.getPredecessor());
+
+		Set<Token> after = reachable(Arrays.asList(first, second), alternates);
+		assertTrue(after.contains(kept));
+		for (Token token : after) {
+			Token head = token;
+			while (head.getPredecessor() != null)
+				head = head.getPredecessor();
+			assertSame(ancestor, head);
+		}
+		for (Token token : history) {
+			assertFalse(after.contains(token));
+		}
+		assertNull(alternates.getAlternatePredecessors(first));
+		assertEquals(Arrays.asList(kept), alternates.getAlternatePredecessors(second));
+		assertFalse(alternates.hasAlternatePredecessors(world));
+
+		// nothing new is stable until the paths join again
+		Token third = token(first, 8, null);
+		Token fourth = token(second, 8, null);
+		assertTrue(committer.commit(Arrays.asList(third, fourth), alternates).isEmpty());
+		assertSame(ancestor, committer.getCommitPoint());
+
+		// the next commit reports the words after the previous cut only
+		Token next = token(token(fourth, 9, null), 10, null);
+		words = committer.commit(Arrays.asList(next, token(next, 11, null)), alternates);
+		assertEquals(Arrays.asList("again"), spellings(words));
+		assertEquals(4, words.get(0).getStartFrame());
+		assertEquals(7, words.get(0).getEndFrame());
+		assertNull(next.getPredecessor());
+	}
+
+
+	/** @return the tokens reachable from the given ones through predecessors and alternate predecessors */
+	private static Set<Token> reachable(Collection<Token> tokens, AlternateHypothesisManager alternates) {
+		Set<Token> visited = Collections.newSetFromMap(new IdentityHashMap<Token, Boolean>());
+		Deque<Token> queue = new ArrayDeque<Token>(tokens);
+		while (!queue.isEmpty()) {
+			Token token = queue.poll();
+			if (!visited.add(token))
+				continue;
+			if (token.getPredecessor() != null)
+				queue.add(token.getPredecessor());
+			if (alternates != null && alternates.hasAlternatePredecessors(token))
+				queue.addAll(alternates.getAlternatePredecessors(token));
+		}
+		return visited;
+	}
+
+
+	private static List<String> spellings(List<WordResult> words) {
+		List<String> spellings = new ArrayList<String>();
+		for (WordResult word : words)
+			spellings.add(word.getPronunciation().getWord().getSpelling());
+		return spellings;
+	}
+
+
+	private static Token token(Token predecessor, int frame, String word) {
+		SearchState state = word == null ? new State() : new WordState(word);
+		return new Token(predecessor, state, -frame, 0, 0, frame);
+	}
+
+
+	private static class State implements SearchState {
+
+		public SearchStateArc[] getSuccessors() {
+			return new SearchStateArc[0];
+		}
+
+
+		public boolean isEmitting() {
+			return true;
+		}
+
+
+		public boolean isFinal() {
+			return false;
+		}
+
+
+		public String toPrettyString() {
+			return toString();
+		}
+
+
+		public String getSignature() {
+			return toString();
+		}
+
+
+		public WordSequence getWordHistory() {
+			return null;
+		}
+
+
+		public Object getLexState() {
+			return null;
+		}
+
+
+		public int getOrder() {
+			return 0;
+		}
+	}
+
+
+	private static class WordState extends State implements WordSearchState {
+
+		private final TestPronunciation pronunciation = new TestPronunciation();
+
+
+		WordState(String spelling) {
+			pronunciation.attach(new Word(spelling, new Pronunciation[] {pronunciation}, false));
+		}
+
+
+		public Pronunciation getPronunciation() {
+			return pronunciation;
+		}
+
+
+		public boolean isWordStart() {
+			return false;
+		}
+
+
+		@Override
+		public boolean isEmitting() {
+			return false;
+		}
+	}
+
+
+	private static class TestPronunciation extends Pronunciation {
+
+		TestPronunciation() {
+			super(Unit.EMPTY_ARRAY, null, null, 1.0f);
+		}
+
+
+		void attach(Word word) {
+			setWord(word);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.decoder.search.test;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import edu.cmu.sphinx.decoder.search.WordExitLog;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+
+
+/**
+ * Tests that exits of the same node are chained, that the log grows beyond its initial capacity and that cutting it
+ * keeps the exits continuing the new root.
+ */
+public class WordExitLogTest {
+
+	@Test
+	public void testExits() {
+		Word start = new Word("<s>", new Pronunciation[0], true);
+		Word a = new Word("a", new Pronunciation[0], false);
+		WordExitLog log = new WordExitLog();
+
+		int root = log.addExit(-1, start, 0, -1, 0, 0);
+		int previous = root;
+		for (int frame = 1; frame <= 5000; frame++) {
+			int first = log.addExit(-1, a, frame, previous, -10, -1);
+			int second = log.addExit(log.getNode(first), a, frame, root, -20, -2);
+			assertEquals(log.getNode(first), log.getNode(second));
+			assertEquals(second, log.getLastExit(log.getNode(first)));
+			assertEquals(first, log.getPreviousExit(second));
+			assertEquals(-1, log.getPreviousExit(first));
+			previous = first;
+		}
+
+		assertEquals(10001, log.getExitCount());
+		assertEquals(5001, log.getNodeCount());
+		assertEquals(-1, log.getPredecessor(root));
+		int node = log.getNode(previous);
+		assertEquals(a, log.getWord(node));
+		assertEquals(5000, log.getFrame(node));
+		assertEquals(-10, log.getAcousticScore(previous), 0);
+		assertEquals(-1, log.getLanguageScore(previous), 0);
+		assertEquals(log.getNode(log.getPredecessor(previous)), node - 1);
+	}
+
+	@Test
+	public void testCut() {
+		Word start = new Word("<s>", new Pronunciation[0], true);
+		Word a = new Word("a", new Pronunciation[0], false);
+		Word b = new Word("b", new Pronunciation[0], false);
+		Word c = new Word("c", new Pronunciation[0], false);
+		Word d = new Word("d", new Pronunciation[0], false);
+		WordExitLog log = new WordExitLog();
+
+		int root = log.addExit(-1, start, 0, -1, 0, 0);
+		int exitA = log.addExit(-1, a, 1, root, -10, -1);
+		int exitB = log.addExit(-1, b, 1, root, -20, -2);
+		int exitC = log.addExit(-1, c, 2, exitA, -30, -3);
+		// leads to the cut node through b, which is dropped
+		log.addExit(log.getNode(exitC), c, 2, exitB, -40, -4);
+		int exitD = log.addExit(-1, d, 3, exitC, -50, -5);
+		log.addExit(-1, d, 3, exitB, -60, -6);
+
+		int[] exits = log.cut(exitA);
+		assertArrayEquals(new int[] {-1, 0, -1, 1, -1, 2, -1}, exits);
+		assertEquals(3, log.getExitCount());
+		assertEquals(3, log.getNodeCount());
+
+		assertEquals(-1, log.getPredecessor(0));
+		assertEquals(0, log.getPredecessor(1));
+		assertEquals(1, log.getPredecessor(2));
+		assertEquals(a, log.getWord(log.getNode(0)));
+		assertEquals(1, log.getFrame(log.getNode(0)));
+		assertEquals(c, log.getWord(log.getNode(exits[exitC])));
+		assertEquals(d, log.getWord(log.getNode(exits[exitD])));
+		for (int node = 0; node < log.getNodeCount(); node++)
+			assertEquals(-1, log.getPreviousExit(log.getLastExit(node)));
+		assertEquals(-30, log.getAcousticScore(1), 0);
+		assertEquals(-5, log.getLanguageScore(2), 0);
+
+		// the log goes on after the cut
+		int exit = log.addExit(log.getNode(2), d, 3, 1, -70, -7);
+		assertEquals(3, exit);
+		assertEquals(exit, log.getLastExit(log.getNode(2)));
+		assertEquals(2, log.getPreviousExit(exit));
+	}
+}
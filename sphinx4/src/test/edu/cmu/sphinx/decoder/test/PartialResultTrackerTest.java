@@ -0,0 +1,181 @@
+package edu.cmu.sphinx.decoder.test;
+
+import edu.cmu.sphinx.decoder.PartialResultTracker;
+import edu.cmu.sphinx.decoder.StableWordsListener;
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.linguist.SearchStateArc;
+import edu.cmu.sphinx.linguist.WordSearchState;
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.result.WordResult;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Tests the stable prefix and the partial hypothesis maintained by the <code>PartialResultTracker</code>. */
+public class PartialResultTrackerTest {
+
+    private final List<String> stableWords = new ArrayList<String>();
+
+
+    @Test
+    public void testStablePrefix() {
+        PartialResultTracker tracker = new PartialResultTracker();
+        tracker.addStableWordsListener(new StableWordsListener() {
+            public void newStableWords(List<WordResult> words) {
+                for (WordResult word : words)
+                    stableWords.add(word.toString().split(" ")[0]);
+            }
+        });
+
+        Token root = new Token(new State(), 0);
+        Token hello = token(token(root, 1, null), 2, "hello");
+        Token branch = token(hello, 3, null);
+        Token world = token(token(branch, 4, null), 5, "world");
+        Token best = token(world, 6, null);
+        Token other = token(token(token(branch, 4, null), 5, null), 6, null);
+
+        tracker.newResult(result(false, best, other));
+        assertEquals(Arrays.asList("hello"), stableWords);
+        assertEquals("hello world", tracker.getPartialResultNoFiller());
+        assertEquals(2, tracker.getPartialWords().get(0).getEndFrame());
+        assertEquals(5, tracker.getPartialWords().get(1).getEndFrame());
+
+        Token next = token(best, 7, null);
+        tracker.newResult(result(false, next));
+        assertEquals(Arrays.asList("hello", "world"), stableWords);
+        assertEquals(2, tracker.getStableWords().size());
+
+        tracker.newResult(result(true, token(next, 8, "end")));
+        assertEquals(Arrays.asList("hello", "world", "end"), stableWords);
+        assertEquals("hello world end", tracker.getPartialResultNoFiller());
+
+        // the next utterance starts from scratch
+        Token again = token(token(new Token(new State(), 0), 1, "again"), 2, null);
+        tracker.newResult(result(false, again));
+        assertEquals("again", tracker.getPartialResultNoFiller());
+    }
+
+
+    @Test
+    public void testCommonAncestor() {
+        Token root = new Token(new State(), 0);
+        Token a = token(root, 1, null);
+        Token b = token(a, 2, null);
+        Token c = token(token(a, 2, null), 3, null);
+
+        assertSame(a, Token.findCommonAncestor(Arrays.asList(b, c), null));
+        assertSame(a, Token.findCommonAncestor(Arrays.asList(b, c), a));
+        assertSame(root, Token.findCommonAncestor(Arrays.asList(root, c), null));
+        assertSame(null, Token.findCommonAncestor(Arrays.asList(b, new Token(new State(), 0)), null));
+
+        // tokens of non-emitting states share the frame of their successors
+        Token n = token(a, 2, null);
+        Token d = token(n, 2, null);
+        Token e = token(token(n, 2, null), 2, null);
+        assertSame(n, Token.findCommonAncestor(Arrays.asList(d, e), null));
+        assertSame(n, Token.findCommonAncestor(Arrays.asList(e, d), null));
+    }
+
+
+    private Result result(boolean isFinal, Token... tokens) {
+        return new Result(null, Arrays.asList(tokens), tokens[0].getFrameNumber(), isFinal, null);
+    }
+
+
+    private Token token(Token predecessor, int frame, String word) {
+        SearchState state = word == null ? new State() : new WordState(word);
+        return new Token(predecessor, state, -frame, 0, 0, frame);
+    }
+
+
+    private static class State implements SearchState {
+
+        public SearchStateArc[] getSuccessors() {
+            return new SearchStateArc[0];
+        }
+
+
+        public boolean isEmitting() {
+            return true;
+        }
+
+
+        public boolean isFinal() {
+            return false;
+        }
+
+
+        public String toPrettyString() {
+            return toString();
+        }
+
+
+        public String getSignature() {
+            return toString();
+        }
+
+
+        public WordSequence getWordHistory() {
+            return null;
+        }
+
+
+        public Object getLexState() {
+            return null;
+        }
+
+
+        public int getOrder() {
+            return 0;
+        }
+    }
+
+
+    private static class WordState extends State implements WordSearchState {
+
+        private final TestPronunciation pronunciation = new TestPronunciation();
+
+
+        WordState(String spelling) {
+            pronunciation.attach(new Word(spelling, new Pronunciation[]{pronunciation}, false));
+        }
+
+
+        public Pronunciation getPronunciation() {
+            return pronunciation;
+        }
+
+
+        public boolean isWordStart() {
+            return false;
+        }
+
+
+        @Override
+        public boolean isEmitting() {
+            return false;
+        }
+    }
+
+
+    private static class TestPronunciation extends Pronunciation {
+
+        TestPronunciation() {
+            super(Unit.EMPTY_ARRAY, null, null, 1.0f);
+        }
+
+
+        void attach(Word word) {
+            setWord(word);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder.test;
+
+import edu.cmu.sphinx.decoder.ResultStreamer;
+import edu.cmu.sphinx.decoder.pruner.SimplePruner;
+import edu.cmu.sphinx.decoder.scorer.AcousticScorer;
+import edu.cmu.sphinx.decoder.scorer.ScoreProvider;
+import edu.cmu.sphinx.decoder.scorer.Scoreable;
+import edu.cmu.sphinx.decoder.search.ActiveListFactory;
+import edu.cmu.sphinx.decoder.search.SimpleActiveListFactory;
+import edu.cmu.sphinx.decoder.search.SimpleActiveListManager;
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.decoder.search.WordPruningBreadthFirstSearchManager;
+import edu.cmu.sphinx.frontend.Data;
+import edu.cmu.sphinx.frontend.DataEndSignal;
+import edu.cmu.sphinx.linguist.*;
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.result.ResultSnapshot;
+import edu.cmu.sphinx.result.ResultSnapshotEncoder;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.PropertySheet;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Tests that the snapshots streamed from a search which commits words cover the whole utterance: the words committed
+ * with all earlier results followed by the best path of the result. The search runs over a word loop whose states are
+ * scored from a fixed seed, and its final words are those of the same search without committing.
+ */
+public class ResultStreamerTest {
+
+    /** The words and their pronunciations */
+    private static final String[][] WORDS = {
+        {"one", "W AH N"},
+        {"two", "T UW"},
+        {"three", "TH R IY"},
+    };
+
+    private static final int NUM_FRAMES = 300;
+
+
+    @Test
+    public void testCommittedWords() {
+        for (int seed = 0; seed < 3; seed++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ResultStreamer streamer = new ResultStreamer(out, false, false);
+
+            List<List<String>> expected = new ArrayList<List<String>>();
+            List<String> committed = new ArrayList<String>();
+            WordPruningBreadthFirstSearchManager searchManager = createSearchManager(seed, 10);
+            searchManager.allocate();
+            searchManager.startRecognition();
+            Result result;
+            do {
+                result = searchManager.recognize(5);
+                for (WordResult word : result.getCommittedWords())
+                    committed.add(describe(word.getPronunciation().getWord(), word.getEndFrame()));
+                List<String> words = new ArrayList<String>(committed);
+                words.addAll(getBestPath(result));
+                expected.add(words);
+                streamer.newResult(result);
+            } while (!result.isFinal());
+            searchManager.stopRecognition();
+            searchManager.deallocate();
+
+            // the search committed words, which its final path no longer reaches
+            List<String> finalPath = getBestPath(result);
+            assertTrue("seed " + seed, committed.size() > 3);
+            assertFalse(finalPath.containsAll(committed));
+
+            ByteBuffer in = ByteBuffer.wrap(out.toByteArray());
+            for (List<String> words : expected) {
+                ResultSnapshot snapshot = ResultSnapshotEncoder.decodeBinary(in);
+                assertEquals("seed " + seed, words, describe(snapshot));
+            }
+            assertFalse(in.hasRemaining());
+            assertEquals("seed " + seed, decodeWithoutCommitting(seed), expected.get(expected.size() - 1));
+        }
+    }
+
+
+    /** @return the words of the best path of the search without committing */
+    private static List<String> decodeWithoutCommitting(int seed) {
+        WordPruningBreadthFirstSearchManager searchManager = createSearchManager(seed, 0);
+        searchManager.allocate();
+        searchManager.startRecognition();
+        Result result = searchManager.recognize(NUM_FRAMES + 1);
+        searchManager.stopRecognition();
+        searchManager.deallocate();
+        assertTrue(result.isFinal());
+        return getBestPath(result);
+    }
+
+
+    private static WordPruningBreadthFirstSearchManager createSearchManager(int seed, int commitInterval) {
+        LogMath logMath = new LogMath(1.0001f, true);
+        List<ActiveListFactory> factories = Arrays.<ActiveListFactory>asList(
+                new SimpleActiveListFactory(1000, 1E-80, logMath),
+                new SimpleActiveListFactory(1000, 1E-80, logMath),
+                new SimpleActiveListFactory(20, 1E-80, logMath));
+        return new WordPruningBreadthFirstSearchManager(logMath, new LoopLinguist(), new SimplePruner(),
+                new SeededScorer(seed), new SimpleActiveListManager(factories, false), false, 1E-80, 0, false, false,
+                100, 0.0f, false, commitInterval, false, null);
+    }
+
+
+    private static List<String> getBestPath(Result result) {
+        LinkedList<String> words = new LinkedList<String>();
+        for (Token token = result.getBestToken(); token != null; token = token.getPredecessor()) {
+            if (token.isWord())
+                words.addFirst(describe(token.getWord(), token.getFrameNumber()));
+        }
+        return words;
+    }
+
+
+    private static List<String> describe(ResultSnapshot snapshot) {
+        List<String> words = new ArrayList<String>();
+        for (int i = 0; i < snapshot.size(); i++)
+            words.add(describe(snapshot.getWord(i), snapshot.getEndFrame(i)));
+        return words;
+    }
+
+
+    private static String describe(Word word, int endFrame) {
+        return word.getSpelling() + '@' + endFrame;
+    }
+
+
+    /** A loop over the words, each pronunciation a chain of emitting states with self loops followed by the word state */
+    private static class LoopLinguist implements Linguist, SearchGraph {
+
+        private final State initialState;
+
+
+        LoopLinguist() {
+            List<Arc> wordStarts = new ArrayList<Arc>();
+            List<State> wordEnds = new ArrayList<State>();
+            int id = 0;
+            for (int i = 0; i < WORDS.length; i++) {
+                State word = new WordState(WORDS[i][0], 0);
+                State previous = null;
+                for (String unitName : WORDS[i][1].split(" ")) {
+                    State unit = new UnitState(++id);
+                    unit.arcs.add(new Arc(unit, 0, -200));
+                    if (previous == null)
+                        wordStarts.add(new Arc(unit, -100 * (i + 1), -300));
+                    else
+                        previous.arcs.add(new Arc(unit, 0, -100));
+                    previous = unit;
+                }
+                previous.arcs.add(new Arc(word, -10 * i, 0));
+                wordEnds.add(word);
+            }
+
+            State sentenceEnd = new WordState("</s>", 1);
+            initialState = new WordState("<s>", 0);
+            initialState.arcs.addAll(wordStarts);
+            for (State word : wordEnds) {
+                word.arcs.addAll(wordStarts);
+                word.arcs.add(new Arc(sentenceEnd, -50, 0));
+            }
+        }
+
+
+        public void newProperties(PropertySheet ps) {
+        }
+
+
+        public SearchGraph getSearchGraph() {
+            return this;
+        }
+
+
+        public void startRecognition() {
+        }
+
+
+        public void stopRecognition() {
+        }
+
+
+        public void allocate() {
+        }
+
+
+        public void deallocate() {
+        }
+
+
+        public SearchState getInitialState() {
+            return initialState;
+        }
+
+
+        public int getNumStateOrder() {
+            return 3;
+        }
+    }
+
+
+    /** Scores each emitting state in each frame with a score drawn from the seed, the state and the frame. */
+    private static class SeededScorer implements AcousticScorer {
+
+        private final int seed;
+        private int frame;
+
+
+        SeededScorer(int seed) {
+            this.seed = seed;
+        }
+
+
+        public void newProperties(PropertySheet ps) {
+        }
+
+
+        public void allocate() {
+        }
+
+
+        public void deallocate() {
+        }
+
+
+        public void startRecognition() {
+            frame = 0;
+        }
+
+
+        public void stopRecognition() {
+        }
+
+
+        public Data calculateScores(List<? extends Scoreable> scoreableList) {
+            if (frame == NUM_FRAMES)
+                return new DataEndSignal(0);
+
+            Data data = new Frame(seed, frame++);
+            Scoreable best = null;
+            for (Scoreable scoreable : scoreableList) {
+                scoreable.calculateScore(data);
+                if (best == null || scoreable.getScore() > best.getScore())
+                    best = scoreable;
+            }
+            return best;
+        }
+    }
+
+
+    private static class Frame implements Data {
+
+        final int seed;
+        final int frame;
+
+
+        Frame(int seed, int frame) {
+            this.seed = seed;
+            this.frame = frame;
+        }
+    }
+
+
+    private static class Arc implements SearchStateArc {
+
+        private final SearchState state;
+        private final float languageProbability;
+        private final float insertionProbability;
+
+
+        Arc(SearchState state, float languageProbability, float insertionProbability) {
+            this.state = state;
+            this.languageProbability = languageProbability;
+            this.insertionProbability = insertionProbability;
+        }
+
+
+        public SearchState getState() {
+            return state;
+        }
+
+
+        public float getProbability() {
+            return languageProbability + insertionProbability;
+        }
+
+
+        public float getLanguageProbability() {
+            return languageProbability;
+        }
+
+
+        public float getInsertionProbability() {
+            return insertionProbability;
+        }
+    }
+
+
+    private static class State implements SearchState {
+
+        final List<Arc> arcs = new ArrayList<Arc>();
+        private final int order;
+
+
+        State(int order) {
+            this.order = order;
+        }
+
+
+        public SearchStateArc[] getSuccessors() {
+            return arcs.toArray(new SearchStateArc[arcs.size()]);
+        }
+
+
+        public boolean isEmitting() {
+            return false;
+        }
+
+
+        public boolean isFinal() {
+            return false;
+        }
+
+
+        public String toPrettyString() {
+            return toString();
+        }
+
+
+        public String getSignature() {
+            return toString();
+        }
+
+
+        public WordSequence getWordHistory() {
+            return null;
+        }
+
+
+        public Object getLexState() {
+            return null;
+        }
+
+
+        public int getOrder() {
+            return order;
+        }
+    }
+
+
+    /** An emitting state, scored by the frames */
+    private static class UnitState extends State implements ScoreProvider {
+
+        private final int id;
+
+
+        UnitState(int id) {
+            super(2);
+            this.id = id;
+        }
+
+
+        public float getScore(Data data) {
+            Frame frame = (Frame) data;
+            return -new Random(frame.seed * 1000003L + frame.frame * 1009L + id).nextInt(3000);
+        }
+
+
+        @Override
+        public boolean isEmitting() {
+            return true;
+        }
+    }
+
+
+    private static class WordState extends State implements WordSearchState {
+
+        private final TestPronunciation pronunciation = new TestPronunciation();
+
+
+        WordState(String spelling, int order) {
+            super(order);
+            pronunciation.attach(new Word(spelling, new Pronunciation[] {pronunciation}, false));
+        }
+
+
+        public Pronunciation getPronunciation() {
+            return pronunciation;
+        }
+
+
+        public boolean isWordStart() {
+            return false;
+        }
+
+
+        @Override
+        public boolean isFinal() {
+            return pronunciation.getWord().isSentenceEndWord();
+        }
+    }
+
+
+    private static class TestPronunciation extends Pronunciation {
+
+        TestPronunciation() {
+            super(Unit.EMPTY_ARRAY, null, null, 1.0f);
+        }
+
+
+        void attach(Word word) {
+            setWord(word);
+        }
+    }
+}
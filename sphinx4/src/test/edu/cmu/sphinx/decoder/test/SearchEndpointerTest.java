@@ -0,0 +1,243 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.decoder.test;
+
+import edu.cmu.sphinx.decoder.SearchEndpointer;
+import edu.cmu.sphinx.decoder.search.ActiveList;
+import edu.cmu.sphinx.decoder.search.SimpleActiveListFactory;
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.linguist.HMMSearchState;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.linguist.SearchStateArc;
+import edu.cmu.sphinx.linguist.WordSearchState;
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.acoustic.HMMPosition;
+import edu.cmu.sphinx.linguist.acoustic.HMMState;
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Senone;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneHMM;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneSequence;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.result.Result;
+import edu.cmu.sphinx.util.LogMath;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * Tests the search based endpointer on hand-built token chains: the silence endpoint after a word, the margin to the
+ * hypotheses within speech, leading silence without words and the maximum utterance length.
+ */
+public class SearchEndpointerTest {
+
+    private final LogMath logMath = new LogMath(1.0001f, true);
+    private final UnitManager unitManager = new UnitManager();
+    private final SearchState speech = new UnitState(unitManager.getUnit("AH"));
+    private final SearchState silence = new UnitState(unitManager.getUnit("SIL", true));
+
+
+    @Test
+    public void testSilenceEndpoint() {
+        SearchEndpointer endpointer = new SearchEndpointer(5, 1E-10);
+        endpointer.reset();
+
+        Token token = new Token(new WordState("<s>", true), 0);
+        for (int frame = 1; frame <= 3; frame++) {
+            token = token(token, speech, frame, 0);
+            assertFalse(endpointer.isEndpoint(result(frame, token, token(token, silence, frame, -1000))));
+        }
+        Token word = token(token, new WordState("hello", false), 3, 0);
+        token = word;
+
+        // the competitor within speech is far below the margin
+        for (int frame = 4; frame < 9; frame++) {
+            token = token(token, silence, frame, 0);
+            Token competitor = token(word, speech, frame, -10000000);
+            assertFalse("frame " + frame, endpointer.isEndpoint(result(frame, token, competitor)));
+        }
+        token = token(token, silence, 9, 0);
+        assertTrue(endpointer.isEndpoint(result(9, token, token(word, speech, 9, -10000000))));
+
+        // a close competitor within speech keeps the utterance open and restarts the count
+        endpointer.reset();
+        for (int frame = 10; frame < 30; frame++) {
+            token = token(token, silence, frame, 0);
+            assertFalse(endpointer.isEndpoint(result(frame, token, token(word, speech, frame, -1000))));
+        }
+        for (int frame = 30; frame < 35; frame++) {
+            token = token(token, silence, frame, 0);
+            assertFalse(endpointer.isEndpoint(result(frame, token)));
+        }
+        token = token(token, silence, 35, 0);
+        assertTrue(endpointer.isEndpoint(result(35, token)));
+    }
+
+
+    @Test
+    public void testLeadingSilence() {
+        SearchEndpointer endpointer = new SearchEndpointer(5, 1E-10);
+        endpointer.reset();
+
+        // silence alone never ends an utterance, however long it is
+        Token token = new Token(new WordState("<s>", true), 0);
+        for (int frame = 1; frame < 20000; frame++) {
+            token = token(token, silence, frame, 0);
+            if (frame % 10 == 0)
+                token = token(token, new WordState("<sil>", true), frame, 0);
+            assertFalse(endpointer.isEndpoint(result(frame, token)));
+        }
+
+        token = token(token(token, speech, 20000, 0), new WordState("hello", false), 20000, 0);
+        for (int frame = 20001; frame < 20006; frame++) {
+            token = token(token, silence, frame, 0);
+            assertFalse(endpointer.isEndpoint(result(frame, token)));
+        }
+        assertTrue(endpointer.isEndpoint(result(20006, token(token, silence, 20006, 0))));
+    }
+
+
+    @Test
+    public void testMaxUtteranceLength() {
+        SearchEndpointer endpointer = new SearchEndpointer(5, 1E-10, 20);
+        endpointer.reset();
+
+        Token token = new Token(new WordState("<s>", true), 0);
+        for (int frame = 1; frame < 20; frame++) {
+            token = token(token, speech, frame, 0);
+            assertFalse(endpointer.isEndpoint(result(frame, token)));
+        }
+        assertTrue(endpointer.isEndpoint(result(20, token(token, speech, 20, 0))));
+
+        // without a limit the endpointer waits for the speaker
+        endpointer = new SearchEndpointer(5, 1E-10);
+        endpointer.reset();
+        for (int frame = 1; frame < 100; frame++) {
+            token = token(token, speech, frame, 0);
+            assertFalse(endpointer.isEndpoint(result(frame, token)));
+        }
+    }
+
+
+    private Result result(int frame, Token... tokens) {
+        ActiveList activeList = new SimpleActiveListFactory(1000, 1E-80, logMath).newInstance();
+        for (Token token : tokens)
+            activeList.add(token);
+        return new Result(activeList, Collections.<Token>emptyList(), frame, false, logMath);
+    }
+
+
+    private static Token token(Token predecessor, SearchState state, int frame, float score) {
+        return new Token(predecessor, state, score, 0, 0, frame);
+    }
+
+
+    private static class State implements SearchState {
+
+        public SearchStateArc[] getSuccessors() {
+            return new SearchStateArc[0];
+        }
+
+
+        public boolean isEmitting() {
+            return true;
+        }
+
+
+        public boolean isFinal() {
+            return false;
+        }
+
+
+        public String toPrettyString() {
+            return toString();
+        }
+
+
+        public String getSignature() {
+            return toString();
+        }
+
+
+        public WordSequence getWordHistory() {
+            return null;
+        }
+
+
+        public Object getLexState() {
+            return null;
+        }
+
+
+        public int getOrder() {
+            return 0;
+        }
+    }
+
+
+    private static class UnitState extends State implements HMMSearchState {
+
+        private final HMMState hmmState;
+
+
+        UnitState(Unit unit) {
+            hmmState = new SenoneHMM(unit, new SenoneSequence(new Senone[0]), new float[1][1],
+                    HMMPosition.INTERNAL).getState(0);
+        }
+
+
+        public HMMState getHMMState() {
+            return hmmState;
+        }
+    }
+
+
+    private static class WordState extends State implements WordSearchState {
+
+        private final TestPronunciation pronunciation = new TestPronunciation();
+
+
+        WordState(String spelling, boolean isFiller) {
+            pronunciation.attach(new Word(spelling, new Pronunciation[]{pronunciation}, isFiller));
+        }
+
+
+        public Pronunciation getPronunciation() {
+            return pronunciation;
+        }
+
+
+        public boolean isWordStart() {
+            return false;
+        }
+
+
+        @Override
+        public boolean isEmitting() {
+            return false;
+        }
+    }
+
+
+    private static class TestPronunciation extends Pronunciation {
+
+        TestPronunciation() {
+            super(Unit.EMPTY_ARRAY, null, null, 1.0f);
+        }
+
+
+        void attach(Word word) {
+            setWord(word);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package edu.cmu.sphinx.frontend.test;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.util.ChannelDataSource;
+import edu.cmu.sphinx.frontend.util.ChannelReactor;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+
+/** Tests that audio written to several channels is delivered in order through a shared reactor. */
+public class ChannelDataSourceTest {
+
+    private ChannelReactor reactor;
+
+
+    @Before
+    public void setUp() {
+        reactor = new ChannelReactor(Thread.NORM_PRIORITY);
+    }
+
+
+    @After
+    public void tearDown() {
+        reactor.shutdown();
+    }
+
+
+    @Test
+    public void testConcurrentStreams() throws Exception {
+        int numStreams = 4;
+        final int numSamples = 10000;
+
+        final Pipe[] pipes = new Pipe[numStreams];
+        ChannelDataSource[] sources = new ChannelDataSource[numStreams];
+        for (int i = 0; i < numStreams; i++) {
+            pipes[i] = Pipe.open();
+            // a buffer smaller than the stream forces the reactor to suspend reading
+            sources[i] = new ChannelDataSource(reactor, 16000, 320, 16, false, true, 1000);
+            sources[i].setChannel(pipes[i].source(), "stream" + i);
+        }
+
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (Pipe pipe : pipes) {
+                        pipe.sink().configureBlocking(false);
+                    }
+                    ByteBuffer[] buffers = new ByteBuffer[pipes.length];
+                    for (int i = 0; i < pipes.length; i++)
+                        buffers[i] = createSamples(numSamples, i);
+                    boolean done = false;
+                    while (!done) {
+                        done = true;
+                        for (int i = 0; i < pipes.length; i++) {
+                            if (buffers[i].hasRemaining()) {
+                                pipes[i].sink().write(buffers[i]);
+                                done = false;
+                            }
+                        }
+                        Thread.yield();
+                    }
+                    for (Pipe pipe : pipes)
+                        pipe.sink().close();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writer.start();
+
+        for (int i = 0; i < numStreams; i++) {
+            assertTrue(sources[i].getData() instanceof DataStartSignal);
+            int expected = 0;
+            Data data;
+            while ((data = sources[i].getData()) instanceof DoubleData) {
+                DoubleData dd = (DoubleData) data;
+                assertEquals(expected, dd.getFirstSampleNumber());
+                for (double value : dd.getValues())
+                    assertEquals((short) (expected++ + i), value, 0);
+            }
+            assertEquals(numSamples, expected);
+            assertTrue(data instanceof DataEndSignal);
+            assertNull(sources[i].getData());
+        }
+        writer.join();
+    }
+
+
+    private static ByteBuffer createSamples(int numSamples, int offset) {
+        ByteBuffer buffer = ByteBuffer.allocate(numSamples * 2);
+        for (int i = 0; i < numSamples; i++) {
+            short value = (short) (i + offset);
+            buffer.put((byte) value);
+            buffer.put((byte) (value >> 8));
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
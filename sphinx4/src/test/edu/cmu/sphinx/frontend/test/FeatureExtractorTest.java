@@ -0,0 +1,111 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend.test;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.endpoint.SpeechStartSignal;
+import edu.cmu.sphinx.frontend.feature.ConcatFeatureExtractor;
+import edu.cmu.sphinx.frontend.feature.DeltasFeatureExtractor;
+import edu.cmu.sphinx.frontend.feature.S3FeatureExtractor;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests that the windowed feature extractors compute the same features as the extractors which kept the cepstra as
+ * Data objects. The reference features were computed by the earlier extractors from the same cepstra: utterances longer
+ * than the ring of cepstra, utterances ending before the window is full, at its edge and right after it, and an empty
+ * utterance.
+ */
+public class FeatureExtractorTest extends RandomDataProcessor {
+
+    public static final String REFERENCE = "src/test/edu/cmu/sphinx/frontend/test/data/feature-extractors.dump";
+
+    /** The number of frames of the utterances. */
+    private static final int[] UTTERANCES = {40, 1, 2, 3, 4, 0, 300, 7};
+
+
+    @Test
+    public void testExtractors() throws IOException {
+        List<String> output = new ArrayList<String>();
+        for (DataProcessor extractor : createExtractors()) {
+            input = createInput();
+            for (Data data : collectOutput((BaseDataProcessor) extractor))
+                output.add(describe(data));
+        }
+
+        BufferedReader reader = new BufferedReader(new FileReader(REFERENCE));
+        try {
+            List<String> reference = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null)
+                reference.add(line);
+            assertEquals(reference.size(), output.size());
+            for (int i = 0; i < reference.size(); i++)
+                assertEquals("line " + (i + 1), reference.get(i), output.get(i));
+        } finally {
+            reader.close();
+        }
+    }
+
+
+    /** @return the extractors, in the order of the reference features */
+    public static List<DataProcessor> createExtractors() {
+        List<DataProcessor> extractors = new ArrayList<DataProcessor>();
+        extractors.add(new DeltasFeatureExtractor(3));
+        extractors.add(new S3FeatureExtractor(3));
+        extractors.add(new ConcatFeatureExtractor(1));
+        extractors.add(new ConcatFeatureExtractor(5));
+        for (DataProcessor extractor : extractors)
+            extractor.initialize();
+        return extractors;
+    }
+
+
+    /** @return the cepstra of the utterances, the first one starting with a speech start signal */
+    public static List<Data> createInput() {
+        Random random = new Random(42);
+        List<Data> input = new ArrayList<Data>();
+        long sample = 0;
+        for (int utterance = 0; utterance < UTTERANCES.length; utterance++) {
+            input.add(new DataStartSignal(16000));
+            if (utterance == 0)
+                input.add(new SpeechStartSignal());
+            for (int i = 0; i < UTTERANCES[utterance]; i++) {
+                double[] cepstrum = new double[13];
+                for (int j = 0; j < cepstrum.length; j++)
+                    cepstrum[j] = random.nextGaussian() * (j == 0 ? 5.0 : 1.0);
+                input.add(new DoubleData(cepstrum, 16000, sample));
+                sample += 160;
+            }
+            input.add(new DataEndSignal(UTTERANCES[utterance] * 10));
+        }
+        return input;
+    }
+
+
+    /** @return a line of the reference features describing the data */
+    public static String describe(Data data) {
+        if (!(data instanceof FloatData))
+            return data.getClass().getSimpleName();
+        FloatData feature = (FloatData) data;
+        StringBuilder line = new StringBuilder();
+        line.append(feature.getFirstSampleNumber()).append(' ').append(feature.getSampleRate());
+        for (float value : feature.getValues())
+            line.append(' ').append(value);
+        return line.toString();
+    }
+}
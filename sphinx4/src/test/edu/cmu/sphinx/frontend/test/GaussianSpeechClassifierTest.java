@@ -0,0 +1,282 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.frontend.test;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.endpoint.GaussianSpeechClassifier;
+import edu.cmu.sphinx.frontend.endpoint.SpeechClassifiedData;
+import edu.cmu.sphinx.frontend.endpoint.SpeechEndSignal;
+import edu.cmu.sphinx.frontend.endpoint.SpeechGate;
+import edu.cmu.sphinx.frontend.endpoint.SpeechStartSignal;
+import edu.cmu.sphinx.linguist.acoustic.HMMPosition;
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.*;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.PropertySheet;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests the <code>GaussianSpeechClassifier</code> with a hand-built model of one speech and one silence unit over the
+ * log energy, the zero crossing rate and the autocorrelation of lag 1. Speech is a loud low tone, silence is faint
+ * white noise. Followed by a <code>SpeechGate</code>, the blocks classified as silence are rejected before they reach
+ * the rest of the front end.
+ */
+public class GaussianSpeechClassifierTest extends RandomDataProcessor {
+
+    private static final int SAMPLE_RATE = 16000;
+
+    /** The number of samples of a block, 10 ms */
+    private static final int BLOCK_SIZE = 160;
+
+    private final Random random = new Random(42);
+
+
+    @Test
+    public void testFeatures() {
+        float[] features = new float[3];
+        GaussianSpeechClassifier.computeFeatures(new double[] {1, -1, 1, -1}, features);
+        assertEquals(Math.log(2), features[0], 1e-6);
+        assertEquals(0.75, features[1], 1e-6);
+        assertEquals(-0.75, features[2], 1e-6);
+
+        // silence has no energy and no autocorrelation
+        GaussianSpeechClassifier.computeFeatures(new double[BLOCK_SIZE], features);
+        assertArrayEquals(new float[] {0, 0, 0}, features, 0);
+    }
+
+
+    @Test
+    public void testClassification() throws DataProcessingException {
+        input.add(new DataStartSignal(SAMPLE_RATE));
+        for (int i = 0; i < 20; i++) {
+            input.add(createBlock(i, i % 2 == 0));
+        }
+        input.add(new DataEndSignal(200));
+
+        GaussianSpeechClassifier classifier = new GaussianSpeechClassifier(new TestLoader(), 0);
+        classifier.initialize();
+        List<Data> results = collectOutput(classifier);
+
+        assertEquals(22, results.size());
+        assertTrue(results.get(0) instanceof DataStartSignal);
+        for (int i = 0; i < 20; i++) {
+            SpeechClassifiedData block = (SpeechClassifiedData) results.get(i + 1);
+            assertEquals("block " + i, i % 2 == 0, block.isSpeech());
+            assertEquals(i * BLOCK_SIZE, block.getFirstSampleNumber());
+        }
+        assertTrue(results.get(21) instanceof DataEndSignal);
+    }
+
+
+    @Test
+    public void testThreshold() throws DataProcessingException {
+        input.add(createBlock(0, true));
+
+        // speech has to outscore silence by far more than the tone does
+        GaussianSpeechClassifier classifier = new GaussianSpeechClassifier(new TestLoader(), 1e9);
+        classifier.initialize();
+        List<Data> results = collectOutput(classifier);
+        assertEquals(1, results.size());
+        assertFalse(((SpeechClassifiedData) results.get(0)).isSpeech());
+    }
+
+
+    @Test
+    public void testEarlyRejection() throws DataProcessingException {
+        // 0.5 s silence, 0.5 s speech, 0.5 s silence
+        input.add(new DataStartSignal(SAMPLE_RATE));
+        for (int i = 0; i < 150; i++) {
+            input.add(createBlock(i, i >= 50 && i < 100));
+        }
+        input.add(new DataEndSignal(1500));
+
+        GaussianSpeechClassifier classifier = new GaussianSpeechClassifier(new TestLoader(), 0);
+        SpeechGate gate = new SpeechGate(100, 50, 200);
+        classifier.initialize();
+        gate.initialize();
+        classifier.setPredecessor(this);
+        gate.setPredecessor(classifier);
+
+        List<Data> results = new ArrayList<Data>();
+        Data data;
+        while ((data = gate.getData()) != null) {
+            results.add(data);
+        }
+
+        // the speech with 50 ms of leader and 200 ms of hangover, the rest
+        // of the silence never leaves the gate
+        assertEquals(4 + 5 + 50 + 20, results.size());
+        assertTrue(results.get(0) instanceof DataStartSignal);
+        assertTrue(results.get(1) instanceof SpeechStartSignal);
+        assertEquals(45 * BLOCK_SIZE, ((DoubleData) results.get(2)).getFirstSampleNumber());
+        assertEquals(50 * BLOCK_SIZE, ((DoubleData) results.get(7)).getFirstSampleNumber());
+        assertEquals(119 * BLOCK_SIZE, ((DoubleData) results.get(76)).getFirstSampleNumber());
+        assertTrue(results.get(77) instanceof SpeechEndSignal);
+        assertTrue(results.get(78) instanceof DataEndSignal);
+    }
+
+
+    @Test(expected = RuntimeException.class)
+    public void testModelWithoutSilence() {
+        new GaussianSpeechClassifier(new TestLoader(false), 0).initialize();
+    }
+
+
+    /**
+     * Creates a block of speech, a tone of 200 Hz, or silence, white noise.
+     *
+     * @param index    the index of the block in the audio
+     * @param isSpeech whether to create speech
+     * @return the block
+     */
+    private DoubleData createBlock(int index, boolean isSpeech) {
+        double[] samples = new double[BLOCK_SIZE];
+        for (int i = 0; i < samples.length; i++) {
+            long sample = (long) index * BLOCK_SIZE + i;
+            samples[i] = isSpeech ? 1000 * Math.sin(2 * Math.PI * 200 * sample / SAMPLE_RATE) : random.nextGaussian();
+        }
+        return new DoubleData(samples, SAMPLE_RATE, (long) index * BLOCK_SIZE);
+    }
+
+
+    /**
+     * A model of a speech unit and a silence unit with one state each. The means are the features of the blocks of
+     * {@link GaussianSpeechClassifierTest#createBlock}: a tone of amplitude 1000 has a mean energy of 500000, crosses
+     * zero 400 times a second and is almost perfectly correlated with itself one sample later, white noise of unit
+     * variance crosses zero every other sample and is uncorrelated.
+     */
+    private static class TestLoader implements Loader {
+
+        private final boolean withSilence;
+        private final Pool<float[]> means = new Pool<float[]>("means");
+        private final Pool<float[]> variances = new Pool<float[]>("variances");
+        private final Pool<Senone> senones = new Pool<Senone>("senones");
+        private final HMMManager hmmManager = new HMMManager();
+
+
+        TestLoader() {
+            this(true);
+        }
+
+
+        TestLoader(boolean withSilence) {
+            this.withSilence = withSilence;
+        }
+
+
+        public void newProperties(PropertySheet ps) {
+        }
+
+
+        public void load() {
+            LogMath logMath = new LogMath(1.0001f, true);
+            UnitManager unitManager = new UnitManager();
+            addUnit(logMath, unitManager.getUnit("AH", false), new float[] {(float) Math.log(500001), 0.025f, 1.0f});
+            if (withSilence) {
+                addUnit(logMath, unitManager.getUnit("SIL", true), new float[] {(float) Math.log(2), 0.5f, 0.0f});
+            }
+        }
+
+
+        private void addUnit(LogMath logMath, Unit unit, float[] mean) {
+            float[] variance = {1.0f, 0.01f, 0.01f};
+            int id = senones.size();
+            means.put(id, mean);
+            variances.put(id, variance);
+            Senone senone = new GaussianMixture(logMath, new float[] {0.0f},
+                    new MixtureComponent[] {new MixtureComponent(logMath, mean, variance)}, id);
+            senones.put(id, senone);
+            float[][] transitions = {{LogMath.getLogZero(), 0.0f}, {LogMath.getLogZero(), LogMath.getLogZero()}};
+            hmmManager.put(new SenoneHMM(unit, new SenoneSequence(new Senone[] {senone}), transitions,
+                    HMMPosition.UNDEFINED));
+        }
+
+
+        public Pool<float[]> getMeansPool() {
+            return means;
+        }
+
+
+        public Pool<float[][]> getMeansTransformationMatrixPool() {
+            return null;
+        }
+
+
+        public Pool<float[]> getMeansTransformationVectorPool() {
+            return null;
+        }
+
+
+        public Pool<float[]> getVariancePool() {
+            return variances;
+        }
+
+
+        public Pool<float[][]> getVarianceTransformationMatrixPool() {
+            return null;
+        }
+
+
+        public Pool<float[]> getVarianceTransformationVectorPool() {
+            return null;
+        }
+
+
+        public Pool<float[]> getMixtureWeightPool() {
+            return null;
+        }
+
+
+        public Pool<float[][]> getTransitionMatrixPool() {
+            return null;
+        }
+
+
+        public float[][] getTransformMatrix() {
+            return null;
+        }
+
+
+        public Pool<Senone> getSenonePool() {
+            return senones;
+        }
+
+
+        public HMMManager getHMMManager() {
+            return hmmManager;
+        }
+
+
+        public Map<String, Unit> getContextIndependentUnits() {
+            return null;
+        }
+
+
+        public void logInfo() {
+        }
+
+
+        public int getLeftContextSize() {
+            return 0;
+        }
+
+
+        public int getRightContextSize() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package edu.cmu.sphinx.frontend.test;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.feature.CepstralStatsStore;
+import edu.cmu.sphinx.frontend.feature.LiveCMVN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests that the <code>LiveCMVN</code> warm starts from statistics persisted by a previous stream, and that it
+ * normalizes the output to zero mean and, if asked to, to unit variance.
+ */
+public class LiveCMVNTest extends RandomDataProcessor {
+
+    @Test
+    public void testWarmStart() throws Exception {
+        File dir = File.createTempFile("cmvn", "");
+        dir.delete();
+
+        try {
+            addStream("speaker 1", 1000, 5.0);
+            collectOutput(new LiveCMVN(12.0, 100, false, new CepstralStatsStore(dir.getPath())));
+
+            // a new store has to read the statistics back from disk
+            input.clear();
+            addStream("speaker 1", 1, 5.0);
+            addStream("speaker 2", 1, 5.0);
+            List<Data> output = collectOutput(new LiveCMVN(12.0, 100, false, new CepstralStatsStore(dir.getPath())));
+
+            double[] known = ((DoubleData) output.get(1)).getValues();
+            double[] unknown = ((DoubleData) output.get(4)).getValues();
+            for (int i = 1; i < known.length; i++) {
+                assertEquals(0, known[i], 1e-3);
+                assertEquals(5, unknown[i], 1e-3);
+            }
+            assertEquals(-7, unknown[0], 1e-3);
+        } finally {
+            for (File file : dir.listFiles())
+                file.delete();
+            dir.delete();
+        }
+    }
+
+
+    @Test
+    public void testVarianceNormalization() throws Exception {
+        File dir = File.createTempFile("cmvn", "");
+        dir.delete();
+
+        try {
+            // dimension j has mean j and standard deviation j + 1
+            addGaussianStream("speaker", 3000, new Random(7));
+            List<Data> output = collectOutput(new LiveCMVN(12.0, 100, true, new CepstralStatsStore(dir.getPath())));
+            double[][] moments = getMoments(output, 500);
+            for (int j = 0; j < 13; j++) {
+                assertEquals(0, moments[0][j], 0.1);
+                assertEquals("dimension " + j, 1, moments[1][j], 0.1);
+            }
+
+            // without variance normalization only the mean is removed
+            input.clear();
+            addGaussianStream("speaker", 3000, new Random(7));
+            moments = getMoments(collectOutput(new LiveCMVN(12.0, 100, false, null)), 500);
+            for (int j = 0; j < 13; j++)
+                assertEquals("dimension " + j, 1, moments[1][j] / ((j + 1) * (j + 1)), 0.1);
+
+            // the next stream starts with the variance of the stored one, a
+            // frame one standard deviation above the mean is mapped to one
+            input.clear();
+            DataStartSignal start = new DataStartSignal(16000);
+            start.getProps().put(LiveCMVN.CHANNEL_ID, "speaker");
+            input.add(start);
+            double[] cepstrum = new double[13];
+            for (int j = 0; j < cepstrum.length; j++)
+                cepstrum[j] = j + (j + 1);
+            input.add(new DoubleData(cepstrum, 16000, 0));
+            output = collectOutput(new LiveCMVN(12.0, 100, true, new CepstralStatsStore(dir.getPath())));
+            double[] first = ((DoubleData) output.get(1)).getValues();
+            for (int j = 0; j < first.length; j++)
+                assertEquals("dimension " + j, 1, first[j], 0.3);
+        } finally {
+            for (File file : dir.listFiles())
+                file.delete();
+            dir.delete();
+        }
+    }
+
+
+    /**
+     * Computes the mean and the variance of each dimension of the output frames.
+     *
+     * @param output the output
+     * @param skip   the number of frames to skip while the statistics settle
+     * @return the means and the variances
+     */
+    private static double[][] getMoments(List<Data> output, int skip) {
+        double[] sum = new double[13];
+        double[] squares = new double[13];
+        int count = 0;
+        for (Data data : output) {
+            if (!(data instanceof DoubleData) || skip-- > 0)
+                continue;
+            double[] values = ((DoubleData) data).getValues();
+            for (int j = 0; j < values.length; j++) {
+                sum[j] += values[j];
+                squares[j] += values[j] * values[j];
+            }
+            count++;
+        }
+        assertTrue(count > 0);
+
+        double[][] moments = new double[2][13];
+        for (int j = 0; j < sum.length; j++) {
+            moments[0][j] = sum[j] / count;
+            moments[1][j] = squares[j] / count - moments[0][j] * moments[0][j];
+        }
+        return moments;
+    }
+
+
+    private void addGaussianStream(String channelId, int numFrames, Random random) {
+        DataStartSignal start = new DataStartSignal(16000);
+        start.getProps().put(LiveCMVN.CHANNEL_ID, channelId);
+        input.add(start);
+        for (int i = 0; i < numFrames; i++) {
+            double[] cepstrum = new double[13];
+            for (int j = 0; j < cepstrum.length; j++)
+                cepstrum[j] = j + (j + 1) * random.nextGaussian();
+            input.add(new DoubleData(cepstrum, 16000, i * 160));
+        }
+        input.add(new DataEndSignal(numFrames * 10));
+    }
+
+
+    private void addStream(String channelId, int numFrames, double value) {
+        DataStartSignal start = new DataStartSignal(16000);
+        start.getProps().put(LiveCMVN.CHANNEL_ID, channelId);
+        input.add(start);
+        for (int i = 0; i < numFrames; i++) {
+            double[] cepstrum = new double[13];
+            Arrays.fill(cepstrum, value);
+            input.add(new DoubleData(cepstrum, 16000, i * 160));
+        }
+        input.add(new DataEndSignal(numFrames * 10));
+    }
+}
@@ -0,0 +1,109 @@
+package edu.cmu.sphinx.frontend.test;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.filter.Resampler;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import java.util.List;
+
+/** Tests that the <code>Resampler</code> preserves the signal while changing its sample rate. */
+public class ResamplerTest extends RandomDataProcessor {
+
+    @Test
+    public void testDownsampling() throws DataProcessingException {
+        double[] out = resample(48000, 16000, 48000, 480);
+        assertEquals(16000, out.length);
+        assertSine(out, 16000, 32);
+    }
+
+
+    @Test
+    public void testUpsampling() throws DataProcessingException {
+        double[] out = resample(8000, 16000, 8000, 80);
+        assertEquals(16000, out.length);
+        assertSine(out, 16000, 32);
+    }
+
+
+    @Test
+    public void testFractionalRatio() throws DataProcessingException {
+        double[] out = resample(44100, 16000, 44100, 441);
+        assertEquals(16000, out.length);
+        assertSine(out, 16000, 32);
+    }
+
+
+    @Test
+    public void testBlockSizeIndependence() throws DataProcessingException {
+        double[] a = resample(44100, 16000, 44100, 441);
+        double[] b = resample(44100, 16000, 44100, 1000);
+        assertEquals(a.length, b.length);
+        for (int i = 0; i < a.length; i++)
+            assertEquals(a[i], b[i], 1e-9);
+    }
+
+
+    @Test
+    public void testPassThrough() throws DataProcessingException {
+        input.add(new DataStartSignal(16000));
+        input.add(new DoubleData(new double[]{1, 2, 3}, 16000, 0));
+        input.add(new DataEndSignal(0));
+
+        List<Data> output = collectOutput(new Resampler(16000, 32, 0.95));
+        assertEquals(3, output.size());
+        assertEquals(16000, ((DataStartSignal) output.get(0)).getSampleRate());
+        assertEquals(3, ((DoubleData) output.get(1)).getValues().length);
+    }
+
+
+    /** Resamples one second of a 1 kHz sine wave using the given block size. */
+    private double[] resample(int sourceRate, int targetRate, int numSamples, int blockSize)
+            throws DataProcessingException {
+        input.clear();
+        input.add(new DataStartSignal(sourceRate));
+        for (int start = 0; start < numSamples; start += blockSize) {
+            double[] values = new double[Math.min(blockSize, numSamples - start)];
+            for (int i = 0; i < values.length; i++)
+                values[i] = Math.sin(2 * Math.PI * 1000 * (start + i) / sourceRate);
+            input.add(new DoubleData(values, sourceRate, start));
+        }
+        input.add(new DataEndSignal(1000));
+
+        List<Data> output = collectOutput(new Resampler(targetRate, 32, 0.95));
+        assertEquals(targetRate, ((DataStartSignal) output.get(0)).getSampleRate());
+
+        int length = 0;
+        for (Data data : output)
+            if (data instanceof DoubleData)
+                length += ((DoubleData) data).getValues().length;
+
+        double[] result = new double[length];
+        int pos = 0;
+        for (Data data : output) {
+            if (data instanceof DoubleData) {
+                DoubleData dd = (DoubleData) data;
+                assertEquals(targetRate, dd.getSampleRate());
+                assertEquals(pos, dd.getFirstSampleNumber());
+                System.arraycopy(dd.getValues(), 0, result, pos, dd.getValues().length);
+                pos += dd.getValues().length;
+            }
+        }
+        return result;
+    }
+
+
+    /** Checks that the signal after the filter delay is a unit 1 kHz sine wave with some phase shift. */
+    private static void assertSine(double[] signal, int sampleRate, int skip) {
+        double inPhase = 0;
+        double quadrature = 0;
+        int count = 0;
+        for (int i = skip; i + sampleRate / 1000 <= signal.length; i++, count++) {
+            inPhase += signal[i] * Math.sin(2 * Math.PI * 1000 * i / sampleRate);
+            quadrature += signal[i] * Math.cos(2 * Math.PI * 1000 * i / sampleRate);
+        }
+        double amplitude = 2 * Math.sqrt(inPhase * inPhase + quadrature * quadrature) / count;
+        assertTrue("amplitude " + amplitude, Math.abs(amplitude - 1) < 0.02);
+    }
+}
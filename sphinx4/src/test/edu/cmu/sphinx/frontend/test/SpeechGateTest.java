@@ -0,0 +1,72 @@
+package edu.cmu.sphinx.frontend.test;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.endpoint.SpeechClassifiedData;
+import edu.cmu.sphinx.frontend.endpoint.SpeechEndSignal;
+import edu.cmu.sphinx.frontend.endpoint.SpeechGate;
+import edu.cmu.sphinx.frontend.endpoint.SpeechStartSignal;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Tests that the <code>SpeechGate</code> passes speech with leader and hangover and drops everything else. */
+public class SpeechGateTest extends RandomDataProcessor {
+
+    @Test
+    public void testSpeechRegion() throws DataProcessingException {
+        int sampleRate = 1000;
+
+        input.add(new DataStartSignal(sampleRate));
+        input.addAll(createClassifiedSpeech(sampleRate, 0, 1.0, false));
+        input.addAll(createClassifiedSpeech(sampleRate, 1000, 0.5, true));
+        input.addAll(createClassifiedSpeech(sampleRate, 1500, 1.0, false));
+        input.add(new DataEndSignal(2500));
+
+        SpeechGate gate = new SpeechGate(200, 50, 300);
+        gate.initialize();
+        List<Data> results = collectOutput(gate);
+
+        assertEquals(89, results.size());
+        assertTrue(results.get(0) instanceof DataStartSignal);
+        assertTrue(results.get(1) instanceof SpeechStartSignal);
+        assertEquals(950, ((DoubleData) results.get(2)).getFirstSampleNumber());
+        assertEquals(1000, ((DoubleData) results.get(7)).getFirstSampleNumber());
+        assertEquals(1790, ((DoubleData) results.get(86)).getFirstSampleNumber());
+        assertTrue(results.get(87) instanceof SpeechEndSignal);
+        assertTrue(results.get(88) instanceof DataEndSignal);
+    }
+
+
+    @Test
+    public void testShortNoiseIsDropped() throws DataProcessingException {
+        int sampleRate = 1000;
+
+        input.add(new DataStartSignal(sampleRate));
+        input.addAll(createClassifiedSpeech(sampleRate, 0, 0.5, false));
+        input.addAll(createClassifiedSpeech(sampleRate, 500, 0.1, true));
+        input.addAll(createClassifiedSpeech(sampleRate, 600, 0.5, false));
+        input.add(new DataEndSignal(1100));
+
+        SpeechGate gate = new SpeechGate(200, 50, 300);
+        gate.initialize();
+        List<Data> results = collectOutput(gate);
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0) instanceof DataStartSignal);
+        assertTrue(results.get(1) instanceof DataEndSignal);
+    }
+
+
+    private List<SpeechClassifiedData> createClassifiedSpeech(int sampleRate, long startSample, double lengthSec,
+                                                              boolean isSpeech) {
+        List<SpeechClassifiedData> datas = new ArrayList<SpeechClassifiedData>();
+
+        for (DoubleData block : createFeatVectors(lengthSec, sampleRate, startSample, 10, 10))
+            datas.add(new SpeechClassifiedData(block, isSpeech));
+
+        return datas;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * 
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ * 
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL 
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.fst;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.fst.operations.ArcSort;
+import edu.cmu.sphinx.fst.operations.ILabelCompare;
+import edu.cmu.sphinx.fst.operations.NShortestPaths;
+import edu.cmu.sphinx.fst.semiring.TropicalSemiring;
+
+public class CompactFstTest {
+
+    private Fst createFst() {
+        Fst fst = new Fst(new TropicalSemiring());
+        fst.setIsyms(new String[] { "<eps>", "a", "b", "c" });
+        fst.setOsyms(new String[] { "<eps>", "x", "y" });
+
+        State s1 = new State(fst.getSemiring().zero());
+        State s2 = new State(fst.getSemiring().zero());
+        State s3 = new State(0.5f);
+        fst.addState(s1);
+        fst.addState(s2);
+        fst.addState(s3);
+        fst.setStart(s1);
+
+        s1.addArc(new Arc(3, 1, 1.f, s3));
+        s1.addArc(new Arc(1, 2, 2.f, s2));
+        s1.addArc(new Arc(2, 0, 3.f, s2));
+        s2.addArc(new Arc(0, 1, 4.f, s3));
+
+        return fst;
+    }
+
+    @Test
+    public void testConversion() {
+        Fst fst = createFst();
+        CompactFst compact = new CompactFst(fst);
+        assertEquals(3, compact.getNumStates());
+        assertEquals(4, compact.getNumArcs());
+        assertEquals(3, compact.getNumArcs(0));
+        assertEquals(0.5f, compact.getFinalWeight(2), 0.f);
+        assertEquals(fst, compact.toFst());
+    }
+
+    @Test
+    public void testArcSort() {
+        CompactFst compact = new CompactFst(createFst());
+        ArcSort.apply(compact, new ILabelCompare());
+        assertEquals(1, compact.getIlabel(0));
+        assertEquals(2, compact.getOlabel(0));
+        assertEquals(2.f, compact.getWeight(0), 0.f);
+        assertEquals(1, compact.getNextState(0));
+        assertEquals(3, compact.getIlabel(2));
+        assertEquals(2, compact.getNextState(2));
+
+        assertEquals(1, compact.findArc(0, 2));
+        assertEquals(3, compact.findArc(0, 4));
+        assertEquals(3, compact.findArc(1, 0));
+    }
+
+    @Test
+    public void testShortestDistanceToFinal() {
+        Fst fst = createFst();
+        float[] d = NShortestPaths.shortestDistanceToFinal(new CompactFst(fst));
+        assertArrayEquals(NShortestPaths.shortestDistanceToFinal(fst), d, 0.f);
+        assertEquals(1.5f, d[0], 0.f);
+        assertEquals(4.5f, d[1], 0.f);
+    }
+
+    @Test
+    public void testSaveModel() throws Exception {
+        CompactFst compact = new CompactFst(createFst());
+        File file = File.createTempFile("compact", ".fst");
+        file.deleteOnExit();
+        compact.saveModel(file.getPath());
+        assertEquals(compact, CompactFst.loadModel(file.getPath()));
+        assertEquals(compact, CompactFst.loadModel(new FileInputStream(file)));
+
+        // serialized models are converted
+        createFst().saveModel(file.getPath());
+        assertEquals(compact, CompactFst.loadModel(file.getPath()));
+        assertEquals(compact, CompactFst.loadModel(new FileInputStream(file)));
+    }
+
+    @Test
+    public void testArcSortMapped() throws Exception {
+        File file = File.createTempFile("compact", ".fst");
+        file.deleteOnExit();
+        new CompactFst(createFst()).saveModel(file.getPath());
+
+        // the arcs of the mapped file are copied before they are sorted
+        CompactFst mapped = CompactFst.loadModel(file.getPath());
+        CompactFst sorted = new CompactFst(createFst());
+        ArcSort.apply(mapped, new ILabelCompare());
+        ArcSort.apply(sorted, new ILabelCompare());
+        assertEquals(sorted, mapped);
+        assertEquals(new CompactFst(createFst()),
+                CompactFst.loadModel(file.getPath()));
+    }
+}
@@ -13,12 +13,15 @@
 
 package edu.cmu.sphinx.fst.operations;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import edu.cmu.sphinx.fst.CompactFst;
 import edu.cmu.sphinx.fst.Fst;
 import edu.cmu.sphinx.fst.openfst.Convert;
+import edu.cmu.sphinx.fst.semiring.Semiring;
 import edu.cmu.sphinx.fst.semiring.TropicalSemiring;
 
 /**
@@ -49,4 +52,25 @@ public class ComposeTest {
 
         System.out.println("Testing Composition Completed!\n");
     }
+
+    @Test
+    public void testComposeCompact() {
+        Semiring semiring = new TropicalSemiring();
+        Fst fstA = Convert.importFst("src/test/edu/cmu/sphinx/fst/data/tests/algorithms/compose/A",
+                semiring);
+        Fst fstB = Convert.importFst("src/test/edu/cmu/sphinx/fst/data/tests/algorithms/compose/B",
+                semiring);
+        CompactFst compactA = new CompactFst(fstA);
+        CompactFst compactB = new CompactFst(fstB);
+
+        Fst composed = Compose.compose(fstA, fstB, semiring, false);
+        assertTrue(composed.getNumStates() > 1);
+        assertEquals(new CompactFst(composed),
+                Compose.compose(compactA, compactB, semiring, false));
+
+        ArcSort.apply(fstB, new ILabelCompare());
+        ArcSort.apply(compactB, new ILabelCompare());
+        assertEquals(new CompactFst(Compose.compose(fstA, fstB, semiring, true)),
+                Compose.compose(compactA, compactB, semiring, true));
+    }
 }
@@ -3,10 +3,12 @@
  */
 package edu.cmu.sphinx.fst.operations;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import edu.cmu.sphinx.fst.CompactFst;
 import edu.cmu.sphinx.fst.Fst;
 import edu.cmu.sphinx.fst.openfst.Convert;
 import edu.cmu.sphinx.fst.semiring.TropicalSemiring;
@@ -26,6 +28,8 @@ public class DeterminizeTest {
 
         Fst fstDeterminized = Determinize.get(fstA);
         assertTrue(determinized.equals(fstDeterminized));
+        assertEquals(new CompactFst(determinized),
+                Determinize.get(new CompactFst(fstA)));
 
         System.out.println("Testing Determinization Completed!\n");
     }
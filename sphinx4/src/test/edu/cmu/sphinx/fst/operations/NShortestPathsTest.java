@@ -7,6 +7,7 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import edu.cmu.sphinx.fst.CompactFst;
 import edu.cmu.sphinx.fst.Fst;
 import edu.cmu.sphinx.fst.openfst.Convert;
 import edu.cmu.sphinx.fst.semiring.TropicalSemiring;
@@ -26,10 +27,27 @@ public class NShortestPathsTest {
         Fst nsp = Convert.importFst("src/test/edu/cmu/sphinx/fst/data/tests/algorithms/shortestpath/nsp",
                 new TropicalSemiring());
 
+        CompactFst compact = new CompactFst(fst);
         Fst fstNsp = NShortestPaths.get(fst, 6, true);
 
         assertTrue(nsp.equals(fstNsp));
+        assertEquals(new CompactFst(nsp),
+                NShortestPaths.get(compact, 6, true));
 
         System.out.println("Testing NShortestPaths Completed!\n");
     }
+
+    @Test
+    public void testShortestDistanceToFinal() {
+        Fst fst = Convert.importFst("src/test/edu/cmu/sphinx/fst/data/tests/algorithms/shortestpath/A",
+                new TropicalSemiring());
+
+        // the reversed fst keeps the state ids and adds a super final state
+        float[] expected = NShortestPaths.shortestDistance(fst);
+        float[] d = NShortestPaths.shortestDistanceToFinal(fst);
+        assertEquals(fst.getNumStates(), d.length);
+        for (int i = 0; i < d.length; i++) {
+            assertEquals(expected[i], d[i], 1e-5);
+        }
+    }
 }
@@ -13,10 +13,16 @@
 
 package edu.cmu.sphinx.fst.operations;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.Test;
 
+import edu.cmu.sphinx.fst.CompactFst;
 import edu.cmu.sphinx.fst.Fst;
 import edu.cmu.sphinx.fst.openfst.Convert;
 import edu.cmu.sphinx.fst.semiring.ProbabilitySemiring;
@@ -41,4 +47,33 @@ public class RmEpsilonTest {
 
         System.out.println("Testing RmEpsilon Completed!\n");
     }
+
+    @Test
+    public void testRmEpsilonCompact() {
+        Fst fst = Convert.importFst("src/test/edu/cmu/sphinx/fst/data/tests/algorithms/rmepsilon/A",
+                new ProbabilitySemiring());
+        Fst fstRmEps = Fst
+                .loadModel("src/test/edu/cmu/sphinx/fst/data/tests/algorithms/rmepsilon/fstrmepsilon.fst.ser");
+        CompactFst expected = new CompactFst(fstRmEps);
+        CompactFst rmEpsilon = RmEpsilon.get(new CompactFst(fst));
+
+        // the arcs replacing the epsilon paths may come in another order
+        assertEquals(expected.getStart(), rmEpsilon.getStart());
+        assertEquals(expected.getNumStates(), rmEpsilon.getNumStates());
+        for (int i = 0; i < expected.getNumStates(); i++) {
+            assertEquals(expected.getFinalWeight(i),
+                    rmEpsilon.getFinalWeight(i), 1e-6);
+            assertEquals(getArcs(expected, i), getArcs(rmEpsilon, i));
+        }
+    }
+
+    private static List<String> getArcs(CompactFst fst, int state) {
+        List<String> arcs = new ArrayList<String>();
+        for (int k = fst.getArcStart(state); k < fst.getArcEnd(state); k++) {
+            arcs.add(fst.getIlabel(k) + " " + fst.getOlabel(k) + " "
+                    + fst.getWeight(k) + " " + fst.getNextState(k));
+        }
+        Collections.sort(arcs);
+        return arcs;
+    }
 }
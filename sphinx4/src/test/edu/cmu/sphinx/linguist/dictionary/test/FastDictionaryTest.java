@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.linguist.dictionary.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.dictionary.FastDictionary;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.linguist.g2p.test.DecoderTest;
+
+/** Tests that a batch of words is looked up at once, the missing ones generated with the g2p model. */
+public class FastDictionaryTest {
+	@Test
+	public void testLoadWords() throws IOException {
+		TestDictionary dictionary = new TestDictionary(true);
+		dictionary.allocate();
+		try {
+			dictionary.loadWords(Arrays.asList("one", "CHA", "hac", "cha"));
+
+			// only the missing words are generated, the words of the dictionary are still read when they are used
+			assertEquals(2, dictionary.getNumGenerated());
+			assertTrue(dictionary.isLoaded("cha"));
+			assertTrue(dictionary.isLoaded("hac"));
+			assertFalse(dictionary.isLoaded("one"));
+
+			Word word = dictionary.getWord("cha");
+			assertEquals(2, word.getPronunciations().length);
+			assertEquals("cha(CH AE )", word.getPronunciations()[0].toString());
+			assertEquals("cha(K HH AE )", word.getPronunciations()[1].toString());
+			assertSame(word, dictionary.getWord("CHA"));
+			assertEquals("one(HH W AH N )", dictionary.getWord("one").getPronunciations()[0].toString());
+
+			// a word generated one by one ends up in the same cache
+			assertEquals("ach(AE CH )", dictionary.getWord("ach").getPronunciations()[0].toString());
+			assertEquals(3, dictionary.getNumGenerated());
+		} finally {
+			dictionary.deallocate();
+		}
+
+		// nothing is generated unless missing words are created
+		dictionary = new TestDictionary(false);
+		dictionary.allocate();
+		try {
+			dictionary.loadWords(Arrays.asList("cha", "hac"));
+			assertEquals(0, dictionary.getNumGenerated());
+			assertFalse(dictionary.isLoaded("cha"));
+			assertNull(dictionary.getWord("cha"));
+		} finally {
+			dictionary.deallocate();
+		}
+	}
+
+
+	/** A dictionary with the g2p model of the decoder test, which shows the words it looked up and generated */
+	private static class TestDictionary extends FastDictionary {
+
+		TestDictionary(boolean createMissingWords) throws IOException {
+			super(new URL("file:models/acoustic/wsj/dict/digits.dict"), new URL("file:models/acoustic/wsj/noisedict"),
+					null, false, null, true, createMissingWords, new UnitManager(),
+					DecoderTest.saveModel().toURI().toURL(), 2);
+		}
+
+
+		boolean isLoaded(String word) {
+			return wordDictionary.containsKey(word);
+		}
+
+
+		int getNumGenerated() {
+			return g2pDecoder.getCache().size();
+		}
+	}
+}
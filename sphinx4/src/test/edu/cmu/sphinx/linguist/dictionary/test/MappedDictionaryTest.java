@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.linguist.dictionary.test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.FastDictionary;
+import edu.cmu.sphinx.linguist.dictionary.MappedDictionary;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+
+public class MappedDictionaryTest {
+	@Test
+	public void testDictionary() throws IOException {
+		URL dictionaryUrl = new URL("file:models/acoustic/wsj/dict/digits.dict");
+		URL fillerUrl = new URL("file:models/acoustic/wsj/noisedict");
+		File binary = File.createTempFile("digits", ".bin");
+		binary.delete();
+		try {
+			UnitManager unitManager = new UnitManager();
+			Dictionary fast = new FastDictionary(dictionaryUrl, fillerUrl,
+					null, false, null, false, false, unitManager);
+			fast.allocate();
+
+			// the first allocation compiles the binary, the second maps it
+			for (int pass = 0; pass < 2; pass++) {
+				MappedDictionary dictionary = new MappedDictionary(
+						dictionaryUrl, fillerUrl, null, false, null, false,
+						false, unitManager, binary.getPath(), 2);
+				dictionary.allocate();
+				assertTrue(binary.exists());
+
+				for (String spelling : new String[] { "one", "ZERO", "zero(2)",
+						"oh", "<sil>", "++breath++" }) {
+					Word word = dictionary.getWord(spelling);
+					assertEquals(fast.getWord(spelling).toString(), word.toString());
+					assertEquals(fast.getWord(spelling).isFiller(), word.isFiller());
+					assertEquals(fast.getWord(spelling).getPronunciations().length,
+							word.getPronunciations().length);
+					for (int i = 0; i < word.getPronunciations().length; i++)
+						assertEquals(fast.getWord(spelling).getPronunciations()[i].toString(),
+								word.getPronunciations()[i].toString());
+				}
+				assertNull(dictionary.getWord("something"));
+
+				// the special words are never evicted from the cache
+				assertSame(dictionary.getSilenceWord(), dictionary.getSilenceWord());
+				assertSame(dictionary.getSentenceStartWord(), dictionary.getSentenceStartWord());
+				assertEquals(12, dictionary.getFillerWords().length);
+				dictionary.deallocate();
+			}
+		} finally {
+			binary.delete();
+		}
+	}
+
+
+	@Test
+	public void testStaleBinary() throws IOException {
+		File directory = File.createTempFile("dictionary", "");
+		directory.delete();
+		directory.mkdir();
+		File addendum = new File(directory, "addendum.dict");
+		File filler = new File(directory, "filler.dict");
+		File binary = new File(directory, "digits.bin");
+		try {
+			write(addendum, "cha CH AE\n");
+			write(filler, "<s> SIL\n</s> SIL\n<sil> SIL\n");
+			URL dictionaryUrl = new URL("file:models/acoustic/wsj/dict/digits.dict");
+			URL fillerUrl = new URL("file:models/acoustic/wsj/noisedict");
+			List<URL> addenda = Arrays.asList(addendum.toURI().toURL());
+
+			MappedDictionary dictionary = allocate(dictionaryUrl, fillerUrl, addenda, binary);
+			assertEquals("cha(CH AE )", dictionary.getWord("cha").getPronunciations()[0].toString());
+			assertEquals(12, dictionary.getFillerWords().length);
+
+			// the same sources map the compiled file again
+			binary.setLastModified(1000);
+			allocate(dictionaryUrl, fillerUrl, addenda, binary);
+			assertEquals(1000, binary.lastModified());
+
+			// a changed addendum is compiled again, even though the binary file is newer
+			write(addendum, "cha K AE\nhac HH AE K\n");
+			addendum.setLastModified(0);
+			dictionary = allocate(dictionaryUrl, fillerUrl, addenda, binary);
+			assertTrue(binary.lastModified() > 1000);
+			assertEquals("cha(K AE )", dictionary.getWord("cha").getPronunciations()[0].toString());
+			assertNotNull(dictionary.getWord("hac"));
+
+			// as is another filler dictionary with the same main dictionary
+			binary.setLastModified(1000);
+			dictionary = allocate(dictionaryUrl, filler.toURI().toURL(), addenda, binary);
+			assertTrue(binary.lastModified() > 1000);
+			assertEquals(3, dictionary.getFillerWords().length);
+
+			// the temporary files are renamed or deleted
+			assertEquals(Arrays.asList("addendum.dict", "digits.bin", "filler.dict"),
+					sorted(directory.list()));
+		} finally {
+			for (File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+
+
+	private static MappedDictionary allocate(URL dictionaryUrl, URL fillerUrl, List<URL> addenda, File binary)
+			throws IOException {
+		MappedDictionary dictionary = new MappedDictionary(dictionaryUrl, fillerUrl, addenda, false, null, false,
+				false, new UnitManager(), binary.getPath(), 100);
+		dictionary.allocate();
+		return dictionary;
+	}
+
+
+	private static void write(File file, String text) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(text);
+		} finally {
+			writer.close();
+		}
+	}
+
+
+	private static List<String> sorted(String[] names) {
+		List<String> list = new ArrayList<String>(Arrays.asList(names));
+		Collections.sort(list);
+		return list;
+	}
+}
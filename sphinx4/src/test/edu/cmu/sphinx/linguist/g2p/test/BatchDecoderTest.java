@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.g2p.test;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import edu.cmu.sphinx.linguist.g2p.BatchDecoder;
+import edu.cmu.sphinx.linguist.g2p.Decoder;
+import edu.cmu.sphinx.linguist.g2p.Path;
+import edu.cmu.sphinx.linguist.g2p.PronunciationCache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+
+/** Tests that a batch phoneticized on several threads gives the pronunciations of the serial decoder, once per word. */
+public class BatchDecoderTest {
+
+	@Test
+	public void testPhoneticizeBatch() throws Exception {
+		Decoder decoder = new Decoder(DecoderTest.saveModel().getPath());
+		PronunciationCache cache = new PronunciationCache(100);
+		BatchDecoder batchDecoder = new BatchDecoder(decoder, 2, 4, cache);
+		try {
+			List<String> words = Arrays.asList("cha", "ach", "hac", "cha", "chach", "a", "cc", "ach");
+			Map<String, ArrayList<Path>> paths = batchDecoder.phoneticize(words);
+
+			// the words in the order of the batch, without the repeated ones
+			assertEquals(Arrays.asList("cha", "ach", "hac", "chach", "a", "cc"), new ArrayList<String>(paths.keySet()));
+			assertEquals(6, cache.size());
+			for (Map.Entry<String, ArrayList<Path>> entry : paths.entrySet()) {
+				ArrayList<Path> expected = decoder.phoneticize(entry.getKey(), 2);
+				assertEquals(entry.getKey(), describe(expected), describe(entry.getValue()));
+				assertSame(entry.getValue(), cache.get(entry.getKey()));
+			}
+			assertEquals("[CH AE 1.0, K HH AE 2.5]", describe(paths.get("cha")));
+
+			// the cached words are not phoneticized again
+			Map<String, ArrayList<Path>> again = batchDecoder.phoneticize(Arrays.asList("hac", "cha"));
+			assertSame(paths.get("hac"), again.get("hac"));
+			assertSame(paths.get("cha"), again.get("cha"));
+			assertSame(paths.get("cha"), batchDecoder.phoneticize("cha"));
+		} finally {
+			batchDecoder.shutdown();
+		}
+	}
+
+
+	private static String describe(List<Path> paths) {
+		List<String> descriptions = new ArrayList<String>();
+		for (Path path : paths) {
+			StringBuilder description = new StringBuilder();
+			for (String phone : path.getPath())
+				description.append(phone).append(' ');
+			descriptions.add(description.toString() + path.getCost());
+		}
+		return descriptions.toString();
+	}
+}
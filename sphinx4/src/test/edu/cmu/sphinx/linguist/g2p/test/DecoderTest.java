@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.g2p.test;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import edu.cmu.sphinx.fst.Arc;
+import edu.cmu.sphinx.fst.Fst;
+import edu.cmu.sphinx.fst.State;
+import edu.cmu.sphinx.fst.semiring.TropicalSemiring;
+import edu.cmu.sphinx.linguist.g2p.Decoder;
+import edu.cmu.sphinx.linguist.g2p.Path;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+
+/** Tests the search for the best distinct pronunciations over the composition with a small model. */
+public class DecoderTest {
+
+	private static State addState(Fst fst) {
+		State state = new State(fst.getSemiring().zero());
+		fst.addState(state);
+		return state;
+	}
+
+
+	/**
+	 * Saves a small model for the letters c, h and a, in which "ch" is pronounced CH or K HH.
+	 *
+	 * @return the serialized model, deleted on exit
+	 */
+	public static File saveModel() throws IOException {
+		TropicalSemiring ts = new TropicalSemiring();
+		Fst model = new Fst(ts);
+		model.setIsyms(new String[] {"<eps>", "}", "<s>", "</s>", "c", "h", "a", "c}h"});
+		model.setOsyms(new String[] {"<eps>", "}", "<s>", "</s>", "_", "K", "HH", "AE", "CH"});
+		State start = addState(model);
+		State history = addState(model);
+		State backoff = addState(model);
+		State end = addState(model);
+		model.setStart(start);
+		end.setFinalWeight(0.f);
+		start.addArc(new Arc(2, 2, 0.f, history));
+		history.addArc(new Arc(4, 5, 1.f, history));
+		history.addArc(new Arc(5, 6, 1.f, history));
+		history.addArc(new Arc(6, 7, 1.f, history));
+		history.addArc(new Arc(7, 8, 0.5f, history));
+		history.addArc(new Arc(3, 3, 0.f, end));
+		// a cheaper path to the same pronunciation through a backoff
+		history.addArc(new Arc(0, 0, 0.25f, backoff));
+		backoff.addArc(new Arc(6, 7, 0.25f, history));
+
+		File file = File.createTempFile("g2p", ".fst.ser");
+		file.deleteOnExit();
+		model.saveModel(file.getPath());
+		return file;
+	}
+
+
+	@Test
+	public void testPhoneticize() throws Exception {
+		Decoder decoder = new Decoder(saveModel().getPath());
+
+		ArrayList<Path> paths = decoder.phoneticize("cha", 3);
+		assertEquals(2, paths.size());
+		assertEquals("[CH, AE]", paths.get(0).getPath().toString());
+		assertEquals(1.f, paths.get(0).getCost(), 1e-6);
+		assertEquals("[K, HH, AE]", paths.get(1).getPath().toString());
+		assertEquals(2.5f, paths.get(1).getCost(), 1e-6);
+
+		paths = decoder.phoneticize("cha", 1);
+		assertEquals(1, paths.size());
+		assertEquals("[CH, AE]", paths.get(0).getPath().toString());
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.linguist.g2p.test;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import edu.cmu.sphinx.fst.semiring.TropicalSemiring;
+import edu.cmu.sphinx.linguist.g2p.Path;
+import edu.cmu.sphinx.linguist.g2p.PronunciationCache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * Tests the eviction of the least recently used words, the round trip through the dictionary format and the
+ * replacement of a saved file.
+ */
+public class PronunciationCacheTest {
+
+	private static ArrayList<Path> paths(String... pronunciations) {
+		ArrayList<Path> paths = new ArrayList<Path>();
+		for (String pronunciation : pronunciations)
+			paths.add(new Path(new ArrayList<String>(Arrays.asList(pronunciation.split(" "))), new TropicalSemiring()));
+		return paths;
+	}
+
+
+	@Test
+	public void testCache() throws Exception {
+		PronunciationCache cache = new PronunciationCache(2);
+		cache.put("one", paths("W AH N", "HH W AH N"));
+		cache.put("two", paths("T UW"));
+		assertNotNull(cache.get("one"));
+		cache.put("three", paths("TH R IY"));
+		assertNull(cache.get("two"));
+		assertEquals(2, cache.size());
+
+		File file = File.createTempFile("g2p", ".dict");
+		file.deleteOnExit();
+		cache.save(file);
+		PronunciationCache loaded = new PronunciationCache(10);
+		loaded.load(file);
+		assertEquals(2, loaded.size());
+		assertEquals(2, loaded.get("one").size());
+		assertEquals("[HH, W, AH, N]", loaded.get("one").get(1).getPath().toString());
+		assertEquals("[TH, R, IY]", loaded.get("three").get(0).getPath().toString());
+	}
+
+
+	@Test
+	public void testSaveReplacesFile() throws Exception {
+		File dir = File.createTempFile("g2p", "");
+		dir.delete();
+		dir.mkdir();
+		File file = new File(dir, "cache.dict");
+		try {
+			PronunciationCache cache = new PronunciationCache(10);
+			cache.put("one", paths("W AH N"));
+			cache.save(file);
+			cache.put("two", paths("T UW"));
+			cache.save(file);
+
+			// the second save replaced the first file and left no
+			// temporary file behind
+			assertEquals(Arrays.asList(file), Arrays.asList(dir.listFiles()));
+			PronunciationCache loaded = new PronunciationCache(10);
+			loaded.load(file);
+			assertEquals(2, loaded.size());
+			assertEquals("[T, UW]", loaded.get("two").get(0).getPath().toString());
+		} finally {
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+}
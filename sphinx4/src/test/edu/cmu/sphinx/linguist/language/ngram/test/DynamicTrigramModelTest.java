@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.linguist.language.ngram.test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.FastDictionary;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.linguist.language.ngram.DynamicTrigramModel;
+import edu.cmu.sphinx.util.LogMath;
+
+public class DynamicTrigramModelTest {
+	@Test
+	public void testModel() throws IOException {
+		LogMath logMath = new LogMath(1.0001f, false);
+		Dictionary dictionary = new FastDictionary(new URL(
+				"file:models/acoustic/wsj/dict/digits.dict"), new URL(
+				"file:models/acoustic/wsj/noisedict"), null, false, null,
+				false, false, new UnitManager());
+		DynamicTrigramModel model = new DynamicTrigramModel(dictionary, 1.0f, logMath, 3);
+		model.setText(Arrays.asList("one two three one two four one nine".split(" ")));
+		model.allocate();
+
+		assertEquals(3, model.getMaxDepth());
+		assertEquals(7, model.getVocabulary().size());
+		assertTrue(model.getVocabulary().contains("four"));
+
+		Word one = dictionary.getWord("one");
+		Word two = dictionary.getWord("two");
+		Word three = dictionary.getWord("three");
+		// "one two" is seen twice, "one nine" once
+		assertTrue(getProbability(model, logMath, one, two) > getProbability(model, logMath, one,
+				dictionary.getWord("nine")));
+		// "two two" is unseen, but both words are in the model
+		assertTrue(getProbability(model, logMath, two, two) > 0);
+		assertTrue(getProbability(model, logMath, one, two, three) > getProbability(model, logMath, two,
+				dictionary.getWord("nine"), three));
+
+		// the probabilities of the words following a history sum up to one
+		for (Word[] history : new Word[][] { {one}, {two}, {one, two}, {three, one}, {two, two} }) {
+			double sum = 0;
+			for (String spelling : model.getVocabulary()) {
+				if (spelling.equals("<s>"))
+					continue;
+				Word[] words = Arrays.copyOf(history, history.length + 1);
+				words[history.length] = dictionary.getWord(spelling);
+				sum += getProbability(model, logMath, words);
+			}
+			assertEquals(1.0, sum, 0.01);
+		}
+	}
+
+	@Test
+	public void testReestimate() throws IOException {
+		LogMath logMath = new LogMath(1.0001f, false);
+		Dictionary dictionary = new FastDictionary(new URL(
+				"file:models/acoustic/wsj/dict/digits.dict"), new URL(
+				"file:models/acoustic/wsj/noisedict"), null, false, null,
+				false, false, new UnitManager());
+		DynamicTrigramModel model = new DynamicTrigramModel(dictionary, 1.0f, logMath, 3);
+		model.setText(Arrays.asList("one two three one two four one nine".split(" ")));
+		model.allocate();
+		model.reestimate(Arrays.asList("two four two five".split(" ")));
+
+		// the vocabulary stays the one of the allocated text
+		assertEquals(7, model.getVocabulary().size());
+		assertFalse(model.getVocabulary().contains("five"));
+
+		Word one = dictionary.getWord("one");
+		Word two = dictionary.getWord("two");
+		Word four = dictionary.getWord("four");
+		assertEquals(0.0, getProbability(model, logMath, one), 0.0);
+		assertEquals(0.0, getProbability(model, logMath, two, one), 0.0);
+		assertTrue(getProbability(model, logMath, four, two) > getProbability(model, logMath, four, four));
+
+		for (Word[] history : new Word[][] { {two}, {four}, {two, four} }) {
+			double sum = 0;
+			for (String spelling : model.getVocabulary()) {
+				if (spelling.equals("<s>"))
+					continue;
+				Word[] words = Arrays.copyOf(history, history.length + 1);
+				words[history.length] = dictionary.getWord(spelling);
+				sum += getProbability(model, logMath, words);
+			}
+			assertEquals(1.0, sum, 0.01);
+		}
+	}
+
+	private static double getProbability(DynamicTrigramModel model, LogMath logMath, Word... words) {
+		return logMath.logToLinear(model.getProbability(new WordSequence(words)));
+	}
+}
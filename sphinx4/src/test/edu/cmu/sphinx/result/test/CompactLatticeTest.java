@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.result.test;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import edu.cmu.sphinx.result.CompactLattice;
+import edu.cmu.sphinx.result.Lattice;
+import edu.cmu.sphinx.result.Node;
+import edu.cmu.sphinx.util.LogMath;
+
+
+/**
+ * Tests the array based lattice. Sets up the lattice of the posterior test and checks the node order, the edges and
+ * the Viterbi path, and checks that dead ends are kept before the terminal node.
+ */
+public class CompactLatticeTest {
+
+	@Test
+	public void testCompactLattice() {
+
+		LogMath logMath = new LogMath(1.0001f, true);
+
+		Lattice lattice = new Lattice(logMath);
+
+		Node a = lattice.addNode("A", "A", 0, 0);
+		Node b = lattice.addNode("B", "B", 0, 0);
+		Node c = lattice.addNode("C", "C", 0, 0);
+		Node d = lattice.addNode("D", "D", 0, 0);
+
+		lattice.setInitialNode(a);
+		lattice.setTerminalNode(d);
+
+		lattice.addEdge(a, b, logMath.linearToLog(4), 0);
+		lattice.addEdge(a, c, logMath.linearToLog(6), 0);
+		lattice.addEdge(c, b, logMath.linearToLog(1), 0);
+		lattice.addEdge(b, d, logMath.linearToLog(5), 0);
+		lattice.addEdge(c, d, logMath.linearToLog(2), 0);
+
+		CompactLattice compact = lattice.compact();
+		assertEquals(4, compact.getNodeCount());
+		assertEquals(5, compact.getEdgeCount());
+		assertSame(a, compact.getNode(0));
+		assertSame(d, compact.getNode(3));
+		assertEquals(2, compact.getEnteringEdgeCount(3));
+		for (int e = 0; e < compact.getEdgeCount(); e++)
+			assertTrue(compact.getFromNode(e) < compact.getToNode(e));
+
+		compact.computeNodePosteriors(1.0f, false);
+
+		// A-B-D scores 20, A-C-B-D 30 and A-C-D 12
+		int[] path = compact.getViterbiPath();
+		assertEquals(4, path.length);
+		assertSame(c, compact.getNode(path[1]));
+		assertSame(b, compact.getNode(path[2]));
+		assertEquals(logMath.linearToLog(30), compact.getViterbiScore(3), 1e-1);
+		assertEquals(logMath.linearToLog(62), compact.getForwardScore(3), 1e1);
+		assertEquals(compact.getForwardScore(3), compact.getBackwardScore(0), 1e1);
+
+		double delta = 1e-4;
+		assertEquals(1.0, logMath.logToLinear((float) compact.getPosterior(0)), delta);
+		assertEquals(42.0 / 62, logMath.logToLinear((float) compact.getPosterior(path[1])), delta);
+		assertEquals(50.0 / 62, logMath.logToLinear((float) compact.getPosterior(path[2])), delta);
+	}
+
+
+	@Test
+	public void testDeadEnd() {
+
+		LogMath logMath = new LogMath(1.0001f, true);
+
+		Lattice lattice = new Lattice(logMath);
+
+		Node a = lattice.addNode("A", "A", 0, 0);
+		Node b = lattice.addNode("B", "B", 0, 0);
+		Node c = lattice.addNode("C", "C", 0, 0);
+		Node e = lattice.addNode("E", "E", 0, 0);
+
+		lattice.setInitialNode(a);
+		lattice.setTerminalNode(c);
+
+		// E is visited first and does not lead to the terminal node, so it
+		// follows the terminal node in topological order
+		lattice.addEdge(a, e, logMath.linearToLog(1), 0);
+		lattice.addEdge(a, b, logMath.linearToLog(4), 0);
+		lattice.addEdge(b, c, logMath.linearToLog(5), 0);
+		assertSame(e, lattice.sortNodes().get(3));
+
+		CompactLattice compact = lattice.compact();
+		assertEquals(4, compact.getNodeCount());
+		assertSame(c, compact.getNode(3));
+		for (int i = 0; i < compact.getEdgeCount(); i++)
+			assertTrue(compact.getFromNode(i) < compact.getToNode(i));
+
+		lattice.computeNodePosteriors(1.0f);
+		assertEquals(1.0, logMath.logToLinear((float) b.getPosterior()), 1e-4);
+		assertEquals(0.0, logMath.logToLinear((float) e.getPosterior()), 1e-4);
+		assertEquals(logMath.linearToLog(20), c.getForwardScore(), 1e1);
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTerminalNodeWithLeavingEdges() {
+
+		LogMath logMath = new LogMath(1.0001f, true);
+
+		Lattice lattice = new Lattice(logMath);
+
+		Node a = lattice.addNode("A", "A", 0, 0);
+		Node b = lattice.addNode("B", "B", 0, 0);
+		Node c = lattice.addNode("C", "C", 0, 0);
+
+		lattice.setInitialNode(a);
+		lattice.setTerminalNode(b);
+
+		lattice.addEdge(a, b, logMath.linearToLog(4), 0);
+		lattice.addEdge(b, c, logMath.linearToLog(5), 0);
+
+		lattice.compact();
+	}
+
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnreachableTerminalNode() {
+
+		LogMath logMath = new LogMath(1.0001f, true);
+
+		Lattice lattice = new Lattice(logMath);
+
+		Node a = lattice.addNode("A", "A", 0, 0);
+		Node b = lattice.addNode("B", "B", 0, 0);
+		Node c = lattice.addNode("C", "C", 0, 0);
+
+		lattice.setInitialNode(a);
+		lattice.setTerminalNode(c);
+
+		lattice.addEdge(a, b, logMath.linearToLog(4), 0);
+
+		lattice.computeNodePosteriors(1.0f);
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.result.test;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.linguist.language.ngram.LanguageModel;
+import edu.cmu.sphinx.result.Edge;
+import edu.cmu.sphinx.result.Lattice;
+import edu.cmu.sphinx.result.LatticeRescorer;
+import edu.cmu.sphinx.result.Node;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.PropertySheet;
+
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Tests the expansion of a lattice by language model history. The two paths through C have different trigram
+ * histories at the sentence end, so C is split in two unless the lattice size forces a bigram expansion.
+ */
+public class LatticeRescorerTest {
+
+	@Test
+	public void testExpand() {
+		LogMath logMath = new LogMath(1.0001f, true);
+		Lattice lattice = createLattice(logMath);
+
+		Lattice expanded = new LatticeRescorer(lattice, new TestModel(), 1.0f, 1.0).expand(100);
+		assertEquals(7, expanded.getNodes().size());
+		assertEquals(2, expanded.getTerminalNode().getEnteringEdges().size());
+		Set<Double> scores = new HashSet<Double>();
+		for (Edge edge : expanded.getTerminalNode().getEnteringEdges())
+			scores.add(edge.getLMScore());
+		assertTrue(scores.contains(-301.0));
+		assertTrue(scores.contains(-300.0));
+
+		for (Edge edge : expanded.getEdges()) {
+			// the filler keeps its score and does not enter the history of b
+			if (edge.getToNode().getWord().isFiller() && !edge.getToNode().getWord().isSentenceEndWord())
+				assertEquals(-5.0, edge.getLMScore(), 0.0);
+			if (edge.getToNode().getWord().getSpelling().equals("b"))
+				assertEquals(-200.0, edge.getLMScore(), 0.0);
+		}
+
+		expanded = new LatticeRescorer(lattice, new TestModel(), 1.0f, 1.0).expand(5);
+		assertEquals(6, expanded.getNodes().size());
+		assertEquals(1, expanded.getTerminalNode().getEnteringEdges().size());
+		assertEquals(-200.0, expanded.getTerminalNode().getEnteringEdges().iterator().next().getLMScore(), 0.0);
+
+		expanded.computeNodePosteriors(1.0f);
+		assertEquals(4, expanded.getViterbiPath().size());
+	}
+
+
+	/** Creates the lattice &lt;s&gt; - a - c - &lt;/s&gt;, &lt;s&gt; - &lt;sil&gt; - b - c. */
+	private Lattice createLattice(LogMath logMath) {
+		Lattice lattice = new Lattice(logMath);
+		Node start = lattice.addNode(word("<s>", true), 0, 0);
+		Node sil = lattice.addNode(word("<sil>", true), 0, 1);
+		Node a = lattice.addNode(word("a", false), 0, 2);
+		Node b = lattice.addNode(word("b", false), 1, 2);
+		Node c = lattice.addNode(word("c", false), 2, 3);
+		Node end = lattice.addNode(word("</s>", true), 3, 3);
+		lattice.setInitialNode(start);
+		lattice.setTerminalNode(end);
+
+		lattice.addEdge(start, a, -10, 0);
+		lattice.addEdge(start, sil, -5, -5);
+		lattice.addEdge(sil, b, -10, 0);
+		lattice.addEdge(a, c, -10, 0);
+		lattice.addEdge(b, c, -10, 0);
+		lattice.addEdge(c, end, 0, 0);
+		return lattice;
+	}
+
+
+	private static Word word(String spelling, boolean isFiller) {
+		return new Word(spelling, new Pronunciation[0], isFiller);
+	}
+
+
+	/** A trigram model whose log probability is -100 per word of the sequence, minus one if it starts with a. */
+	private static class TestModel implements LanguageModel {
+
+		public float getProbability(WordSequence wordSequence) {
+			float probability = -100 * wordSequence.size();
+			if (wordSequence.getWord(0).getSpelling().equals("a"))
+				probability -= 1;
+			return probability;
+		}
+
+		public float getSmear(WordSequence wordSequence) {
+			return 0;
+		}
+
+		public Set<String> getVocabulary() {
+			return new HashSet<String>();
+		}
+
+		public int getMaxDepth() {
+			return 3;
+		}
+
+		public void allocate() {
+		}
+
+		public void deallocate() {
+		}
+
+		public void start() {
+		}
+
+		public void stop() {
+		}
+
+		public void newProperties(PropertySheet ps) {
+		}
+	}
+}
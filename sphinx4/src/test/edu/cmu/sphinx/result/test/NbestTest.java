@@ -0,0 +1,73 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.result.test;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import edu.cmu.sphinx.result.Lattice;
+import edu.cmu.sphinx.result.Nbest;
+import edu.cmu.sphinx.result.Node;
+import edu.cmu.sphinx.result.Path;
+import edu.cmu.sphinx.result.WordResult;
+import edu.cmu.sphinx.util.LogMath;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Tests the A* search for the n best paths. The lattice has the paths A-C-B-D (30), A-B-D (20), A-C-D (12) and
+ * A-B'-D (20), where B' is a second node for the word B.
+ */
+public class NbestTest {
+
+	@Test
+	public void testNbest() {
+		LogMath logMath = new LogMath(1.0001f, true);
+		Lattice lattice = new Lattice(logMath);
+
+		Node a = lattice.addNode("A", "A", 0, 0);
+		Node b = lattice.addNode("B", "B", 0, 0);
+		Node b2 = lattice.addNode("B2", "B", 0, 0);
+		Node c = lattice.addNode("C", "C", 0, 0);
+		Node d = lattice.addNode("D", "D", 0, 0);
+
+		lattice.setInitialNode(a);
+		lattice.setTerminalNode(d);
+
+		lattice.addEdge(a, b, logMath.linearToLog(4), 0);
+		lattice.addEdge(a, b2, logMath.linearToLog(2), 0);
+		lattice.addEdge(a, c, logMath.linearToLog(6), 0);
+		lattice.addEdge(c, b, logMath.linearToLog(1), 0);
+		lattice.addEdge(b, d, logMath.linearToLog(5), 0);
+		lattice.addEdge(b2, d, logMath.linearToLog(10), 0);
+		lattice.addEdge(c, d, logMath.linearToLog(2), 0);
+
+		List<Path> paths = new Nbest(lattice).getNbestPaths(10, false);
+		assertEquals(4, paths.size());
+		assertEquals("A C B D", words(paths.get(0)));
+		assertEquals(logMath.linearToLog(30), paths.get(0).getScore(), 1);
+		assertEquals(logMath.linearToLog(20), paths.get(1).getScore(), 1);
+		assertEquals(logMath.linearToLog(20), paths.get(2).getScore(), 1);
+		assertEquals("A C D", words(paths.get(3)));
+
+		assertEquals(Arrays.asList("A C B D", "A B D", "A C D"), new Nbest(lattice).getNbest(10));
+		assertEquals(Arrays.asList("A C B D", "A B D"), new Nbest(lattice).getNbest(2));
+	}
+
+
+	private static String words(Path path) {
+		StringBuilder sb = new StringBuilder();
+		for (WordResult word : path.getWords())
+			sb.append(sb.length() > 0 ? " " : "").append(word.toString().split(" ")[0]);
+		return sb.toString();
+	}
+}
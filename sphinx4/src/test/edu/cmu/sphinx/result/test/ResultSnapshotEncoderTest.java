@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.result.test;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.result.ResultSnapshot;
+import edu.cmu.sphinx.result.ResultSnapshotEncoder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+
+/** Tests the binary round trip and the JSON form of result snapshots. */
+public class ResultSnapshotEncoderTest {
+
+	private ResultSnapshot createSnapshot(float[] confidences) {
+		Word[] words = {new Word("<sil>", new Pronunciation[0], true),
+				new Word("caf\u00e9 \"x\"\n", new Pronunciation[0], false)};
+		return new ResultSnapshot(true, 42, words, new int[] {0, 10}, new int[] {10, 42},
+				new float[] {-12.5f, -1234567.25f}, confidences);
+	}
+
+
+	@Test
+	public void testBinary() throws Exception {
+		ResultSnapshotEncoder encoder = new ResultSnapshotEncoder();
+		ResultSnapshot snapshot = createSnapshot(new float[] {0.5f, 0.25f});
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		encoder.writeBinary(snapshot, out);
+		encoder.writeBinary(createSnapshot(null), out);
+
+		ByteBuffer in = ByteBuffer.wrap(out.toByteArray());
+		ResultSnapshot decoded = ResultSnapshotEncoder.decodeBinary(in);
+		assertTrue(decoded.isFinal());
+		assertEquals(42, decoded.getFrameNumber());
+		assertEquals(2, decoded.size());
+		for (int i = 0; i < 2; i++) {
+			assertEquals(snapshot.getWord(i).getSpelling(), decoded.getWord(i).getSpelling());
+			assertEquals(snapshot.getWord(i).isFiller(), decoded.getWord(i).isFiller());
+			assertEquals(snapshot.getStartFrame(i), decoded.getStartFrame(i));
+			assertEquals(snapshot.getEndFrame(i), decoded.getEndFrame(i));
+			assertEquals(snapshot.getScore(i), decoded.getScore(i), 0);
+			assertEquals(snapshot.getConfidence(i), decoded.getConfidence(i), 0);
+		}
+
+		assertFalse(ResultSnapshotEncoder.decodeBinary(in).hasConfidences());
+		assertFalse(in.hasRemaining());
+	}
+
+
+	@Test
+	public void testJson() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new ResultSnapshotEncoder().writeJson(createSnapshot(new float[] {1.0f, 0.0001f}), out);
+		assertEquals("{\"final\":true,\"frame\":42,\"words\":["
+				+ "{\"word\":\"<sil>\",\"filler\":true,\"start\":0,\"end\":10,\"score\":-12.5,\"confidence\":1},"
+				+ "{\"word\":\"caf\u00e9 \\\"x\\\"\\u000a\",\"filler\":false,\"start\":10,\"end\":42,"
+				+ "\"score\":-1234567.25,\"confidence\":0.0001}]}", out.toString("UTF-8"));
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.result.test;
+
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.result.*;
+import edu.cmu.sphinx.util.LogMath;
+
+/**
+ * Tests the sausage maker against the sausages of the exhaustive pairwise clustering it used before the clusters were
+ * merged through a priority queue. The lattices are generated from a fixed seed; their paths share words over
+ * overlapping time spans, and the edge scores are drawn from a few values so that many cluster pairs tie.
+ */
+public class SausageMakerTest {
+
+	private static final String[][] VOCABULARY = {
+		{"one", "W", "AH", "N"},
+		{"won", "W", "AH", "N"},
+		{"two", "T", "UW"},
+		{"to", "T", "UW"},
+		{"three", "TH", "R", "IY"},
+		{"tree", "T", "R", "IY"},
+		{"four", "F", "AO", "R"},
+		{"for", "F", "AO", "R"},
+	};
+
+	/** The sausages of the exhaustive clustering, one block of lines per lattice */
+	private static final String EXPECTED = "src/test/edu/cmu/sphinx/result/test/sausages.txt";
+
+
+	@Test
+	public void testSausages() throws IOException {
+		String[] expected = readFile(EXPECTED).split("\n\n");
+		assertEquals(8, expected.length);
+		for (int seed = 0; seed < expected.length; seed++) {
+			assertEquals("lattice " + seed, expected[seed] + '\n', describe(makeSausage(seed)));
+		}
+	}
+
+
+	private static String readFile(String fileName) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(fileName));
+		StringBuilder content = new StringBuilder();
+		String line;
+		while ((line = reader.readLine()) != null)
+			content.append(line).append('\n');
+		reader.close();
+		return content.toString();
+	}
+
+
+	/**
+	 * Builds the lattice of the given seed, computes its posteriors and turns it into a sausage.
+	 *
+	 * @param seed the seed of the lattice
+	 * @return the sausage
+	 */
+	public static Sausage makeSausage(int seed) {
+		Lattice lattice = createLattice(seed);
+		lattice.computeNodePosteriors(1.0f);
+		return new SausageMaker(lattice).makeSausage();
+	}
+
+
+	/**
+	 * Creates a lattice from a number of random paths over the same frames. Nodes with the same word and time span are
+	 * shared between the paths.
+	 *
+	 * @param seed the seed of the random paths
+	 * @return the lattice
+	 */
+	public static Lattice createLattice(int seed) {
+		Random random = new Random(seed);
+		UnitManager unitManager = new UnitManager();
+		Word[] words = new Word[VOCABULARY.length];
+		for (int i = 0; i < words.length; i++) {
+			Unit[] units = new Unit[VOCABULARY[i].length - 1];
+			for (int j = 0; j < units.length; j++)
+				units[j] = unitManager.getUnit(VOCABULARY[i][j + 1]);
+			words[i] = new Word(VOCABULARY[i][0],
+					new Pronunciation[] {new TestPronunciation(units)}, false);
+		}
+
+		TestLattice lattice = new TestLattice(new LogMath(1.0001f, true));
+		int numFrames = 40 + random.nextInt(40);
+		Node initialNode = lattice.addNode("<s>", new Word("<s>", new Pronunciation[0], false), 0, 0);
+		Node terminalNode = lattice.addNode("</s>", new Word("</s>", new Pronunciation[0], false),
+				numFrames, numFrames);
+		lattice.setInitialNode(initialNode);
+		lattice.setTerminalNode(terminalNode);
+
+		int numPaths = 3 + random.nextInt(4);
+		for (int path = 0; path < numPaths; path++) {
+			Node previous = initialNode;
+			int frame = 1;
+			while (frame < numFrames) {
+				int end = Math.min(numFrames - 1, frame + 4 + random.nextInt(12));
+				// a few fixed boundaries make the paths share nodes
+				if (random.nextBoolean())
+					end = Math.min(numFrames - 1, (frame / 10 + 1) * 10);
+				Word word = words[random.nextInt(words.length)];
+				String id = word.getSpelling() + '_' + frame + '_' + end;
+				Node node = lattice.getNode(id);
+				if (node == null)
+					node = lattice.addNode(id, word, frame, end);
+				addEdge(lattice, random, previous, node);
+				previous = node;
+				frame = end + 1;
+			}
+			addEdge(lattice, random, previous, terminalNode);
+		}
+		return lattice;
+	}
+
+
+	private static void addEdge(Lattice lattice, Random random, Node from, Node to) {
+		if (from.getEdgeToNode(to) == null)
+			lattice.addEdge(from, to, -1000 * (1 + random.nextInt(3)), -500 * random.nextInt(2));
+	}
+
+
+	/**
+	 * Describes a sausage by the words of each slot, with their time span and posterior.
+	 *
+	 * @param sausage the sausage
+	 * @return one line per slot
+	 */
+	public static String describe(Sausage sausage) {
+		StringBuilder description = new StringBuilder();
+		for (ConfusionSet set : sausage) {
+			List<String> hypotheses = new ArrayList<String>();
+			for (Map.Entry<Double, Set<WordResult>> entry : set.entrySet()) {
+				for (WordResult word : entry.getValue()) {
+					String[] fields = word.toString().split(" ");
+					hypotheses.add(String.format(Locale.US, "%s/%s-%s=%.1f",
+							fields[0], fields[1], fields[2], entry.getKey()));
+				}
+			}
+			Collections.sort(hypotheses);
+			for (int i = 0; i < hypotheses.size(); i++)
+				description.append(i == 0 ? "" : " ").append(hypotheses.get(i));
+			description.append('\n');
+		}
+		return description.toString();
+	}
+
+
+	/** Gives access to the nodes with chosen ids, so that the node order does not depend on other tests */
+	private static class TestLattice extends Lattice {
+
+		TestLattice(LogMath logMath) {
+			super(logMath);
+		}
+
+
+		@Override
+		protected Node addNode(String id, Word word, int beginTime, int endTime) {
+			return super.addNode(id, word, beginTime, endTime);
+		}
+
+
+		@Override
+		protected Node getNode(String id) {
+			return super.getNode(id);
+		}
+	}
+
+
+	private static class TestPronunciation extends Pronunciation {
+
+		TestPronunciation(Unit[] units) {
+			super(units, null, null, 1.0f);
+		}
+	}
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.result.test;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.decoder.pruner.SimplePruner;
+import edu.cmu.sphinx.decoder.scorer.AcousticScorer;
+import edu.cmu.sphinx.decoder.scorer.ScoreProvider;
+import edu.cmu.sphinx.decoder.scorer.Scoreable;
+import edu.cmu.sphinx.decoder.search.ActiveListFactory;
+import edu.cmu.sphinx.decoder.search.SimpleActiveListFactory;
+import edu.cmu.sphinx.decoder.search.SimpleActiveListManager;
+import edu.cmu.sphinx.decoder.search.WordExitLog;
+import edu.cmu.sphinx.decoder.search.WordPruningBreadthFirstSearchManager;
+import edu.cmu.sphinx.frontend.Data;
+import edu.cmu.sphinx.frontend.DataEndSignal;
+import edu.cmu.sphinx.linguist.*;
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.result.*;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.PropertySheet;
+
+/**
+ * Tests that the lattice built from the word exit log of a search has the same nodes and edges as the lattice built
+ * from its tokens and alternate predecessors. Both lattices are built from the same result of a small search over a
+ * word loop, whose states are scored from a fixed seed.
+ * <p/>
+ * The token lattice gives the edges of the paths which lost at a word state the scores of the winning path into the
+ * state, so all arcs into a word state carry the same scores here. The token lattice also leaves the terminal node
+ * without a time, so the terminal nodes are compared by their word only.
+ */
+public class WordExitLatticeTest {
+
+	/** The words and their pronunciations, all pronunciations of a word lead to the same word state */
+	private static final String[][] WORDS = {
+		{"one", "W AH N", "HH W AH N"},
+		{"two", "T UW"},
+		{"to", "T UW", "T AH", "T IH"},
+		{"the", "DH AH", "DH IY"},
+	};
+
+	private static final int NUM_FRAMES = 50;
+
+	private static final int LONG_NUM_FRAMES = 1000;
+
+
+	@Test
+	public void testLattices() {
+		for (int seed = 0; seed < 5; seed++) {
+			Result result = decode(seed, NUM_FRAMES, 0);
+			assertTrue(result.isFinal());
+			assertNotNull(result.getWordExitLog());
+			assertNotNull(result.getBestFinalToken());
+
+			Lattice fromLog = new Lattice(result);
+			result.setWordExitLog(null);
+			Lattice fromTokens = new Lattice(result);
+
+			List<String> nodes = describeNodes(fromTokens);
+			List<String> edges = describeEdges(fromTokens);
+			assertEquals("seed " + seed, nodes, describeNodes(fromLog));
+			assertEquals("seed " + seed, edges, describeEdges(fromLog));
+			assertEquals("<s>@0", describe(fromLog, fromLog.getInitialNode()));
+			assertEquals("</s>", describe(fromLog, fromLog.getTerminalNode()));
+
+			// the search kept alternatives, not just the best path
+			assertTrue("seed " + seed, edges.size() > 2 * nodes.size());
+		}
+	}
+
+
+	@Test
+	public void testCommittedLattices() {
+		for (int seed = 0; seed < 5; seed++) {
+			Result result = decode(seed, LONG_NUM_FRAMES, 10);
+			assertTrue(result.isFinal());
+			WordExitLog log = result.getWordExitLog();
+
+			Lattice fromLog = new Lattice(result);
+			result.setWordExitLog(null);
+			Lattice fromTokens = new Lattice(result);
+			assertEquals("seed " + seed, describeNodes(fromTokens), describeNodes(fromLog));
+			assertEquals("seed " + seed, describeEdges(fromTokens), describeEdges(fromLog));
+
+			// the lattices start at the last commit point, and the log
+			// only holds the exits since
+			assertFalse(fromLog.getInitialNode().getWord().isSentenceStartWord());
+			assertTrue("seed " + seed, fromLog.getInitialNode().getEndTime() > LONG_NUM_FRAMES - 100);
+			assertEquals(fromLog.getInitialNode().getEndTime(), log.getFrame(0));
+			assertEquals(-1, log.getPredecessor(0));
+			assertTrue("seed " + seed, log.getExitCount() < getExitCount(seed, LONG_NUM_FRAMES) / 10);
+		}
+	}
+
+
+	/** @return the number of exits logged by the search without committing */
+	private static int getExitCount(int seed, int numFrames) {
+		return decode(seed, numFrames, 0).getWordExitLog().getExitCount();
+	}
+
+
+	/**
+	 * Runs the search over the word loop with both the alternate predecessors and the word exit log kept.
+	 *
+	 * @param seed           the seed of the state scores
+	 * @param numFrames      the number of frames
+	 * @param commitInterval the number of frames between the commits, or 0 to recognize all frames at once
+	 * @return the final result
+	 */
+	private static Result decode(int seed, int numFrames, int commitInterval) {
+		LogMath logMath = new LogMath(1.0001f, true);
+		List<ActiveListFactory> factories = Arrays.<ActiveListFactory>asList(
+				new SimpleActiveListFactory(1000, 1E-80, logMath),
+				new SimpleActiveListFactory(1000, 1E-80, logMath),
+				new SimpleActiveListFactory(100, 1E-80, logMath));
+		WordPruningBreadthFirstSearchManager searchManager = new WordPruningBreadthFirstSearchManager(logMath,
+				new LoopLinguist(), new SimplePruner(), new SeededScorer(seed, numFrames),
+				new SimpleActiveListManager(factories, false), false, 1E-80, 0, false, true, 100, 0.0f, false,
+				commitInterval, true, null);
+
+		searchManager.allocate();
+		searchManager.startRecognition();
+		Result result;
+		if (commitInterval == 0) {
+			result = searchManager.recognize(numFrames + 1);
+		} else {
+			do {
+				result = searchManager.recognize(5);
+			} while (!result.isFinal());
+		}
+		searchManager.stopRecognition();
+		searchManager.deallocate();
+		return result;
+	}
+
+
+	private static List<String> describeNodes(Lattice lattice) {
+		List<String> nodes = new ArrayList<String>();
+		for (Node node : lattice.getNodes())
+			nodes.add(describe(lattice, node));
+		Collections.sort(nodes);
+		return nodes;
+	}
+
+
+	private static List<String> describeEdges(Lattice lattice) {
+		List<String> edges = new ArrayList<String>();
+		for (Edge edge : lattice.getEdges()) {
+			edges.add(String.format(Locale.US, "%s %s %.0f %.0f", describe(lattice, edge.getFromNode()),
+					describe(lattice, edge.getToNode()), edge.getAcousticScore(), edge.getLMScore()));
+		}
+		Collections.sort(edges);
+		return edges;
+	}
+
+
+	private static String describe(Lattice lattice, Node node) {
+		if (node == lattice.getTerminalNode())
+			return node.getWord().getSpelling();
+		return node.getWord().getSpelling() + '@' + node.getEndTime();
+	}
+
+
+	/**
+	 * A loop over the words, each pronunciation a chain of emitting states with self loops followed by the word state. The word
+	 * states come after their units as in the lex tree, and the sentence end is the final state.
+	 */
+	private static class LoopLinguist implements Linguist, SearchGraph {
+
+		private final State initialState;
+
+
+		LoopLinguist() {
+			List<Arc> wordStarts = new ArrayList<Arc>();
+			List<State> wordEnds = new ArrayList<State>();
+			int id = 0;
+			for (int i = 0; i < WORDS.length; i++) {
+				State word = new WordState(WORDS[i][0], 0);
+				for (int j = 1; j < WORDS[i].length; j++) {
+					State previous = null;
+					for (String unitName : WORDS[i][j].split(" ")) {
+						State unit = new UnitState(++id);
+						unit.arcs.add(new Arc(unit, 0, -200));
+						if (previous == null)
+							wordStarts.add(new Arc(unit, -100 * (i + 1), -300));
+						else
+							previous.arcs.add(new Arc(unit, 0, -100));
+						previous = unit;
+					}
+					previous.arcs.add(new Arc(word, -10 * i, 0));
+				}
+				wordEnds.add(word);
+			}
+
+			State sentenceEnd = new WordState("</s>", 1);
+			initialState = new WordState("<s>", 0);
+			initialState.arcs.addAll(wordStarts);
+			for (State word : wordEnds) {
+				word.arcs.addAll(wordStarts);
+				word.arcs.add(new Arc(sentenceEnd, -50, 0));
+			}
+		}
+
+
+		public void newProperties(PropertySheet ps) {
+		}
+
+
+		public SearchGraph getSearchGraph() {
+			return this;
+		}
+
+
+		public void startRecognition() {
+		}
+
+
+		public void stopRecognition() {
+		}
+
+
+		public void allocate() {
+		}
+
+
+		public void deallocate() {
+		}
+
+
+		public SearchState getInitialState() {
+			return initialState;
+		}
+
+
+		public int getNumStateOrder() {
+			return 3;
+		}
+	}
+
+
+	/** Scores each emitting state in each frame with a score drawn from the seed, the state and the frame. */
+	private static class SeededScorer implements AcousticScorer {
+
+		private final int seed;
+		private final int numFrames;
+		private int frame;
+
+
+		SeededScorer(int seed, int numFrames) {
+			this.seed = seed;
+			this.numFrames = numFrames;
+		}
+
+
+		public void newProperties(PropertySheet ps) {
+		}
+
+
+		public void allocate() {
+		}
+
+
+		public void deallocate() {
+		}
+
+
+		public void startRecognition() {
+			frame = 0;
+		}
+
+
+		public void stopRecognition() {
+		}
+
+
+		public Data calculateScores(List<? extends Scoreable> scoreableList) {
+			if (frame == numFrames)
+				return new DataEndSignal(0);
+
+			Data data = new Frame(seed, frame++);
+			Scoreable best = null;
+			for (Scoreable scoreable : scoreableList) {
+				scoreable.calculateScore(data);
+				if (best == null || scoreable.getScore() > best.getScore())
+					best = scoreable;
+			}
+			return best;
+		}
+	}
+
+
+	private static class Frame implements Data {
+
+		final int seed;
+		final int frame;
+
+
+		Frame(int seed, int frame) {
+			this.seed = seed;
+			this.frame = frame;
+		}
+	}
+
+
+	private static class Arc implements SearchStateArc {
+
+		private final SearchState state;
+		private final float languageProbability;
+		private final float insertionProbability;
+
+
+		Arc(SearchState state, float languageProbability, float insertionProbability) {
+			this.state = state;
+			this.languageProbability = languageProbability;
+			this.insertionProbability = insertionProbability;
+		}
+
+
+		public SearchState getState() {
+			return state;
+		}
+
+
+		public float getProbability() {
+			return languageProbability + insertionProbability;
+		}
+
+
+		public float getLanguageProbability() {
+			return languageProbability;
+		}
+
+
+		public float getInsertionProbability() {
+			return insertionProbability;
+		}
+	}
+
+
+	private static class State implements SearchState {
+
+		final List<Arc> arcs = new ArrayList<Arc>();
+		private final int order;
+
+
+		State(int order) {
+			this.order = order;
+		}
+
+
+		public SearchStateArc[] getSuccessors() {
+			return arcs.toArray(new SearchStateArc[arcs.size()]);
+		}
+
+
+		public boolean isEmitting() {
+			return false;
+		}
+
+
+		public boolean isFinal() {
+			return false;
+		}
+
+
+		public String toPrettyString() {
+			return toString();
+		}
+
+
+		public String getSignature() {
+			return toString();
+		}
+
+
+		public WordSequence getWordHistory() {
+			return null;
+		}
+
+
+		public Object getLexState() {
+			return null;
+		}
+
+
+		public int getOrder() {
+			return order;
+		}
+	}
+
+
+	/** An emitting state, scored by the frames */
+	private static class UnitState extends State implements ScoreProvider {
+
+		private final int id;
+
+
+		UnitState(int id) {
+			super(2);
+			this.id = id;
+		}
+
+
+		public float getScore(Data data) {
+			Frame frame = (Frame) data;
+			return -new Random(frame.seed * 1000003L + frame.frame * 1009L + id).nextInt(3000);
+		}
+
+
+		@Override
+		public boolean isEmitting() {
+			return true;
+		}
+	}
+
+
+	private static class WordState extends State implements WordSearchState {
+
+		private final TestPronunciation pronunciation = new TestPronunciation();
+
+
+		WordState(String spelling, int order) {
+			super(order);
+			pronunciation.attach(new Word(spelling, new Pronunciation[] {pronunciation}, false));
+		}
+
+
+		public Pronunciation getPronunciation() {
+			return pronunciation;
+		}
+
+
+		public boolean isWordStart() {
+			return false;
+		}
+
+
+		@Override
+		public boolean isFinal() {
+			return pronunciation.getWord().isSentenceEndWord();
+		}
+	}
+
+
+	private static class TestPronunciation extends Pronunciation {
+
+		TestPronunciation() {
+			super(Unit.EMPTY_ARRAY, null, null, 1.0f);
+		}
+
+
+		void attach(Word word) {
+			setWord(word);
+		}
+	}
+}
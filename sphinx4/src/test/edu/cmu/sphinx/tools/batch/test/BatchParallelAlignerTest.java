@@ -0,0 +1,208 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.tools.batch.test;
+
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.linguist.SearchStateArc;
+import edu.cmu.sphinx.linguist.UnitSearchState;
+import edu.cmu.sphinx.linguist.WordSearchState;
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.acoustic.Unit;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.dictionary.Pronunciation;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.tools.batch.BatchParallelAligner;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests the word and phone timings of the batch aligner on hand-built token chains in the order of the flat linguist:
+ * each word state followed by the unit states of its pronunciation and their emitting states.
+ */
+public class BatchParallelAlignerTest {
+
+    private final UnitManager unitManager = new UnitManager();
+
+
+    @Test
+    public void testFormatAlignment() {
+        Token token = new Token(new WordState("<s>"), 0);
+        token = unit(token, "SIL", 0, 10);
+        token = token(token, new WordState("one"), 10);
+        token = unit(token, "W", 10, 15);
+        token = unit(token, "AH", 15, 22);
+        token = unit(token, "N", 22, 30);
+        token = token(token, new WordState("two"), 30);
+        token = unit(token, "T", 30, 34);
+        token = unit(token, "UW", 34, 45);
+        token = token(token, new WordState("</s>"), 45);
+        token = unit(token, "SIL", 45, 51);
+
+        assertEquals("utt word 0.00 0.10 <s>\n"
+                + "utt phone 0.00 0.10 SIL\n"
+                + "utt word 0.10 0.30 one\n"
+                + "utt phone 0.10 0.15 W\n"
+                + "utt phone 0.15 0.22 AH\n"
+                + "utt phone 0.22 0.30 N\n"
+                + "utt word 0.30 0.45 two\n"
+                + "utt phone 0.30 0.34 T\n"
+                + "utt phone 0.34 0.45 UW\n"
+                + "utt word 0.45 0.50 </s>\n"
+                + "utt phone 0.45 0.50 SIL\n",
+                BatchParallelAligner.formatAlignment("utt", token));
+    }
+
+
+    @Test
+    public void testFinalWord() {
+        // the path ends on a word state without units, the last phone
+        // of the previous word ends there
+        Token token = new Token(new WordState("<s>"), 0);
+        token = token(token, new WordState("one"), 0);
+        token = unit(token, "W", 0, 4);
+        token = unit(token, "AH", 4, 12);
+        token = unit(token, "N", 12, 21);
+        token = token(token, new WordState("</s>"), 20);
+
+        assertEquals("utt word 0.00 0.00 <s>\n"
+                + "utt word 0.00 0.20 one\n"
+                + "utt phone 0.00 0.04 W\n"
+                + "utt phone 0.04 0.12 AH\n"
+                + "utt phone 0.12 0.20 N\n"
+                + "utt word 0.20 0.20 </s>\n",
+                BatchParallelAligner.formatAlignment("utt", token));
+
+        assertEquals("", BatchParallelAligner.formatAlignment("utt", new Token(new State(), 0)));
+    }
+
+
+    /**
+     * Appends a unit to a chain: the unit state in the start frame followed by an emitting state in each frame up to
+     * the end frame.
+     */
+    private Token unit(Token predecessor, String name, int startFrame, int endFrame) {
+        Token token = token(predecessor, new UnitState(unitManager.getUnit(name, name.equals("SIL"))), startFrame);
+        for (int frame = startFrame + 1; frame < endFrame; frame++) {
+            token = token(token, new State(), frame);
+        }
+        return token;
+    }
+
+
+    private static Token token(Token predecessor, SearchState state, int frame) {
+        return new Token(predecessor, state, 0, 0, 0, frame);
+    }
+
+
+    private static class State implements SearchState {
+
+        public SearchStateArc[] getSuccessors() {
+            return new SearchStateArc[0];
+        }
+
+
+        public boolean isEmitting() {
+            return true;
+        }
+
+
+        public boolean isFinal() {
+            return false;
+        }
+
+
+        public String toPrettyString() {
+            return toString();
+        }
+
+
+        public String getSignature() {
+            return toString();
+        }
+
+
+        public WordSequence getWordHistory() {
+            return null;
+        }
+
+
+        public Object getLexState() {
+            return null;
+        }
+
+
+        public int getOrder() {
+            return 0;
+        }
+    }
+
+
+    private static class UnitState extends State implements UnitSearchState {
+
+        private final Unit unit;
+
+
+        UnitState(Unit unit) {
+            this.unit = unit;
+        }
+
+
+        public Unit getUnit() {
+            return unit;
+        }
+
+
+        @Override
+        public boolean isEmitting() {
+            return false;
+        }
+    }
+
+
+    private static class WordState extends State implements WordSearchState {
+
+        private final TestPronunciation pronunciation = new TestPronunciation();
+
+
+        WordState(String spelling) {
+            pronunciation.attach(new Word(spelling, new Pronunciation[]{pronunciation}, false));
+        }
+
+
+        public Pronunciation getPronunciation() {
+            return pronunciation;
+        }
+
+
+        public boolean isWordStart() {
+            return true;
+        }
+
+
+        @Override
+        public boolean isEmitting() {
+            return false;
+        }
+    }
+
+
+    private static class TestPronunciation extends Pronunciation {
+
+        TestPronunciation() {
+            super(Unit.EMPTY_ARRAY, null, null, 1.0f);
+        }
+
+
+        void attach(Word word) {
+            setWord(word);
+        }
+    }
+}
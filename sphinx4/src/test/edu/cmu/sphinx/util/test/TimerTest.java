@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+package edu.cmu.sphinx.util.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.cmu.sphinx.util.Timer;
+import edu.cmu.sphinx.util.TimerPool;
+
+public class TimerTest {
+
+	@Test
+	public void testTimes() throws InterruptedException {
+		Timer timer = TimerPool.getTimer(this, "sleep");
+		assertSame(timer, TimerPool.getTimer(this, "sleep"));
+		for (int i = 0; i < 3; i++) {
+			timer.start();
+			assertTrue(timer.isStarted());
+			Thread.sleep(2);
+			timer.stop();
+			assertFalse(timer.isStarted());
+		}
+
+		// a stop without a start is not counted
+		assertEquals(0, timer.stop(false));
+		assertEquals(3, timer.getCount());
+		assertTrue(timer.getMinTime() >= 2);
+		assertTrue(timer.getAverageTime() >= 2.0);
+		assertEquals(3 * timer.getAverageTime(), timer.getTotalTime(), 1E-6);
+		assertTrue(timer.getPercentile(50) >= timer.getMinTime());
+		assertTrue(timer.getPercentile(99) <= timer.getMaxTime() + 1);
+
+		timer.reset();
+		assertEquals(0, timer.getCount());
+		assertEquals(0.0, timer.getPercentile(50), 0.0);
+	}
+
+	@Test
+	public void testShortTimes() {
+		Timer timer = TimerPool.getTimer(this, "short");
+		for (int i = 0; i < 1000; i++) {
+			timer.start();
+			timer.stop();
+		}
+		assertEquals(1000, timer.getCount());
+		// much shorter than a millisecond, but measured
+		assertTrue(timer.getTotalTime() > 0.0);
+		assertTrue(timer.getPercentile(50) < 1.0);
+	}
+
+	@Test
+	public void testThreads() throws InterruptedException {
+		final Timer timer = TimerPool.getTimer(this, "threads");
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 100; j++) {
+						timer.start();
+						timer.stop();
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(400, timer.getCount());
+	}
+
+	@Test
+	public void testEndedThreads() throws InterruptedException {
+		final Timer timer = TimerPool.getTimer(this, "ended");
+		// one short-lived thread after the other, as the workers of
+		// pools created for each task
+		for (int i = 0; i < 50; i++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 10; j++) {
+						timer.start();
+						timer.stop();
+					}
+				}
+			};
+			thread.start();
+			thread.join();
+			assertEquals(10 * (i + 1), timer.getCount());
+		}
+
+		// the times of the ended threads are reset as well
+		timer.reset();
+		assertEquals(0, timer.getCount());
+		timer.start();
+		timer.stop();
+		assertEquals(1, timer.getCount());
+	}
+}
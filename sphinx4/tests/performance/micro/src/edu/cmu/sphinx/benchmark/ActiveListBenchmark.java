@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.benchmark;
+
+import edu.cmu.sphinx.decoder.search.ActiveList;
+import edu.cmu.sphinx.decoder.search.ActiveListFactory;
+import edu.cmu.sphinx.decoder.search.Token;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.linguist.WordSearchState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fills an active list with tokens and purges it, as the search does in each frame. The tokens are in the states of
+ * the lex tree, in the word states for the word active lists, and their scores are spread over twice the relative
+ * beam.
+ */
+public class ActiveListBenchmark extends Benchmark {
+
+    /** The number of tokens added to a list */
+    private final static int NUM_TOKENS = 5000;
+
+    private final String factoryName;
+    private ActiveListFactory factory;
+    private Token[] tokens;
+
+
+    /** @param factoryName the name of the active list factory in the configuration */
+    public ActiveListBenchmark(String factoryName) {
+        super(factoryName + ".purge");
+        this.factoryName = factoryName;
+    }
+
+
+    @Override
+    public void setUp(Fixture fixture) throws Exception {
+        factory = (ActiveListFactory) fixture.lookup(factoryName);
+        boolean wordStates = factoryName.startsWith("word");
+        List<SearchState> states = new ArrayList<SearchState>();
+        for (SearchState state : fixture.getSearchStates()) {
+            if (!wordStates || state instanceof WordSearchState) {
+                states.add(state);
+            }
+        }
+
+        float beam = fixture.getLogMath().linearToLog(1E-80);
+        Random random = new Random(1);
+        tokens = new Token[NUM_TOKENS];
+        for (int i = 0; i < tokens.length; i++) {
+            float score = 2 * beam * random.nextFloat();
+            tokens[i] = new Token(null, states.get(i % states.size()), score, 0.0f, 0.0f, 0);
+        }
+    }
+
+
+    @Override
+    public double run(int operations) {
+        int size = 0;
+        for (int i = 0; i < operations; i++) {
+            ActiveList activeList = factory.newInstance();
+            for (Token token : tokens) {
+                activeList.add(token);
+            }
+            size += activeList.purge().size();
+        }
+        return size;
+    }
+}
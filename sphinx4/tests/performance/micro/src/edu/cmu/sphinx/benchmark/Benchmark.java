@@ -0,0 +1,60 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.benchmark;
+
+/**
+ * A microbenchmark of an operation. The {@link BenchmarkRunner} sets the benchmark up once, then calls {@link
+ * #run(int)} repeatedly, first to warm the JIT compiler up, then to measure the average time of the operation.
+ * <p/>
+ * The operations are run in a loop by the benchmark itself, so that the timer is read once for many fast operations.
+ * The loop should combine the results of the operations into its return value, otherwise the JIT compiler could remove
+ * them as dead code.
+ */
+public abstract class Benchmark {
+
+    private final String name;
+
+
+    /**
+     * Creates a benchmark
+     *
+     * @param name the name of the benchmark, as selected on the command line
+     */
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+
+    /** @return the name of the benchmark */
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Prepares the data of the operations. The time it takes is not measured.
+     *
+     * @param fixture the models and the data shared by the benchmarks
+     * @throws Exception if the benchmark cannot be prepared
+     */
+    public void setUp(Fixture fixture) throws Exception {
+    }
+
+
+    /**
+     * Runs the measured operation.
+     *
+     * @param operations the number of times to run the operation
+     * @return a value depending on the results of all the operations
+     * @throws Exception if an operation fails
+     */
+    public abstract double run(int operations) throws Exception;
+}
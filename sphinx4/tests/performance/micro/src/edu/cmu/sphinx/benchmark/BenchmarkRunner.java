@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the microbenchmarks of the decoder hot paths and prints the average time of their operations.
+ * <p/>
+ * Each benchmark is warmed up for a number of iterations, whose times are discarded, then measured for a number of
+ * iterations. An iteration runs the operation in batches until its time is over. The score is the mean of the
+ * average times of the measured iterations, with their standard deviation as the error.
+ * <p/>
+ * Usage: BenchmarkRunner [config] [regexp...]
+ * <p/>
+ * where the regular expressions select the benchmarks to run by name, all of them by default. The number of warmup
+ * and measured iterations and the duration of an iteration are set by the system properties warmupIterations,
+ * iterations and iterationTime, in milliseconds.
+ */
+public class BenchmarkRunner {
+
+    /** The minimum duration of a batch of operations, long enough to make the timer resolution negligible */
+    private final static long MIN_BATCH_NANOS = 10000000L;
+
+    private final int warmupIterations;
+    private final int iterations;
+    private final long iterationNanos;
+
+    // keeps the results of the operations alive
+    private volatile double sink;
+
+
+    public BenchmarkRunner(int warmupIterations, int iterations, long iterationTime) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = iterations;
+        this.iterationNanos = iterationTime * 1000000L;
+    }
+
+
+    /** @return all the benchmarks */
+    public static List<Benchmark> getBenchmarks() {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        benchmarks.add(new MixtureComponentBenchmark());
+        benchmarks.add(new GaussianMixtureBenchmark());
+        benchmarks.add(new LogMathBenchmark());
+        for (String processor : new String[]{"fft", "melFilterBank", "dct", "featureExtraction"}) {
+            benchmarks.add(new DataProcessorBenchmark(processor));
+        }
+        for (String factory : new String[]{"partitionActiveList", "sortingActiveList", "simpleActiveList",
+                "wordActiveList"}) {
+            benchmarks.add(new ActiveListBenchmark(factory));
+        }
+        benchmarks.add(new LargeNGramModelBenchmark());
+        benchmarks.add(new LexTreeLinguistBenchmark());
+        benchmarks.add(new LatticeBenchmark());
+        return benchmarks;
+    }
+
+
+    /**
+     * Runs a benchmark and prints its score.
+     *
+     * @param benchmark the benchmark
+     * @param fixture   the data of the benchmarks
+     */
+    public void run(Benchmark benchmark, Fixture fixture) throws Exception {
+        benchmark.setUp(fixture);
+
+        // finds a batch of operations long enough to be timed
+        int batchSize = 1;
+        while (batchSize < Integer.MAX_VALUE / 2 && timeBatch(benchmark, batchSize) < MIN_BATCH_NANOS) {
+            batchSize *= 2;
+        }
+
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(benchmark, batchSize);
+        }
+        double[] scores = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            scores[i] = runIteration(benchmark, batchSize);
+        }
+
+        double mean = 0;
+        for (double score : scores) {
+            mean += score;
+        }
+        mean /= scores.length;
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        double error = scores.length > 1 ? Math.sqrt(variance / (scores.length - 1)) : Double.NaN;
+        System.out.println(String.format(Locale.US, "%-40s %5d %14.3f +- %10.3f  ns/op",
+                benchmark.getName(), scores.length, mean, error));
+    }
+
+
+    /** @return the average time of an operation during the iteration, in nanoseconds */
+    private double runIteration(Benchmark benchmark, int batchSize) throws Exception {
+        long operations = 0;
+        long time = 0;
+        while (time < iterationNanos) {
+            time += timeBatch(benchmark, batchSize);
+            operations += batchSize;
+        }
+        return (double) time / operations;
+    }
+
+
+    /** @return the time of a batch, in nanoseconds */
+    private long timeBatch(Benchmark benchmark, int batchSize) throws Exception {
+        long start = System.nanoTime();
+        double result = benchmark.run(batchSize);
+        long time = System.nanoTime() - start;
+        sink += result;
+        return time;
+    }
+
+
+    public static void main(String[] argv) throws Exception {
+        String config = "micro.config.xml";
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String arg : argv) {
+            if (arg.endsWith(".xml")) {
+                config = arg;
+            } else {
+                patterns.add(Pattern.compile(arg));
+            }
+        }
+
+        BenchmarkRunner runner = new BenchmarkRunner(Integer.getInteger("warmupIterations", 5),
+                Integer.getInteger("iterations", 5), Long.getLong("iterationTime", 1000));
+        Fixture fixture = new Fixture(new File(config).toURI().toURL());
+
+        System.out.println(String.format(Locale.US, "%-40s %5s %14s    %10s  %s",
+                "Benchmark", "Cnt", "Score", "Error", "Units"));
+        for (Benchmark benchmark : getBenchmarks()) {
+            boolean selected = patterns.isEmpty();
+            for (Pattern pattern : patterns) {
+                selected |= pattern.matcher(benchmark.getName()).find();
+            }
+            if (selected) {
+                runner.run(benchmark, fixture);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.benchmark;
+
+import edu.cmu.sphinx.frontend.BaseDataProcessor;
+import edu.cmu.sphinx.frontend.Data;
+import edu.cmu.sphinx.frontend.DataProcessor;
+import edu.cmu.sphinx.frontend.DataStartSignal;
+
+import java.util.List;
+
+/**
+ * Processes the frames of the audio file with a front end processor. The processor reads the frames its predecessor
+ * produced from the audio file, again and again, so that only its own processing is measured.
+ */
+public class DataProcessorBenchmark extends Benchmark {
+
+    private final String processorName;
+    private DataProcessor processor;
+
+
+    /** @param processorName the name of the processor in the front end of the configuration */
+    public DataProcessorBenchmark(String processorName) {
+        super(processorName + ".getData");
+        this.processorName = processorName;
+    }
+
+
+    @Override
+    public void setUp(Fixture fixture) {
+        processor = (DataProcessor) fixture.lookup(processorName);
+        String predecessorName = ((BaseDataProcessor) processor.getPredecessor()).getName();
+        processor.setPredecessor(new ReplayDataSource(fixture.getOutput(predecessorName)));
+        processor.initialize();
+    }
+
+
+    @Override
+    public double run(int operations) {
+        int count = 0;
+        for (int i = 0; i < operations; i++) {
+            if (processor.getData() != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    /** Replays frames endlessly, after a data start signal */
+    private static class ReplayDataSource extends BaseDataProcessor {
+
+        private final Data[] frames;
+        private int next = -1;
+
+
+        ReplayDataSource(List<Data> frames) {
+            this.frames = frames.toArray(new Data[frames.size()]);
+        }
+
+
+        @Override
+        public Data getData() {
+            if (next < 0) {
+                next = 0;
+                return new DataStartSignal(16000);
+            }
+            Data frame = frames[next];
+            next = (next + 1) % frames.length;
+            return frame;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.benchmark;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.frontend.util.AudioFileDataSource;
+import edu.cmu.sphinx.linguist.SearchState;
+import edu.cmu.sphinx.linguist.SearchStateArc;
+import edu.cmu.sphinx.linguist.lextree.LexTreeLinguist;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.ConfigurationManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * The models and the data shared by the benchmarks. The components are configured in the benchmark configuration
+ * file. The outputs of the front end processors are computed from the audio file of the configuration before any
+ * benchmark runs, since the front end benchmarks take the processors out of the front end.
+ */
+public class Fixture {
+
+    /** The processors whose outputs are kept */
+    private final static String[] PROCESSORS = {"windower", "fft", "melFilterBank", "dct", "batchCMN",
+            "featureExtraction"};
+
+    /** The maximum number of search states kept */
+    private final static int MAX_SEARCH_STATES = 20000;
+
+    private final ConfigurationManager cm;
+    private final Map<String, List<Data>> outputs = new HashMap<String, List<Data>>();
+    private List<SearchState> searchStates;
+
+
+    /**
+     * Loads the configuration and runs the front end on the audio file of the configuration.
+     *
+     * @param config the configuration file
+     */
+    public Fixture(URL config) throws IOException {
+        cm = new ConfigurationManager(config);
+        FrontEnd frontEnd = (FrontEnd) cm.lookup("mfcFrontEnd");
+        AudioFileDataSource dataSource = (AudioFileDataSource) cm.lookup("audioFileDataSource");
+        File audioFile = new File(cm.getGlobalProperty("audioFile"));
+        if (!audioFile.exists()) {
+            throw new IOException("Can't find the audio file " + audioFile);
+        }
+        for (String name : PROCESSORS) {
+            DataProcessor processor = null;
+            for (DataProcessor element : frontEnd.getElements()) {
+                if (element == cm.lookup(name)) {
+                    processor = element;
+                }
+            }
+            if (processor == null) {
+                throw new IllegalStateException(name + " is not in the front end");
+            }
+            dataSource.setAudioFile(audioFile, name);
+            List<Data> data = new ArrayList<Data>();
+            Data datum;
+            while (!((datum = processor.getData()) instanceof DataEndSignal)) {
+                if (!(datum instanceof Signal)) {
+                    data.add(datum);
+                }
+            }
+            outputs.put(name, data);
+        }
+    }
+
+
+    /**
+     * Looks a component of the configuration up.
+     *
+     * @param name the name of the component
+     * @return the component
+     */
+    public Object lookup(String name) {
+        return cm.lookup(name);
+    }
+
+
+    /** @return the log math of the models */
+    public LogMath getLogMath() {
+        return (LogMath) cm.lookup("logMath");
+    }
+
+
+    /**
+     * Gets the data a front end processor produced from the audio file.
+     *
+     * @param processorName the name of the processor
+     * @return the data, without the signals
+     */
+    public List<Data> getOutput(String processorName) {
+        List<Data> output = outputs.get(processorName);
+        if (output == null) {
+            throw new IllegalArgumentException("No output kept for " + processorName);
+        }
+        return output;
+    }
+
+
+    /** @return the feature vectors of the audio file */
+    public List<FloatData> getFeatures() {
+        List<FloatData> features = new ArrayList<FloatData>();
+        for (Data data : getOutput("featureExtraction")) {
+            features.add((FloatData) data);
+        }
+        return features;
+    }
+
+
+    /**
+     * Gets the states of the lex tree search graph, in the breadth first order from its initial state. The linguist is
+     * allocated the first time.
+     *
+     * @return the states
+     */
+    public synchronized List<SearchState> getSearchStates() throws IOException {
+        if (searchStates == null) {
+            LexTreeLinguist linguist = getLinguist();
+            linguist.allocate();
+            linguist.startRecognition();
+            searchStates = new ArrayList<SearchState>();
+            Set<String> visited = new HashSet<String>();
+            SearchState initialState = linguist.getSearchGraph().getInitialState();
+            searchStates.add(initialState);
+            visited.add(initialState.getSignature());
+            for (int i = 0; i < searchStates.size() && searchStates.size() < MAX_SEARCH_STATES; i++) {
+                for (SearchStateArc arc : searchStates.get(i).getSuccessors()) {
+                    SearchState state = arc.getState();
+                    if (visited.add(state.getSignature())) {
+                        searchStates.add(state);
+                    }
+                }
+            }
+        }
+        return searchStates;
+    }
+
+
+    /** @return the lex tree linguist of the search states */
+    public LexTreeLinguist getLinguist() {
+        return (LexTreeLinguist) cm.lookup("lexTreeLinguist");
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.benchmark;
+
+import edu.cmu.sphinx.frontend.FloatData;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.GaussianMixture;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Loader;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Pool;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Senone;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.TiedStateAcousticModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scores the feature vectors of the audio file with the mixtures of the senones of the acoustic model. The scores are
+ * calculated, not taken from the cache of the senones.
+ */
+public class GaussianMixtureBenchmark extends Benchmark {
+
+    private GaussianMixture[] mixtures;
+    private FloatData[] features;
+    private int next;
+
+
+    public GaussianMixtureBenchmark() {
+        super("gaussianMixture.calculateScore");
+    }
+
+
+    @Override
+    public void setUp(Fixture fixture) throws Exception {
+        mixtures = getMixtures(fixture);
+        features = fixture.getFeatures().toArray(new FloatData[0]);
+    }
+
+
+    /** Gets the mixtures of the senones of the acoustic model */
+    static GaussianMixture[] getMixtures(Fixture fixture) throws Exception {
+        ((TiedStateAcousticModel) fixture.lookup("acousticModel")).allocate();
+        Pool<Senone> senones = ((Loader) fixture.lookup("sphinx3Loader")).getSenonePool();
+        List<GaussianMixture> mixtures = new ArrayList<GaussianMixture>();
+        for (int i = 0; i < senones.size(); i++) {
+            if (senones.get(i) instanceof GaussianMixture) {
+                mixtures.add((GaussianMixture) senones.get(i));
+            }
+        }
+        return mixtures.toArray(new GaussianMixture[mixtures.size()]);
+    }
+
+
+    @Override
+    public double run(int operations) {
+        float total = 0;
+        for (int i = 0; i < operations; i++) {
+            total += mixtures[next % mixtures.length].calculateScore(features[next % features.length]);
+            next++;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.benchmark;
+
+import edu.cmu.sphinx.linguist.WordSequence;
+import edu.cmu.sphinx.linguist.dictionary.Dictionary;
+import edu.cmu.sphinx.linguist.dictionary.Word;
+import edu.cmu.sphinx.linguist.language.ngram.large.LargeNGramModel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Looks the probabilities of random trigrams of the vocabulary up in a binary trigram model, including the unseen ones
+ * which back off to the bigrams and the unigrams. The model of the configuration has no trigram cache, otherwise the
+ * sequences would all be found in the cache after the warmup and only the cache would be measured, and its dictionary
+ * has all the words of the model, otherwise only the few words of the test dictionary would be looked up.
+ */
+public class LargeNGramModelBenchmark extends Benchmark {
+
+    /** The number of precomputed word sequences, a power of two */
+    private final static int NUM_SEQUENCES = 1 << 16;
+
+    private LargeNGramModel model;
+    private WordSequence[] sequences;
+    private int next;
+
+
+    public LargeNGramModelBenchmark() {
+        super("largeNGramModel.getProbability");
+    }
+
+
+    @Override
+    public void setUp(Fixture fixture) throws Exception {
+        Dictionary dictionary = (Dictionary) fixture.lookup("largeDictionary");
+        dictionary.allocate();
+        model = (LargeNGramModel) fixture.lookup("largeTrigramModel");
+        model.allocate();
+
+        List<Word> words = new ArrayList<Word>();
+        for (String spelling : model.getVocabulary()) {
+            Word word = dictionary.getWord(spelling);
+            if (word != null) {
+                words.add(word);
+            }
+        }
+        Random random = new Random(1);
+        sequences = new WordSequence[NUM_SEQUENCES];
+        for (int i = 0; i < sequences.length; i++) {
+            Word[] trigram = new Word[3];
+            for (int j = 0; j < trigram.length; j++) {
+                trigram[j] = words.get(random.nextInt(words.size()));
+            }
+            sequences[i] = new WordSequence(trigram);
+        }
+    }
+
+
+    @Override
+    public double run(int operations) {
+        float total = 0;
+        for (int i = 0; i < operations; i++) {
+            total += model.getProbability(sequences[next & (NUM_SEQUENCES - 1)]);
+            next++;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.benchmark;
+
+import edu.cmu.sphinx.result.Lattice;
+import edu.cmu.sphinx.result.Node;
+import edu.cmu.sphinx.util.LogMath;
+
+import java.util.Random;
+
+/**
+ * Computes the posteriors of the nodes of a lattice. The lattice has a number of alternative words at each time slot,
+ * and every word is connected to all the words of the next slot.
+ */
+public class LatticeBenchmark extends Benchmark {
+
+    private final static int NUM_SLOTS = 100;
+    private final static int NUM_ALTERNATIVES = 5;
+
+    private Lattice lattice;
+
+
+    public LatticeBenchmark() {
+        super("lattice.computeNodePosteriors");
+    }
+
+
+    @Override
+    public void setUp(Fixture fixture) {
+        LogMath logMath = fixture.getLogMath();
+        Random random = new Random(1);
+        lattice = new Lattice(logMath);
+        Node initialNode = lattice.addNode("start", "<s>", 0, 0);
+        lattice.setInitialNode(initialNode);
+        Node[] previous = {initialNode};
+        for (int slot = 0; slot < NUM_SLOTS; slot++) {
+            Node[] nodes = new Node[NUM_ALTERNATIVES];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = lattice.addNode(slot + "_" + i, "word" + i, slot * 10, slot * 10 + 9);
+                for (Node node : previous) {
+                    lattice.addEdge(node, nodes[i], logMath.lnToLog(-100 * random.nextFloat()),
+                            logMath.lnToLog(-10 * random.nextFloat()));
+                }
+            }
+            previous = nodes;
+        }
+        Node terminalNode = lattice.addNode("end", "</s>", NUM_SLOTS * 10, NUM_SLOTS * 10);
+        lattice.setTerminalNode(terminalNode);
+        for (Node node : previous) {
+            lattice.addEdge(node, terminalNode, 0, 0);
+        }
+    }
+
+
+    @Override
+    public double run(int operations) {
+        double total = 0;
+        for (int i = 0; i < operations; i++) {
+            lattice.computeNodePosteriors(1.0f);
+            total += lattice.getTerminalNode().getPosterior();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.benchmark;
+
+import edu.cmu.sphinx.linguist.SearchState;
+
+import java.util.List;
+
+/**
+ * Expands the successors of the states of the lex tree search graph, in the order of a breadth first search from its
+ * initial state.
+ */
+public class LexTreeLinguistBenchmark extends Benchmark {
+
+    private SearchState[] states;
+    private int next;
+
+
+    public LexTreeLinguistBenchmark() {
+        super("lexTreeLinguist.getSuccessors");
+    }
+
+
+    @Override
+    public void setUp(Fixture fixture) throws Exception {
+        List<SearchState> searchStates = fixture.getSearchStates();
+        states = searchStates.toArray(new SearchState[searchStates.size()]);
+    }
+
+
+    @Override
+    public double run(int operations) {
+        int count = 0;
+        for (int i = 0; i < operations; i++) {
+            count += states[next % states.length].getSuccessors().length;
+            next++;
+        }
+        return count;
+    }
+}
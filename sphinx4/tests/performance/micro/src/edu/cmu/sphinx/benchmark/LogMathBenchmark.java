@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.benchmark;
+
+import edu.cmu.sphinx.util.LogMath;
+
+import java.util.Random;
+
+/**
+ * Adds probabilities in the log domain, as the scoring of the mixtures and the computation of the lattice posteriors
+ * do. The values are spread like the scores of the mixture components.
+ */
+public class LogMathBenchmark extends Benchmark {
+
+    /** The number of precomputed values, a power of two */
+    private final static int NUM_VALUES = 1 << 12;
+
+    private LogMath logMath;
+    private float[] values;
+    private int next;
+
+
+    public LogMathBenchmark() {
+        super("logMath.addAsLinear");
+    }
+
+
+    @Override
+    public void setUp(Fixture fixture) {
+        logMath = fixture.getLogMath();
+        Random random = new Random(1);
+        values = new float[NUM_VALUES];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = logMath.lnToLog(-100 * random.nextFloat());
+        }
+    }
+
+
+    @Override
+    public double run(int operations) {
+        float total = 0;
+        for (int i = 0; i < operations; i++) {
+            total += logMath.addAsLinear(values[next & (NUM_VALUES - 1)], values[(next + 1) & (NUM_VALUES - 1)]);
+            next++;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.benchmark;
+
+import edu.cmu.sphinx.frontend.FloatData;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.GaussianMixture;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.MixtureComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Scores the feature vectors of the audio file with the Gaussians of the acoustic model. */
+public class MixtureComponentBenchmark extends Benchmark {
+
+    private MixtureComponent[] components;
+    private FloatData[] features;
+    private int next;
+
+
+    public MixtureComponentBenchmark() {
+        super("mixtureComponent.getScore");
+    }
+
+
+    @Override
+    public void setUp(Fixture fixture) throws Exception {
+        List<MixtureComponent> allComponents = new ArrayList<MixtureComponent>();
+        for (GaussianMixture mixture : GaussianMixtureBenchmark.getMixtures(fixture)) {
+            for (MixtureComponent component : mixture.getMixtureComponents()) {
+                allComponents.add(component);
+            }
+        }
+        components = allComponents.toArray(new MixtureComponent[allComponents.size()]);
+        features = fixture.getFeatures().toArray(new FloatData[0]);
+    }
+
+
+    @Override
+    public double run(int operations) {
+        float total = 0;
+        for (int i = 0; i < operations; i++) {
+            total += components[next % components.length].getScore(features[next % features.length]);
+            next++;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.trainer;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.linguist.acoustic.HMM;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.GaussianMixture;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneHMM;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneHMMState;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Sphinx3Loader;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.trainer.TrainerScore;
+import edu.cmu.sphinx.util.LogMath;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the Baum-Welch learner side by side with the reference learner, which walks the utterance graph node by node.
+ * The utterances are chains of random HMMs of the tidigits model, with a few frames drawn around the mean of each
+ * emitting state.
+ * Without pruning the scores of both learners match bit for bit; with pruning the statistics stay consistent over the
+ * remaining part of the trellis.
+ */
+public class BaumWelchLearnerTest {
+
+    private static final String MODEL = "../../models/acoustic/tidigits";
+
+    private static LogMath logMath;
+    private static List<SenoneHMM> hmms;
+    private static FrameSource source;
+    private static FrontEnd frontEnd;
+
+
+    @BeforeClass
+    public static void loadModel() throws IOException {
+        logMath = new LogMath(1.0001f, true);
+        Sphinx3Loader loader = new Sphinx3Loader(new File(MODEL).toURI().toURL(), "mdef", "", logMath, new UnitManager(), 0f,
+                1e-7f, 1e-4f, false);
+        loader.load();
+        hmms = new ArrayList<SenoneHMM>();
+        for (HMM hmm : loader.getHMMManager()) {
+            hmms.add((SenoneHMM) hmm);
+        }
+        source = new FrameSource();
+        frontEnd = new FrontEnd(Arrays.<DataProcessor>asList(source));
+    }
+
+
+    @Test
+    public void testStatistics() {
+        // the same learner runs utterances of growing and shrinking
+        // sizes, so that its buffers are reused
+        BaumWelchLearner learner = new BaumWelchLearner(frontEnd, logMath, 0.0);
+        int[] utterances = {10, 20, 5, 25};
+        for (int seed = 0; seed < utterances.length; seed++) {
+            Random random = new Random(seed);
+            List<SenoneHMM> chain = createChain(random, utterances[seed]);
+            Graph graph = createGraph(chain);
+            List<float[]> frames = createFrames(random, chain);
+
+            List<TrainerScore[]> expected = run(new ReferenceBaumWelchLearner(frontEnd, logMath), graph, frames);
+            float logLikelihood = TrainerScore.getLogLikelihood();
+            List<TrainerScore[]> actual = run(learner, graph, frames);
+            assertEquals(logLikelihood, TrainerScore.getLogLikelihood(), 0.0f);
+
+            assertEquals(frames.size(), expected.size());
+            assertEquals(expected.size(), actual.size());
+            for (int frame = 0; frame < expected.size(); frame++) {
+                assertEquals(expected.get(frame).length, actual.get(frame).length);
+                for (int node = 0; node < expected.get(frame).length; node++) {
+                    TrainerScore x = expected.get(frame)[node];
+                    TrainerScore y = actual.get(frame)[node];
+                    String where = "utterance " + seed + " frame " + frame + " node " + node;
+                    assertSame(where, x.getState(), y.getState());
+                    assertEquals(where, x.getAlpha(), y.getAlpha(), 0.0f);
+                    assertEquals(where, x.getBeta(), y.getBeta(), 0.0f);
+                    assertEquals(where, x.getGamma(), y.getGamma(), 0.0f);
+                    assertEquals(where, x.getScore(), y.getScore(), 0.0f);
+                    assertTrue(where, Arrays.equals(x.getComponentGamma(), y.getComponentGamma()));
+                }
+            }
+            // every frame has its own scores
+            assertNotSame(actual.get(0), actual.get(1));
+            assertNotSame(expected.get(0), expected.get(1));
+        }
+    }
+
+
+    @Test
+    public void testPruning() {
+        Random random = new Random(7);
+        List<SenoneHMM> chain = createChain(random, 20);
+        Graph graph = createGraph(chain);
+        List<float[]> frames = createFrames(random, chain);
+
+        List<TrainerScore[]> full = run(new BaumWelchLearner(frontEnd, logMath, 0.0), graph, frames);
+        List<TrainerScore[]> pruned = run(new BaumWelchLearner(frontEnd, logMath, 1E-100), graph, frames);
+        assertEquals(frames.size(), pruned.size());
+
+        // In every frame, the paths through the emitting states add up
+        // to the likelihood of the utterance. The pruned trellis keeps
+        // the best paths, which carry almost all of the probability.
+        int numEmitting = 0;
+        int numPruned = 0;
+        for (int frame = 0; frame < frames.size(); frame++) {
+            float logLikelihood = getLogLikelihood(full.get(frame));
+            float prunedLogLikelihood = getLogLikelihood(pruned.get(frame));
+            assertTrue(prunedLogLikelihood <= logLikelihood);
+            assertEquals(logLikelihood, prunedLogLikelihood, logMath.linearToLog(1.01));
+            for (TrainerScore score : pruned.get(frame)) {
+                if (isEmitting(score)) {
+                    numEmitting++;
+                    if (score.getAlpha() == LogMath.getLogZero()) {
+                        // pruned states are off the trellis in both passes
+                        assertEquals(LogMath.getLogZero(), score.getBeta(), 0.0f);
+                        numPruned++;
+                    }
+                }
+            }
+        }
+        assertTrue(numPruned > numEmitting / 2);
+    }
+
+
+    /**
+     * Adds up the probabilities of the paths through the emitting states of a frame.
+     *
+     * @param scores the scores of the frame
+     * @return the log likelihood of the utterance
+     */
+    private static float getLogLikelihood(TrainerScore[] scores) {
+        float logLikelihood = LogMath.getLogZero();
+        for (TrainerScore score : scores) {
+            if (isEmitting(score)) {
+                logLikelihood = logMath.addAsLinear(logLikelihood, score.getAlpha() + score.getBeta());
+            }
+        }
+        return logLikelihood;
+    }
+
+
+    private static boolean isEmitting(TrainerScore score) {
+        return score.getState() != null && score.getState().isEmitting();
+    }
+
+
+    /**
+     * Runs a learner over an utterance.
+     *
+     * @param learner the learner
+     * @param graph   the graph of the utterance
+     * @param frames  the feature frames of the utterance
+     * @return the scores of the frames, in the order of the frames
+     */
+    private static List<TrainerScore[]> run(Learner learner, Graph graph, List<float[]> frames) {
+        source.setFrames(frames);
+        TestUtteranceGraph utteranceGraph = new TestUtteranceGraph();
+        utteranceGraph.add(graph);
+        learner.setGraph(utteranceGraph);
+
+        List<TrainerScore[]> scores = new ArrayList<TrainerScore[]>();
+        TrainerScore[] score;
+        while ((score = learner.getScore()) != null) {
+            scores.add(0, score);
+        }
+        return scores;
+    }
+
+
+    /**
+     * Chooses random HMMs of the model.
+     *
+     * @param random  the random generator
+     * @param numHmms the number of HMMs
+     * @return the HMMs
+     */
+    private static List<SenoneHMM> createChain(Random random, int numHmms) {
+        List<SenoneHMM> chain = new ArrayList<SenoneHMM>();
+        for (int i = 0; i < numHmms; i++) {
+            chain.add(hmms.get(random.nextInt(hmms.size())));
+        }
+        return chain;
+    }
+
+
+    /**
+     * Creates the graph of a chain of HMMs, as the transcript graphs do: each HMM begins with a dummy node and the last
+     * non-emitting state of the last HMM leads to the end of the utterance.
+     *
+     * @param chain the HMMs
+     * @return the graph
+     */
+    private static Graph createGraph(List<SenoneHMM> chain) {
+        Graph graph = new Graph();
+        Node initialNode = new Node(NodeType.UTTERANCE_BEGIN);
+        graph.addNode(initialNode);
+        graph.setInitialNode(initialNode);
+        Node previous = initialNode;
+        for (SenoneHMM hmm : chain) {
+            float[][] transitions = hmm.getTransitionMatrix();
+            Node dummy = new Node(NodeType.DUMMY);
+            graph.addNode(dummy);
+            graph.linkNodes(previous, dummy);
+            List<Node> nodes = new ArrayList<Node>();
+            for (int state = 0; state <= hmm.getOrder(); state++) {
+                Node node = new Node(NodeType.STATE, hmm.getUnit().getName());
+                node.setObject(hmm.getState(state));
+                graph.addNode(node);
+                nodes.add(node);
+                if (state == 0) {
+                    graph.linkNodes(dummy, node);
+                }
+                for (int from = 0; from <= state; from++) {
+                    if (transitions[from][state] != LogMath.getLogZero()) {
+                        graph.linkNodes(nodes.get(from), node);
+                    }
+                }
+            }
+            previous = nodes.get(nodes.size() - 1);
+        }
+        Node finalNode = new Node(NodeType.UTTERANCE_END);
+        graph.addNode(finalNode);
+        graph.linkNodes(previous, finalNode);
+        graph.setFinalNode(finalNode);
+        return graph;
+    }
+
+
+    /**
+     * Creates the feature frames of a chain of HMMs: one to four frames around the mean of each emitting state.
+     *
+     * @param random the random generator
+     * @param chain  the HMMs
+     * @return the frames
+     */
+    private static List<float[]> createFrames(Random random, List<SenoneHMM> chain) {
+        List<float[]> frames = new ArrayList<float[]>();
+        for (SenoneHMM hmm : chain) {
+            for (int state = 0; state < hmm.getOrder(); state++) {
+                GaussianMixture senone = (GaussianMixture) ((SenoneHMMState) hmm.getState(state)).getSenone();
+                float[] mean = senone.getMixtureComponents()[0].getMean();
+                for (int i = random.nextInt(4); i >= 0; i--) {
+                    float[] frame = new float[mean.length];
+                    for (int j = 0; j < frame.length; j++) {
+                        frame[j] = mean[j] + (float) random.nextGaussian() * 0.1f;
+                    }
+                    frames.add(frame);
+                }
+            }
+        }
+        return frames;
+    }
+
+
+    /** Provides the frames of an utterance between a start and an end signal. */
+    private static class FrameSource extends BaseDataProcessor {
+
+        private List<float[]> frames;
+        private int position;
+
+
+        void setFrames(List<float[]> frames) {
+            this.frames = frames;
+            position = -1;
+        }
+
+
+        @Override
+        public Data getData() {
+            if (position == -1) {
+                position++;
+                return new DataStartSignal(16000);
+            }
+            if (position < frames.size()) {
+                float[] frame = frames.get(position);
+                return new FloatData(frame, 16000, position++);
+            }
+            if (position++ == frames.size()) {
+                return new DataEndSignal(0);
+            }
+            return null;
+        }
+    }
+
+
+    private static class TestUtteranceGraph extends Graph implements UtteranceGraph {
+
+        public void add(Graph graph) {
+            copyGraph(graph);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2013 Carnegie Mellon University.
+ * All Rights Reserved.  Use is subject to license terms.
+ *
+ * See the file "license.terms" for information on usage and
+ * redistribution of this file, and for a DISCLAIMER OF ALL
+ * WARRANTIES.
+ *
+ */
+
+package edu.cmu.sphinx.trainer;
+
+import edu.cmu.sphinx.frontend.*;
+import edu.cmu.sphinx.linguist.acoustic.HMM;
+import edu.cmu.sphinx.linguist.acoustic.UnitManager;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.GaussianMixture;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Pool;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneHMM;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.SenoneHMMState;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.Sphinx3Loader;
+import edu.cmu.sphinx.linguist.acoustic.tiedstate.trainer.TrainerAcousticModel;
+import edu.cmu.sphinx.util.LogMath;
+import edu.cmu.sphinx.util.props.PropertySheet;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Trains the tidigits model on the same utterances with one learner and with several learners on their own threads, and
+ * checks that the statistics accumulated in blocks and merged into the model are bit for bit the same. The statistics
+ * are compared through the mixture weights and the transition matrices which the model computes from them, and
+ * through the log likelihood of the training set. The utterances are chains of random HMMs, with a few frames drawn
+ * around the mean of each emitting state.
+ */
+public class ParallelTrainingTest {
+
+    private static final String MODEL = "../../models/acoustic/tidigits";
+
+    private static final int NUM_UTTERANCES = 23;
+
+    private static final int BLOCK_SIZE = 2;
+
+
+    @BeforeClass
+    public static void setLogLevel() {
+        // the means and variances are not trained, the pool manager
+        // reports each of their senones
+        Logger.getLogger("edu.cmu.sphinx.linguist.acoustic.HMMPoolManager").setLevel(Level.WARNING);
+    }
+
+
+    @Test
+    public void testThreads() throws IOException {
+        Training oneThread = new Training(1);
+        for (int numThreads : new int[] {2, 4}) {
+            Training parallel = new Training(numThreads);
+            assertEquals(oneThread.logLikelihood, parallel.logLikelihood, 0.0f);
+            assertEquals(oneThread.mixtureWeights.size(), parallel.mixtureWeights.size());
+            for (int i = 0; i < oneThread.mixtureWeights.size(); i++) {
+                assertTrue("mixture weights " + i,
+                        Arrays.equals(oneThread.mixtureWeights.get(i), parallel.mixtureWeights.get(i)));
+            }
+            assertEquals(oneThread.matrices.size(), parallel.matrices.size());
+            for (int i = 0; i < oneThread.matrices.size(); i++) {
+                float[][] x = oneThread.matrices.get(i);
+                float[][] y = parallel.matrices.get(i);
+                assertEquals(x.length, y.length);
+                for (int j = 0; j < x.length; j++) {
+                    assertTrue("transition matrix " + i + " row " + j, Arrays.equals(x[j], y[j]));
+                }
+            }
+        }
+
+        // the senones of all states of the 34 context independent HMMs
+        // were trained
+        Training untrained = new Training(0);
+        int numTrained = 0;
+        for (int i = 0; i < oneThread.mixtureWeights.size(); i++) {
+            if (!Arrays.equals(untrained.mixtureWeights.get(i), oneThread.mixtureWeights.get(i))) {
+                numTrained++;
+            }
+        }
+        assertEquals(34 * 3, numTrained);
+    }
+
+
+    /** Loads the model and trains it for one iteration, on one thread per learner. */
+    private static class Training {
+
+        final float logLikelihood;
+        final Pool<float[]> mixtureWeights;
+        final Pool<float[][]> matrices;
+
+
+        Training(int numLearners) throws IOException {
+            LogMath logMath = new LogMath(1.0001f, true);
+            UnitManager unitManager = new UnitManager();
+            Sphinx3Loader loader = new Sphinx3Loader(new File(MODEL).toURI().toURL(), "mdef", "", logMath,
+                    unitManager, 0f, 1e-7f, 1e-4f, false);
+            TrainerAcousticModel model = new TrainerAcousticModel(loader, unitManager, false, null, "sphinx3.binary");
+            mixtureWeights = loader.getMixtureWeightPool();
+            matrices = loader.getTransitionMatrixPool();
+            if (numLearners == 0) {
+                logLikelihood = 0.0f;
+                return;
+            }
+
+            List<SenoneHMM> hmms = new ArrayList<SenoneHMM>();
+            for (HMM hmm : loader.getHMMManager()) {
+                hmms.add((SenoneHMM) hmm);
+            }
+            List<List<SenoneHMM>> chains = new ArrayList<List<SenoneHMM>>();
+            List<List<float[]>> frames = new ArrayList<List<float[]>>();
+            for (int seed = 0; seed < NUM_UTTERANCES; seed++) {
+                Random random = new Random(seed);
+                List<SenoneHMM> chain = new ArrayList<SenoneHMM>();
+                for (int i = 5 + random.nextInt(10); i > 0; i--) {
+                    chain.add(hmms.get(random.nextInt(hmms.size())));
+                }
+                chains.add(chain);
+                frames.add(createFrames(random, chain));
+            }
+
+            List<Learner> learners = new ArrayList<Learner>();
+            for (int i = 0; i < numLearners; i++) {
+                learners.add(new TestLearner(frames, logMath));
+            }
+            SimpleTrainManager trainManager = new TestTrainManager(new TestControlFile(), learners, chains,
+                    unitManager, model);
+            model.resetBuffers();
+            trainManager.accumulateInParallel("", model);
+            logLikelihood = model.normalize();
+        }
+    }
+
+
+    /**
+     * Creates the feature frames of a chain of HMMs: one to four frames around the mean of each emitting state.
+     *
+     * @param random the random generator
+     * @param chain  the HMMs
+     * @return the frames
+     */
+    private static List<float[]> createFrames(Random random, List<SenoneHMM> chain) {
+        List<float[]> frames = new ArrayList<float[]>();
+        for (SenoneHMM hmm : chain) {
+            for (int state = 0; state < hmm.getOrder(); state++) {
+                GaussianMixture senone = (GaussianMixture) ((SenoneHMMState) hmm.getState(state)).getSenone();
+                float[] mean = senone.getMixtureComponents()[0].getMean();
+                for (int i = random.nextInt(4); i >= 0; i--) {
+                    float[] frame = new float[mean.length];
+                    for (int j = 0; j < frame.length; j++) {
+                        frame[j] = mean[j] + (float) random.nextGaussian() * 0.1f;
+                    }
+                    frames.add(frame);
+                }
+            }
+        }
+        return frames;
+    }
+
+
+    /** Builds the graphs of the utterances from their chains of HMMs instead of their transcripts. */
+    private static class TestTrainManager extends SimpleTrainManager {
+
+        private final List<List<SenoneHMM>> chains;
+
+
+        TestTrainManager(ControlFile controlFile, List<Learner> learners, List<List<SenoneHMM>> chains,
+                         UnitManager unitManager, TrainerAcousticModel model) {
+            super(controlFile, null, learners, BLOCK_SIZE, null, unitManager,
+                    Collections.singletonList(model), 1, 0.0f, false);
+            this.chains = chains;
+        }
+
+
+        @Override
+        protected UtteranceGraph createGraph(String context, Utterance utterance, TrainerAcousticModel model) {
+            List<SenoneHMM> chain = chains.get(Integer.parseInt(utterance.toString()));
+            TestUtteranceGraph graph = new TestUtteranceGraph();
+            Node initialNode = new Node(NodeType.UTTERANCE_BEGIN);
+            graph.addNode(initialNode);
+            graph.setInitialNode(initialNode);
+            Node previous = initialNode;
+            for (SenoneHMM hmm : chain) {
+                float[][] transitions = hmm.getTransitionMatrix();
+                Node dummy = new Node(NodeType.DUMMY);
+                graph.addNode(dummy);
+                graph.linkNodes(previous, dummy);
+                List<Node> nodes = new ArrayList<Node>();
+                for (int state = 0; state <= hmm.getOrder(); state++) {
+                    Node node = new Node(NodeType.STATE, hmm.getUnit().getName());
+                    node.setObject(hmm.getState(state));
+                    graph.addNode(node);
+                    nodes.add(node);
+                    if (state == 0) {
+                        graph.linkNodes(dummy, node);
+                    }
+                    for (int from = 0; from <= state; from++) {
+                        if (transitions[from][state] != LogMath.getLogZero()) {
+                            graph.linkNodes(nodes.get(from), node);
+                        }
+                    }
+                }
+                previous = nodes.get(nodes.size() - 1);
+            }
+            Node finalNode = new Node(NodeType.UTTERANCE_END);
+            graph.addNode(finalNode);
+            graph.linkNodes(previous, finalNode);
+            graph.setFinalNode(finalNode);
+            return graph;
+        }
+    }
+
+
+    /** Lists the utterances by their number. */
+    private static class TestControlFile implements ControlFile {
+
+        private int next;
+
+
+        public void newProperties(PropertySheet ps) {
+        }
+
+
+        public void startUtteranceIterator() {
+            next = 0;
+        }
+
+
+        public boolean hasMoreUtterances() {
+            return next < NUM_UTTERANCES;
+        }
+
+
+        public Utterance nextUtterance() {
+            return new SimpleUtterance(String.valueOf(next++));
+        }
+    }
+
+
+    /** A learner with its own front end, reading the frames of the utterances by their number. */
+    private static class TestLearner extends BaumWelchLearner {
+
+        private final List<List<float[]>> frames;
+        private final FrameSource source;
+
+
+        TestLearner(List<List<float[]>> frames, LogMath logMath) {
+            this(frames, new FrameSource(), logMath);
+        }
+
+
+        private TestLearner(List<List<float[]>> frames, FrameSource source, LogMath logMath) {
+            super(new FrontEnd(Arrays.<DataProcessor>asList(source)), logMath, 0.0);
+            this.frames = frames;
+            this.source = source;
+        }
+
+
+        @Override
+        public void setUtterance(Utterance utterance) {
+            source.setFrames(frames.get(Integer.parseInt(utterance.toString())));
+        }
+    }
+
+
+    /** Provides the frames of an utterance between a start and an end signal. */
+    private static class FrameSource extends BaseDataProcessor {
+
+        private List<float[]> frames;
+        private int position;
+
+
+        void setFrames(List<float[]> frames) {
+            this.frames = frames;
+            position = -1;
+        }
+
+
+        @Override
+        public Data getData() {
+            if (position == -1) {
+                position++;
+                return new DataStartSignal(16000);
+            }
+            if (position < frames.size()) {
+                float[] frame = frames.get(position);
+                return new FloatData(frame, 16000, position++);
+            }
+            if (position++ == frames.size()) {
+                return new DataEndSignal(0);
+            }
+            return null;
+        }
+    }
+
+
+    private static class TestUtteranceGraph extends Graph implements UtteranceGraph {
+
+        public void add(Graph graph) {
+            copyGraph(graph);
+        }
+    }
+}